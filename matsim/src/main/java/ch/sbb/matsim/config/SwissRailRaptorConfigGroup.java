@@ -46,6 +46,14 @@ public class SwissRailRaptorConfigGroup extends ReflectiveConfigGroup {
     private static final String PARAM_TRANSFER_WALK_MARGIN = "transferWalkMargin";
     private static final String PARAM_TRANSFER_WALK_MARGIN_DESC = "time deducted from transfer walk leg during transfers between pt legs in order to avoid missing a vehicle by a few seconds due to delays.";
 
+    private static final String PARAM_TRANSFERS_CACHE_DIRECTORY = "transfersCacheDirectory";
+    private static final String PARAM_TRANSFERS_CACHE_DIRECTORY_DESC = "Directory in which the transfers between route stops are stored, so they can be re-used (memory-mapped) by later runs " +
+            "with the same transit schedule and transfer settings. Default=null: transfers are always calculated.";
+
+    private static final String PARAM_RANGE_QUERY_THREADS = "rangeQueryThreads";
+    private static final String PARAM_RANGE_QUERY_THREADS_DESC = "Number of threads used to answer a single range query, each handling a part of the departure window. " +
+            "Only has an effect if useRangeQuery is true. Every router, i.e. every routing thread, uses its own additional threads. Default=1.";
+
     private boolean useRangeQuery = false;
     private boolean useIntermodality = false;
     private IntermodalAccessEgressModeSelection intermodalAccessEgressModeSelection = IntermodalAccessEgressModeSelection.CalcLeastCostModePerStop;
@@ -57,6 +65,8 @@ public class SwissRailRaptorConfigGroup extends ReflectiveConfigGroup {
     private double transferPenaltyMaxCost = Double.POSITIVE_INFINITY;
     private double transferPenaltyHourlyCost = 0;
     private double transferWalkMargin = 5;
+    private String transfersCacheDirectory = null;
+    private int rangeQueryThreads = 1;
 
     private ScoringParameters scoringParameters = ScoringParameters.Default;
 
@@ -118,6 +128,26 @@ public class SwissRailRaptorConfigGroup extends ReflectiveConfigGroup {
         this.transferWalkMargin = transferWalkMargin;
     }
 
+    @StringGetter(PARAM_TRANSFERS_CACHE_DIRECTORY)
+    public String getTransfersCacheDirectory() {
+        return this.transfersCacheDirectory;
+    }
+
+    @StringSetter(PARAM_TRANSFERS_CACHE_DIRECTORY)
+    public void setTransfersCacheDirectory(String transfersCacheDirectory) {
+        this.transfersCacheDirectory = transfersCacheDirectory;
+    }
+
+    @StringGetter(PARAM_RANGE_QUERY_THREADS)
+    public int getRangeQueryThreads() {
+        return this.rangeQueryThreads;
+    }
+
+    @StringSetter(PARAM_RANGE_QUERY_THREADS)
+    public void setRangeQueryThreads(int rangeQueryThreads) {
+        this.rangeQueryThreads = rangeQueryThreads;
+    }
+
     @StringGetter(PARAM_USE_MODE_MAPPING)
     public boolean isUseModeMappingForPassengers() {
         return this.useModeMapping;
@@ -612,6 +642,8 @@ public class SwissRailRaptorConfigGroup extends ReflectiveConfigGroup {
         comments.put(PARAM_INTERMODAL_ACCESS_EGRESS_MODE_SELECTION, PARAM_INTERMODAL_ACCESS_EGRESS_MODE_SELECTION_DESC);
         comments.put(PARAM_USE_CAPACITY_CONSTRAINTS, PARAM_USE_CAPACITY_CONSTRAINTS_DESC);
         comments.put(PARAM_TRANSFER_WALK_MARGIN, PARAM_TRANSFER_WALK_MARGIN_DESC);
+        comments.put(PARAM_TRANSFERS_CACHE_DIRECTORY, PARAM_TRANSFERS_CACHE_DIRECTORY_DESC);
+        comments.put(PARAM_RANGE_QUERY_THREADS, PARAM_RANGE_QUERY_THREADS_DESC);
         return comments;
     }
 
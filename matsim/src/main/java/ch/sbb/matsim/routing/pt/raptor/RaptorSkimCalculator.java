@@ -0,0 +1,559 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package ch.sbb.matsim.routing.pt.raptor;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.core.utils.geometry.CoordUtils;
+import org.matsim.core.utils.misc.Counter;
+import org.matsim.core.utils.misc.Time;
+import org.matsim.pt.transitSchedule.api.TransitStopFacility;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static ch.sbb.matsim.routing.pt.raptor.SwissRailRaptorCore.SKIM_ARRIVAL_TIME;
+import static ch.sbb.matsim.routing.pt.raptor.SwissRailRaptorCore.SKIM_DEPARTURE_STOP;
+import static ch.sbb.matsim.routing.pt.raptor.SwissRailRaptorCore.SKIM_DEPARTURE_TIME;
+import static ch.sbb.matsim.routing.pt.raptor.SwissRailRaptorCore.SKIM_IN_VEHICLE_TIME;
+import static ch.sbb.matsim.routing.pt.raptor.SwissRailRaptorCore.SKIM_TRANSFER_COUNT;
+import static ch.sbb.matsim.routing.pt.raptor.SwissRailRaptorCore.SKIM_UNREACHED;
+import static ch.sbb.matsim.routing.pt.raptor.SwissRailRaptorCore.SKIM_VALUES_PER_STOP;
+
+/**
+ * Calculates zone-to-zone public transport skim matrices for a time window and writes them to a file that can be
+ * read with {@link RaptorSkimMatrices}.
+ *
+ * For every point of an origin zone, one least-cost tree is calculated per time step, covering the time window as
+ * well as one window length before and after it. The trees only contain a few primitive values per stop (see
+ * {@link SwissRailRaptorCore#calcSkimTree}), so no routes have to be created. After each tree, the connections to the
+ * stops near any zone point are appended to a list per stop, skipping a connection if it is the same as the one found
+ * by the previous tree, and the tree is overwritten by the next one. The connections found between two
+ * points are combined with the rooftop algorithm (Niek Guis, ca. 2015): for every minute of the time window, the
+ * connection with the least travel time plus adaption time (the time between the desired and the actual departure)
+ * is used. The metrics of a point pair are the averages over the time window, weighted by the share of each
+ * connection; the metrics of a zone pair are the averages over all its point pairs with at least one connection.
+ *
+ * The origin zones are distributed to the given number of threads, which share the same {@link SwissRailRaptorData}.
+ * As soon as a zone is finished, its row is written to the output file, so the matrices never have to be kept in
+ * memory. Zone pairs without any connection contain <code>Infinity</code>, except for the frequency which is 0.
+ *
+ * Memory: every thread keeps one tree of <code>countStops * SKIM_VALUES_PER_STOP</code> ints, plus the distinct
+ * connections found for the current origin point, i.e. 5 ints per connection and stop near a zone point. The number of
+ * distinct connections per stop is bounded by the number of departures in three window lengths, and by
+ * <code>ceil(3 * window / stepSize)</code>, but is usually much smaller as consecutive trees mostly find the same
+ * connection. Smaller step sizes thus mostly cost computation time, not memory.
+ *
+ * The data should be created with {@link RaptorStaticConfig.RaptorOptimization#OneToAllRouting}.
+ */
+public final class RaptorSkimCalculator {
+
+    private static final Logger log = LogManager.getLogger(RaptorSkimCalculator.class);
+
+    public static final String METRIC_TRAVEL_TIME = "travelTime";
+    public static final String METRIC_ACCESS_TIME = "accessTime";
+    public static final String METRIC_EGRESS_TIME = "egressTime";
+    public static final String METRIC_TRANSFER_COUNT = "transferCount";
+    public static final String METRIC_IN_VEHICLE_TIME = "inVehicleTime";
+    public static final String METRIC_ADAPTION_TIME = "adaptionTime";
+    public static final String METRIC_FREQUENCY = "frequency";
+
+    private static final List<String> METRICS = List.of(METRIC_TRAVEL_TIME, METRIC_ACCESS_TIME, METRIC_EGRESS_TIME, METRIC_TRANSFER_COUNT,
+            METRIC_IN_VEHICLE_TIME, METRIC_ADAPTION_TIME, METRIC_FREQUENCY);
+    private static final int TRAVEL_TIME = 0;
+    private static final int ACCESS_TIME = 1;
+    private static final int EGRESS_TIME = 2;
+    private static final int TRANSFER_COUNT = 3;
+    private static final int IN_VEHICLE_TIME = 4;
+    private static final int ADAPTION_TIME = 5;
+    private static final int FREQUENCY = 6;
+
+    private final SwissRailRaptorData data;
+    private final RaptorParameters parameters;
+    private final int numberOfThreads;
+
+    public RaptorSkimCalculator(SwissRailRaptorData data, RaptorParameters parameters, int numberOfThreads) {
+        this.data = data;
+        this.parameters = parameters;
+        this.numberOfThreads = Math.max(1, numberOfThreads);
+        if (data.config.getOptimization() != RaptorStaticConfig.RaptorOptimization.OneToAllRouting) {
+            log.warn("SwissRailRaptorData was not initialized with full support for tree calculations and may result in unexpected results. Use `RaptorStaticConfig.setOptimization(RaptorOptimization.OneToAllRouting)` to fix this issue.");
+        }
+    }
+
+    /**
+     * @param coordsPerZone the points of each zone, the zones are written in the iteration order of the map
+     * @param stepSize the time between two trees calculated for the same point, in seconds
+     */
+    public void calcSkimMatrices(Map<String, Coord[]> coordsPerZone, double minDepartureTime, double maxDepartureTime, double stepSize, File outputFile) throws IOException {
+        List<String> zoneIds = new ArrayList<>(coordsPerZone.keySet());
+        ZonePoint[][] pointsPerZone = new ZonePoint[zoneIds.size()][];
+        for (int i = 0; i < zoneIds.size(); i++) {
+            Coord[] coords = coordsPerZone.get(zoneIds.get(i));
+            pointsPerZone[i] = new ZonePoint[coords == null ? 0 : coords.length];
+            for (int p = 0; p < pointsPerZone[i].length; p++) {
+                pointsPerZone[i][p] = new ZonePoint(coords[p]);
+            }
+        }
+
+        String name = "PT-SkimMatrices-" + Time.writeTime(minDepartureTime) + "-" + Time.writeTime(maxDepartureTime);
+        try (FileChannel channel = FileChannel.open(outputFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long dataOffset = RaptorSkimMatrices.writeHeader(channel, zoneIds, METRICS);
+
+            ConcurrentLinkedQueue<Integer> originZones = new ConcurrentLinkedQueue<>();
+            for (int i = 0; i < zoneIds.size(); i++) {
+                originZones.add(i);
+            }
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            Counter counter = new Counter(name + " zone ", " / " + zoneIds.size());
+            Thread[] threads = new Thread[this.numberOfThreads];
+            for (int i = 0; i < this.numberOfThreads; i++) {
+                RowWorker worker = new RowWorker(originZones, pointsPerZone, minDepartureTime, maxDepartureTime, stepSize, channel, dataOffset, counter, failure);
+                threads[i] = new Thread(worker, name + "-" + i);
+                threads[i].start();
+            }
+            for (Thread thread : threads) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                }
+            }
+            Throwable t = failure.get();
+            if (t instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) t).getCause();
+            }
+            if (t != null) {
+                throw new RuntimeException(t);
+            }
+        }
+    }
+
+    private final class ZonePoint {
+        final TransitStopFacility[] stops;
+        final int[] stopIndices;
+        final double[] walkTimes;
+
+        ZonePoint(Coord coord) {
+            Collection<TransitStopFacility> candidates = data.findNearbyStops(coord.getX(), coord.getY(), parameters.getSearchRadius());
+            if (candidates.isEmpty()) {
+                TransitStopFacility nearest = data.findNearestStop(coord.getX(), coord.getY());
+                double nearestStopDistance = CoordUtils.calcEuclideanDistance(coord, nearest.getCoord());
+                candidates = data.findNearbyStops(coord.getX(), coord.getY(), nearestStopDistance + parameters.getExtensionRadius());
+            }
+            List<TransitStopFacility> stops = new ArrayList<>(candidates.size());
+            for (TransitStopFacility stop : candidates) {
+                if (data.stopFacilityIndices.containsKey(stop)) {
+                    stops.add(stop);
+                }
+            }
+            this.stops = stops.toArray(new TransitStopFacility[0]);
+            this.stopIndices = new int[this.stops.length];
+            this.walkTimes = new double[this.stops.length];
+            for (int i = 0; i < this.stops.length; i++) {
+                this.stopIndices[i] = data.stopFacilityIndices.get(this.stops[i]);
+                this.walkTimes[i] = CoordUtils.calcEuclideanDistance(coord, this.stops[i].getCoord()) / parameters.getBeelineWalkSpeed();
+            }
+        }
+    }
+
+    private final class RowWorker implements Runnable {
+
+        private final ConcurrentLinkedQueue<Integer> originZones;
+        private final ZonePoint[][] pointsPerZone;
+        private final double minDepartureTime;
+        private final double maxDepartureTime;
+        private final double timeWindow;
+        private final FileChannel channel;
+        private final long dataOffset;
+        private final Counter counter;
+        private final AtomicReference<Throwable> failure;
+
+        private final SwissRailRaptorCore raptor;
+        private final double[] treeDepartureTimes;
+        private final int[] tree;
+        private final int[] destinationStopIndices;
+        private final int[][] connectionsPerStop;
+        private final int[] connectionCountPerStop;
+        private final double[] accessTimes;
+        private final double[][] sums;
+        private final int[] counts;
+        private final List<Connection> connections = new ArrayList<>();
+
+        RowWorker(ConcurrentLinkedQueue<Integer> originZones, ZonePoint[][] pointsPerZone, double minDepartureTime, double maxDepartureTime, double stepSize,
+                  FileChannel channel, long dataOffset, Counter counter, AtomicReference<Throwable> failure) {
+            this.originZones = originZones;
+            this.pointsPerZone = pointsPerZone;
+            this.minDepartureTime = minDepartureTime;
+            this.maxDepartureTime = maxDepartureTime;
+            this.timeWindow = maxDepartureTime - minDepartureTime;
+            this.channel = channel;
+            this.dataOffset = dataOffset;
+            this.counter = counter;
+            this.failure = failure;
+
+            this.raptor = new SwissRailRaptorCore(data, new DefaultRaptorInVehicleCostCalculator(), new DefaultRaptorTransferCostCalculator());
+            int treeCount = (int) Math.ceil(3 * this.timeWindow / stepSize);
+            this.treeDepartureTimes = new double[treeCount];
+            for (int t = 0; t < treeCount; t++) {
+                this.treeDepartureTimes[t] = minDepartureTime - this.timeWindow + t * stepSize;
+            }
+            this.tree = new int[data.countStops * SKIM_VALUES_PER_STOP];
+            boolean[] isDestinationStop = new boolean[data.countStops];
+            for (ZonePoint[] points : pointsPerZone) {
+                for (ZonePoint point : points) {
+                    for (int stopIndex : point.stopIndices) {
+                        isDestinationStop[stopIndex] = true;
+                    }
+                }
+            }
+            int destinationStopCount = 0;
+            int[] destinationStopIndices = new int[data.countStops];
+            for (int stopIndex = 0; stopIndex < data.countStops; stopIndex++) {
+                if (isDestinationStop[stopIndex]) {
+                    destinationStopIndices[destinationStopCount++] = stopIndex;
+                }
+            }
+            this.destinationStopIndices = Arrays.copyOf(destinationStopIndices, destinationStopCount);
+            this.connectionsPerStop = new int[data.countStops][];
+            this.connectionCountPerStop = new int[data.countStops];
+            this.accessTimes = new double[data.countStops];
+            this.sums = new double[METRICS.size()][pointsPerZone.length];
+            this.counts = new int[pointsPerZone.length];
+        }
+
+        @Override
+        public void run() {
+            try {
+                Integer fromZoneIndex;
+                while (this.failure.get() == null && (fromZoneIndex = this.originZones.poll()) != null) {
+                    this.counter.incCounter();
+                    calcRow(fromZoneIndex);
+                }
+            } catch (Throwable t) {
+                this.failure.compareAndSet(null, t);
+            }
+        }
+
+        private void calcRow(int fromZoneIndex) {
+            for (double[] metricSums : this.sums) {
+                Arrays.fill(metricSums, 0.0);
+            }
+            Arrays.fill(this.counts, 0);
+
+            for (ZonePoint fromPoint : this.pointsPerZone[fromZoneIndex]) {
+                List<InitialStop> accessStops = new ArrayList<>(fromPoint.stops.length);
+                for (int i = 0; i < fromPoint.stops.length; i++) {
+                    accessStops.add(new InitialStop(fromPoint.stops[i], 0, 0, 0, null));
+                    this.accessTimes[fromPoint.stopIndices[i]] = fromPoint.walkTimes[i];
+                }
+                if (accessStops.isEmpty()) {
+                    continue;
+                }
+                for (int stopIndex : this.destinationStopIndices) {
+                    this.connectionCountPerStop[stopIndex] = 0;
+                }
+                for (double treeDepartureTime : this.treeDepartureTimes) {
+                    this.raptor.calcSkimTree(treeDepartureTime, accessStops, parameters, null, this.tree);
+                    collectConnections();
+                }
+                for (int toZoneIndex = 0; toZoneIndex < this.pointsPerZone.length; toZoneIndex++) {
+                    for (ZonePoint toPoint : this.pointsPerZone[toZoneIndex]) {
+                        calcForPointPair(toZoneIndex, toPoint);
+                    }
+                }
+            }
+
+            float[][] row = new float[METRICS.size()][this.pointsPerZone.length];
+            for (int toZoneIndex = 0; toZoneIndex < this.pointsPerZone.length; toZoneIndex++) {
+                int count = this.counts[toZoneIndex];
+                for (int m = 0; m < row.length; m++) {
+                    row[m][toZoneIndex] = count == 0 ? Float.POSITIVE_INFINITY : (float) (this.sums[m][toZoneIndex] / count);
+                }
+                row[FREQUENCY][toZoneIndex] = count == 0 ? 0 : (float) (this.timeWindow / row[ADAPTION_TIME][toZoneIndex] / 4.0);
+            }
+            try {
+                RaptorSkimMatrices.writeRow(this.channel, this.dataOffset, fromZoneIndex, row);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Appends the connection of the current tree to the list of every destination stop, unless it is unreachable
+         * or the same connection was already found by the previous tree.
+         */
+        private void collectConnections() {
+            int[] tree = this.tree;
+            for (int stopIndex : this.destinationStopIndices) {
+                int offset = stopIndex * SKIM_VALUES_PER_STOP;
+                if (tree[offset + SKIM_DEPARTURE_TIME] == SKIM_UNREACHED) {
+                    continue;
+                }
+                int[] stopConnections = this.connectionsPerStop[stopIndex];
+                int count = this.connectionCountPerStop[stopIndex];
+                if (count > 0 && Arrays.equals(stopConnections, (count - 1) * SKIM_VALUES_PER_STOP, count * SKIM_VALUES_PER_STOP,
+                        tree, offset, offset + SKIM_VALUES_PER_STOP)) {
+                    continue;
+                }
+                if (stopConnections == null) {
+                    stopConnections = new int[4 * SKIM_VALUES_PER_STOP];
+                    this.connectionsPerStop[stopIndex] = stopConnections;
+                } else if (stopConnections.length < (count + 1) * SKIM_VALUES_PER_STOP) {
+                    stopConnections = Arrays.copyOf(stopConnections, 2 * stopConnections.length);
+                    this.connectionsPerStop[stopIndex] = stopConnections;
+                }
+                System.arraycopy(tree, offset, stopConnections, count * SKIM_VALUES_PER_STOP, SKIM_VALUES_PER_STOP);
+                this.connectionCountPerStop[stopIndex] = count + 1;
+            }
+        }
+
+        private void calcForPointPair(int toZoneIndex, ZonePoint toPoint) {
+            this.connections.clear();
+            for (int i = 0; i < toPoint.stopIndices.length; i++) {
+                int stopIndex = toPoint.stopIndices[i];
+                int[] stopConnections = this.connectionsPerStop[stopIndex];
+                for (int c = 0; c < this.connectionCountPerStop[stopIndex]; c++) {
+                    int offset = c * SKIM_VALUES_PER_STOP;
+                    int departureTime = stopConnections[offset + SKIM_DEPARTURE_TIME];
+                    this.connections.add(new Connection(departureTime, stopConnections[offset + SKIM_ARRIVAL_TIME] - departureTime,
+                            this.accessTimes[stopConnections[offset + SKIM_DEPARTURE_STOP]], toPoint.walkTimes[i],
+                            stopConnections[offset + SKIM_TRANSFER_COUNT], stopConnections[offset + SKIM_IN_VEHICLE_TIME]));
+                }
+            }
+            if (this.connections.isEmpty()) {
+                return;
+            }
+            List<Connection> filtered = sortAndFilterConnections(this.connections, this.maxDepartureTime);
+            double adaptionTime = calcAverageAdaptionTime(filtered, this.minDepartureTime, this.maxDepartureTime);
+            double[] shares = calcConnectionShares(filtered, this.minDepartureTime, this.maxDepartureTime);
+
+            double[][] sums = this.sums;
+            for (int c = 0; c < filtered.size(); c++) {
+                Connection connection = filtered.get(c);
+                double share = shares[c];
+                sums[TRAVEL_TIME][toZoneIndex] += share * connection.totalTravelTime();
+                sums[ACCESS_TIME][toZoneIndex] += share * connection.accessTime;
+                sums[EGRESS_TIME][toZoneIndex] += share * connection.egressTime;
+                sums[TRANSFER_COUNT][toZoneIndex] += share * connection.transferCount;
+                sums[IN_VEHICLE_TIME][toZoneIndex] += share * connection.inVehicleTime;
+            }
+            sums[ADAPTION_TIME][toZoneIndex] += adaptionTime;
+            this.counts[toZoneIndex]++;
+        }
+    }
+
+    private static final class Connection {
+        final double departureTime;
+        final double travelTime;
+        final double accessTime;
+        final double egressTime;
+        final int transferCount;
+        final int inVehicleTime;
+
+        Connection(double departureTime, double travelTime, double accessTime, double egressTime, int transferCount, int inVehicleTime) {
+            this.departureTime = departureTime;
+            this.travelTime = travelTime;
+            this.accessTime = accessTime;
+            this.egressTime = egressTime;
+            this.transferCount = transferCount;
+            this.inVehicleTime = inVehicleTime;
+        }
+
+        double startTime() {
+            return this.departureTime - this.accessTime;
+        }
+
+        double totalTravelTime() {
+            return this.accessTime + this.travelTime + this.egressTime;
+        }
+    }
+
+    /**
+     * Removes all connections for which an earlier or later connection is at least as good when the adaption time is
+     * taken into account. Returns the remaining connections in ascending order of their start time.
+     */
+    private static List<Connection> sortAndFilterConnections(List<Connection> connections, double maxDepartureTime) {
+        connections.sort((c1, c2) -> Double.compare(c1.startTime(), c2.startTime()));
+
+        List<Connection> filteredConnections1 = new ArrayList<>(connections.size());
+        Connection earlierConnection = null;
+        for (Connection connection : connections) {
+            if (earlierConnection == null || earlierConnection.totalTravelTime() + (connection.startTime() - earlierConnection.startTime()) > connection.totalTravelTime() + 0.5) { // +0.5 to catch numerical instabilities
+                filteredConnections1.add(connection);
+                earlierConnection = connection;
+            }
+        }
+
+        List<Connection> filteredConnections = new ArrayList<>();
+        Connection laterConnection = null;
+        for (int i = filteredConnections1.size() - 1; i >= 0; i--) {
+            Connection connection = filteredConnections1.get(i);
+            if (laterConnection == null) {
+                filteredConnections.add(connection);
+                laterConnection = connection;
+            } else if (laterConnection.totalTravelTime() + (laterConnection.startTime() - connection.startTime()) > connection.totalTravelTime() + 0.5) {
+                if (connection.startTime() > maxDepartureTime) {
+                    // there should only be one connection after maxDepartureTime
+                    filteredConnections.set(0, connection);
+                } else {
+                    filteredConnections.add(connection);
+                }
+                laterConnection = connection;
+            }
+        }
+        Collections.reverse(filteredConnections);
+        return filteredConnections;
+    }
+
+    private static double calcAverageAdaptionTime(List<Connection> connections, double minDepartureTime, double maxDepartureTime) {
+        double timeWindow = maxDepartureTime - minDepartureTime;
+        Connection prevConnection = null;
+        double sum = 0;
+        for (Connection connection : connections) {
+            if (prevConnection != null) {
+                double depTime1 = prevConnection.startTime();
+                double depTime2 = connection.startTime();
+                if (depTime2 > minDepartureTime && depTime1 < maxDepartureTime) {
+                    double travelTime1 = prevConnection.totalTravelTime();
+                    double travelTime2 = connection.totalTravelTime();
+                    double deltaStart = 0;
+                    double deltaEnd = 0;
+                    if (depTime1 < minDepartureTime) {
+                        deltaStart = minDepartureTime - depTime1;
+                        depTime1 = minDepartureTime;
+                        travelTime1 += deltaStart;
+                    }
+                    if (depTime2 > maxDepartureTime) {
+                        deltaEnd = depTime2 - maxDepartureTime;
+                        depTime2 = maxDepartureTime;
+                        travelTime2 += deltaEnd;
+                    }
+                    double zenith = ((depTime1 + travelTime2 - travelTime1) + depTime2) / 2;
+
+                    if (zenith < minDepartureTime) {
+                        sum += (depTime2 - minDepartureTime) * (depTime2 - minDepartureTime) / 2;
+                    } else if (zenith > maxDepartureTime) {
+                        sum += (maxDepartureTime - depTime1) * (maxDepartureTime - depTime1) / 2;
+                    } else {
+                        sum += (zenith - depTime1) * (zenith - depTime1) / 2;
+                        sum += deltaStart * (zenith - depTime1);
+                        sum += (depTime2 - zenith) * (depTime2 - zenith) / 2;
+                        sum += deltaEnd * (depTime2 - zenith);
+                    }
+                }
+            } else {
+                double depTime = connection.startTime();
+                if (depTime >= minDepartureTime && depTime < maxDepartureTime) {
+                    sum += (depTime - minDepartureTime) * (depTime - minDepartureTime) / 2;
+                }
+            }
+            prevConnection = connection;
+        }
+        if (connections.size() == 1) {
+            double depTime = prevConnection.startTime();
+            if (depTime < minDepartureTime || depTime > maxDepartureTime) {
+                double delta = depTime < minDepartureTime ? (minDepartureTime - depTime) : (depTime - maxDepartureTime);
+                sum = (timeWindow + delta) * (timeWindow + delta) / 2 - (delta * delta / 2);
+            } else {
+                sum += (maxDepartureTime - depTime) * (maxDepartureTime - depTime) / 2;
+            }
+        } else if (prevConnection != null) {
+            double depTime = prevConnection.startTime();
+            if (depTime < maxDepartureTime) {
+                sum += (maxDepartureTime - depTime) * (maxDepartureTime - depTime) / 2;
+            }
+        }
+        return sum / timeWindow;
+    }
+
+    /**
+     * Calculates the share of the time window in which each connection is the best one, based on minimizing travel
+     * time plus adaption time. The shares sum up to 1.
+     */
+    private static double[] calcConnectionShares(List<Connection> connections, double minDepartureTime, double maxDepartureTime) {
+        double timeWindow = maxDepartureTime - minDepartureTime;
+        double[] shares = new double[connections.size()];
+        if (connections.size() == 1) {
+            shares[0] = 1.0;
+            return shares;
+        }
+        for (int i = 0; i < connections.size(); i++) {
+            Connection connection = connections.get(i);
+            if (i > 0) {
+                Connection prevConnection = connections.get(i - 1);
+                double depTime1 = prevConnection.startTime();
+                double depTime2 = connection.startTime();
+                if (depTime2 > minDepartureTime && depTime1 < maxDepartureTime) {
+                    double travelTime1 = prevConnection.totalTravelTime();
+                    double travelTime2 = connection.totalTravelTime();
+                    if (depTime1 < minDepartureTime) {
+                        travelTime1 += minDepartureTime - depTime1;
+                        depTime1 = minDepartureTime;
+                    }
+                    if (depTime2 > maxDepartureTime) {
+                        travelTime2 += depTime2 - maxDepartureTime;
+                        depTime2 = maxDepartureTime;
+                    }
+                    double zenith = ((depTime1 + travelTime2 - travelTime1) + depTime2) / 2;
+                    double share1 = (zenith - depTime1) / timeWindow;
+                    double share2 = (depTime2 - zenith) / timeWindow;
+                    if (share1 < 0) {
+                        // zenith is before minDepartureTime
+                        share2 += share1;
+                        share1 = 0;
+                    }
+                    if (share2 < 0) {
+                        // zenith is after maxDepartureTime
+                        share1 += share2;
+                        share2 = 0;
+                    }
+                    shares[i - 1] += share1;
+                    shares[i] += share2;
+                }
+            } else {
+                double depTime = connection.startTime();
+                if (depTime >= minDepartureTime && depTime < maxDepartureTime) {
+                    shares[i] += (depTime - minDepartureTime) / timeWindow;
+                }
+            }
+        }
+        int last = connections.size() - 1;
+        double depTime = connections.get(last).startTime();
+        if (depTime < maxDepartureTime) {
+            shares[last] += (maxDepartureTime - depTime) / timeWindow;
+        }
+        return shares;
+    }
+
+}
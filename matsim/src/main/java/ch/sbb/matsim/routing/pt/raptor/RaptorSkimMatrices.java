@@ -0,0 +1,170 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package ch.sbb.matsim.routing.pt.raptor;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read access to the zone-to-zone skim matrices written by {@link RaptorSkimCalculator}.
+ *
+ * The file consists of a header with the zone ids and metric names, followed by one row per origin zone. Every row
+ * contains, for each metric, one float value per destination zone. The rows are memory-mapped, so even matrices that
+ * are larger than the heap can be read.
+ */
+public final class RaptorSkimMatrices {
+
+    private static final int FILE_MAGIC = 0x534b494d; // "SKIM"
+    private static final int FILE_VERSION = 1;
+
+    private final List<String> zoneIds;
+    private final List<String> metrics;
+    private final Map<String, Integer> zoneIndices = new HashMap<>();
+    private final FloatBuffer[] rowChunks;
+    private final int rowsPerChunk;
+
+    private RaptorSkimMatrices(List<String> zoneIds, List<String> metrics, FloatBuffer[] rowChunks, int rowsPerChunk) {
+        this.zoneIds = Collections.unmodifiableList(zoneIds);
+        this.metrics = Collections.unmodifiableList(metrics);
+        this.rowChunks = rowChunks;
+        this.rowsPerChunk = rowsPerChunk;
+        for (int i = 0; i < zoneIds.size(); i++) {
+            this.zoneIndices.put(zoneIds.get(i), i);
+        }
+    }
+
+    public List<String> getZoneIds() {
+        return this.zoneIds;
+    }
+
+    public List<String> getMetrics() {
+        return this.metrics;
+    }
+
+    public float get(String metric, String fromZoneId, String toZoneId) {
+        int metricIndex = this.metrics.indexOf(metric);
+        Integer fromIndex = this.zoneIndices.get(fromZoneId);
+        Integer toIndex = this.zoneIndices.get(toZoneId);
+        if (metricIndex < 0 || fromIndex == null || toIndex == null) {
+            throw new IllegalArgumentException("unknown metric or zone: " + metric + ", " + fromZoneId + ", " + toZoneId);
+        }
+        return get(metricIndex, fromIndex, toIndex);
+    }
+
+    public float get(int metricIndex, int fromIndex, int toIndex) {
+        int zoneCount = this.zoneIds.size();
+        FloatBuffer chunk = this.rowChunks[fromIndex / this.rowsPerChunk];
+        int rowOffset = (fromIndex % this.rowsPerChunk) * this.metrics.size() * zoneCount;
+        return chunk.get(rowOffset + metricIndex * zoneCount + toIndex);
+    }
+
+    public static RaptorSkimMatrices read(File file) throws IOException {
+        List<String> zoneIds = new ArrayList<>();
+        List<String> metrics = new ArrayList<>();
+        long dataOffset;
+        try (InputStream is = new BufferedInputStream(new FileInputStream(file)); DataInputStream in = new DataInputStream(is)) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                throw new IOException("unsupported skim matrices file: " + file);
+            }
+            dataOffset = in.readInt();
+            int zoneCount = in.readInt();
+            int metricCount = in.readInt();
+            for (int i = 0; i < zoneCount; i++) {
+                zoneIds.add(in.readUTF());
+            }
+            for (int i = 0; i < metricCount; i++) {
+                metrics.add(in.readUTF());
+            }
+        }
+        long rowBytes = (long) metrics.size() * zoneIds.size() * Float.BYTES;
+        int rowsPerChunk = (int) Math.max(1, Math.min(zoneIds.size(), Integer.MAX_VALUE / Math.max(1, rowBytes)));
+        int chunkCount = (zoneIds.size() + rowsPerChunk - 1) / rowsPerChunk;
+        FloatBuffer[] chunks = new FloatBuffer[chunkCount];
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() != dataOffset + rowBytes * zoneIds.size()) {
+                throw new IOException("incomplete skim matrices file: " + file);
+            }
+            for (int c = 0; c < chunkCount; c++) {
+                long firstRow = (long) c * rowsPerChunk;
+                long rows = Math.min(rowsPerChunk, zoneIds.size() - firstRow);
+                chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset + firstRow * rowBytes, rows * rowBytes).asFloatBuffer();
+            }
+        }
+        return new RaptorSkimMatrices(zoneIds, metrics, chunks, rowsPerChunk);
+    }
+
+    /**
+     * Writes the header of a new skim matrices file and returns the position of the first row.
+     */
+    static long writeHeader(FileChannel channel, List<String> zoneIds, List<String> metrics) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(zoneIds.size());
+            out.writeInt(metrics.size());
+            for (String zoneId : zoneIds) {
+                out.writeUTF(zoneId);
+            }
+            for (String metric : metrics) {
+                out.writeUTF(metric);
+            }
+        }
+        int headerSize = 3 * Integer.BYTES + bytes.size();
+        ByteBuffer header = ByteBuffer.allocate(headerSize);
+        header.putInt(FILE_MAGIC).putInt(FILE_VERSION).putInt(headerSize).put(bytes.toByteArray()).flip();
+        writeFully(channel, header, 0);
+        return headerSize;
+    }
+
+    /**
+     * Writes the row of one origin zone. Rows can be written in any order and by multiple threads concurrently.
+     */
+    static void writeRow(FileChannel channel, long dataOffset, int fromIndex, float[][] valuesPerMetric) throws IOException {
+        int zoneCount = valuesPerMetric[0].length;
+        ByteBuffer row = ByteBuffer.allocate(valuesPerMetric.length * zoneCount * Float.BYTES);
+        FloatBuffer floats = row.asFloatBuffer();
+        for (float[] values : valuesPerMetric) {
+            floats.put(values);
+        }
+        writeFully(channel, row, dataOffset + (long) fromIndex * row.capacity());
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long pos = position;
+        while (buffer.hasRemaining()) {
+            pos += channel.write(buffer, pos);
+        }
+    }
+
+}
@@ -47,6 +47,10 @@ public class RaptorStaticConfig {
 
     private RaptorOptimization optimization = RaptorOptimization.OneToOneRouting;
 
+    private String transfersCacheDirectory = null;
+
+    private int rangeQueryThreads = 1;
+
     public double getBeelineWalkConnectionDistance() {
         return this.beelineWalkConnectionDistance;
     }
@@ -118,4 +122,26 @@ public class RaptorStaticConfig {
     public void setOptimization(RaptorOptimization optimization) {
         this.optimization = optimization;
     }
+
+    /**
+     * @return the directory in which the transfers are stored and looked up, see {@link SwissRailRaptorData}, or <code>null</code> if they are always calculated.
+     */
+    public String getTransfersCacheDirectory() {
+        return this.transfersCacheDirectory;
+    }
+
+    public void setTransfersCacheDirectory(String transfersCacheDirectory) {
+        this.transfersCacheDirectory = transfersCacheDirectory;
+    }
+
+    /**
+     * @return the number of threads used to answer a single range query, see {@link SwissRailRaptorCore#calcRoutes}.
+     */
+    public int getRangeQueryThreads() {
+        return this.rangeQueryThreads;
+    }
+
+    public void setRangeQueryThreads(int rangeQueryThreads) {
+        this.rangeQueryThreads = rangeQueryThreads;
+    }
 }
@@ -56,6 +56,8 @@ public final class RaptorUtils {
             }
         }
         staticConfig.setUseCapacityConstraints(srrConfig.isUseCapacityConstraints());
+        staticConfig.setTransfersCacheDirectory(srrConfig.getTransfersCacheDirectory());
+        staticConfig.setRangeQueryThreads(srrConfig.getRangeQueryThreads());
 
         return staticConfig;
     }
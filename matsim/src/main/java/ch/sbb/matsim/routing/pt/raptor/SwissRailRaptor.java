@@ -10,6 +10,7 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -47,14 +48,32 @@ public class SwissRailRaptor implements TransitRouter {
 
     private boolean treeWarningShown = false;
 
+    /**
+     * The cost calculators are also used by the additional threads answering a range query, so they must be thread-safe if
+     * more than one range query thread is configured (see {@link RaptorStaticConfig#getRangeQueryThreads()}).
+     */
     public SwissRailRaptor(SwissRailRaptorData data,
                            RaptorParametersForPerson parametersForPerson,
                            RaptorRouteSelector routeSelector,
                            RaptorStopFinder stopFinder,
 													 RaptorInVehicleCostCalculator inVehicleCostCalculator,
 													 RaptorTransferCostCalculator transferCostCalculator) {
+        this(data, parametersForPerson, routeSelector, stopFinder, () -> inVehicleCostCalculator, () -> transferCostCalculator);
+    }
+
+    /**
+     * Creates a router that gets separate cost calculators for each thread answering a range query
+     * (see {@link RaptorStaticConfig#getRangeQueryThreads()}).
+     */
+    public SwissRailRaptor(SwissRailRaptorData data,
+                           RaptorParametersForPerson parametersForPerson,
+                           RaptorRouteSelector routeSelector,
+                           RaptorStopFinder stopFinder,
+                           Supplier<RaptorInVehicleCostCalculator> inVehicleCostCalculators,
+                           Supplier<RaptorTransferCostCalculator> transferCostCalculators) {
         this.data = data;
-        this.raptor = new SwissRailRaptorCore(data, inVehicleCostCalculator, transferCostCalculator);
+        this.raptor = new SwissRailRaptorCore(data, inVehicleCostCalculators.get(), transferCostCalculators.get(),
+                () -> new SwissRailRaptorCore(data, inVehicleCostCalculators.get(), transferCostCalculators.get()));
         this.parametersForPerson = parametersForPerson;
         this.defaultRouteSelector = routeSelector;
         this.stopFinder = stopFinder;
@@ -9,7 +9,6 @@ import ch.sbb.matsim.routing.pt.raptor.RaptorInVehicleCostCalculator.RouteSegmen
 import ch.sbb.matsim.routing.pt.raptor.SwissRailRaptorData.CachingTransferProvider;
 import ch.sbb.matsim.routing.pt.raptor.SwissRailRaptorData.RRoute;
 import ch.sbb.matsim.routing.pt.raptor.SwissRailRaptorData.RRouteStop;
-import ch.sbb.matsim.routing.pt.raptor.SwissRailRaptorData.RTransfer;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.TransportMode;
 import org.matsim.api.core.v01.population.Person;
@@ -29,6 +28,13 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * The actual RAPTOR implementation, based on Delling et al, Round-Based Public Transit Routing.
@@ -58,9 +64,38 @@ public class SwissRailRaptorCore {
     private final RouteSegmentIteratorImpl routeSegmentIterator;
 
     private final static int TIME_UNDEFINED = Integer.MIN_VALUE;
+    private final static int MIN_DEPARTURES_PER_RANGE_QUERY_THREAD = 4;
+
+    final static int SKIM_VALUES_PER_STOP = 5;
+    final static int SKIM_DEPARTURE_TIME = 0;
+    final static int SKIM_ARRIVAL_TIME = 1;
+    final static int SKIM_TRANSFER_COUNT = 2;
+    final static int SKIM_IN_VEHICLE_TIME = 3;
+    final static int SKIM_DEPARTURE_STOP = 4;
+    final static int SKIM_UNREACHED = TIME_UNDEFINED;
+
+    private final static int RANGE_QUERY_THREAD_KEEP_ALIVE_SECONDS = 60;
+
+    private final int rangeQueryThreads;
+    private final Supplier<SwissRailRaptorCore> rangeQueryCoreFactory; // creates the cores of the additional range query threads
+    // only created when range queries are run in parallel. The idle threads end after a while, so the executor of a raptor
+    // that is not used anymore can be garbage collected.
+    private SwissRailRaptorCore[] rangeQueryCores = null;
+    private ExecutorService rangeQueryExecutor = null;
 
     SwissRailRaptorCore(SwissRailRaptorData data, RaptorInVehicleCostCalculator inVehicleCostCalculator, RaptorTransferCostCalculator transferCostCalculator) {
+        this(data, inVehicleCostCalculator, transferCostCalculator, null);
+    }
+
+    /**
+     * @param rangeQueryCoreFactory creates the cores used by the additional threads answering a range query, see
+     * {@link RaptorStaticConfig#getRangeQueryThreads()}, or <code>null</code> to answer range queries on the calling thread only
+     */
+    SwissRailRaptorCore(SwissRailRaptorData data, RaptorInVehicleCostCalculator inVehicleCostCalculator, RaptorTransferCostCalculator transferCostCalculator,
+                        Supplier<SwissRailRaptorCore> rangeQueryCoreFactory) {
         this.data = data;
+        this.rangeQueryThreads = rangeQueryCoreFactory == null ? 1 : Math.max(1, data.config.getRangeQueryThreads());
+        this.rangeQueryCoreFactory = rangeQueryCoreFactory;
         this.arrivalPathPerRouteStop = new PathElement[data.countRouteStops];
         this.egressCostsPerRouteStop = new double[data.countRouteStops];
         this.leastArrivalCostAtRouteStop = new double[data.countRouteStops];
@@ -160,7 +195,7 @@ public class SwissRailRaptorCore {
                     double waitingCost = waitingTime * -parameters.getMarginalUtilityOfWaitingPt_utl_s();
 
                     RRouteStop toRouteStop = this.data.routeStops[routeStopIndex];
-                    PathElement pe = new PathElement(null, toRouteStop, TIME_UNDEFINED, nextDepartureTimeAtStop, arrivalTime, arrivalCost, 0, stop.distance, 0, true, null, stop);
+                    PathElement pe = new PathElement(null, toRouteStop, TIME_UNDEFINED, nextDepartureTimeAtStop, arrivalTime, arrivalCost, 0, stop.distance, 0, true, -1, stop);
 
                     /* okay, the following is not very nice...
                      * we want to find the least-cost access leg including the waiting time
@@ -188,7 +223,7 @@ public class SwissRailRaptorCore {
                 } else if (isIntermodalAccess) {
                     // there is no more departure, but we start here by intermodal access, so still register to allow transfers to other (non-)intermodal stops.
                     RRouteStop toRouteStop = this.data.routeStops[routeStopIndex];
-                    PathElement pe = new PathElement(null, toRouteStop, TIME_UNDEFINED, TIME_UNDEFINED, arrivalTime, arrivalCost, 0, stop.distance, 0, true, null, stop);
+                    PathElement pe = new PathElement(null, toRouteStop, TIME_UNDEFINED, TIME_UNDEFINED, arrivalTime, arrivalCost, 0, stop.distance, 0, true, -1, stop);
 
                     /* okay, the following is not very nice...
                      * ... see long comment above, it's the same
@@ -259,18 +294,20 @@ public class SwissRailRaptorCore {
         return raptorRoute;
     }
 
+    /**
+     * Calculates the Pareto-optimal routes (with respect to departure time, arrival time and number of transfers) for
+     * all departures between <code>earliestDepTime</code> and <code>latestDepTime</code>, using range-RAPTOR: the
+     * departures are handled from the latest to the earliest one, re-using the labels of the later departures, so
+     * each departure only needs to explore the stops it can reach at lower cost.
+     *
+     * If more than one range query thread is configured ({@link RaptorStaticConfig#getRangeQueryThreads()}), the
+     * departure window is split into consecutive parts which are handled in parallel, each with its own labels.
+     * Routes found in a part that are dominated by a route of a later part are removed when the routes are filtered,
+     * so splitting the window only loses the pruning by labels across the boundaries of the parts.
+     */
     public List<RaptorRoute> calcRoutes(double earliestDepTime, double desiredDepTime, double latestDepTime, Facility fromFacility, Facility toFacility, List<InitialStop> accessStops, List<InitialStop> egressStops, RaptorParameters parameters, Person person) {
-        List<RaptorRoute> foundRoutes = new ArrayList<>();
-        int maxTransfers = 20; // sensible defaults, could be made configurable if there is a need for it.
-        final int maxTransfersAfterFirstArrival = 2;
-        Map<PathElement, InitialStop> initialStopsPerStartPath = new HashMap<>();
-
-        reset();
-
         double marginalUtilityOfWaitingPt_utl_s = parameters.getMarginalUtilityOfWaitingPt_utl_s();
 
-        PathElement lastFoundBestPath = null;
-
         /* the original algorithm works with time. Starting with the latest departure,
          * it's easy to go backwards in time and potentially improve already visited stops when
          * arriving there earlier. In our case, we operate with cost. The cost of two departures
@@ -330,6 +367,67 @@ public class SwissRailRaptorCore {
                 destinationStops.put(egressStop.stop, egressStop);
             }
         }
+
+        int partsCount = Math.min(this.rangeQueryThreads, departures.size() / MIN_DEPARTURES_PER_RANGE_QUERY_THREAD);
+        List<RaptorRoute> foundRoutes;
+        if (partsCount <= 1) {
+            foundRoutes = calcRoutes(departures, destinationStops, fromFacility, toFacility, parameters, person);
+        } else {
+            foundRoutes = calcRoutesInParallel(partsCount, departures, destinationStops, fromFacility, toFacility, parameters, person);
+        }
+
+        List<RaptorRoute> routes = filterRoutes(foundRoutes);
+        return routes;
+    }
+
+    private List<RaptorRoute> calcRoutesInParallel(int partsCount, List<DepartureAtRouteStop> departures, Map<TransitStopFacility, InitialStop> destinationStops, Facility fromFacility, Facility toFacility, RaptorParameters parameters, Person person) {
+        if (this.rangeQueryCores == null) {
+            int helperCount = this.rangeQueryThreads - 1;
+            this.rangeQueryCores = new SwissRailRaptorCore[helperCount];
+            for (int i = 0; i < helperCount; i++) {
+                this.rangeQueryCores[i] = this.rangeQueryCoreFactory.get();
+            }
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(helperCount, helperCount,
+                    RANGE_QUERY_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "SwissRailRaptor-rangeQuery");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.allowCoreThreadTimeOut(true);
+            this.rangeQueryExecutor = executor;
+        }
+
+        // the departures are sorted from latest to earliest, so every part is again a range of decreasing departures
+        List<Future<List<RaptorRoute>>> futures = new ArrayList<>(partsCount - 1);
+        for (int part = 1; part < partsCount; part++) {
+            List<DepartureAtRouteStop> partDepartures = departures.subList(part * departures.size() / partsCount, (part + 1) * departures.size() / partsCount);
+            SwissRailRaptorCore core = this.rangeQueryCores[part - 1];
+            futures.add(this.rangeQueryExecutor.submit(() -> core.calcRoutes(partDepartures, destinationStops, fromFacility, toFacility, parameters, person)));
+        }
+        List<RaptorRoute> foundRoutes = calcRoutes(departures.subList(0, departures.size() / partsCount), destinationStops, fromFacility, toFacility, parameters, person);
+        for (Future<List<RaptorRoute>> future : futures) {
+            try {
+                foundRoutes.addAll(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+        return foundRoutes;
+    }
+
+    private List<RaptorRoute> calcRoutes(List<DepartureAtRouteStop> departures, Map<TransitStopFacility, InitialStop> destinationStops, Facility fromFacility, Facility toFacility, RaptorParameters parameters, Person person) {
+        List<RaptorRoute> foundRoutes = new ArrayList<>();
+        int maxTransfers = 20; // sensible defaults, could be made configurable if there is a need for it.
+        final int maxTransfersAfterFirstArrival = 2;
+        Map<PathElement, InitialStop> initialStopsPerStartPath = new HashMap<>();
+
+        reset();
+
+        PathElement lastFoundBestPath = null;
+
         for (InitialStop egressStop : destinationStops.values()) {
             int[] routeStopIndices = this.data.routeStopsPerStopFacility.get(egressStop.stop);
             if (routeStopIndices != null) {
@@ -349,7 +447,7 @@ public class SwissRailRaptorCore {
                 double arrivalCost = depAtRouteStop.accessStop.accessCost + depAtRouteStop.costOffset;
                 RRouteStop toRouteStop = depAtRouteStop.routeStop;
                 int routeStopIndex = depAtRouteStop.routeStopIndex;
-                PathElement pe = new PathElement(null, toRouteStop, depAtRouteStop.depTime, depAtRouteStop.depTime, arrivalTime, arrivalCost, 0, depAtRouteStop.accessStop.distance, 0, true, null, depAtRouteStop.accessStop);
+                PathElement pe = new PathElement(null, toRouteStop, depAtRouteStop.depTime, depAtRouteStop.depTime, arrivalTime, arrivalCost, 0, depAtRouteStop.accessStop.distance, 0, true, -1, depAtRouteStop.accessStop);
                 this.arrivalPathPerRouteStop[routeStopIndex] = pe;
                 this.leastArrivalCostAtRouteStop[routeStopIndex] = arrivalCost;
                 this.arrivalPathPerStop[toRouteStop.stopFacilityIndex] = pe;
@@ -399,8 +497,7 @@ public class SwissRailRaptorCore {
             }
         }
 
-        List<RaptorRoute> routes = filterRoutes(foundRoutes);
-        return routes;
+        return foundRoutes;
     }
 
     private double calculateOptimalDepartureTime(PathElement leastCostPath, Map<PathElement, InitialStop> initialStopsPerStartPath) {
@@ -470,6 +567,73 @@ public class SwissRailRaptorCore {
     }
 
     public Map<Id<TransitStopFacility>, TravelInfo> calcLeastCostTree(double depTime, Collection<InitialStop> startStops, RaptorParameters parameters, Person person) {
+        calcLeastCostTreeInternal(depTime, startStops, parameters, person);
+
+        // collect information for each stop
+        Map<Id<TransitStopFacility>, TravelInfo> result = new HashMap<>();
+        for (Map.Entry<TransitStopFacility, Integer> e : this.data.stopFacilityIndices.entrySet()) {
+            TransitStopFacility stop = e.getKey();
+            int index = e.getValue();
+            PathElement destination = this.arrivalPathPerStop[index];
+            if (destination != null) {
+                TravelInfo ti = getTravelInfo(destination, parameters);
+                result.put(stop.getId(), ti);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Calculates the same tree as {@link #calcLeastCostTree(double, Collection, RaptorParameters, Person)}, but only
+     * stores the values required for skim matrices in the given array, without creating any objects per stop. For
+     * every stop facility index, the array contains {@link #SKIM_VALUES_PER_STOP} values, the departure time at the
+     * first stop, the arrival time at the stop, the number of transfers, the in-vehicle time and the index of the first
+     * stop, at the offsets given by the <code>SKIM_*</code> constants. Stops that cannot be reached with at least one
+     * pt leg have a departure time of {@link #SKIM_UNREACHED}.
+     */
+    void calcSkimTree(double depTime, Collection<InitialStop> startStops, RaptorParameters parameters, Person person, int[] skimTree) {
+        calcLeastCostTreeInternal(depTime, startStops, parameters, person);
+
+        for (int stopIndex = 0; stopIndex < this.data.countStops; stopIndex++) {
+            int offset = stopIndex * SKIM_VALUES_PER_STOP;
+            skimTree[offset + SKIM_DEPARTURE_TIME] = SKIM_UNREACHED;
+            PathElement destination = this.arrivalPathPerStop[stopIndex];
+            if (destination == null) {
+                continue;
+            }
+            int inVehicleTime = 0;
+            boolean hasPtLeg = false;
+            PathElement firstStage = destination;
+            PathElement secondStage = null;
+            for (PathElement pe = destination; pe != null; pe = pe.comingFrom) {
+                if (!pe.isTransfer) {
+                    hasPtLeg = true;
+                    inVehicleTime += pe.arrivalTime - pe.boardingTime;
+                }
+                if (pe.comingFrom != null) {
+                    secondStage = pe;
+                }
+                firstStage = pe;
+            }
+            if (!hasPtLeg) {
+                continue;
+            }
+            int transferCount = destination.transferCount;
+            if (destination.isTransfer && transferCount > 0) {
+                transferCount--; // see getTravelInfo()
+            }
+            if (secondStage != null && secondStage.isTransfer && transferCount > 0) {
+                transferCount--;
+            }
+            skimTree[offset + SKIM_DEPARTURE_TIME] = destination.firstDepartureTime;
+            skimTree[offset + SKIM_ARRIVAL_TIME] = destination.arrivalTime;
+            skimTree[offset + SKIM_TRANSFER_COUNT] = transferCount;
+            skimTree[offset + SKIM_IN_VEHICLE_TIME] = inVehicleTime;
+            skimTree[offset + SKIM_DEPARTURE_STOP] = firstStage.toRouteStop.stopFacilityIndex;
+        }
+    }
+
+    private void calcLeastCostTreeInternal(double depTime, Collection<InitialStop> startStops, RaptorParameters parameters, Person person) {
         reset();
 
         BitSet initialRouteStopIndices = new BitSet();
@@ -480,7 +644,7 @@ public class SwissRailRaptorCore {
                 int arrivalTime = (int) (depTime + stop.accessTime);
                 double arrivalCost = stop.accessCost;
                 RRouteStop toRouteStop = this.data.routeStops[routeStopIndex];
-                PathElement pe = new PathElement(null, toRouteStop, TIME_UNDEFINED, TIME_UNDEFINED, arrivalTime, arrivalCost, 0, stop.distance, 0, true, null, stop);
+                PathElement pe = new PathElement(null, toRouteStop, TIME_UNDEFINED, TIME_UNDEFINED, arrivalTime, arrivalCost, 0, stop.distance, 0, true, -1, stop);
                 this.arrivalPathPerRouteStop[routeStopIndex] = pe;
                 this.arrivalPathPerStop[toRouteStop.stopFacilityIndex] = pe;
                 this.leastArrivalCostAtRouteStop[routeStopIndex] = arrivalCost;
@@ -519,19 +683,6 @@ public class SwissRailRaptorCore {
                 break;
             }
         }
-
-        // collect information for each stop
-        Map<Id<TransitStopFacility>, TravelInfo> result = new HashMap<>();
-        for (Map.Entry<TransitStopFacility, Integer> e : this.data.stopFacilityIndices.entrySet()) {
-            TransitStopFacility stop = e.getKey();
-            int index = e.getValue();
-            PathElement destination = this.arrivalPathPerStop[index];
-            if (destination != null) {
-                TravelInfo ti = getTravelInfo(destination, parameters);
-                result.put(stop.getId(), ti);
-            }
-        }
-        return result;
     }
 
     private TravelInfo getTravelInfo(PathElement destination, RaptorParameters parameters) {
@@ -612,7 +763,7 @@ public class SwissRailRaptorCore {
                 int firstDepartureTime = (boardingPE.firstDepartureTime == TIME_UNDEFINED) ? currentAgentBoardingTime : boardingPE.firstDepartureTime;
 
                 double marginalUtilityOfTravelTime_utl_s = parameters.getMarginalUtilityOfTravelTime_utl_s(boardingPE.toRouteStop.mode);
-                transferProvider.reset(boardingPE.transfer);
+                transferProvider.reset(boardingPE.transferIndex);
 
                 for (int toRouteStopIndex = firstRouteStopIndex + 1; toRouteStopIndex < route.indexFirstRouteStop + route.countRouteStops; toRouteStopIndex++) {
                     routeSegmentIterator.reset(currentDepartureIndex, currentAgentBoardingTime, currentBoardingRouteStopIndex, toRouteStopIndex);
@@ -626,7 +777,7 @@ public class SwissRailRaptorCore {
                     double totalArrivalCost = arrivalTravelCost + arrivalTransferCost;
                     if (totalArrivalCost <= previousArrivalCost) {
                         double distance = toRouteStop.distanceAlongRoute - boardingPE.toRouteStop.distanceAlongRoute;
-                        PathElement pe = new PathElement(boardingPE, toRouteStop, firstDepartureTime, currentAgentBoardingTime, arrivalTime, arrivalTravelCost, arrivalTransferCost, distance, boardingPE.transferCount, false, null, null);
+                        PathElement pe = new PathElement(boardingPE, toRouteStop, firstDepartureTime, currentAgentBoardingTime, arrivalTime, arrivalTravelCost, arrivalTransferCost, distance, boardingPE.transferCount, false, -1, null);
                         this.arrivalPathPerRouteStop[toRouteStopIndex] = pe;
                         this.leastArrivalCostAtRouteStop[toRouteStopIndex] = totalArrivalCost;
                         if (totalArrivalCost <= this.leastArrivalCostAtStop[toRouteStop.stopFacilityIndex]) {
@@ -737,17 +888,17 @@ public class SwissRailRaptorCore {
             int firstTransferIndex = fromRouteStop.indexFirstTransfer;
             int lastTransferIndex = firstTransferIndex + fromRouteStop.countTransfers;
             for (int transferIndex = firstTransferIndex; transferIndex < lastTransferIndex; transferIndex++) {
-                RTransfer transfer = this.data.transfers[transferIndex];
-                int toRouteStopIndex = transfer.toRouteStop;
-                transferProvider.reset(transfer);
-                int newArrivalTime = arrivalTime + transfer.transferTime;
-                double newArrivalTravelCost = arrivalTravelCost - transfer.transferTime * margUtilityTransitWalk;
+                int toRouteStopIndex = this.data.getTransferToRouteStop(transferIndex);
+                int transferTime = this.data.getTransferTime(transferIndex);
+                transferProvider.reset(transferIndex);
+                int newArrivalTime = arrivalTime + transferTime;
+                double newArrivalTravelCost = arrivalTravelCost - transferTime * margUtilityTransitWalk;
                 double newArrivalTransferCost = (fromPE.firstDepartureTime != TIME_UNDEFINED) ? (arrivalTransferCost + this.transferCostCalculator.calcTransferCost(transferProvider, raptorParams, newArrivalTime - fromPE.firstDepartureTime, fromPE.transferCount + 1, arrivalTransferCost, arrivalTime)) : 0;
                 double newTotalArrivalCost = newArrivalTravelCost + newArrivalTransferCost;
                 double prevLeastArrivalCost = this.leastArrivalCostAtRouteStop[toRouteStopIndex];
                 if (newTotalArrivalCost < prevLeastArrivalCost || (!strict && newTotalArrivalCost <= prevLeastArrivalCost)) {
                     RRouteStop toRouteStop = this.data.routeStops[toRouteStopIndex];
-                    PathElement pe = new PathElement(fromPE, toRouteStop, fromPE.firstDepartureTime, TIME_UNDEFINED, newArrivalTime, newArrivalTravelCost, newArrivalTransferCost, transfer.transferDistance, fromPE.transferCount + 1, true, transfer, null);
+                    PathElement pe = new PathElement(fromPE, toRouteStop, fromPE.firstDepartureTime, TIME_UNDEFINED, newArrivalTime, newArrivalTravelCost, newArrivalTransferCost, this.data.getTransferDistance(transferIndex), fromPE.transferCount + 1, true, transferIndex, null);
                     this.arrivalPathPerRouteStop[toRouteStopIndex] = pe;
                     this.leastArrivalCostAtRouteStop[toRouteStopIndex] = newTotalArrivalCost;
                     this.improvedRouteStopIndices.set(toRouteStopIndex);
@@ -784,7 +935,7 @@ public class SwissRailRaptorCore {
                 double totalCost = arrivalTravelCost + pe.arrivalTransferCost;
                 if ((totalCost < leastCost) || (totalCost == leastCost && pe.transferCount < leastCostPath.transferCount)) {
                     leastCost = totalCost;
-                    leastCostPath = new PathElement(pe, null, pe.firstDepartureTime, TIME_UNDEFINED, arrivalTime, arrivalTravelCost, pe.arrivalTransferCost, egressStop.distance, pe.transferCount, true, null, egressStop); // this is the egress leg
+                    leastCostPath = new PathElement(pe, null, pe.firstDepartureTime, TIME_UNDEFINED, arrivalTime, arrivalTravelCost, pe.arrivalTransferCost, egressStop.distance, pe.transferCount, true, -1, egressStop); // this is the egress leg
                 }
             }
         }
@@ -866,10 +1017,10 @@ public class SwissRailRaptorCore {
         final double distance;
         final int transferCount;
         final boolean isTransfer;
-        final RTransfer transfer;
+        final int transferIndex; // -1 if this is not a transfer between route stops
         final InitialStop initialStop;
 
-        PathElement(PathElement comingFrom, RRouteStop toRouteStop, int firstDepartureTime, int boardingTime, int arrivalTime, double arrivalTravelCost, double arrivalTransferCost, double distance, int transferCount, boolean isTransfer, RTransfer transfer, InitialStop initialStop) {
+        PathElement(PathElement comingFrom, RRouteStop toRouteStop, int firstDepartureTime, int boardingTime, int arrivalTime, double arrivalTravelCost, double arrivalTransferCost, double distance, int transferCount, boolean isTransfer, int transferIndex, InitialStop initialStop) {
             this.comingFrom = comingFrom;
             this.toRouteStop = toRouteStop;
             this.firstDepartureTime = firstDepartureTime;
@@ -880,7 +1031,7 @@ public class SwissRailRaptorCore {
             this.distance = distance;
             this.transferCount = transferCount;
             this.isTransfer = isTransfer;
-            this.transfer = transfer;
+            this.transferIndex = transferIndex;
             this.initialStop = initialStop;
         }
     }
@@ -26,25 +26,54 @@ import org.matsim.vehicles.Vehicle;
 import org.matsim.vehicles.Vehicles;
 
 import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.function.Supplier;
 
 /**
+ * The transfers between route stops are stored in a compact, primitive-only layout (see {@link #TRANSFER_SIZE}). If a
+ * transfers cache directory is configured ({@link RaptorStaticConfig#getTransfersCacheDirectory()}), the transfers are
+ * written to a file named after a hash of the schedule and the transfer settings, and later runs memory-map this
+ * file read-only instead of calculating the transfers again. Multiple JVMs on the same host then share the same pages.
+ *
  * @author mrieser / SBB
  */
 public class SwissRailRaptorData {
 
     private static final Logger log = LogManager.getLogger(SwissRailRaptorData.class);
 
+    /** number of ints per transfer: from route stop, to route stop, transfer time, transfer distance */
+    static final int TRANSFER_SIZE = 4;
+    private static final int TRANSFERS_FILE_MAGIC = 0x52415054; // "RAPT"
+    private static final int TRANSFERS_FILE_VERSION = 1;
+
     final RaptorStaticConfig config;
     final int countStops;
     final int countRouteStops;
@@ -53,18 +82,20 @@ public class SwissRailRaptorData {
     final Vehicle[] departureVehicles; // the vehicle used for each departure
     final Id<Departure>[] departureIds;
     final RRouteStop[] routeStops; // list of all route stops
-    final RTransfer[] transfers;
+    final IntBuffer transfers; // TRANSFER_SIZE values per transfer, possibly memory-mapped
+    final int countTransfers;
     final Map<TransitStopFacility, Integer> stopFacilityIndices;
     final Map<TransitStopFacility, int[]> routeStopsPerStopFacility;
     final QuadTree<TransitStopFacility> stopsQT;
     final Map<String, Map<String, QuadTree<TransitStopFacility>>> stopFilterAttribute2Value2StopsQT;
     final OccupancyData occupancyData;
+    private final Map<Id<TransitStopFacility>, Map<Id<TransitStopFacility>, Double>> minimalTransferTimes; // the minimal transfer times the transfers were calculated with
 
     private SwissRailRaptorData(RaptorStaticConfig config, int countStops,
                                 RRoute[] routes, int[] departures, Vehicle[] departureVehicles, Id<Departure>[] departureIds, RRouteStop[] routeStops,
-                                RTransfer[] transfers, Map<TransitStopFacility, Integer> stopFacilityIndices,
+                                IntBuffer transfers, Map<TransitStopFacility, Integer> stopFacilityIndices,
                                 Map<TransitStopFacility, int[]> routeStopsPerStopFacility, QuadTree<TransitStopFacility> stopsQT,
-                                OccupancyData occupancyData) {
+                                OccupancyData occupancyData, Map<Id<TransitStopFacility>, Map<Id<TransitStopFacility>, Double>> minimalTransferTimes) {
         this.config = config;
         this.countStops = countStops;
         this.countRouteStops = routeStops.length;
@@ -74,17 +105,90 @@ public class SwissRailRaptorData {
         this.departureIds = departureIds;
         this.routeStops = routeStops;
         this.transfers = transfers;
+        this.countTransfers = transfers.limit() / TRANSFER_SIZE;
         this.stopFacilityIndices = stopFacilityIndices;
         this.routeStopsPerStopFacility = routeStopsPerStopFacility;
         this.stopsQT = stopsQT;
         this.stopFilterAttribute2Value2StopsQT = new HashMap<>();
         this.occupancyData = occupancyData;
+        this.minimalTransferTimes = minimalTransferTimes;
     }
 
     public static SwissRailRaptorData create(TransitSchedule schedule, @Nullable Vehicles transitVehicles, RaptorStaticConfig staticConfig, Network network, OccupancyData occupancyData) {
         log.info("Preparing data for SwissRailRaptor...");
         long startMillis = System.currentTimeMillis();
 
+        RouteData routeData = buildRouteData(schedule, transitVehicles, staticConfig, network);
+        RRoute[] routes = routeData.routes;
+        int[] departures = routeData.departures;
+        RRouteStop[] routeStops = routeData.routeStops;
+        Map<TransitStopFacility, int[]> routeStopsPerStopFacility = routeData.routeStopsPerStopFacility;
+        QuadTree<TransitStopFacility> stopsQT = routeData.stopsQT;
+        int countStopFacilities = routeStopsPerStopFacility.size();
+
+        IntBuffer transfers = null;
+        File transfersFile = null;
+        if (staticConfig.getTransfersCacheDirectory() != null) {
+            String hash = calcTransfersHash(schedule, routes, departures, routeStops, staticConfig);
+            transfersFile = new File(staticConfig.getTransfersCacheDirectory(), "raptorTransfers-" + hash + ".bin");
+            if (transfersFile.exists()) {
+                transfers = mapTransfers(transfersFile, routeStops);
+            }
+        }
+        if (transfers == null) {
+            int[] transfersData = calculateTransfers(schedule, stopsQT, routeStopsPerStopFacility, routeStops, staticConfig, null);
+            transfers = IntBuffer.wrap(transfersData);
+            if (transfersFile != null && writeTransfers(transfersFile, routeStops, transfersData)) {
+                IntBuffer mappedTransfers = mapTransfers(transfersFile, routeStops);
+                if (mappedTransfers != null) {
+                    transfers = mappedTransfers;
+                }
+            }
+        }
+
+        SwissRailRaptorData data = new SwissRailRaptorData(staticConfig, countStopFacilities, routes, departures, routeData.departureVehicles, routeData.departureIds, routeStops,
+                transfers, routeData.stopFacilityIndices, routeStopsPerStopFacility, stopsQT, occupancyData, getMinimalTransferTimes(schedule));
+
+        long endMillis = System.currentTimeMillis();
+        log.info("SwissRailRaptor data preparation done. Took " + (endMillis - startMillis) / 1000 + " seconds.");
+        log.info("SwissRailRaptor statistics:  #routes = " + routes.length);
+        log.info("SwissRailRaptor statistics:  #departures = " + departures.length);
+        log.info("SwissRailRaptor statistics:  #routeStops = " + routeStops.length);
+        log.info("SwissRailRaptor statistics:  #stopFacilities = " + countStopFacilities);
+        log.info("SwissRailRaptor statistics:  #transfers (between routeStops) = " + data.countTransfers);
+        return data;
+    }
+
+    /**
+     * Creates the data for a modified schedule, e.g. after transit routes were added or removed or departures changed
+     * during a run. Transfers between routes that did not change, i.e. that still serve the same stop facilities at the
+     * same coordinates with the same offsets and departures, are taken over from the previous data instead of being checked again. Only
+     * transfers from or to changed routes, or from stops whose minimal transfer times changed, are calculated anew.
+     * The transfers cache directory is not used for updated data.
+     *
+     * @param previous the data prepared for the schedule before it was modified, it is not changed and can still be used by running routers
+     */
+    public static SwissRailRaptorData update(SwissRailRaptorData previous, TransitSchedule schedule, @Nullable Vehicles transitVehicles, Network network) {
+        log.info("Updating data for SwissRailRaptor...");
+        long startMillis = System.currentTimeMillis();
+        RaptorStaticConfig staticConfig = previous.config;
+
+        RouteData routeData = buildRouteData(schedule, transitVehicles, staticConfig, network);
+        Map<Id<TransitStopFacility>, Map<Id<TransitStopFacility>, Double>> minimalTransferTimes = getMinimalTransferTimes(schedule);
+        PreviousTransfers previousTransfers = new PreviousTransfers(previous, routeData, minimalTransferTimes);
+
+        int[] transfersData = calculateTransfers(schedule, routeData.stopsQT, routeData.routeStopsPerStopFacility, routeData.routeStops, staticConfig, previousTransfers);
+        SwissRailRaptorData data = new SwissRailRaptorData(staticConfig, routeData.routeStopsPerStopFacility.size(), routeData.routes, routeData.departures,
+                routeData.departureVehicles, routeData.departureIds, routeData.routeStops, IntBuffer.wrap(transfersData), routeData.stopFacilityIndices,
+                routeData.routeStopsPerStopFacility, routeData.stopsQT, previous.occupancyData, minimalTransferTimes);
+
+        long endMillis = System.currentTimeMillis();
+        log.info("SwissRailRaptor data update done. Took " + (endMillis - startMillis) + " ms. " + previousTransfers.unchangedRoutes + " of " + routeData.routes.length
+                + " routes were unchanged, " + data.countTransfers + " transfers.");
+        return data;
+    }
+
+    private static RouteData buildRouteData(TransitSchedule schedule, @Nullable Vehicles transitVehicles, RaptorStaticConfig staticConfig, Network network) {
         Map<Id<Vehicle>, Vehicle> vehicles = transitVehicles == null ? Collections.emptyMap() : transitVehicles.getVehicles();
         int countRoutes = 0;
         long countRouteStops = 0;
@@ -182,17 +286,24 @@ public class SwissRailRaptorData {
         // only put used transit stops into the quad tree
         Set<TransitStopFacility> stops = routeStopsPerStopFacility.keySet();
         QuadTree<TransitStopFacility> stopsQT = TransitScheduleUtils.createQuadTreeOfTransitStopFacilities(stops);
-        int countStopFacilities = stops.size();
 
-        Map<Integer, RTransfer[]> allTransfers = calculateRouteStopTransfers(schedule, stopsQT, routeStopsPerStopFacility, routeStops, staticConfig);
+        return new RouteData(routes, departures, departureVehicles, departureIds, routeStops, stopFacilityIndices, routeStopsPerStopFacility, stopsQT);
+    }
+
+    private static int[] calculateTransfers(TransitSchedule schedule, QuadTree<TransitStopFacility> stopsQT, Map<TransitStopFacility, int[]> routeStopsPerStopFacility, RRouteStop[] routeStops, RaptorStaticConfig staticConfig, @Nullable PreviousTransfers previousTransfers) {
+        Map<Integer, RTransfer[]> allTransfers = calculateRouteStopTransfers(schedule, stopsQT, routeStopsPerStopFacility, routeStops, staticConfig, previousTransfers);
+        return flattenTransfers(allTransfers, routeStops);
+    }
+
+    private static int[] flattenTransfers(Map<Integer, RTransfer[]> allTransfers, RRouteStop[] routeStops) {
         long countTransfers = 0;
         for (RTransfer[] transfers : allTransfers.values()) {
             countTransfers += transfers.length;
         }
-        if (countTransfers > Integer.MAX_VALUE) {
+        if (countTransfers * TRANSFER_SIZE > Integer.MAX_VALUE) {
             throw new RuntimeException("TransitSchedule has too many Transfers: " + countTransfers);
         }
-        RTransfer[] transfers = new RTransfer[(int) countTransfers];
+        int[] transfers = new int[(int) countTransfers * TRANSFER_SIZE];
         int indexTransfer = 0;
         for (int routeStopIndex = 0; routeStopIndex < routeStops.length; routeStopIndex++) {
             RTransfer[] stopTransfers = allTransfers.get(routeStopIndex);
@@ -201,53 +312,137 @@ public class SwissRailRaptorData {
                 RRouteStop routeStop = routeStops[routeStopIndex];
                 routeStop.indexFirstTransfer = indexTransfer;
                 routeStop.countTransfers = transferCount;
-                System.arraycopy(stopTransfers, 0, transfers, indexTransfer, transferCount);
-                indexTransfer += transferCount;
+                for (RTransfer transfer : stopTransfers) {
+                    int offset = indexTransfer * TRANSFER_SIZE;
+                    transfers[offset] = transfer.fromRouteStop;
+                    transfers[offset + 1] = transfer.toRouteStop;
+                    transfers[offset + 2] = transfer.transferTime;
+                    transfers[offset + 3] = transfer.transferDistance;
+                    indexTransfer++;
+                }
             }
         }
+        return transfers;
+    }
 
-        SwissRailRaptorData data = new SwissRailRaptorData(staticConfig, countStopFacilities, routes, departures, departureVehicles, departureIds, routeStops, transfers, stopFacilityIndices, routeStopsPerStopFacility, stopsQT, occupancyData);
+    /**
+     * Calculates a hash of everything the transfers depend on: the route stops with their stop facilities and offsets, the departures,
+     * the minimal transfer times and the transfer settings of the static config.
+     */
+    private static String calcTransfersHash(TransitSchedule schedule, RRoute[] routes, int[] departures, RRouteStop[] routeStops, RaptorStaticConfig staticConfig) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            DataOutputStream out = new DataOutputStream(new DigestOutputStream(OutputStream.nullOutputStream(), digest));
+            out.writeDouble(staticConfig.getBeelineWalkConnectionDistance());
+            out.writeDouble(staticConfig.getBeelineWalkSpeed());
+            out.writeDouble(staticConfig.getBeelineWalkDistanceFactor());
+            out.writeDouble(staticConfig.getMinimalTransferTime());
+            out.writeUTF(staticConfig.getOptimization().name());
+            out.writeInt(routes.length);
+            for (RRoute route : routes) {
+                out.writeInt(route.countRouteStops);
+                out.writeInt(route.countDepartures);
+                for (int i = route.indexFirstDeparture; i < route.indexFirstDeparture + route.countDepartures; i++) {
+                    out.writeInt(departures[i]);
+                }
+            }
+            for (RRouteStop routeStop : routeStops) {
+                TransitStopFacility stop = routeStop.routeStop.getStopFacility();
+                out.writeUTF(routeStop.line.getId().toString());
+                out.writeUTF(routeStop.route.getId().toString());
+                out.writeUTF(stop.getId().toString());
+                out.writeDouble(stop.getCoord().getX());
+                out.writeDouble(stop.getCoord().getY());
+                out.writeInt(routeStop.arrivalOffset);
+                out.writeInt(routeStop.departureOffset);
+            }
+            MinimalTransferTimes.MinimalTransferTimesIterator iter = schedule.getMinimalTransferTimes().iterator();
+            while (iter.hasNext()) {
+                iter.next();
+                out.writeUTF(iter.getFromStopId().toString());
+                out.writeUTF(iter.getToStopId().toString());
+                out.writeDouble(iter.getSeconds());
+            }
+            out.flush();
+            StringBuilder hash = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hash.append(String.format("%02x", b));
+            }
+            return hash.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
 
-        long endMillis = System.currentTimeMillis();
-        log.info("SwissRailRaptor data preparation done. Took " + (endMillis - startMillis) / 1000 + " seconds.");
-        log.info("SwissRailRaptor statistics:  #routes = " + routes.length);
-        log.info("SwissRailRaptor statistics:  #departures = " + departures.length);
-        log.info("SwissRailRaptor statistics:  #routeStops = " + routeStops.length);
-        log.info("SwissRailRaptor statistics:  #stopFacilities = " + countStopFacilities);
-        log.info("SwissRailRaptor statistics:  #transfers (between routeStops) = " + transfers.length);
-        return data;
+    private static boolean writeTransfers(File file, RRouteStop[] routeStops, int[] transfers) {
+        log.info("SwissRailRaptor: writing transfers to " + file);
+        File tmpFile = null;
+        try {
+            Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+            // write to a temporary file first, so parallel runs never see an incomplete file
+            tmpFile = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 1 << 16))) {
+                out.writeInt(TRANSFERS_FILE_MAGIC);
+                out.writeInt(TRANSFERS_FILE_VERSION);
+                out.writeInt(routeStops.length);
+                out.writeInt(transfers.length / TRANSFER_SIZE);
+                for (RRouteStop routeStop : routeStops) {
+                    out.writeInt(routeStop.indexFirstTransfer);
+                    out.writeInt(routeStop.countTransfers);
+                }
+                for (int value : transfers) {
+                    out.writeInt(value);
+                }
+            }
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            log.warn("SwissRailRaptor: could not write transfers to " + file, e);
+            if (tmpFile != null) {
+                tmpFile.delete();
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Memory-maps the transfers stored in the given file and sets the transfer indices of the route stops.
+     * @return the transfers, or <code>null</code> if the file could not be used
+     */
+    private static IntBuffer mapTransfers(File file, RRouteStop[] routeStops) {
+        log.info("SwissRailRaptor: mapping transfers from " + file);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                log.warn("SwissRailRaptor: transfers file " + file + " is too large to be mapped, transfers will be calculated.");
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            IntBuffer header = buffer.asIntBuffer();
+            int headerSize = 4 + 2 * routeStops.length;
+            if (header.limit() < 4 || header.get(0) != TRANSFERS_FILE_MAGIC || header.get(1) != TRANSFERS_FILE_VERSION || header.get(2) != routeStops.length
+                    || header.limit() != headerSize + (long) header.get(3) * TRANSFER_SIZE) {
+                log.warn("SwissRailRaptor: unsupported or incomplete transfers file " + file + ", transfers will be calculated.");
+                return null;
+            }
+            for (int i = 0; i < routeStops.length; i++) {
+                routeStops[i].indexFirstTransfer = header.get(4 + 2 * i);
+                routeStops[i].countTransfers = header.get(4 + 2 * i + 1);
+            }
+            ByteBuffer transfers = buffer.position(headerSize * Integer.BYTES).slice();
+            return transfers.asIntBuffer();
+        } catch (IOException e) {
+            log.warn("SwissRailRaptor: could not map transfers from " + file + ", transfers will be calculated.", e);
+            return null;
+        }
     }
 
     // calculate possible transfers between TransitRouteStops
-    private static Map<Integer, RTransfer[]> calculateRouteStopTransfers(TransitSchedule schedule, QuadTree<TransitStopFacility> stopsQT, Map<TransitStopFacility, int[]> routeStopsPerStopFacility, RRouteStop[] routeStops, RaptorStaticConfig config) {
+    private static Map<Integer, RTransfer[]> calculateRouteStopTransfers(TransitSchedule schedule, QuadTree<TransitStopFacility> stopsQT, Map<TransitStopFacility, int[]> routeStopsPerStopFacility, RRouteStop[] routeStops, RaptorStaticConfig config, @Nullable PreviousTransfers previousTransfers) {
         Map<Integer, RTransfer[]> transfers = new HashMap<>(stopsQT.size() * 5);
         double maxBeelineWalkConnectionDistance = config.getBeelineWalkConnectionDistance();
-        double beelineWalkSpeed = config.getBeelineWalkSpeed();
         double beelineDistanceFactor = config.getBeelineWalkDistanceFactor();
-        double minimalTransferTime = config.getMinimalTransferTime();
-
-        Map<TransitStopFacility, List<TransitStopFacility>> stopToStopsTransfers = new HashMap<>();
-
-        // first, add transfers based on distance
-        for (TransitStopFacility fromStop : routeStopsPerStopFacility.keySet()) {
-            Coord fromCoord = fromStop.getCoord();
-            Collection<TransitStopFacility> nearbyStops = stopsQT.getDisk(fromCoord.getX(), fromCoord.getY(), maxBeelineWalkConnectionDistance);
-            stopToStopsTransfers.computeIfAbsent(fromStop, stop -> new ArrayList<>(5)).addAll(nearbyStops);
-        }
 
-        // take the transfers from the schedule into account
-        MinimalTransferTimes.MinimalTransferTimesIterator iter = schedule.getMinimalTransferTimes().iterator();
-        while (iter.hasNext()) {
-            iter.next();
-            Id<TransitStopFacility> fromStopId = iter.getFromStopId();
-            TransitStopFacility fromStop = schedule.getFacilities().get(fromStopId);
-            Id<TransitStopFacility> toStopId = iter.getToStopId();
-            TransitStopFacility toStop = schedule.getFacilities().get(toStopId);
-            List<TransitStopFacility> destinationStops = stopToStopsTransfers.computeIfAbsent(fromStop, stop -> new ArrayList<>(5));
-            if (!destinationStops.contains(toStop)) {
-                destinationStops.add(toStop);
-            }
-        }
+        Map<TransitStopFacility, List<TransitStopFacility>> stopToStopsTransfers = calculateStopToStopsTransfers(schedule, stopsQT, routeStopsPerStopFacility, config);
 
         // now calculate the transfers between the route stops
         MinimalTransferTimes mtt = schedule.getMinimalTransferTimes();
@@ -260,21 +455,17 @@ public class SwissRailRaptorData {
             for (TransitStopFacility toStop : nearbyStops) {
                 int[] toRouteStopIndices = routeStopsPerStopFacility.get(toStop);
                 double beelineDistance = CoordUtils.calcEuclideanDistance(fromCoord, toStop.getCoord());
-                double transferTime = beelineDistance / beelineWalkSpeed;
-                if (transferTime < minimalTransferTime) {
-                    transferTime = minimalTransferTime;
-                }
-
-                transferTime = mtt.get(fromStop.getId(), toStop.getId(), transferTime);
-
-                final double fixedTransferTime = transferTime; // variables must be effective final to be used in lambdas (below)
+                final double fixedTransferTime = calculateTransferTime(fromStop, toStop, beelineDistance, mtt, config); // variables must be effective final to be used in lambdas (below)
 
                 for (int fromRouteStopIndex : fromRouteStopIndices) {
                     RRouteStop fromRouteStop = routeStops[fromRouteStopIndex];
                     stopTransfers.clear();
                     for (int toRouteStopIndex : toRouteStopIndices) {
                         RRouteStop toRouteStop = routeStops[toRouteStopIndex];
-                        if (isUsefulTransfer(fromRouteStop, toRouteStop, maxBeelineWalkConnectionDistance, config.getOptimization())) {
+                        boolean isUseful = previousTransfers != null && previousTransfers.isKnown(fromRouteStop, toRouteStop)
+                                ? previousTransfers.hadTransfer(fromRouteStop, toRouteStop)
+                                : isUsefulTransfer(fromRouteStop, toRouteStop, maxBeelineWalkConnectionDistance, config.getOptimization());
+                        if (isUseful) {
                             RTransfer newTransfer = new RTransfer(fromRouteStopIndex, toRouteStopIndex, fixedTransferTime, beelineDistance * beelineDistanceFactor);
                             stopTransfers.add(newTransfer);
                         }
@@ -295,6 +486,42 @@ public class SwissRailRaptorData {
         return transfers;
     }
 
+    // find the stop facilities between which transfers are possible
+    private static Map<TransitStopFacility, List<TransitStopFacility>> calculateStopToStopsTransfers(TransitSchedule schedule, QuadTree<TransitStopFacility> stopsQT, Map<TransitStopFacility, int[]> routeStopsPerStopFacility, RaptorStaticConfig config) {
+        double maxBeelineWalkConnectionDistance = config.getBeelineWalkConnectionDistance();
+        Map<TransitStopFacility, List<TransitStopFacility>> stopToStopsTransfers = new HashMap<>();
+
+        // first, add transfers based on distance
+        for (TransitStopFacility fromStop : routeStopsPerStopFacility.keySet()) {
+            Coord fromCoord = fromStop.getCoord();
+            Collection<TransitStopFacility> nearbyStops = stopsQT.getDisk(fromCoord.getX(), fromCoord.getY(), maxBeelineWalkConnectionDistance);
+            stopToStopsTransfers.computeIfAbsent(fromStop, stop -> new ArrayList<>(5)).addAll(nearbyStops);
+        }
+
+        // take the transfers from the schedule into account
+        MinimalTransferTimes.MinimalTransferTimesIterator iter = schedule.getMinimalTransferTimes().iterator();
+        while (iter.hasNext()) {
+            iter.next();
+            Id<TransitStopFacility> fromStopId = iter.getFromStopId();
+            TransitStopFacility fromStop = schedule.getFacilities().get(fromStopId);
+            Id<TransitStopFacility> toStopId = iter.getToStopId();
+            TransitStopFacility toStop = schedule.getFacilities().get(toStopId);
+            List<TransitStopFacility> destinationStops = stopToStopsTransfers.computeIfAbsent(fromStop, stop -> new ArrayList<>(5));
+            if (!destinationStops.contains(toStop)) {
+                destinationStops.add(toStop);
+            }
+        }
+        return stopToStopsTransfers;
+    }
+
+    private static double calculateTransferTime(TransitStopFacility fromStop, TransitStopFacility toStop, double beelineDistance, MinimalTransferTimes mtt, RaptorStaticConfig config) {
+        double transferTime = beelineDistance / config.getBeelineWalkSpeed();
+        if (transferTime < config.getMinimalTransferTime()) {
+            transferTime = config.getMinimalTransferTime();
+        }
+        return mtt.get(fromStop.getId(), toStop.getId(), transferTime);
+    }
+
     private static boolean isUsefulTransfer(RRouteStop fromRouteStop, RRouteStop toRouteStop, double maxBeelineWalkConnectionDistance, RaptorStaticConfig.RaptorOptimization optimization) {
         if (fromRouteStop == toRouteStop) {
             return false;
@@ -471,21 +698,187 @@ public class SwissRailRaptorData {
         return this.stopsQT.getClosest(x, y);
     }
 
+    int getTransferFromRouteStop(int transferIndex) {
+        return this.transfers.get(transferIndex * TRANSFER_SIZE);
+    }
+
+    int getTransferToRouteStop(int transferIndex) {
+        return this.transfers.get(transferIndex * TRANSFER_SIZE + 1);
+    }
+
+    int getTransferTime(int transferIndex) {
+        return this.transfers.get(transferIndex * TRANSFER_SIZE + 2);
+    }
+
+    int getTransferDistance(int transferIndex) {
+        return this.transfers.get(transferIndex * TRANSFER_SIZE + 3);
+    }
+
     /**
-     * "Translates" an internally used {@link RTransfer} into a publicly usable {@link Transfer} object.
-     * @param transfer
+     * "Translates" an internally used transfer index into a publicly usable {@link Transfer} object.
+     * @param transferIndex
      * @param provider if provided, the object will be reused and returned, otherwise a new object will be created.
      * @return
      */
-    public CachingTransferProvider getTransferProvider(RTransfer transfer, CachingTransferProvider provider) {
+    public CachingTransferProvider getTransferProvider(int transferIndex, CachingTransferProvider provider) {
         CachingTransferProvider transferProvider = provider;
         if (transferProvider == null) {
             transferProvider = new CachingTransferProvider();
         }
-        transferProvider.reset(transfer);
+        transferProvider.reset(transferIndex);
         return transferProvider;
     }
 
+    /**
+     * "Translates" a transfer into a publicly usable {@link Transfer} object.
+     * @param transfer
+     * @param provider if provided, the object will be reused and returned, otherwise a new object will be created.
+     * @return
+     * @deprecated the transfers are no longer stored as {@link RTransfer} objects, use {@link #getTransferProvider(int, CachingTransferProvider)}.
+     * This method has to search the transfer among the transfers of its from route stop.
+     */
+    @Deprecated
+    public CachingTransferProvider getTransferProvider(RTransfer transfer, CachingTransferProvider provider) {
+        RRouteStop fromRouteStop = this.routeStops[transfer.fromRouteStop];
+        for (int i = 0; i < fromRouteStop.countTransfers; i++) {
+            int transferIndex = fromRouteStop.indexFirstTransfer + i;
+            if (getTransferToRouteStop(transferIndex) == transfer.toRouteStop) {
+                return getTransferProvider(transferIndex, provider);
+            }
+        }
+        throw new IllegalArgumentException("transfer from route stop " + transfer.fromRouteStop + " to route stop " + transfer.toRouteStop + " does not exist.");
+    }
+
+    private static Map<Id<TransitStopFacility>, Map<Id<TransitStopFacility>, Double>> getMinimalTransferTimes(TransitSchedule schedule) {
+        Map<Id<TransitStopFacility>, Map<Id<TransitStopFacility>, Double>> minimalTransferTimes = new HashMap<>();
+        MinimalTransferTimes.MinimalTransferTimesIterator iter = schedule.getMinimalTransferTimes().iterator();
+        while (iter.hasNext()) {
+            iter.next();
+            minimalTransferTimes.computeIfAbsent(iter.getFromStopId(), id -> new HashMap<>()).put(iter.getToStopId(), iter.getSeconds());
+        }
+        return minimalTransferTimes;
+    }
+
+    /**
+     * The routes, route stops and departures of a schedule, without the transfers.
+     */
+    private static final class RouteData {
+        final RRoute[] routes;
+        final int[] departures;
+        final Vehicle[] departureVehicles;
+        final Id<Departure>[] departureIds;
+        final RRouteStop[] routeStops;
+        final Map<TransitStopFacility, Integer> stopFacilityIndices;
+        final Map<TransitStopFacility, int[]> routeStopsPerStopFacility;
+        final QuadTree<TransitStopFacility> stopsQT;
+
+        RouteData(RRoute[] routes, int[] departures, Vehicle[] departureVehicles, Id<Departure>[] departureIds, RRouteStop[] routeStops,
+                  Map<TransitStopFacility, Integer> stopFacilityIndices, Map<TransitStopFacility, int[]> routeStopsPerStopFacility, QuadTree<TransitStopFacility> stopsQT) {
+            this.routes = routes;
+            this.departures = departures;
+            this.departureVehicles = departureVehicles;
+            this.departureIds = departureIds;
+            this.routeStops = routeStops;
+            this.stopFacilityIndices = stopFacilityIndices;
+            this.routeStopsPerStopFacility = routeStopsPerStopFacility;
+            this.stopsQT = stopsQT;
+        }
+    }
+
+    /**
+     * Knows which route stops of an updated schedule belong to routes that did not change compared to the previous
+     * data. Whether a transfer between two such route stops is useful only depends on the two routes and the location
+     * of their stops, so it can be looked up in the previous transfers. As stop facilities can be moved without
+     * creating a new object, the coordinates are compared with the ones stored when the previous data was created.
+     */
+    private static final class PreviousTransfers {
+        private final SwissRailRaptorData previous;
+        private final int[] previousRouteStopIndices; // index of the same route stop in the previous data, or -1 if the route changed
+        private final Set<TransitStopFacility> changedStops = new HashSet<>(); // stops whose minimal transfer times changed
+        int unchangedRoutes = 0;
+
+        PreviousTransfers(SwissRailRaptorData previous, RouteData routeData, Map<Id<TransitStopFacility>, Map<Id<TransitStopFacility>, Double>> minimalTransferTimes) {
+            this.previous = previous;
+            this.previousRouteStopIndices = new int[routeData.routeStops.length];
+            Arrays.fill(this.previousRouteStopIndices, -1);
+
+            Map<TransitRoute, RRoute> previousRoutes = new IdentityHashMap<>();
+            for (RRoute route : previous.routes) {
+                if (route.countRouteStops > 0) {
+                    previousRoutes.put(previous.routeStops[route.indexFirstRouteStop].route, route);
+                }
+            }
+            for (RRoute route : routeData.routes) {
+                if (route.countRouteStops == 0) {
+                    continue;
+                }
+                RRoute previousRoute = previousRoutes.get(routeData.routeStops[route.indexFirstRouteStop].route);
+                if (previousRoute != null && isSameRoute(previousRoute, route, routeData)) {
+                    this.unchangedRoutes++;
+                    for (int i = 0; i < route.countRouteStops; i++) {
+                        this.previousRouteStopIndices[route.indexFirstRouteStop + i] = previousRoute.indexFirstRouteStop + i;
+                    }
+                }
+            }
+
+            Set<Id<TransitStopFacility>> changedStopIds = new HashSet<>();
+            Set<Id<TransitStopFacility>> fromStopIds = new HashSet<>(minimalTransferTimes.keySet());
+            fromStopIds.addAll(previous.minimalTransferTimes.keySet());
+            for (Id<TransitStopFacility> fromStopId : fromStopIds) {
+                if (!Objects.equals(minimalTransferTimes.get(fromStopId), previous.minimalTransferTimes.get(fromStopId))) {
+                    changedStopIds.add(fromStopId);
+                }
+            }
+            for (TransitStopFacility stop : routeData.routeStopsPerStopFacility.keySet()) {
+                if (changedStopIds.contains(stop.getId())) {
+                    this.changedStops.add(stop);
+                }
+            }
+        }
+
+        private boolean isSameRoute(RRoute previousRoute, RRoute route, RouteData routeData) {
+            if (previousRoute.countRouteStops != route.countRouteStops || previousRoute.countDepartures != route.countDepartures) {
+                return false;
+            }
+            for (int i = 0; i < route.countDepartures; i++) {
+                if (this.previous.departures[previousRoute.indexFirstDeparture + i] != routeData.departures[route.indexFirstDeparture + i]) {
+                    return false;
+                }
+            }
+            for (int i = 0; i < route.countRouteStops; i++) {
+                RRouteStop previousRouteStop = this.previous.routeStops[previousRoute.indexFirstRouteStop + i];
+                RRouteStop routeStop = routeData.routeStops[route.indexFirstRouteStop + i];
+                TransitStopFacility previousStop = previousRouteStop.routeStop.getStopFacility();
+                TransitStopFacility stop = routeStop.routeStop.getStopFacility();
+                if (previousRouteStop.routeStop != routeStop.routeStop || previousStop != stop || !previousRouteStop.stopCoord.equals(routeStop.stopCoord)
+                        || previousRouteStop.arrivalOffset != routeStop.arrivalOffset || previousRouteStop.departureOffset != routeStop.departureOffset
+                        || !previousRouteStop.mode.equals(routeStop.mode)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return <code>true</code> if it is known from the previous data whether the transfer is useful
+         */
+        boolean isKnown(RRouteStop fromRouteStop, RRouteStop toRouteStop) {
+            return this.previousRouteStopIndices[fromRouteStop.index] >= 0 && this.previousRouteStopIndices[toRouteStop.index] >= 0
+                    && !this.changedStops.contains(fromRouteStop.routeStop.getStopFacility());
+        }
+
+        boolean hadTransfer(RRouteStop fromRouteStop, RRouteStop toRouteStop) {
+            RRouteStop previousFromRouteStop = this.previous.routeStops[this.previousRouteStopIndices[fromRouteStop.index]];
+            int previousToRouteStopIndex = this.previousRouteStopIndices[toRouteStop.index];
+            for (int i = 0; i < previousFromRouteStop.countTransfers; i++) {
+                if (this.previous.getTransferToRouteStop(previousFromRouteStop.indexFirstTransfer + i) == previousToRouteStopIndex) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
     static final class RRoute {
         final int indexFirstRouteStop;
         final int countRouteStops;
@@ -511,6 +904,7 @@ public class SwissRailRaptorData {
         final int arrivalOffset;
         final int departureOffset;
         final double distanceAlongRoute;
+        final Coord stopCoord; // the coordinate of the stop facility when the data was created, used by update()
         int indexFirstTransfer = -1;
         int countTransfers = 0;
 
@@ -523,12 +917,17 @@ public class SwissRailRaptorData {
             this.transitRouteIndex = transitRouteIndex;
             this.stopFacilityIndex = stopFacilityIndex;
             this.distanceAlongRoute = distanceAlongRoute;
+            this.stopCoord = routeStop.getStopFacility().getCoord();
             // "normalize" the arrival and departure offsets, make sure they are always well defined.
             this.arrivalOffset = (int) routeStop.getArrivalOffset().or(routeStop::getDepartureOffset).seconds();
             this.departureOffset = (int) routeStop.getDepartureOffset().or(routeStop::getArrivalOffset).seconds();
         }
     }
 
+    /**
+     * A transfer between two route stops, only used while the transfers are calculated. The data stores the transfers
+     * in an int buffer, four ints per transfer.
+     */
     public static final class RTransfer {
         final int fromRouteStop;
         final int toRouteStop;
@@ -570,22 +969,26 @@ public class SwissRailRaptorData {
 
 	public class CachingTransferProvider implements Supplier<Transfer> {
 
-	    private RTransfer raptorTransfer = null;
+	    private int transferIndex = -1;
 	    private Transfer transfer = new Transfer();
 
       public CachingTransferProvider() {
       }
 
-      void reset(RTransfer raptorTransfer) {
-          this.raptorTransfer = raptorTransfer;
+      void reset(int transferIndex) {
+          this.transferIndex = transferIndex;
       }
 
       @Override
       public Transfer get() {
-          if (this.transfer.rTransfer != this.raptorTransfer) {
-              RRouteStop fromStop = SwissRailRaptorData.this.routeStops[this.raptorTransfer.fromRouteStop];
-              RRouteStop toStop = SwissRailRaptorData.this.routeStops[this.raptorTransfer.toRouteStop];
-              this.transfer.reset(this.raptorTransfer, fromStop, toStop);
+          if (this.transfer.transferIndex != this.transferIndex) {
+              if (this.transferIndex < 0) {
+                  this.transfer.reset(-1, 0, 0, null, null);
+              } else {
+                  RRouteStop fromStop = SwissRailRaptorData.this.routeStops[getTransferFromRouteStop(this.transferIndex)];
+                  RRouteStop toStop = SwissRailRaptorData.this.routeStops[getTransferToRouteStop(this.transferIndex)];
+                  this.transfer.reset(this.transferIndex, getTransferTime(this.transferIndex), getTransferDistance(this.transferIndex), fromStop, toStop);
+              }
           }
           return this.transfer;
       }
@@ -23,6 +23,7 @@ import javax.inject.Singleton;
 public class SwissRailRaptorFactory implements Provider<SwissRailRaptor> {
 
     private SwissRailRaptorData data = null;
+    private volatile boolean scheduleChanged = false;
     private final TransitSchedule schedule;
     private final Vehicles transitVehicles;
     private final RaptorStaticConfig raptorConfig;
@@ -30,8 +31,8 @@ public class SwissRailRaptorFactory implements Provider<SwissRailRaptor> {
     private final RaptorRouteSelector routeSelector;
     private final Provider<RaptorStopFinder> stopFinderProvider;
     private final OccupancyData occupancyData;
-    private final RaptorInVehicleCostCalculator inVehicleCostCalculator;
-    private final RaptorTransferCostCalculator transferCostCalculator;
+    private final Provider<RaptorInVehicleCostCalculator> inVehicleCostCalculatorProvider;
+    private final Provider<RaptorTransferCostCalculator> transferCostCalculatorProvider;
 
     private final Network network;
 
@@ -39,8 +40,8 @@ public class SwissRailRaptorFactory implements Provider<SwissRailRaptor> {
     public SwissRailRaptorFactory(final Scenario scenario, final Config config,
                                   RaptorParametersForPerson raptorParametersForPerson, RaptorRouteSelector routeSelector,
                                   Provider<RaptorStopFinder> stopFinderProvider, OccupancyData occupancyData,
-                                  RaptorInVehicleCostCalculator inVehicleCostCalculator,
-                                  RaptorTransferCostCalculator transferCostCalculator,
+                                  Provider<RaptorInVehicleCostCalculator> inVehicleCostCalculatorProvider,
+                                  Provider<RaptorTransferCostCalculator> transferCostCalculatorProvider,
                                   final EventsManager events) {
         this.schedule = scenario.getTransitSchedule();
         this.transitVehicles = scenario.getTransitVehicles();
@@ -50,34 +51,42 @@ public class SwissRailRaptorFactory implements Provider<SwissRailRaptor> {
         this.routeSelector = routeSelector;
         this.stopFinderProvider = stopFinderProvider;
         this.occupancyData = occupancyData;
-        this.inVehicleCostCalculator = inVehicleCostCalculator;
-        this.transferCostCalculator = transferCostCalculator;
+        this.inVehicleCostCalculatorProvider = inVehicleCostCalculatorProvider;
+        this.transferCostCalculatorProvider = transferCostCalculatorProvider;
 
         if (events != null) {
-            events.addHandler((TransitScheduleChangedEventHandler) event -> this.data = null);
+            events.addHandler((TransitScheduleChangedEventHandler) event -> this.scheduleChanged = true);
         }
     }
 
     @Override
     public SwissRailRaptor get() {
         SwissRailRaptorData data = getData();
-        return new SwissRailRaptor(data, this.raptorParametersForPerson, this.routeSelector, this.stopFinderProvider.get(), this.inVehicleCostCalculator, this.transferCostCalculator);
+        return new SwissRailRaptor(data, this.raptorParametersForPerson, this.routeSelector, this.stopFinderProvider.get(),
+                this.inVehicleCostCalculatorProvider::get, this.transferCostCalculatorProvider::get);
     }
 
     private SwissRailRaptorData getData() {
-        if (this.data == null) {
-            this.data = prepareData();
+        SwissRailRaptorData data = this.data;
+        if (data == null || this.scheduleChanged) {
+            data = prepareData();
         }
-        return this.data;
+        return data;
     }
 
     synchronized private SwissRailRaptorData prepareData() {
-        if (this.data != null) {
+        if (this.data != null && !this.scheduleChanged) {
             // due to multithreading / race conditions, this could still happen.
             // prevent doing the work twice.
             return this.data;
         }
-        this.data = SwissRailRaptorData.create(this.schedule, this.transitVehicles, this.raptorConfig, this.network, this.occupancyData);
+        this.scheduleChanged = false;
+        if (this.data == null) {
+            this.data = SwissRailRaptorData.create(this.schedule, this.transitVehicles, this.raptorConfig, this.network, this.occupancyData);
+        } else {
+            // only re-calculate what changed, e.g. when routes were added or removed during the run
+            this.data = SwissRailRaptorData.update(this.data, this.schedule, this.transitVehicles, this.network);
+        }
         return this.data;
     }
 
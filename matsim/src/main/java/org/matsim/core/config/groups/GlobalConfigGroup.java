@@ -32,6 +32,8 @@ public final class GlobalConfigGroup extends ReflectiveConfigGroup {
 
 	public static final String GROUP_NAME = "global";
 
+	public enum ReplanningThreadScheduling {roundRobin, dynamic}
+
 	public GlobalConfigGroup() {
 		super(GROUP_NAME);
 	}
@@ -39,6 +41,7 @@ public final class GlobalConfigGroup extends ReflectiveConfigGroup {
 	@Override public Map<String, String> getComments() {
 		Map<String,String> map = super.getComments();
 		map.put(NUMBER_OF_THREADS, NUMBER_OF_THREADS_CMT ) ;
+		map.put(REPLANNING_THREAD_SCHEDULING, REPLANNING_THREAD_SCHEDULING_CMT ) ;
 		return map ;
 	}
 
@@ -94,6 +97,27 @@ public final class GlobalConfigGroup extends ReflectiveConfigGroup {
 		this.numberOfThreads = numberOfThreads;
 	}
 	// ---
+	private ReplanningThreadScheduling replanningThreadScheduling = ReplanningThreadScheduling.roundRobin;
+	private static final String REPLANNING_THREAD_SCHEDULING = "replanningThreadScheduling";
+	private static final String REPLANNING_THREAD_SCHEDULING_CMT = "How multi-threaded replanning modules assign plans to their threads.  "
+			+ "roundRobin: plans are distributed equally before the threads start, which keeps runs reproducible.  "
+			+ "dynamic: idle threads fetch the next chunk of plans, which balances slow plans better, "
+			+ "but which plan algorithm instance handles a plan is no longer reproducible.";
+	/**
+	 * @return {@link #REPLANNING_THREAD_SCHEDULING_CMT}
+	 */
+	@StringGetter( REPLANNING_THREAD_SCHEDULING )
+	public ReplanningThreadScheduling getReplanningThreadScheduling() {
+		return this.replanningThreadScheduling;
+	}
+	/**
+	 * @param replanningThreadScheduling -- {@link #REPLANNING_THREAD_SCHEDULING_CMT}
+	 */
+	@StringSetter( REPLANNING_THREAD_SCHEDULING )
+	public void setReplanningThreadScheduling(final ReplanningThreadScheduling replanningThreadScheduling) {
+		this.replanningThreadScheduling = replanningThreadScheduling;
+	}
+	// ---
 	private String coordinateSystem = "Atlantis" ;
 	// see https://matsim.atlassian.net/browse/MATSIM-898
 	private static final String COORDINATE_SYSTEM = "coordinateSystem";
@@ -49,7 +49,16 @@ public final class ParallelEventHandlingConfigGroup extends ReflectiveConfigGrou
 	private final static String EVENTS_QUEUE_SIZE_COMMENT = "Size of the events Queue. Increase for very large scenarios";
 	private int eventsQueueSize = 65536 * 2 ;
 
+	private final static String USE_RING_BUFFER = "useRingBuffer";
+	private final static String USE_RING_BUFFER_COMMENT = "If enabled, the events are passed to the handler threads through one shared ring buffer instead of queues. "
+			+ "The options " + NUMBER_OF_THREADS + ", " + ONE_THREAD_PER_HANDLER + ", " + SYNCHRONIZE_ON_SIMSTEPS + " and " + EVENTS_QUEUE_SIZE
+			+ " (as size of the ring buffer) still apply. This feature is still experimental!";
+	private boolean useRingBuffer = false;
 
+	private final static String NUMBER_OF_SCORING_SHARDS = "numberOfScoringShards";
+	private final static String NUMBER_OF_SCORING_SHARDS_COMMENT = "Number of shards the persons are distributed to for scoring. Each shard is a separate events handler, "
+			+ "so the shards can handle the events in parallel if a parallel events manager is used. 1 means that all persons are scored by one events handler.";
+	private int numberOfScoringShards = 1;
 
 	private boolean locked = false;
 
@@ -67,6 +76,8 @@ public final class ParallelEventHandlingConfigGroup extends ReflectiveConfigGrou
 		comments.put(ONE_THREAD_PER_HANDLER, "If enabled, each event handler is assigned to its own thread. Note that enabling this feature disabled the " + NUMBER_OF_THREADS + " option! "
 				+ "This feature is still experimental!");
 		comments.put(EVENTS_QUEUE_SIZE,EVENTS_QUEUE_SIZE_COMMENT);
+		comments.put(USE_RING_BUFFER, USE_RING_BUFFER_COMMENT);
+		comments.put(NUMBER_OF_SCORING_SHARDS, NUMBER_OF_SCORING_SHARDS_COMMENT);
 		return comments;
 	}
 
@@ -144,6 +155,40 @@ public final class ParallelEventHandlingConfigGroup extends ReflectiveConfigGrou
 		}
 	}
 	
+	@StringGetter( USE_RING_BUFFER )
+	public boolean isUseRingBuffer() {
+		return this.useRingBuffer;
+	}
+
+	@StringSetter( USE_RING_BUFFER )
+	public void setUseRingBuffer(boolean useRingBuffer) {
+		if ( !this.locked ) {
+			this.useRingBuffer = useRingBuffer;
+		} else {
+			throw new RuntimeException("it is too late in the control flow to modify this parameter");
+		}
+	}
+
+	/**
+	 * {@value #NUMBER_OF_SCORING_SHARDS_COMMENT}
+	 */
+	@StringGetter( NUMBER_OF_SCORING_SHARDS )
+	public int getNumberOfScoringShards() {
+		return this.numberOfScoringShards;
+	}
+
+	/**
+	 * {@value #NUMBER_OF_SCORING_SHARDS_COMMENT}
+	 */
+	@StringSetter( NUMBER_OF_SCORING_SHARDS )
+	public void setNumberOfScoringShards(int numberOfScoringShards) {
+		if ( !this.locked ) {
+			this.numberOfScoringShards = numberOfScoringShards;
+		} else {
+			throw new RuntimeException("it is too late in the control flow to modify this parameter");
+		}
+	}
+
 	public void makeLocked() {
 		this.locked = true;
 	}
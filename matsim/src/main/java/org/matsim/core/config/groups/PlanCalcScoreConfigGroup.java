@@ -74,6 +74,8 @@ public final class PlanCalcScoreConfigGroup extends ConfigGroup {
 
 	private static final String WRITE_EXPERIENCED_PLANS = "writeExperiencedPlans";
 
+	private static final String USING_BATCH_SCORING = "usingBatchScoring";
+
 	private static final String MARGINAL_UTL_OF_MONEY = "marginalUtilityOfMoney";
 
 	private static final String UTL_OF_LINE_SWITCH = "utilityOfLineSwitch";
@@ -417,6 +419,10 @@ public final class PlanCalcScoreConfigGroup extends ConfigGroup {
 				"[utils/unit_of_money] conversion of money (e.g. toll, distance cost) into utils. Normall positive (i.e. toll/cost/fare are processed as negative amounts of money).");
 		map.put(WRITE_EXPERIENCED_PLANS,
 				"write a plans file in each iteration directory which contains what each agent actually did, and the score it received.");
+		map.put(USING_BATCH_SCORING,
+				"if true and the default scoring function factory is used, the activity and leg scores of all persons are computed at once from "
+						+ "their experienced plans after the mobsim, instead of per activity and leg while the events are handled. The partial scores "
+						+ "of the experienced plans then only contain the final score. Custom scoring function factories are not affected. Default: false.");
 
 		return map;
 	}
@@ -783,6 +789,14 @@ public final class PlanCalcScoreConfigGroup extends ConfigGroup {
 		delegate.setWriteExperiencedPlans(writeExperiencedPlans);
 	}
 
+	public boolean isUsingBatchScoring() {
+		return delegate.isUsingBatchScoring();
+	}
+
+	public void setUsingBatchScoring(boolean usingBatchScoring) {
+		delegate.setUsingBatchScoring(usingBatchScoring);
+	}
+
 	public double getMarginalUtlOfWaiting_utils_hr() {
 		if (getScoringParameters(null) != null)
 			return getScoringParameters(null).getMarginalUtlOfWaiting_utils_hr();
@@ -1581,6 +1595,8 @@ public final class PlanCalcScoreConfigGroup extends ConfigGroup {
 
 		private boolean writeExperiencedPlans = false;
 
+		private boolean usingBatchScoring = false;
+
 		private Double fractionOfIterationsToStartScoreMSA = null;
 
 		private boolean usingOldScoringBelowZeroUtilityDuration = false;
@@ -1659,5 +1675,16 @@ public final class PlanCalcScoreConfigGroup extends ConfigGroup {
 			this.writeExperiencedPlans = writeExperiencedPlans;
 		}
 
+		@StringGetter(USING_BATCH_SCORING)
+		public boolean isUsingBatchScoring() {
+			return usingBatchScoring;
+		}
+
+		@StringSetter(USING_BATCH_SCORING)
+		public void setUsingBatchScoring(boolean usingBatchScoring) {
+			testForLocked();
+			this.usingBatchScoring = usingBatchScoring;
+		}
+
 	}
 }
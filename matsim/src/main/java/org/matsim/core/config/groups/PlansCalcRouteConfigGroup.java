@@ -86,6 +86,24 @@ public final class PlansCalcRouteConfigGroup extends ConfigGroup {
 																		"settings for helper modes such as for " + TransportMode.non_network_walk;
 	private boolean clearingDefaultModeRoutingParams = false ;
 	// ---
+	private static final String ROUTE_CACHE_SIZE = "routeCacheSize";
+	private static final String ROUTE_CACHE_SIZE_CMT = "Maximum number of network routes per mode that are remembered and re-used for the same start and end node " +
+																"in the same departure time bin.  0 (default) disables the cache.  Cached routes ignore routing randomness.";
+	private int routeCacheSize = 0;
+	private static final String ROUTE_CACHE_TIME_BIN_SIZE = "routeCacheTimeBinSize";
+	private static final String ROUTE_CACHE_TIME_BIN_SIZE_CMT = "Size of the departure time bins of the route cache, in seconds.";
+	private double routeCacheTimeBinSize = 900.;
+	private static final String ROUTE_CACHE_MAX_TRAVEL_TIME_CHANGE = "routeCacheMaxRelativeTravelTimeChange";
+	private static final String ROUTE_CACHE_MAX_TRAVEL_TIME_CHANGE_CMT = "A cached route is calculated again if its travel time, evaluated with the current " +
+																"travel times, differs by more than this fraction from its travel time when it was calculated.";
+	private double routeCacheMaxRelativeTravelTimeChange = 0.05;
+	private static final String BATCH_ROUTING_TIME_BIN_SIZE = "batchRoutingTimeBinSize";
+	private static final String BATCH_ROUTING_TIME_BIN_SIZE_CMT = "Network routes requested together (TripRouter.calcRoutes) with the same start link, person " +
+																"and departure time are calculated with one least-cost-path tree.  If > 0, the requests of the same " +
+																"departure time bin of this size, in seconds, share one tree departing at the earliest departure time of the bin, " +
+																"so the routes are only approximate.  Not used if the route cache is enabled.  Default: 0.";
+	private double batchRoutingTimeBinSize = 0.;
+	// ---
 	public static class TeleportedModeParams extends ModeRoutingParams {
 		public TeleportedModeParams( String mode ){
 			super( mode );
@@ -480,6 +498,18 @@ public final class PlansCalcRouteConfigGroup extends ConfigGroup {
 		else if (ACCESSEGRESSTYPE.equals( key ) ) {
 			this.setAccessEgressType(AccessEgressType.valueOf(value));
 		}
+		else if (ROUTE_CACHE_SIZE.equals( key ) ) {
+			this.setRouteCacheSize( Integer.parseInt( value ) );
+		}
+		else if (ROUTE_CACHE_TIME_BIN_SIZE.equals( key ) ) {
+			this.setRouteCacheTimeBinSize( Double.parseDouble( value ) );
+		}
+		else if (ROUTE_CACHE_MAX_TRAVEL_TIME_CHANGE.equals( key ) ) {
+			this.setRouteCacheMaxRelativeTravelTimeChange( Double.parseDouble( value ) );
+		}
+		else if (BATCH_ROUTING_TIME_BIN_SIZE.equals( key ) ) {
+			this.setBatchRoutingTimeBinSize( Double.parseDouble( value ) );
+		}
 		else {
 			throw new IllegalArgumentException(key);
 		}
@@ -492,6 +522,10 @@ public final class PlansCalcRouteConfigGroup extends ConfigGroup {
 		map.put(  CLEAR_MODE_ROUTING_PARAMS, Boolean.toString( this.clearingDefaultModeRoutingParams ) ) ;
 		map.put(  RANDOMNESS, Double.toString( this.routingRandomness ) ) ;
 		map.put(  ACCESSEGRESSTYPE, getAccessEgressType().toString()) ;
+		map.put(  ROUTE_CACHE_SIZE, Integer.toString( this.routeCacheSize ) ) ;
+		map.put(  ROUTE_CACHE_TIME_BIN_SIZE, Double.toString( this.routeCacheTimeBinSize ) ) ;
+		map.put(  ROUTE_CACHE_MAX_TRAVEL_TIME_CHANGE, Double.toString( this.routeCacheMaxRelativeTravelTimeChange ) ) ;
+		map.put(  BATCH_ROUTING_TIME_BIN_SIZE, Double.toString( this.batchRoutingTimeBinSize ) ) ;
 		return map;
 	}
 
@@ -504,9 +538,14 @@ public final class PlansCalcRouteConfigGroup extends ConfigGroup {
 		map.put(NETWORK_MODES, "All the modes for which the router is supposed to generate network routes (like car)") ;
 		map.put(RANDOMNESS, "strength of the randomness for the utility of money in routing under toll.  "
 	          		+ "Leads to Pareto-optimal route with randomly drawn money-vs-other-attributes tradeoff. "
-	          		+ "Technically the width parameter of a log-normal distribution. 3.0 seems to be a good value. " ) ;
+	          		+ "Technically the width parameter of a log-normal distribution. 3.0 seems to be a good value. "
+	          		+ "The routing algorithm SpeedyCCH needs a value of 0.0, otherwise it falls back to SpeedyALT. " ) ;
 		map.put( CLEAR_MODE_ROUTING_PARAMS, CLEAR_MODE_ROUTING_PARAMS_CMT ) ;
 		map.put(ACCESSEGRESSTYPE, ACCESSEGRESSTYPE_CMT);
+		map.put(ROUTE_CACHE_SIZE, ROUTE_CACHE_SIZE_CMT);
+		map.put(ROUTE_CACHE_TIME_BIN_SIZE, ROUTE_CACHE_TIME_BIN_SIZE_CMT);
+		map.put(ROUTE_CACHE_MAX_TRAVEL_TIME_CHANGE, ROUTE_CACHE_MAX_TRAVEL_TIME_CHANGE_CMT);
+		map.put(BATCH_ROUTING_TIME_BIN_SIZE, BATCH_ROUTING_TIME_BIN_SIZE_CMT);
 		return map;
 	}
 
@@ -610,6 +649,38 @@ public final class PlansCalcRouteConfigGroup extends ConfigGroup {
 		this.routingRandomness = routingRandomness;
 	}
 
+	public int getRouteCacheSize() {
+		return this.routeCacheSize;
+	}
+	public void setRouteCacheSize(int routeCacheSize) {
+		testForLocked();
+		this.routeCacheSize = routeCacheSize;
+	}
+
+	public double getRouteCacheTimeBinSize() {
+		return this.routeCacheTimeBinSize;
+	}
+	public void setRouteCacheTimeBinSize(double routeCacheTimeBinSize) {
+		testForLocked();
+		this.routeCacheTimeBinSize = routeCacheTimeBinSize;
+	}
+
+	public double getRouteCacheMaxRelativeTravelTimeChange() {
+		return this.routeCacheMaxRelativeTravelTimeChange;
+	}
+	public void setRouteCacheMaxRelativeTravelTimeChange(double routeCacheMaxRelativeTravelTimeChange) {
+		testForLocked();
+		this.routeCacheMaxRelativeTravelTimeChange = routeCacheMaxRelativeTravelTimeChange;
+	}
+
+	public double getBatchRoutingTimeBinSize() {
+		return this.batchRoutingTimeBinSize;
+	}
+	public void setBatchRoutingTimeBinSize(double batchRoutingTimeBinSize) {
+		testForLocked();
+		this.batchRoutingTimeBinSize = batchRoutingTimeBinSize;
+	}
+
 	@Override protected void checkConsistency(Config config) {
 		super.checkConsistency(config);
 		Set<String> modesRoutedAsTeleportation = this.getModeRoutingParams().keySet();
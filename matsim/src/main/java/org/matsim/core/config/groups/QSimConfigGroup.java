@@ -57,6 +57,7 @@ public final class QSimConfigGroup extends ReflectiveConfigGroup {
 	private static final String STUCK_TIME = "stuckTime";
 	private static final String REMOVE_STUCK_VEHICLES = "removeStuckVehicles";
 	private static final String NUMBER_OF_THREADS = "numberOfThreads";
+	private static final String NETSIM_PARTITIONING = "netsimPartitioning";
 	private static final String TRAFFIC_DYNAMICS = "trafficDynamics";
 	private static final String SIM_STARTTIME_INTERPRETATION = "simStarttimeInterpretation";
 	private static final String USE_PERSON_ID_FOR_MISSING_VEHICLE_ID = "usePersonIdForMissingVehicleId";
@@ -90,6 +91,17 @@ public final class QSimConfigGroup extends ReflectiveConfigGroup {
 	private boolean usePersonIdForMissingVehicleId = true;
 	@Positive
 	private int numberOfThreads = 1;
+
+	/**
+	 * Defines how the nodes (and with them their outgoing links) of the QNetwork are distributed over the threads of the
+	 * QNetsimEngine.
+	 * <li>{@code roundRobin} assigns the nodes one after the other to the threads, in the order of the network.</li>
+	 * <li>{@code spatial} splits the network into geographically compact partitions (recursive coordinate bisection, weighted by
+	 * the number of links), so that a vehicle moving over a node mostly stays within the data of one thread.</li>
+	 */
+	public enum NetsimPartitioning {roundRobin, spatial}
+
+	private NetsimPartitioning netsimPartitioning = NetsimPartitioning.roundRobin;
 	//	private static final String CREATING_VEHICLES_FOR_ALL_NETWORK_MODES = "creatingVehiclesForAllNetworkModes";
 //	private boolean creatingVehiclesForAllNetworkModes = true;
 	// ---
@@ -170,6 +182,15 @@ public final class QSimConfigGroup extends ReflectiveConfigGroup {
 		map.put(NUMBER_OF_THREADS, "Number of threads used for the QSim.  "
 				+ "Note that this setting is independent from the \"global\" threads setting.  "
 				+ "In contrast to earlier versions, the non-parallel special version is no longer there.");
+		{
+			StringBuilder options = new StringBuilder(60);
+			for (NetsimPartitioning partitioning : NetsimPartitioning.values()) {
+				options.append(partitioning).append(' ');
+			}
+			map.put(NETSIM_PARTITIONING, "Defines how nodes and links are distributed over the threads of the QNetsimEngine.  "
+					+ "`spatial' keeps neighbouring nodes and links on the same thread, which reduces the data shared between threads "
+					+ "for large networks and many threads.  Only relevant if numberOfThreads > 1.  Options: " + options);
+		}
 		map.put(REMOVE_STUCK_VEHICLES, REMOVE_STUCK_VEHICLES_STRING);
 		map.put(STUCK_TIME, STUCK_TIME_STRING);
 
@@ -467,6 +488,16 @@ public final class QSimConfigGroup extends ReflectiveConfigGroup {
 		this.numberOfThreads = numberOfThreads;
 	}
 
+	@StringGetter(NETSIM_PARTITIONING)
+	public NetsimPartitioning getNetsimPartitioning() {
+		return this.netsimPartitioning;
+	}
+
+	@StringSetter(NETSIM_PARTITIONING)
+	public void setNetsimPartitioning(final NetsimPartitioning netsimPartitioning) {
+		this.netsimPartitioning = netsimPartitioning;
+	}
+
 	@StringGetter(SIM_STARTTIME_INTERPRETATION)
 	public StarttimeInterpretation getSimStarttimeInterpretation() {
 		return simStarttimeInterpretation;
@@ -57,6 +57,7 @@ public final class TravelTimeCalculatorConfigGroup extends ReflectiveConfigGroup
 	private static final String ANALYZEDMODES = "analyzedModes";
 	private static final String FILTERMODES = "filterModes";
 	private static final String SEPARATEMODES = "separateModes";
+	private static final String USING_PRIMITIVE_AGGREGATION = "usingPrimitiveAggregation";
 
 	private TravelTimeCalculatorType travelTimeCalculator = TravelTimeCalculatorType.TravelTimeCalculatorArray;
 	private String travelTimeAggregator = "optimistic";
@@ -70,6 +71,7 @@ public final class TravelTimeCalculatorConfigGroup extends ReflectiveConfigGroup
 	private Set<String> analyzedModes = new LinkedHashSet<>(  ) ;
 	private boolean filterModes = false;
 	private boolean separateModes = true;
+	private boolean usingPrimitiveAggregation = false;
 
 	public TravelTimeCalculatorConfigGroup() {
 		super(GROUPNAME);
@@ -91,6 +93,9 @@ public final class TravelTimeCalculatorConfigGroup extends ReflectiveConfigGroup
 							 "respected by the travel time collector. 'car' is default which includes also buses from the pt simulation module.");
 		map.put(FILTERMODES, "(only for backwards compatiblity; only used if " + SEPARATEMODES + "==false)  Only modes included in analyzedModes are included." ) ;
 		map.put(SEPARATEMODES, "(only for backwards compatibility) If false, link travel times are measured and aggregated over all vehicles using the link." ) ;
+		map.put(USING_PRIMITIVE_AGGREGATION, "If true, link enter times and travel times are collected in primitive arrays indexed by vehicle and link, " +
+				"and are only aggregated into the travel time data when travel times are requested. Avoids object allocations while " +
+				"handling events. Averages are computed exactly instead of incrementally, so travel times may differ in the last digits.");
 		map.put( TRAVEL_TIME_CALCULATOR, "possible values: " + Arrays.stream( TravelTimeCalculatorType.values() ).map( type -> type.toString() + ' ' ).collect( Collectors.joining() ) );
 		return map;
 	}
@@ -214,5 +219,15 @@ public final class TravelTimeCalculatorConfigGroup extends ReflectiveConfigGroup
 	public void setSeparateModes(boolean separateModes) {
 		this.separateModes = separateModes;
 	}
+	// ---
+	@StringGetter(USING_PRIMITIVE_AGGREGATION)
+	public boolean isUsingPrimitiveAggregation() {
+		return this.usingPrimitiveAggregation;
+	}
+
+	@StringSetter(USING_PRIMITIVE_AGGREGATION)
+	public void setUsingPrimitiveAggregation(boolean usingPrimitiveAggregation) {
+		this.usingPrimitiveAggregation = usingPrimitiveAggregation;
+	}
 
 }
@@ -0,0 +1,67 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * EventArrayEventsManager.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.events;
+
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.handler.EventHandler;
+
+/**
+ * Collects the events in an array, so readers can create events on other threads and pass them on in order later.
+ */
+final class EventArrayEventsManager implements EventsManager {
+	private final EventArray events;
+
+	EventArrayEventsManager(EventArray events) {
+		this.events = events;
+	}
+
+	@Override
+	public void processEvent(Event event) {
+		this.events.add(event);
+	}
+
+	@Override
+	public void addHandler(EventHandler handler) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void removeHandler(EventHandler handler) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void resetHandlers(int iteration) {
+	}
+
+	@Override
+	public void initProcessing() {
+	}
+
+	@Override
+	public void afterSimStep(double time) {
+	}
+
+	@Override
+	public void finishProcessing() {
+	}
+}
@@ -34,7 +34,9 @@ public final class EventsManagerModule extends AbstractModule {
 
 	@Override
 	public void install() {
-		if (BooleanUtils.isTrue(getConfig().parallelEventHandling().getOneThreadPerHandler())) {
+		if (getConfig().parallelEventHandling().isUseRingBuffer()) {
+			bindEventsManager().to(RingBufferEventsManager.class).in(Singleton.class);
+		} else if (BooleanUtils.isTrue(getConfig().parallelEventHandling().getOneThreadPerHandler())) {
 			bindEventsManager().to(ParallelEventsManager.class).in(Singleton.class);
 		} else if (getConfig().parallelEventHandling().getNumberOfThreads() != null) {
 			if (BooleanUtils.isTrue(getConfig().parallelEventHandling().getSynchronizeOnSimSteps())) {
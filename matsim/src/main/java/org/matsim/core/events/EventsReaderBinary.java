@@ -0,0 +1,417 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * EventsReaderBinary.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.events;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.MatsimEventsReader.CustomEventMapper;
+import org.matsim.core.events.algorithms.EventWriterBinary;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.core.utils.io.UncheckedIOException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import com.github.luben.zstd.Zstd;
+
+/**
+ * Reads events written by {@link EventWriterBinary}.
+ * <p>
+ * The chunks of the file can be decompressed and turned into events on several threads, the events are still passed
+ * to the events manager in their original order.  If only some event types or a time window are of interest, whole
+ * chunks without such events are skipped without decompressing them.
+ * <p>
+ * The events are created the same way as by the xml reader, so custom event mappers work the same.  With several
+ * threads, they have to be thread-safe.
+ */
+public final class EventsReaderBinary {
+
+	private final static Logger log = LogManager.getLogger(EventsReaderBinary.class);
+
+	private final EventsManager events;
+	private final Map<String, CustomEventMapper> customEventMappers = new HashMap<>();
+	private int numberOfThreads = 1;
+	private double fromTime = Double.NEGATIVE_INFINITY;
+	private double toTime = Double.POSITIVE_INFINITY;
+	private Set<String> eventTypes = null;
+
+	// the dictionaries read so far.  The arrays are replaced when they grow, so chunks being decoded keep consistent copies.
+	private String[] types = new String[16];
+	private int typeCount = 0;
+	private String[] attributes = new String[16];
+	private int attributeCount = 0;
+	private Schema[] schemas = new Schema[16];
+	private int schemaCount = 0;
+	private String[][] values = new String[16][];
+	private int[] valueCounts = new int[16];
+
+	public EventsReaderBinary(final EventsManager events) {
+		this.events = events;
+	}
+
+	public void addCustomEventMapper(String eventType, CustomEventMapper cem) {
+		this.customEventMappers.put(eventType, cem);
+	}
+
+	/**
+	 * @param numberOfThreads the number of threads that decompress chunks and create the events.  With 1, everything
+	 *                        happens on the calling thread.
+	 */
+	public void setNumberOfThreads(int numberOfThreads) {
+		if (numberOfThreads < 1) {
+			throw new IllegalArgumentException("numberOfThreads must be strictly positive, got " + numberOfThreads);
+		}
+		this.numberOfThreads = numberOfThreads;
+	}
+
+	/**
+	 * Only passes on events with fromTime &lt;= time &lt;= toTime.
+	 */
+	public void setTimeWindow(double fromTime, double toTime) {
+		this.fromTime = fromTime;
+		this.toTime = toTime;
+	}
+
+	/**
+	 * Only passes on events of the given types, see {@link Event#getEventType()}.  <code>null</code> passes on all events.
+	 */
+	public void setEventTypes(Set<String> eventTypes) {
+		this.eventTypes = eventTypes;
+	}
+
+	public void readFile(final String filename) {
+		readURL(IOUtils.resolveFileOrResource(filename));
+	}
+
+	public void readURL(final URL url) {
+		log.info("starting to read binary events from " + url);
+		try (InputStream stream = IOUtils.getInputStream(url)) {
+			readStream(stream);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public void readStream(final InputStream stream) {
+		ExecutorService executor = this.numberOfThreads > 1 ? Executors.newFixedThreadPool(this.numberOfThreads) : null;
+		Queue<Future<EventArray>> pending = new ArrayDeque<>();
+		long chunks = 0;
+		long skippedChunks = 0;
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 1 << 16));
+			if (in.readInt() != EventWriterBinary.MAGIC) {
+				throw new IllegalArgumentException("The stream does not contain binary events.");
+			}
+			int version = in.readInt();
+			if (version != EventWriterBinary.VERSION) {
+				throw new IllegalArgumentException("Unsupported version of binary events: " + version);
+			}
+
+			while (true) {
+				int eventCount;
+				try {
+					eventCount = in.readInt();
+				} catch (EOFException e) {
+					break;
+				}
+				double minTime = in.readDouble();
+				double maxTime = in.readDouble();
+				int[] typesInChunk = new int[in.readInt()];
+				for (int i = 0; i < typesInChunk.length; i++) {
+					typesInChunk[i] = in.readInt();
+				}
+				readDictionary(new Bytes(readSection(in)));
+				chunks++;
+
+				if (maxTime < this.fromTime || minTime > this.toTime || !containsWantedType(typesInChunk)) {
+					in.readInt();
+					in.skipNBytes(in.readInt());
+					skippedChunks++;
+					continue;
+				}
+
+				int rawLength = in.readInt();
+				byte[] compressed = new byte[in.readInt()];
+				in.readFully(compressed);
+				ChunkDecoder decoder = new ChunkDecoder(eventCount, rawLength, compressed);
+				if (executor == null) {
+					this.events.processEvents(decoder.call());
+				} else {
+					pending.add(executor.submit(decoder));
+					// limit the number of decoded chunks held in memory
+					while (pending.size() > 2 * this.numberOfThreads) {
+						this.events.processEvents(pending.poll().get());
+					}
+				}
+			}
+			while (!pending.isEmpty()) {
+				this.events.processEvents(pending.poll().get());
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Exception while decoding binary events", e.getCause());
+		} finally {
+			if (executor != null) {
+				executor.shutdownNow();
+			}
+		}
+		log.info("read " + chunks + " chunks of binary events, skipped " + skippedChunks + " of them.");
+	}
+
+	private boolean containsWantedType(int[] typesInChunk) {
+		if (this.eventTypes == null) {
+			return true;
+		}
+		for (int typeIndex : typesInChunk) {
+			if (MatsimEventsReader.isWantedEventType(this.eventTypes, this.types[typeIndex])) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static byte[] readSection(DataInputStream in) throws IOException {
+		int rawLength = in.readInt();
+		byte[] compressed = new byte[in.readInt()];
+		in.readFully(compressed);
+		return Zstd.decompress(compressed, rawLength);
+	}
+
+	private void readDictionary(Bytes dictionary) {
+		for (long i = dictionary.readVarLong(); i > 0; i--) {
+			this.types = append(this.types, this.typeCount++, dictionary.readString());
+		}
+		for (long i = dictionary.readVarLong(); i > 0; i--) {
+			this.attributes = append(this.attributes, this.attributeCount, dictionary.readString());
+			this.values = append(this.values, this.attributeCount, new String[16]);
+			if (this.attributeCount == this.valueCounts.length) {
+				this.valueCounts = Arrays.copyOf(this.valueCounts, 2 * this.attributeCount);
+			}
+			this.attributeCount++;
+		}
+		for (long i = dictionary.readVarLong(); i > 0; i--) {
+			Schema schema = new Schema();
+			schema.typeIndex = (int) dictionary.readVarLong();
+			int attributeCount = (int) dictionary.readVarLong();
+			schema.attributeIndices = new int[attributeCount];
+			schema.kinds = new byte[attributeCount];
+			for (int a = 0; a < attributeCount; a++) {
+				schema.attributeIndices[a] = (int) dictionary.readVarLong();
+				schema.kinds[a] = dictionary.readByte();
+			}
+			this.schemas = append(this.schemas, this.schemaCount++, schema);
+		}
+		for (long i = dictionary.readVarLong(); i > 0; i--) {
+			int attributeIndex = (int) dictionary.readVarLong();
+			for (long v = dictionary.readVarLong(); v > 0; v--) {
+				this.values[attributeIndex] = append(this.values[attributeIndex], this.valueCounts[attributeIndex]++, dictionary.readString());
+			}
+		}
+	}
+
+	/**
+	 * Sets array[index] to value, in a copy of the array if it is too short.
+	 */
+	private static <T> T[] append(T[] array, int index, T value) {
+		if (index == array.length) {
+			array = Arrays.copyOf(array, 2 * array.length);
+		}
+		array[index] = value;
+		return array;
+	}
+
+	/**
+	 * Decompresses the data of one chunk and creates its events.  Keeps the dictionaries as they are when the chunk is
+	 * read, later chunks may only append to them.
+	 */
+	private final class ChunkDecoder implements Callable<EventArray> {
+		private final int eventCount;
+		private final int rawLength;
+		private final byte[] compressed;
+		private final String[] types = EventsReaderBinary.this.types;
+		private final String[] attributes = EventsReaderBinary.this.attributes;
+		private final Schema[] schemas = EventsReaderBinary.this.schemas;
+		private final String[][] values = EventsReaderBinary.this.values.clone();
+		private final int typeCount = EventsReaderBinary.this.typeCount;
+
+		private ChunkDecoder(int eventCount, int rawLength, byte[] compressed) {
+			this.eventCount = eventCount;
+			this.rawLength = rawLength;
+			this.compressed = compressed;
+		}
+
+		@Override
+		public EventArray call() {
+			Bytes data = new Bytes(Zstd.decompress(this.compressed, this.rawLength));
+			double[] times = new double[this.eventCount];
+			double time = 0;
+			for (int i = 0; i < this.eventCount; i++) {
+				long encoded = data.readVarLong();
+				if ((encoded & 1) == 0) {
+					long zigzag = encoded >>> 1;
+					time = (long) time + ((zigzag >>> 1) ^ -(zigzag & 1));
+				} else {
+					time = data.readDouble();
+				}
+				times[i] = time;
+			}
+			int[] schemaIndices = new int[this.eventCount];
+			for (int i = 0; i < this.eventCount; i++) {
+				schemaIndices[i] = (int) data.readVarLong();
+			}
+			Bytes[] columns = new Bytes[this.attributes.length];
+			for (long c = data.readVarLong(); c > 0; c--) {
+				int attributeIndex = (int) data.readVarLong();
+				int length = (int) data.readVarLong();
+				columns[attributeIndex] = data.slice(length);
+			}
+
+			boolean[] wantedTypes = new boolean[this.typeCount];
+			for (int t = 0; t < this.typeCount; t++) {
+				wantedTypes[t] = MatsimEventsReader.isWantedEventType(eventTypes, this.types[t]);
+			}
+
+			EventArray result = new EventArray(Math.max(1, this.eventCount));
+			EventsReaderXMLv1 eventsFactory = new EventsReaderXMLv1(new EventArrayEventsManager(result));
+			customEventMappers.forEach(eventsFactory::addCustomEventMapper);
+			AttributesImpl atts = new AttributesImpl();
+			for (int i = 0; i < this.eventCount; i++) {
+				Schema schema = this.schemas[schemaIndices[i]];
+				boolean wanted = wantedTypes[schema.typeIndex] && times[i] >= fromTime && times[i] <= toTime;
+				if (wanted) {
+					atts.clear();
+					atts.addAttribute("", Event.ATTRIBUTE_TIME, Event.ATTRIBUTE_TIME, "CDATA", Double.toString(times[i]));
+					atts.addAttribute("", Event.ATTRIBUTE_TYPE, Event.ATTRIBUTE_TYPE, "CDATA", this.types[schema.typeIndex]);
+				}
+				for (int a = 0; a < schema.attributeIndices.length; a++) {
+					int attributeIndex = schema.attributeIndices[a];
+					Bytes column = columns[attributeIndex];
+					String value;
+					if (schema.kinds[a] == EventWriterBinary.NULL_VALUE) {
+						value = null;
+					} else if (schema.kinds[a] == EventWriterBinary.DOUBLE_VALUE) {
+						double d = column.readDouble();
+						value = wanted ? Double.toString(d) : null;
+					} else {
+						int valueIndex = (int) column.readVarLong();
+						value = this.values[attributeIndex][valueIndex];
+					}
+					if (wanted) {
+						String key = this.attributes[attributeIndex];
+						atts.addAttribute("", key, key, "CDATA", value);
+					}
+				}
+				if (wanted) {
+					eventsFactory.startTag(EventsReaderXMLv1.EVENT, atts, null);
+				}
+			}
+			return result;
+		}
+	}
+
+	private static final class Schema {
+		private int typeIndex;
+		private int[] attributeIndices;
+		private byte[] kinds;
+	}
+
+	/**
+	 * Reads from a byte array.
+	 */
+	private static final class Bytes {
+		private final byte[] data;
+		private int position;
+		private final int end;
+
+		private Bytes(byte[] data) {
+			this(data, 0, data.length);
+		}
+
+		private Bytes(byte[] data, int position, int end) {
+			this.data = data;
+			this.position = position;
+			this.end = end;
+		}
+
+		private Bytes slice(int length) {
+			Bytes slice = new Bytes(this.data, this.position, this.position + length);
+			this.position += length;
+			return slice;
+		}
+
+		private byte readByte() {
+			if (this.position >= this.end) {
+				throw new IllegalStateException("Unexpected end of binary events data.");
+			}
+			return this.data[this.position++];
+		}
+
+		private long readVarLong() {
+			long value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = readByte();
+				value |= (long) (b & 0x7f) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			return value;
+		}
+
+		private double readDouble() {
+			long bits = 0;
+			for (int i = 0; i < 8; i++) {
+				bits = (bits << 8) | (readByte() & 0xff);
+			}
+			return Double.longBitsToDouble(bits);
+		}
+
+		private String readString() {
+			int length = (int) readVarLong();
+			String value = new String(this.data, this.position, length, StandardCharsets.UTF_8);
+			this.position += length;
+			return value;
+		}
+	}
+}
@@ -27,6 +27,7 @@ import java.net.URL;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 import java.util.zip.GZIPInputStream;
 
 import org.apache.logging.log4j.LogManager;
@@ -86,6 +87,9 @@ public final class EventsReaderJson {
 
 	private final EventsManager events;
 	private final Map<String, CustomEventMapper> customEventMappers = new HashMap<>();
+	private Set<String> eventTypes = null;
+	private double fromTime = Double.NEGATIVE_INFINITY;
+	private double toTime = Double.POSITIVE_INFINITY;
 
 	public EventsReaderJson(final EventsManager events) {
 		this.events = events;
@@ -95,6 +99,21 @@ public final class EventsReaderJson {
 		this.customEventMappers.put(eventType, cem);
 	}
 
+	/**
+	 * Only creates events of the given types.  <code>null</code> creates all events.
+	 */
+	public void setEventTypes(Set<String> eventTypes) {
+		this.eventTypes = eventTypes;
+	}
+
+	/**
+	 * Only creates events with fromTime &lt;= time &lt;= toTime.
+	 */
+	public void setTimeWindow(double fromTime, double toTime) {
+		this.fromTime = fromTime;
+		this.toTime = toTime;
+	}
+
 	void parse(final String filename) throws UncheckedIOException {
 		parse(IOUtils.getBufferedReader(filename), filename);
 	}
@@ -144,6 +163,9 @@ public final class EventsReaderJson {
 	private void parseEvent(JsonNode o) {
 		String eventType = o.get("type").asText();
 		double time = o.get("time").asDouble();
+		if (time < this.fromTime || time > this.toTime || !MatsimEventsReader.isWantedEventType(this.eventTypes, eventType)) {
+			return;
+		}
 
 		// === material related to wait2link below here ===
 		if (LinkLeaveEvent.EVENT_TYPE.equals(eventType)) {
@@ -185,7 +207,7 @@ public final class EventsReaderJson {
 					Id.create(o.get(HasPersonId.ATTRIBUTE_PERSON).asText(), Person.class),
 					Id.create(o.get(VehicleEntersTrafficEvent.ATTRIBUTE_LINK).asText(), Link.class),
 					vehicleId,
-					o.get(VehicleEntersTrafficEvent.ATTRIBUTE_NETWORKMODE).asText(),
+					o.path(VehicleEntersTrafficEvent.ATTRIBUTE_NETWORKMODE).asText(null),
 					position
 					));
 		} else if (VehicleLeavesTrafficEvent.EVENT_TYPE.equals(eventType)) {
@@ -0,0 +1,434 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * EventsReaderXMLParallel.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.events;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.MatsimEventsReader.CustomEventMapper;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.core.utils.io.UncheckedIOException;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Reads events xml files with several threads.
+ * <p>
+ * One thread reads and decompresses the file and splits it into blocks that end after a complete element or comment,
+ * so elements may span several lines.  The blocks are tokenized
+ * and turned into events by the other threads.  The events are passed to the events manager in their original order,
+ * from the calling thread.  The events are created by {@link EventsReaderXMLv1}, so they are the same as with the
+ * usual reader, including custom events.  With several threads, custom event mappers have to be thread-safe.
+ * <p>
+ * Instead of a full xml parser, a simple tokenizer looks for the <code>event</code> elements and their attributes.
+ * There is no validation, and elements other than <code>event</code> are ignored.  An element, attribute value or
+ * comment that is not terminated, e.g. in a truncated file, leads to an exception.
+ */
+public final class EventsReaderXMLParallel {
+
+	private final static Logger log = LogManager.getLogger(EventsReaderXMLParallel.class);
+
+	private static final int BLOCK_SIZE = 1 << 20;
+
+	private final EventsManager events;
+	private final int numberOfThreads;
+	private final int blockSize;
+	private final Map<String, CustomEventMapper> customEventMappers = new HashMap<>();
+	private Set<String> eventTypes = null;
+	private double fromTime = Double.NEGATIVE_INFINITY;
+	private double toTime = Double.POSITIVE_INFINITY;
+
+	/**
+	 * @param numberOfThreads number of threads that turn the text into events, in addition to the reading thread
+	 */
+	public EventsReaderXMLParallel(final EventsManager events, final int numberOfThreads) {
+		this(events, numberOfThreads, BLOCK_SIZE);
+	}
+
+	/*package (for a test)*/ EventsReaderXMLParallel(final EventsManager events, final int numberOfThreads, final int blockSize) {
+		if (numberOfThreads < 1) {
+			throw new IllegalArgumentException("numberOfThreads must be strictly positive, got " + numberOfThreads);
+		}
+		this.events = events;
+		this.numberOfThreads = numberOfThreads;
+		this.blockSize = blockSize;
+	}
+
+	public void addCustomEventMapper(String eventType, CustomEventMapper cem) {
+		this.customEventMappers.put(eventType, cem);
+	}
+
+	/**
+	 * Only creates events of the given types.  Other events are skipped as soon as their type is known.
+	 * <code>null</code> creates all events.
+	 */
+	public void setEventTypes(Set<String> eventTypes) {
+		this.eventTypes = eventTypes;
+	}
+
+	/**
+	 * Only creates events with fromTime &lt;= time &lt;= toTime.
+	 */
+	public void setTimeWindow(double fromTime, double toTime) {
+		this.fromTime = fromTime;
+		this.toTime = toTime;
+	}
+
+	public void readFile(final String filename) {
+		readURL(IOUtils.resolveFileOrResource(filename));
+	}
+
+	public void readURL(final URL url) {
+		log.info("starting to read events from " + url + " with " + this.numberOfThreads + " threads.");
+		try (BufferedReader reader = IOUtils.getBufferedReader(url)) {
+			read(reader);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public void readStream(final InputStream stream) {
+		read(new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8)));
+	}
+
+	private void read(final Reader reader) {
+		ExecutorService executor = Executors.newFixedThreadPool(this.numberOfThreads);
+		// the blocks being tokenized, in the order of the file.  A block without events array marks the end of the file.
+		BlockingQueue<Future<EventArray>> blocks = new ArrayBlockingQueue<>(4 * this.numberOfThreads);
+		Thread readerThread = new Thread(() -> split(reader, executor, blocks), "EventsReaderXMLParallel");
+		readerThread.setDaemon(true);
+		readerThread.start();
+		try {
+			while (true) {
+				EventArray events = blocks.take().get();
+				if (events == null) {
+					break;
+				}
+				this.events.processEvents(events);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException("Exception while reading events", e.getCause());
+		} finally {
+			readerThread.interrupt();
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Reads the text and passes blocks of complete elements to the executor.  Runs on its own thread.
+	 */
+	private void split(Reader reader, ExecutorService executor, BlockingQueue<Future<EventArray>> blocks) {
+		try {
+			char[] buffer = new char[this.blockSize];
+			int length = 0;
+			while (true) {
+				if (length == buffer.length) {
+					// no complete element in the whole buffer
+					buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+				}
+				int read = reader.read(buffer, length, buffer.length - length);
+				if (read < 0) {
+					if (length > 0) {
+						char[] block = Arrays.copyOf(buffer, length);
+						blocks.put(executor.submit(() -> tokenize(block, block.length)));
+					}
+					break;
+				}
+				length += read;
+				if (length < buffer.length) {
+					continue;
+				}
+				int end = findBlockEnd(buffer, length);
+				if (end == 0) {
+					continue;
+				}
+				char[] block = buffer;
+				int blockLength = end;
+				blocks.put(executor.submit(() -> tokenize(block, blockLength)));
+				buffer = new char[Math.max(this.blockSize, length - end)];
+				System.arraycopy(block, end, buffer, 0, length - end);
+				length -= end;
+			}
+			blocks.put(CompletableFuture.completedFuture(null));
+		} catch (InterruptedException e) {
+			// the reading was aborted
+		} catch (IOException | RuntimeException e) {
+			CompletableFuture<EventArray> failed = new CompletableFuture<>();
+			failed.completeExceptionally(e instanceof IOException ? new UncheckedIOException((IOException) e) : e);
+			try {
+				blocks.put(failed);
+			} catch (InterruptedException ie) {
+				// the reading was aborted
+			}
+		}
+	}
+
+	/**
+	 * @return the position after the last element or comment that is complete in the buffer, or 0 if there is none
+	 */
+	private static int findBlockEnd(char[] buffer, int length) {
+		int end = 0;
+		int pos = 0;
+		while (true) {
+			pos = indexOf(buffer, '<', pos, length);
+			if (pos < 0) {
+				return end;
+			}
+			if (startsWith(buffer, pos + 1, length, "!--")) {
+				pos = indexOf(buffer, "-->", pos + 4, length);
+			} else {
+				pos = skipElement(buffer, pos + 1, length);
+				pos = pos < length ? pos + 1 : -1;
+			}
+			if (pos < 0) {
+				return end;
+			}
+			end = pos;
+		}
+	}
+
+	/**
+	 * Creates the events of all <code>event</code> elements in the block.
+	 */
+	private EventArray tokenize(char[] block, int length) {
+		EventArray result = new EventArray(Math.max(16, length / 100));
+		EventsReaderXMLv1 eventsFactory = new EventsReaderXMLv1(new EventArrayEventsManager(result));
+		this.customEventMappers.forEach(eventsFactory::addCustomEventMapper);
+		eventsFactory.setEventTypes(this.eventTypes);
+		eventsFactory.setTimeWindow(this.fromTime, this.toTime);
+		AttributesImpl atts = new AttributesImpl();
+		StringBuilder value = new StringBuilder();
+
+		int pos = 0;
+		while (true) {
+			pos = indexOf(block, '<', pos, length);
+			if (pos < 0) {
+				break;
+			}
+			int elementStart = pos;
+			pos++;
+			if (startsWith(block, pos, length, "!--")) {
+				pos = indexOf(block, "-->", pos, length);
+				if (pos < 0) {
+					throw unterminated("comment", block, elementStart, length);
+				}
+				continue;
+			}
+			if (!startsWith(block, pos, length, EventsReaderXMLv1.EVENT) || pos + 5 >= length
+					|| !(Character.isWhitespace(block[pos + 5]) || block[pos + 5] == '/' || block[pos + 5] == '>')) {
+				// some other element
+				pos = skipElement(block, pos, length);
+				if (pos >= length) {
+					throw unterminated("element", block, elementStart, length);
+				}
+				continue;
+			}
+
+			// parse the attributes of the event
+			pos += 5;
+			atts.clear();
+			String time = null;
+			String type = null;
+			boolean wanted = true;
+			while (true) {
+				while (pos < length && Character.isWhitespace(block[pos])) {
+					pos++;
+				}
+				if (pos >= length) {
+					throw unterminated("element", block, elementStart, length);
+				}
+				if (block[pos] == '/' || block[pos] == '>') {
+					break;
+				}
+				int nameStart = pos;
+				while (pos < length && block[pos] != '=' && !Character.isWhitespace(block[pos])) {
+					pos++;
+				}
+				String name = new String(block, nameStart, pos - nameStart);
+				while (pos < length && block[pos] != '"' && block[pos] != '\'') {
+					pos++;
+				}
+				if (pos >= length) {
+					throw unterminated("element", block, elementStart, length);
+				}
+				char quote = block[pos++];
+				value.setLength(0);
+				while (pos < length && block[pos] != quote) {
+					char ch = block[pos++];
+					if (ch == '&') {
+						pos = decodeReference(block, pos, length, value);
+					} else if (ch == '\n' || ch == '\r' || ch == '\t') {
+						// attribute value normalization as done by xml parsers
+						value.append(' ');
+					} else {
+						value.append(ch);
+					}
+				}
+				if (pos >= length) {
+					throw unterminated("attribute value", block, elementStart, length);
+				}
+				pos++;
+				atts.addAttribute("", name, name, "CDATA", value.toString());
+
+				// skip the rest of unwanted events as soon as their time and type are known, usually the first attributes
+				if (time == null && name.equals("time")) {
+					time = atts.getValue(atts.getLength() - 1);
+				} else if (type == null && name.equals("type")) {
+					type = atts.getValue(atts.getLength() - 1);
+				} else {
+					continue;
+				}
+				if (time != null && type != null && !eventsFactory.isWanted(type, Double.parseDouble(time))) {
+					wanted = false;
+					pos = skipElement(block, pos, length);
+					if (pos >= length) {
+						throw unterminated("element", block, elementStart, length);
+					}
+					break;
+				}
+			}
+			if (wanted) {
+				eventsFactory.startTag(EventsReaderXMLv1.EVENT, atts, null);
+			}
+		}
+		return result;
+	}
+
+	private static IllegalArgumentException unterminated(String what, char[] block, int elementStart, int length) {
+		return new IllegalArgumentException("Unterminated " + what + " in events file: " + new String(block, elementStart, Math.min(length - elementStart, 200)));
+	}
+
+	/**
+	 * @return the position of the '&gt;' that ends the current element, or <code>length</code> if it is not terminated
+	 */
+	private static int skipElement(char[] block, int pos, int length) {
+		char quote = 0;
+		for (; pos < length; pos++) {
+			char ch = block[pos];
+			if (quote != 0) {
+				if (ch == quote) {
+					quote = 0;
+				}
+			} else if (ch == '"' || ch == '\'') {
+				quote = ch;
+			} else if (ch == '>') {
+				break;
+			}
+		}
+		return pos;
+	}
+
+	/**
+	 * Appends the character of the reference starting after the '&amp;' at pos.
+	 *
+	 * @return the position after the reference
+	 */
+	private static int decodeReference(char[] block, int pos, int length, StringBuilder value) {
+		int end = indexOf(block, ';', pos, length);
+		if (end < 0) {
+			throw new IllegalArgumentException("Unterminated character reference in events file.");
+		}
+		String reference = new String(block, pos, end - pos);
+		switch (reference) {
+			case "lt":
+				value.append('<');
+				break;
+			case "gt":
+				value.append('>');
+				break;
+			case "amp":
+				value.append('&');
+				break;
+			case "quot":
+				value.append('"');
+				break;
+			case "apos":
+				value.append('\'');
+				break;
+			default:
+				if (reference.startsWith("#x")) {
+					value.appendCodePoint(Integer.parseInt(reference.substring(2), 16));
+				} else if (reference.startsWith("#")) {
+					value.appendCodePoint(Integer.parseInt(reference.substring(1)));
+				} else {
+					throw new IllegalArgumentException("Unknown entity in events file: &" + reference + ";");
+				}
+		}
+		return end + 1;
+	}
+
+	private static int indexOf(char[] block, char ch, int from, int length) {
+		for (int i = from; i < length; i++) {
+			if (block[i] == ch) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the position after the first occurrence of the string, or -1
+	 */
+	private static int indexOf(char[] block, String s, int from, int length) {
+		for (int i = from; i + s.length() <= length; i++) {
+			if (startsWith(block, i, length, s)) {
+				return i + s.length();
+			}
+		}
+		return -1;
+	}
+
+	private static boolean startsWith(char[] block, int pos, int length, String s) {
+		if (pos + s.length() > length) {
+			return false;
+		}
+		for (int i = 0; i < s.length(); i++) {
+			if (block[pos + i] != s.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
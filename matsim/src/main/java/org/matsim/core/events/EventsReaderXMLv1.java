@@ -56,6 +56,7 @@ import org.xml.sax.SAXException;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
 
 public final class EventsReaderXMLv1 extends MatsimXmlEventsParser {
@@ -64,11 +65,37 @@ public final class EventsReaderXMLv1 extends MatsimXmlEventsParser {
 
 	private final EventsManager events;
 	private final Map<String, MatsimEventsReader.CustomEventMapper> customEventMappers = new HashMap<>();
+	private Set<String> eventTypes = null;
+	private double fromTime = Double.NEGATIVE_INFINITY;
+	private double toTime = Double.POSITIVE_INFINITY;
 
 	public EventsReaderXMLv1(final EventsManager events) {
 		this.events = events;
 		this.setValidating(false);// events-files have no DTD, thus they cannot validate
 	}
+
+	/**
+	 * Only creates events of the given types, see {@link org.matsim.api.core.v01.events.Event#getEventType()}.
+	 * Other events are skipped before any ids or attributes are created.  <code>null</code> creates all events.
+	 */
+	public void setEventTypes(Set<String> eventTypes) {
+		this.eventTypes = eventTypes;
+	}
+
+	/**
+	 * Only creates events with fromTime &lt;= time &lt;= toTime.
+	 */
+	public void setTimeWindow(double fromTime, double toTime) {
+		this.fromTime = fromTime;
+		this.toTime = toTime;
+	}
+
+	/*package*/ boolean isWanted(String eventType, double time) {
+		if (time < this.fromTime || time > this.toTime) {
+			return false;
+		}
+		return MatsimEventsReader.isWantedEventType(this.eventTypes, eventType);
+	}
 	@Override
 	public void addCustomEventMapper(String eventType, MatsimEventsReader.CustomEventMapper cem) {
 		customEventMappers.put(eventType, cem);
@@ -98,6 +125,9 @@ public final class EventsReaderXMLv1 extends MatsimXmlEventsParser {
 	private void startEvent(final Attributes atts) {
 		double time = Double.parseDouble(atts.getValue("time"));
 		String eventType = atts.getValue("type");
+		if (!isWanted(eventType, time)) {
+			return;
+		}
 
 		// === material related to wait2link below here ===
 		if (LinkLeaveEvent.EVENT_TYPE.equals(eventType)) {
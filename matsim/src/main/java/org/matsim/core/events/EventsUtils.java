@@ -21,6 +21,8 @@
 
 package org.matsim.core.events;
 
+import java.util.Set;
+
 import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.config.Config;
 import org.matsim.core.controler.Injector;
@@ -58,6 +60,10 @@ public final class EventsUtils {
 			return events;
 		} else if (events instanceof ParallelEventsManager) {
 			return events;
+		} else if (events instanceof RingBufferEventsManager) {
+			return events;
+		} else if (events instanceof PrimitiveEventsManager) {
+			return events;
 		}
 		else if (events instanceof SynchronizedEventsManagerImpl) {
 			return events;
@@ -70,6 +76,19 @@ public final class EventsUtils {
 		new MatsimEventsReader(events).readFile(filename) ;
 	}
 
+	/**
+	 * Reads only the events of the given types within the time window, skipping all other events as early as possible.
+	 *
+	 * @param eventTypes the wanted event types, see {@link org.matsim.api.core.v01.events.Event#getEventType()}, or
+	 *                   <code>null</code> for all types
+	 */
+	public static void readEvents( EventsManager events, String filename, Set<String> eventTypes, double fromTime, double toTime ) {
+		MatsimEventsReader reader = new MatsimEventsReader(events);
+		reader.setEventTypes(eventTypes);
+		reader.setTimeWindow(fromTime, toTime);
+		reader.readFile(filename);
+	}
+
 	public static EventsFileComparator.Result compareEventsFiles( String filename1, String filename2 ) {
 		EventsFileComparator.Result result = EventsFileComparator.compare( filename1, filename2 );
 		return result ;
@@ -0,0 +1,48 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * IdleStrategy.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.events;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Waiting strategy of the ring buffer based events managers, used by producers waiting for free slots as well as by
+ * the handler threads waiting for new events.
+ */
+final class IdleStrategy {
+
+	private IdleStrategy() {
+	}
+
+	/**
+	 * Spins first, as the other side usually catches up quickly, and only then starts to sleep.
+	 *
+	 * @param idleCount number of times the caller has already waited without progress
+	 */
+	static void idle(int idleCount) {
+		if (idleCount < 100) {
+			Thread.onSpinWait();
+		} else if (idleCount < 200) {
+			Thread.yield();
+		} else {
+			LockSupport.parkNanos(50_000);
+		}
+	}
+}
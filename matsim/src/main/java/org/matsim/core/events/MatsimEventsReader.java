@@ -25,12 +25,15 @@ import java.net.URL;
 import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.matsim.api.core.v01.events.Event;
 import org.matsim.api.core.v01.events.GenericEvent;
+import org.matsim.api.core.v01.events.PersonMoneyEvent;
+import org.matsim.api.core.v01.events.VehicleEntersTrafficEvent;
 import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.api.internal.MatsimReader;
 import org.matsim.core.config.groups.ControlerConfigGroup;
@@ -50,6 +53,10 @@ public final class MatsimEventsReader implements MatsimReader {
 	private final EventsManager events;
 
 	private final Map<String, CustomEventMapper> customEventMappers = new LinkedHashMap<>();
+	private int numberOfThreads = 1;
+	private Set<String> eventTypes = null;
+	private double fromTime = Double.NEGATIVE_INFINITY;
+	private double toTime = Double.POSITIVE_INFINITY;
 
 	public interface CustomEventMapper {
 		Event apply(GenericEvent event);
@@ -68,6 +75,51 @@ public final class MatsimEventsReader implements MatsimReader {
 		this.events = events;
 	}
 
+	/**
+	 * Sets the number of threads used to read the events.  The events are still passed to the events manager in their
+	 * original order, from the calling thread.
+	 *
+	 * @see EventsReaderXMLParallel
+	 * @see EventsReaderBinary
+	 */
+	public void setNumberOfThreads(int numberOfThreads) {
+		this.numberOfThreads = numberOfThreads;
+	}
+
+	/**
+	 * Only passes on events of the given types, see {@link Event#getEventType()}.  The readers skip other events as
+	 * early as possible, before creating their ids and attributes.  <code>null</code> passes on all events.
+	 */
+	public void setEventTypes(Set<String> eventTypes) {
+		this.eventTypes = eventTypes;
+	}
+
+	/**
+	 * Only passes on events with fromTime &lt;= time &lt;= toTime.
+	 */
+	public void setTimeWindow(double fromTime, double toTime) {
+		this.fromTime = fromTime;
+		this.toTime = toTime;
+	}
+
+	/**
+	 * Decides if an event of the given type, as written in the file, passes the filter set with
+	 * {@link #setEventTypes(Set)}.  Old files contain events under type names that are read as events of the current
+	 * types, e.g. <code>wait2link</code> as {@link VehicleEntersTrafficEvent}, so these pass if the current type is wanted.
+	 */
+	/*package*/ static boolean isWantedEventType(Set<String> eventTypes, String eventType) {
+		if (eventTypes == null || eventTypes.contains(eventType)) {
+			return true;
+		}
+		if ("wait2link".equals(eventType)) {
+			return eventTypes.contains(VehicleEntersTrafficEvent.EVENT_TYPE);
+		}
+		if ("agentMoney".equals(eventType)) {
+			return eventTypes.contains(PersonMoneyEvent.EVENT_TYPE);
+		}
+		return false;
+	}
+
 	/**
 	 * Parses the specified events file.
 	 *
@@ -77,11 +129,16 @@ public final class MatsimEventsReader implements MatsimReader {
 	public void readFile(final String filename) {
 		String lcFilename = filename.toLowerCase(Locale.ROOT);
 		if (lcFilename.endsWith(".xml") || lcFilename.endsWith(".xml.gz") || lcFilename.endsWith(".xml.zst") || lcFilename.endsWith(".xml.lz4")) {
-			new XmlEventsReader(this.events, this.customEventMappers).readFile(filename );
+			if (this.numberOfThreads > 1) {
+				createParallelXmlReader().readFile(filename);
+			} else {
+				createXmlReader().readFile(filename );
+			}
 		} else if (lcFilename.endsWith(".ndjson") || lcFilename.endsWith(".ndjson.gz") || lcFilename.endsWith(".ndjson.zst")) {
-			EventsReaderJson reader = new EventsReaderJson(this.events);
-			customEventMappers.forEach(reader::addCustomEventMapper);
+			EventsReaderJson reader = createJsonReader();
 			reader.parse(filename);
+		} else if (lcFilename.endsWith(".bin")) {
+			createBinaryReader().readFile(filename);
 		} else if (lcFilename.endsWith(".txt") || lcFilename.endsWith(".txt.gz")) {
 			throw new RuntimeException("text events are no longer supported. Please use MATSim 0.6.1 or earlier to read text events.");
 		} else {
@@ -91,36 +148,76 @@ public final class MatsimEventsReader implements MatsimReader {
 
 	@Deprecated // use readStream(InputStream, EventsFileFormat)
 	public void readStream(final InputStream stream) {
-		new XmlEventsReader(this.events, this.customEventMappers).parse(stream );
+		createXmlReader().parse(stream );
 	}
 
 	public void readStream(final InputStream stream, final ControlerConfigGroup.EventsFileFormat format) {
 		switch (format) {
 			case xml:
-				new XmlEventsReader(this.events, this.customEventMappers).parse(stream);
+				if (this.numberOfThreads > 1) {
+					createParallelXmlReader().readStream(stream);
+				} else {
+					createXmlReader().parse(stream);
+				}
 				break;
 			case pb:
 				throw new UnsupportedOperationException(
 						"PB (Protobuf) is currently not supported to read from a stream");
 			case json:
-				EventsReaderJson reader = new EventsReaderJson(this.events);
-				customEventMappers.forEach(reader::addCustomEventMapper);
+				EventsReaderJson reader = createJsonReader();
 				reader.parse(stream);
 				break;
+			case binary:
+				createBinaryReader().readStream(stream);
+				break;
 		}
 	}
 
 	@Override
 	public void readURL( final URL url ) {
 		if (url.getFile().contains(".xml")) {
-			new XmlEventsReader( this.events, this.customEventMappers).readURL( url );
+			if (this.numberOfThreads > 1) {
+				createParallelXmlReader().readURL(url);
+			} else {
+				createXmlReader().readURL( url );
+			}
 		} else if (url.getFile().contains(".ndjson")) {
-			EventsReaderJson reader = new EventsReaderJson(this.events);
-			customEventMappers.forEach(reader::addCustomEventMapper);
+			EventsReaderJson reader = createJsonReader();
 			reader.parse(url);
+		} else if (url.getFile().endsWith(".bin")) {
+			createBinaryReader().readURL(url);
 		}
 	}
 
+	private XmlEventsReader createXmlReader() {
+		return new XmlEventsReader(this.events, this.customEventMappers, this.eventTypes, this.fromTime, this.toTime);
+	}
+
+	private EventsReaderXMLParallel createParallelXmlReader() {
+		EventsReaderXMLParallel reader = new EventsReaderXMLParallel(this.events, this.numberOfThreads);
+		customEventMappers.forEach(reader::addCustomEventMapper);
+		reader.setEventTypes(this.eventTypes);
+		reader.setTimeWindow(this.fromTime, this.toTime);
+		return reader;
+	}
+
+	private EventsReaderJson createJsonReader() {
+		EventsReaderJson reader = new EventsReaderJson(this.events);
+		customEventMappers.forEach(reader::addCustomEventMapper);
+		reader.setEventTypes(this.eventTypes);
+		reader.setTimeWindow(this.fromTime, this.toTime);
+		return reader;
+	}
+
+	private EventsReaderBinary createBinaryReader() {
+		EventsReaderBinary reader = new EventsReaderBinary(this.events);
+		customEventMappers.forEach(reader::addCustomEventMapper);
+		reader.setEventTypes(this.eventTypes);
+		reader.setTimeWindow(this.fromTime, this.toTime);
+		reader.setNumberOfThreads(this.numberOfThreads);
+		return reader;
+	}
+
 	private static class XmlEventsReader extends MatsimXmlParser {
 
 		final EventsManager events;
@@ -128,10 +225,16 @@ public final class MatsimEventsReader implements MatsimReader {
 		private MatsimXmlEventsParser delegate = null;
 
 		private final Map<String, CustomEventMapper> map ;
+		private final Set<String> eventTypes;
+		private final double fromTime;
+		private final double toTime;
 
-		private XmlEventsReader( final EventsManager events, Map<String, CustomEventMapper> map ) {
+		private XmlEventsReader( final EventsManager events, Map<String, CustomEventMapper> map, Set<String> eventTypes, double fromTime, double toTime ) {
 			this.events = events;
 			this.map = map;
+			this.eventTypes = eventTypes;
+			this.fromTime = fromTime;
+			this.toTime = toTime;
 			this.setValidating(false); // events-files have no DTD, thus they cannot validate
 			setDoctype("events_v1.dtd"); // manually set a doctype, otherwise delegate would not be initialized
 		}
@@ -162,8 +265,11 @@ public final class MatsimEventsReader implements MatsimReader {
 			super.setDoctype(doctype);
 			// Currently the only events-type is v1
 			if (EVENTS_V1.equals(doctype)) {
-				this.delegate = new EventsReaderXMLv1(this.events);
-				map.forEach(delegate::addCustomEventMapper);
+				EventsReaderXMLv1 reader = new EventsReaderXMLv1(this.events);
+				map.forEach(reader::addCustomEventMapper);
+				reader.setEventTypes(this.eventTypes);
+				reader.setTimeWindow(this.fromTime, this.toTime);
+				this.delegate = reader;
 				log.info("using events_v1-reader.");
 			} else {
 				throw new IllegalArgumentException("Doctype \"" + doctype + "\" not known.");
@@ -21,8 +21,13 @@
 package org.matsim.core.events;
 
 import java.lang.Thread.UncaughtExceptionHandler;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -36,6 +41,13 @@ import org.matsim.core.config.Config;
 import org.matsim.core.events.handler.EventHandler;
 
 /**
+ * Passes the events to the handlers on several threads.  Either each handler gets its own thread, or the handlers are
+ * distributed over a given number of threads.
+ * <p>
+ * In the latter case, the time each handler spends on the events is sampled.  In the following iterations, the handlers
+ * are distributed such that all threads get about the same work, starting with the most expensive handler.  In both
+ * cases, an event is only passed to the threads that have a handler for it.
+ *
  * @author cdobler
  */
 public final class ParallelEventsManager implements EventsManager {
@@ -45,6 +57,8 @@ public final class ParallelEventsManager implements EventsManager {
 	private Distributor distributor;
 	private ArrayList<EventsManager> eventsManagers = new ArrayList<>();
 	private final List<EventHandler> eventsHandlers;
+	// sampled processing time of each handler in the last iteration, used to balance the handlers over the threads
+	private final Map<EventHandler, Long> handlerCosts = new IdentityHashMap<>();
 	private final boolean oneThreadPerHandler;
 	private final boolean syncOnTimeSteps;
 	private final int numOfThreads;
@@ -88,29 +102,27 @@ public final class ParallelEventsManager implements EventsManager {
 	}
 
 	private void initialize() {
-		int numHandlers = oneThreadPerHandler ? this.eventsHandlers.size() : Math.min(this.numOfThreads, this.eventsHandlers.size());
 		this.distributor = new Distributor(new ArrayList<ProcessEventsRunnable>(), eventQueue);
-		this.eventsManagers = new ArrayList<>(numHandlers);
+		this.eventsManagers = new ArrayList<>();
+		List<List<EventHandler>> handlersOfThreads = new ArrayList<>();
 
 		// create event managers
 		if (this.oneThreadPerHandler) {
 			for (int i = 0; i < this.eventsHandlers.size(); i++) {
 				this.eventsManagers.add(new SingleHandlerEventsManager(this.eventsHandlers.get(i)));
+				handlersOfThreads.add(List.of(this.eventsHandlers.get(i)));
 			}
 		} else {
-			// TODO - check if this slow path is correct
-			for (int i = 0; i < this.numOfThreads; i++) {
-				this.eventsManagers.add(new EventsManagerImpl());
-			}
-			for (int i = 0; i < this.eventsHandlers.size(); i++) {
-				this.eventsManagers.get(i % numOfThreads).addHandler(this.eventsHandlers.get(i));
+			handlersOfThreads = balanceHandlers(this.eventsHandlers, this.handlerCosts, this.numOfThreads);
+			for (List<EventHandler> handlers : handlersOfThreads) {
+				this.eventsManagers.add(new HandlerGroupEventsManager(handlers));
 			}
 		}
 
 		// initialize runnables (threads that will execute the event managers)
 		for (int i = 0; i < this.eventsManagers.size(); i++) {
 			EventsManager eventsManager = this.eventsManagers.get(i);
-			ProcessEventsRunnable processEventsRunnable = new ProcessEventsRunnable(eventsManager, distributor);
+			ProcessEventsRunnable processEventsRunnable = new ProcessEventsRunnable(eventsManager, handlersOfThreads.get(i), distributor);
 			distributor.runnables.add(processEventsRunnable);
 			processEventsRunnable.setDaemon(true);
 			processEventsRunnable.setUncaughtExceptionHandler(this.uncaughtExceptionHandler);
@@ -183,6 +195,11 @@ public final class ParallelEventsManager implements EventsManager {
 	public void removeHandler(final EventHandler handler) {
 		// this will be used the next time we start an iteration
 		this.eventsHandlers.remove(handler);
+		this.handlerCosts.remove(handler);
+	}
+
+	/*package (for a test)*/ Map<EventHandler, Long> getHandlerCosts() {
+		return this.handlerCosts;
 	}
 
 	@Override
@@ -213,8 +230,13 @@ public final class ParallelEventsManager implements EventsManager {
 	public synchronized void finishProcessing() {
 		flush();
 
+		// only keep the costs of the current handlers, so removed handlers can be garbage collected
+		this.handlerCosts.clear();
 		for (EventsManager eventsManager : this.eventsManagers) {
 			eventsManager.finishProcessing();
+			if (eventsManager instanceof HandlerGroupEventsManager) {
+				((HandlerGroupEventsManager) eventsManager).collectCosts(this.handlerCosts);
+			}
 		}
 
 		teardown();
@@ -246,10 +268,81 @@ public final class ParallelEventsManager implements EventsManager {
 		}
 	}
 
+	/**
+	 * Distributes the handlers over at most numberOfThreads threads.  Handlers with known costs are assigned first, from
+	 * the most to the least expensive, each to the thread with the lowest total cost so far (longest processing time
+	 * first).  Handlers without known costs, e.g. in the first iteration, are assumed to be of average cost, so
+	 * without any known costs, the handlers are distributed evenly.
+	 */
+	static List<List<EventHandler>> balanceHandlers(List<EventHandler> handlers, Map<EventHandler, Long> costs, int numberOfThreads) {
+		int threads = Math.min(numberOfThreads, handlers.size());
+		List<List<EventHandler>> handlersOfThreads = new ArrayList<>(threads);
+		for (int i = 0; i < threads; i++) {
+			handlersOfThreads.add(new ArrayList<>());
+		}
+		if (threads == 0) {
+			return handlersOfThreads;
+		}
+
+		long knownCosts = 0;
+		int knownHandlers = 0;
+		for (EventHandler handler : handlers) {
+			Long cost = costs.get(handler);
+			if (cost != null) {
+				knownCosts += cost;
+				knownHandlers++;
+			}
+		}
+		long averageCost = knownHandlers == 0 ? 1 : Math.max(1, knownCosts / knownHandlers);
+		Map<EventHandler, Long> handlerCosts = new IdentityHashMap<>();
+		for (EventHandler handler : handlers) {
+			handlerCosts.put(handler, Math.max(1, costs.getOrDefault(handler, averageCost)));
+		}
+
+		// a stable sort keeps the order of handlers with the same cost, so equal handlers are assigned round robin
+		List<EventHandler> sortedHandlers = new ArrayList<>(handlers);
+		sortedHandlers.sort(Comparator.comparingLong(handler -> -handlerCosts.get(handler)));
+		long[] threadCosts = new long[threads];
+		for (EventHandler handler : sortedHandlers) {
+			int cheapestThread = 0;
+			for (int i = 1; i < threads; i++) {
+				if (threadCosts[i] < threadCosts[cheapestThread]) {
+					cheapestThread = i;
+				}
+			}
+			handlersOfThreads.get(cheapestThread).add(handler);
+			threadCosts[cheapestThread] += handlerCosts.get(handler);
+		}
+
+		if (knownHandlers > 0) {
+			for (int i = 0; i < threads; i++) {
+				log.info(String.format("events handler thread %d: estimated cost %d ms, handlers %s", i, threadCosts[i] / 1_000_000, handlersOfThreads.get(i)));
+			}
+		}
+		return handlersOfThreads;
+	}
+
+	/**
+	 * @return whether the handler has a handleEvent method that accepts events of the given class.
+	 */
+	static boolean handlesEventClass(EventHandler handler, Class<?> eventClass) {
+		for (Method method : handler.getClass().getMethods()) {
+			if (method.getName().equals("handleEvent") && method.getParameterCount() == 1
+					&& method.getParameterTypes()[0].isAssignableFrom(eventClass)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	private class Distributor extends Thread {
 
 		private final ArrayList<ProcessEventsRunnable> runnables;
 		private final BlockingQueue<EventArray> eventQueue;
+		// for each event class, whether each runnable has a handler for it
+		private final Map<Class<? extends Event>, boolean[]> routes = new HashMap<>();
+		// events not yet passed on, per runnable
+		private EventArray[] buffers;
 
 		// When set to true, the distributor will process all events until all events in the event manager are processed.
 		// This is used when the simulation needs to sync with event processing and make sure there are no unprocessed
@@ -270,9 +363,62 @@ public final class ParallelEventsManager implements EventsManager {
 			}
 		}
 
+		private boolean[] getRoutes(Class<? extends Event> eventClass) {
+			boolean[] routes = this.routes.get(eventClass);
+			if (routes == null) {
+				routes = new boolean[this.runnables.size()];
+				for (int i = 0; i < routes.length; i++) {
+					routes[i] = this.runnables.get(i).handles(eventClass);
+				}
+				this.routes.put(eventClass, routes);
+			}
+			return routes;
+		}
+
+		/**
+		 * Adds the event to the buffers of the runnables that have a handler for it.  Full buffers are passed on.
+		 */
+		private void route(Event event) {
+			boolean[] routes = getRoutes(event.getClass());
+			for (int i = 0; i < routes.length; i++) {
+				if (routes[i]) {
+					this.buffers[i].add(event);
+					if (this.buffers[i].size() == eventsArraySize) {
+						this.runnables.get(i).eventsQueue.add(this.buffers[i]);
+						this.buffers[i] = new EventArray(eventsArraySize);
+					}
+				}
+			}
+		}
+
+		private void distributeBuffers() {
+			for (int i = 0; i < this.buffers.length; i++) {
+				if (this.buffers[i].size() > 0) {
+					this.runnables.get(i).eventsQueue.add(this.buffers[i]);
+					this.buffers[i] = new EventArray(eventsArraySize);
+				}
+			}
+		}
+
+		/**
+		 * Passes the array as it is to all runnables that have a handler for at least one of its events.
+		 */
 		private void distribute(EventArray events) {
-			for (ProcessEventsRunnable runnable : this.runnables) {
-				runnable.eventsQueue.add(events);
+			boolean[] needed = new boolean[this.runnables.size()];
+			int neededCount = 0;
+			for (int j = 0; j < events.size() && neededCount < needed.length; j++) {
+				boolean[] routes = getRoutes(events.get(j).getClass());
+				for (int i = 0; i < routes.length; i++) {
+					if (routes[i] && !needed[i]) {
+						needed[i] = true;
+						neededCount++;
+					}
+				}
+			}
+			for (int i = 0; i < needed.length; i++) {
+				if (needed[i]) {
+					this.runnables.get(i).eventsQueue.add(events);
+				}
 			}
 		}
 
@@ -280,7 +426,10 @@ public final class ParallelEventsManager implements EventsManager {
 		@Override
 		public final void run() {
 			try {
-				EventArray events = new EventArray(eventsArraySize);
+				this.buffers = new EventArray[this.runnables.size()];
+				for (int i = 0; i < this.buffers.length; i++) {
+					this.buffers[i] = new EventArray(eventsArraySize);
+				}
 				while (true) {
 					EventArray earray = this.eventQueue.poll(50, TimeUnit.MICROSECONDS);
 					if (earray == null) {
@@ -288,10 +437,7 @@ public final class ParallelEventsManager implements EventsManager {
 							// check if we can finish the flush
 							if (shouldFlush) {
 								// distribute missing events
-								if (events.size() > 0) {
-									distribute(events);
-									events = new EventArray(eventsArraySize);
-								}
+								distributeBuffers();
 
 								// We'll ask the ProcessEventsRunnables to flush
 								for (ProcessEventsRunnable runnable : this.runnables)
@@ -320,23 +466,18 @@ public final class ParallelEventsManager implements EventsManager {
 					// this is an optimization, if we receive a large buffer, avoid copying it and send it directly.
 					if (earray.size() >= eventsArraySize) {
 						// make sure we don't miss events already buffered
-						if (events.size() > 0) {
-							distribute(events);
-							events = new EventArray(eventsArraySize);
-						}
+						distributeBuffers();
 						// send newly received events
 						distribute(earray);
 					}
 					// this is the non-optimized path, where we receive small number of events at a time
 					else {
 						for (int i = 0; i < earray.size(); i++) {
-							Event event = earray.get(i);
-							events.add(event);
-							// if the buffer is full or if we need to flush
-							if (events.size() == eventsArraySize || shouldFlush) {
-								distribute(events);
-								events = new EventArray(eventsArraySize);
-							}
+							route(earray.get(i));
+						}
+						// if we need to flush
+						if (shouldFlush) {
+							distributeBuffers();
 						}
 					}
 				}
@@ -350,15 +491,26 @@ public final class ParallelEventsManager implements EventsManager {
 
 		private final Distributor distributor;
 		private final EventsManager eventsManager;
+		private final List<EventHandler> handlers;
 		private final BlockingQueue<EventArray> eventsQueue;
 		private boolean flush = false;
 
-		public ProcessEventsRunnable(EventsManager eventsManager, Distributor distributor) {
+		public ProcessEventsRunnable(EventsManager eventsManager, List<EventHandler> handlers, Distributor distributor) {
 			this.eventsManager = eventsManager;
+			this.handlers = handlers;
 			this.eventsQueue = new LinkedBlockingQueue<>();
 			this.distributor = distributor;
 		}
 
+		boolean handles(Class<? extends Event> eventClass) {
+			for (EventHandler handler : this.handlers) {
+				if (handlesEventClass(handler, eventClass)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
 		public synchronized void flush() {
 			flush = true;
 		}
@@ -395,6 +547,91 @@ public final class ParallelEventsManager implements EventsManager {
 		}
 	}
 
+	/**
+	 * Passes the events to a group of handlers that share a thread, and samples the time each handler needs.
+	 */
+	private static final class HandlerGroupEventsManager implements EventsManager {
+
+		// every 16th event is timed
+		private static final int SAMPLING_MASK = 15;
+
+		private final SingleHandlerEventsManager[] eventsManagers;
+		private final long[] sampledNanos;
+		private long counter = 0;
+
+		HandlerGroupEventsManager(List<EventHandler> handlers) {
+			this.eventsManagers = new SingleHandlerEventsManager[handlers.size()];
+			for (int i = 0; i < handlers.size(); i++) {
+				this.eventsManagers[i] = new SingleHandlerEventsManager(handlers.get(i));
+			}
+			this.sampledNanos = new long[handlers.size()];
+		}
+
+		@Override
+		public void processEvent(Event event) {
+			if ((this.counter++ & SAMPLING_MASK) == 0) {
+				for (int i = 0; i < this.eventsManagers.length; i++) {
+					long start = System.nanoTime();
+					this.eventsManagers[i].processEvent(event);
+					this.sampledNanos[i] += System.nanoTime() - start;
+				}
+			} else {
+				for (SingleHandlerEventsManager eventsManager : this.eventsManagers) {
+					eventsManager.processEvent(event);
+				}
+			}
+		}
+
+		/**
+		 * Stores the estimated processing time of each handler since the last call to initProcessing.
+		 */
+		void collectCosts(Map<EventHandler, Long> costs) {
+			for (int i = 0; i < this.eventsManagers.length; i++) {
+				costs.put(this.eventsManagers[i].getEventHandler(), this.sampledNanos[i] * (SAMPLING_MASK + 1));
+			}
+		}
+
+		@Override
+		public void addHandler(EventHandler handler) {
+			throw new UnsupportedOperationException("The handlers have to be provided upon creation.");
+		}
+
+		@Override
+		public void removeHandler(EventHandler handler) {
+			throw new UnsupportedOperationException("The handlers have to be provided upon creation.");
+		}
+
+		@Override
+		public void resetHandlers(int iteration) {
+			for (SingleHandlerEventsManager eventsManager : this.eventsManagers) {
+				eventsManager.resetHandlers(iteration);
+			}
+		}
+
+		@Override
+		public void initProcessing() {
+			this.counter = 0;
+			for (int i = 0; i < this.eventsManagers.length; i++) {
+				this.sampledNanos[i] = 0;
+				this.eventsManagers[i].initProcessing();
+			}
+		}
+
+		@Override
+		public void afterSimStep(double time) {
+			for (SingleHandlerEventsManager eventsManager : this.eventsManagers) {
+				eventsManager.afterSimStep(time);
+			}
+		}
+
+		@Override
+		public void finishProcessing() {
+			for (SingleHandlerEventsManager eventsManager : this.eventsManagers) {
+				eventsManager.finishProcessing();
+			}
+		}
+	}
+
 	/**
 	 * @author mrieser
 	 */
@@ -0,0 +1,391 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * PrimitiveEventsManager.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.events;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.inject.Inject;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.LinkLeaveEvent;
+import org.matsim.api.core.v01.events.PersonEntersVehicleEvent;
+import org.matsim.api.core.v01.events.PersonLeavesVehicleEvent;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.config.Config;
+import org.matsim.core.events.handler.EventHandler;
+import org.matsim.core.events.handler.PrimitiveEventHandler;
+import org.matsim.vehicles.Vehicle;
+
+/**
+ * An events manager that passes the events through a pre-allocated ring buffer to one handler thread.
+ * <p>
+ * The most frequent core events ({@link LinkEnterEvent}, {@link LinkLeaveEvent}, {@link PersonEntersVehicleEvent} and
+ * {@link PersonLeavesVehicleEvent}) are stored as primitive records (type, time and the indices of their ids), so the
+ * event objects die young on the producer side and are not kept alive in a queue.  Producers that know the indices
+ * can skip the event objects altogether, e.g. with {@link #processLinkEnter(double, int, int)}.  On the handler
+ * thread, the records are passed to {@link PrimitiveEventHandler}s as they are, and only turned into event objects
+ * again if some other handler listens to the event type.  All other events are passed through the ring buffer as
+ * objects.
+ * <p>
+ * Events created by the handlers themselves are handled directly on the handler thread.
+ * <p>
+ * Use it by binding it as events manager, i.e. <code>bindEventsManager().to(PrimitiveEventsManager.class)</code>.
+ */
+public final class PrimitiveEventsManager implements EventsManager {
+
+	private static final Logger log = LogManager.getLogger(PrimitiveEventsManager.class);
+
+	private static final byte OBJECT = 0;
+	private static final byte LINK_ENTER = 1;
+	private static final byte LINK_LEAVE = 2;
+	private static final byte PERSON_ENTERS_VEHICLE = 3;
+	private static final byte PERSON_LEAVES_VEHICLE = 4;
+	// event class of each record type, indexed by type
+	private static final Class<?>[] EVENT_CLASSES = {Event.class, LinkEnterEvent.class, LinkLeaveEvent.class,
+			PersonEntersVehicleEvent.class, PersonLeavesVehicleEvent.class};
+
+	private final boolean syncOnTimeSteps;
+
+	// the ring buffer, one record per slot.  A record with sequence s is stored in slot s & mask.
+	private final int capacity;
+	private final int mask;
+	private final byte[] types;
+	private final double[] times;
+	private final int[] firstIndices;
+	private final int[] secondIndices;
+	private final Event[] objects;
+
+	// producers claim sequences one after the other while holding this lock.
+	private final Object producerLock = new Object();
+	private long nextSequence = 0;
+	// all records up to this sequence are written.
+	private volatile long publishedSequence = -1;
+	// all records up to this sequence are handled, their slots can be reused.
+	private volatile long consumedSequence = -1;
+
+	private final List<EventHandler> handlers = new ArrayList<>();
+	private PrimitiveEventHandler[] primitiveHandlers = new PrimitiveEventHandler[0];
+	// handlers that do not implement PrimitiveEventHandler, for all events
+	private final EventsManagerImpl objectHandlers = new EventsManagerImpl();
+	// handlers that implement PrimitiveEventHandler, for the events that are not passed as primitive records
+	private final EventsManagerImpl objectHandlersOfPrimitiveHandlers = new EventsManagerImpl();
+	// whether records of a type have to be turned into event objects for the objectHandlers, indexed by type
+	private final boolean[] materialize = new boolean[EVENT_CLASSES.length];
+
+	private volatile HandlerThread handlerThread = null;
+	private volatile Throwable exception = null;
+
+	@Inject
+	PrimitiveEventsManager(Config config) {
+		this(config.parallelEventHandling().getSynchronizeOnSimSteps() != null ? config.parallelEventHandling().getSynchronizeOnSimSteps() : true,
+				config.parallelEventHandling().getEventsQueueSize());
+	}
+
+	/**
+	 * @param syncOnTimeSteps whether all events of a time step are handled before the mobsim continues with the next one
+	 * @param capacity number of events the ring buffer can hold, rounded up to the next power of two
+	 */
+	public PrimitiveEventsManager(final boolean syncOnTimeSteps, final int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be strictly positive, got " + capacity);
+		}
+		this.syncOnTimeSteps = syncOnTimeSteps;
+		this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+		this.mask = this.capacity - 1;
+		this.types = new byte[this.capacity];
+		this.times = new double[this.capacity];
+		this.firstIndices = new int[this.capacity];
+		this.secondIndices = new int[this.capacity];
+		this.objects = new Event[this.capacity];
+	}
+
+	@Override
+	public void processEvent(final Event event) {
+		Class<? extends Event> klass = event.getClass();
+		if (klass == LinkEnterEvent.class) {
+			LinkEnterEvent e = (LinkEnterEvent) event;
+			if (e.getLinkId() != null && e.getVehicleId() != null) {
+				publish(LINK_ENTER, e.getTime(), e.getVehicleId().index(), e.getLinkId().index(), null);
+				return;
+			}
+		} else if (klass == LinkLeaveEvent.class) {
+			LinkLeaveEvent e = (LinkLeaveEvent) event;
+			if (e.getLinkId() != null && e.getVehicleId() != null) {
+				publish(LINK_LEAVE, e.getTime(), e.getVehicleId().index(), e.getLinkId().index(), null);
+				return;
+			}
+		} else if (klass == PersonEntersVehicleEvent.class) {
+			PersonEntersVehicleEvent e = (PersonEntersVehicleEvent) event;
+			if (e.getPersonId() != null && e.getVehicleId() != null) {
+				publish(PERSON_ENTERS_VEHICLE, e.getTime(), e.getPersonId().index(), e.getVehicleId().index(), null);
+				return;
+			}
+		} else if (klass == PersonLeavesVehicleEvent.class) {
+			PersonLeavesVehicleEvent e = (PersonLeavesVehicleEvent) event;
+			if (e.getPersonId() != null && e.getVehicleId() != null) {
+				publish(PERSON_LEAVES_VEHICLE, e.getTime(), e.getPersonId().index(), e.getVehicleId().index(), null);
+				return;
+			}
+		}
+		publish(OBJECT, event.getTime(), 0, 0, event);
+	}
+
+	/**
+	 * Same as processing a {@link LinkEnterEvent}, without creating the event object.
+	 */
+	public void processLinkEnter(double time, int vehicleIndex, int linkIndex) {
+		publish(LINK_ENTER, time, vehicleIndex, linkIndex, null);
+	}
+
+	/**
+	 * Same as processing a {@link LinkLeaveEvent}, without creating the event object.
+	 */
+	public void processLinkLeave(double time, int vehicleIndex, int linkIndex) {
+		publish(LINK_LEAVE, time, vehicleIndex, linkIndex, null);
+	}
+
+	/**
+	 * Same as processing a {@link PersonEntersVehicleEvent}, without creating the event object.
+	 */
+	public void processPersonEntersVehicle(double time, int personIndex, int vehicleIndex) {
+		publish(PERSON_ENTERS_VEHICLE, time, personIndex, vehicleIndex, null);
+	}
+
+	/**
+	 * Same as processing a {@link PersonLeavesVehicleEvent}, without creating the event object.
+	 */
+	public void processPersonLeavesVehicle(double time, int personIndex, int vehicleIndex) {
+		publish(PERSON_LEAVES_VEHICLE, time, personIndex, vehicleIndex, null);
+	}
+
+	private void publish(byte type, double time, int firstIndex, int secondIndex, Event object) {
+		HandlerThread handlerThread = this.handlerThread;
+		if (handlerThread == null) {
+			throw new IllegalStateException(".initProcessing() has to be called before processing events!");
+		}
+		if (Thread.currentThread() == handlerThread) {
+			// the handler thread would wait for itself if the ring buffer is full.
+			handle(type, time, firstIndex, secondIndex, object);
+			return;
+		}
+		synchronized (this.producerLock) {
+			long sequence = this.nextSequence;
+			int idleCount = 0;
+			while (sequence - this.consumedSequence > this.capacity) {
+				checkException();
+				IdleStrategy.idle(idleCount++);
+			}
+			int slot = (int) sequence & this.mask;
+			this.types[slot] = type;
+			this.times[slot] = time;
+			this.firstIndices[slot] = firstIndex;
+			this.secondIndices[slot] = secondIndex;
+			this.objects[slot] = object;
+			this.nextSequence = sequence + 1;
+			// the volatile write makes the record visible to the handler thread
+			this.publishedSequence = sequence;
+		}
+	}
+
+	private void handle(byte type, double time, int firstIndex, int secondIndex, Event object) {
+		switch (type) {
+			case LINK_ENTER:
+				for (PrimitiveEventHandler handler : this.primitiveHandlers) {
+					handler.handleLinkEnter(time, firstIndex, secondIndex);
+				}
+				if (this.materialize[type]) {
+					this.objectHandlers.processEvent(new LinkEnterEvent(time, Id.get(firstIndex, Vehicle.class), Id.get(secondIndex, Link.class)));
+				}
+				break;
+			case LINK_LEAVE:
+				for (PrimitiveEventHandler handler : this.primitiveHandlers) {
+					handler.handleLinkLeave(time, firstIndex, secondIndex);
+				}
+				if (this.materialize[type]) {
+					this.objectHandlers.processEvent(new LinkLeaveEvent(time, Id.get(firstIndex, Vehicle.class), Id.get(secondIndex, Link.class)));
+				}
+				break;
+			case PERSON_ENTERS_VEHICLE:
+				for (PrimitiveEventHandler handler : this.primitiveHandlers) {
+					handler.handlePersonEntersVehicle(time, firstIndex, secondIndex);
+				}
+				if (this.materialize[type]) {
+					this.objectHandlers.processEvent(new PersonEntersVehicleEvent(time, Id.get(firstIndex, Person.class), Id.get(secondIndex, Vehicle.class)));
+				}
+				break;
+			case PERSON_LEAVES_VEHICLE:
+				for (PrimitiveEventHandler handler : this.primitiveHandlers) {
+					handler.handlePersonLeavesVehicle(time, firstIndex, secondIndex);
+				}
+				if (this.materialize[type]) {
+					this.objectHandlers.processEvent(new PersonLeavesVehicleEvent(time, Id.get(firstIndex, Person.class), Id.get(secondIndex, Vehicle.class)));
+				}
+				break;
+			default:
+				this.objectHandlers.processEvent(object);
+				this.objectHandlersOfPrimitiveHandlers.processEvent(object);
+		}
+	}
+
+	@Override
+	public void addHandler(final EventHandler handler) {
+		if (this.handlerThread != null) {
+			throw new IllegalStateException("Handlers can not be added after .initProcessing() was called!");
+		}
+		this.handlers.add(handler);
+		if (handler instanceof PrimitiveEventHandler) {
+			this.objectHandlersOfPrimitiveHandlers.addHandler(handler);
+		} else {
+			this.objectHandlers.addHandler(handler);
+		}
+		updateHandlers();
+	}
+
+	@Override
+	public void removeHandler(final EventHandler handler) {
+		if (this.handlers.remove(handler)) {
+			this.objectHandlers.removeHandler(handler);
+			this.objectHandlersOfPrimitiveHandlers.removeHandler(handler);
+			updateHandlers();
+		}
+	}
+
+	private void updateHandlers() {
+		List<PrimitiveEventHandler> primitiveHandlers = new ArrayList<>();
+		for (int type = OBJECT + 1; type < EVENT_CLASSES.length; type++) {
+			this.materialize[type] = false;
+		}
+		for (EventHandler handler : this.handlers) {
+			if (handler instanceof PrimitiveEventHandler) {
+				primitiveHandlers.add((PrimitiveEventHandler) handler);
+			} else {
+				for (int type = OBJECT + 1; type < EVENT_CLASSES.length; type++) {
+					this.materialize[type] |= ParallelEventsManager.handlesEventClass(handler, EVENT_CLASSES[type]);
+				}
+			}
+		}
+		this.primitiveHandlers = primitiveHandlers.toArray(new PrimitiveEventHandler[0]);
+	}
+
+	@Override
+	public void resetHandlers(int iteration) {
+		log.info("resetting Event-Handlers");
+		for (EventHandler handler : this.handlers) {
+			handler.reset(iteration);
+		}
+	}
+
+	@Override
+	public void initProcessing() {
+		this.objectHandlers.initProcessing();
+		this.objectHandlersOfPrimitiveHandlers.initProcessing();
+		this.exception = null;
+		HandlerThread handlerThread = new HandlerThread();
+		handlerThread.setDaemon(true);
+		handlerThread.setName("PrimitiveEventsManager");
+		this.handlerThread = handlerThread;
+		handlerThread.start();
+	}
+
+	@Override
+	public void afterSimStep(double time) {
+		if (this.syncOnTimeSteps) {
+			flush();
+		}
+		checkException();
+	}
+
+	@Override
+	public synchronized void finishProcessing() {
+		HandlerThread handlerThread = this.handlerThread;
+		if (handlerThread != null) {
+			flush();
+			handlerThread.stopped = true;
+			try {
+				handlerThread.join();
+			} catch (InterruptedException e) {
+				throw new RuntimeException("Exception while waiting on join...", e);
+			}
+			this.handlerThread = null;
+		}
+		this.objectHandlers.finishProcessing();
+		this.objectHandlersOfPrimitiveHandlers.finishProcessing();
+		checkException();
+	}
+
+	/**
+	 * Waits until all events published so far are handled.
+	 */
+	public void flush() {
+		long sequence = this.publishedSequence;
+		int idleCount = 0;
+		while (this.consumedSequence < sequence) {
+			checkException();
+			IdleStrategy.idle(idleCount++);
+		}
+	}
+
+	private void checkException() {
+		if (this.exception != null) {
+			throw new RuntimeException("Exception while processing events. Cannot guarantee that all events have been fully processed.", this.exception);
+		}
+	}
+
+	private final class HandlerThread extends Thread {
+
+		private volatile boolean stopped = false;
+
+		@Override
+		public void run() {
+			try {
+				long next = consumedSequence + 1;
+				int idleCount = 0;
+				while (true) {
+					long available = publishedSequence;
+					if (available < next) {
+						if (this.stopped) {
+							return;
+						}
+						IdleStrategy.idle(idleCount++);
+						continue;
+					}
+					idleCount = 0;
+					for (; next <= available; next++) {
+						int slot = (int) next & mask;
+						Event object = objects[slot];
+						objects[slot] = null;
+						handle(types[slot], times[slot], firstIndices[slot], secondIndices[slot], object);
+					}
+					consumedSequence = available;
+				}
+			} catch (Throwable e) {
+				log.error("Exception while processing events.", e);
+				exception = e;
+			}
+		}
+	}
+}
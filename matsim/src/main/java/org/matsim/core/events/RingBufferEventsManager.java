@@ -0,0 +1,363 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * RingBufferEventsManager.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.events;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.inject.Inject;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.groups.ParallelEventHandlingConfigGroup;
+import org.matsim.core.events.handler.EventHandler;
+
+/**
+ * A parallel events manager in the style of the LMAX disruptor: all events are written into one pre-allocated ring
+ * buffer, which is read by all handler threads.
+ * <p>
+ * Producers claim slots of the ring buffer with a single atomic increment and mark them as available once written.
+ * Each handler thread reads the ring buffer at its own cursor, in batches of all the events available so far, and
+ * passes the events to its handlers.  A slot is only reused once all handler threads have passed it, so there are no
+ * queues between the threads and nothing has to be copied.  Since all handler threads read the same sequence, every
+ * handler sees the events in the same order.
+ * <p>
+ * Events created by handlers while handling an event are added to the ring buffer if there is room.  Otherwise, they
+ * are kept aside until the next event is processed from outside, since a handler thread must never wait for itself.
+ * <p>
+ * Handlers are distributed over the threads in the same way as in {@link ParallelEventsManager}.
+ */
+public final class RingBufferEventsManager implements EventsManager {
+
+	private static final Logger log = LogManager.getLogger(RingBufferEventsManager.class);
+
+	private final boolean syncOnTimeSteps;
+	private final boolean oneThreadPerHandler;
+	private final int numberOfThreads;
+
+	// the ring buffer. The event with sequence s is stored in slot s & mask.
+	private final int capacity;
+	private final int mask;
+	private final int indexShift;
+	private final Event[] events;
+	// round (sequence >>> indexShift) of the event written into each slot, -1 if none.  Marks the slot as readable.
+	private final AtomicIntegerArray availableRounds;
+	// next sequence to be claimed
+	private final AtomicLong nextSequence = new AtomicLong(0);
+	// minimum cursor of all handler threads seen by the producers, to avoid reading all cursors for every event
+	private volatile long cachedGatingSequence = -1;
+	// events created by handler threads while the ring buffer was full
+	private final ConcurrentLinkedQueue<Event> pendingEvents = new ConcurrentLinkedQueue<>();
+
+	private final List<EventHandler> eventsHandlers = new ArrayList<>();
+	private volatile HandlerThread[] handlerThreads = null;
+	private volatile Throwable exception = null;
+
+	@Inject
+	RingBufferEventsManager(Config config) {
+		this(config.parallelEventHandling().getSynchronizeOnSimSteps() != null ? config.parallelEventHandling().getSynchronizeOnSimSteps() : true,
+				Boolean.TRUE.equals(config.parallelEventHandling().getOneThreadPerHandler()),
+				getNumberOfThreads(config.parallelEventHandling()),
+				config.parallelEventHandling().getEventsQueueSize());
+	}
+
+	/**
+	 * @param syncOnTimeSteps whether all events of a time step are handled before the mobsim continues with the next one
+	 * @param oneThreadPerHandler whether each handler gets its own thread, otherwise the handlers share numberOfThreads threads
+	 * @param numberOfThreads number of handler threads if not oneThreadPerHandler
+	 * @param capacity number of events the ring buffer can hold, rounded up to the next power of two
+	 */
+	public RingBufferEventsManager(final boolean syncOnTimeSteps, final boolean oneThreadPerHandler, final int numberOfThreads, final int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be strictly positive, got " + capacity);
+		}
+		if (!oneThreadPerHandler && numberOfThreads < 1) {
+			throw new IllegalArgumentException("numberOfThreads must be strictly positive, got " + numberOfThreads);
+		}
+		this.syncOnTimeSteps = syncOnTimeSteps;
+		this.oneThreadPerHandler = oneThreadPerHandler;
+		this.numberOfThreads = numberOfThreads;
+		this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+		this.mask = this.capacity - 1;
+		this.indexShift = Integer.numberOfTrailingZeros(this.capacity);
+		this.events = new Event[this.capacity];
+		this.availableRounds = new AtomicIntegerArray(this.capacity);
+		for (int i = 0; i < this.capacity; i++) {
+			this.availableRounds.set(i, -1);
+		}
+	}
+
+	private static int getNumberOfThreads(ParallelEventHandlingConfigGroup config) {
+		return config.getNumberOfThreads() != null ? config.getNumberOfThreads() : Runtime.getRuntime().availableProcessors();
+	}
+
+	@Override
+	public void processEvent(final Event event) {
+		checkInitialized();
+		if (Thread.currentThread() instanceof HandlerThread) {
+			if (!tryPublish(event)) {
+				this.pendingEvents.add(event);
+			}
+			return;
+		}
+		publishPendingEvents();
+		long sequence = this.nextSequence.getAndIncrement();
+		publish(sequence, event);
+	}
+
+	@Override
+	public void processEvents(final EventArray events) {
+		checkInitialized();
+		if (Thread.currentThread() instanceof HandlerThread) {
+			for (int i = 0; i < events.size(); i++) {
+				processEvent(events.get(i));
+			}
+			return;
+		}
+		publishPendingEvents();
+		// claim all slots at once, the handler threads read them as one batch
+		long firstSequence = this.nextSequence.getAndAdd(events.size());
+		for (int i = 0; i < events.size(); i++) {
+			publish(firstSequence + i, events.get(i));
+		}
+	}
+
+	private void publish(long sequence, Event event) {
+		int idleCount = 0;
+		while (sequence - this.capacity > this.cachedGatingSequence) {
+			long gatingSequence = getMinimumCursor();
+			if (sequence - this.capacity <= gatingSequence) {
+				this.cachedGatingSequence = gatingSequence;
+				break;
+			}
+			checkException();
+			IdleStrategy.idle(idleCount++);
+		}
+		int slot = (int) sequence & this.mask;
+		this.events[slot] = event;
+		// the volatile write makes the event visible to the handler threads
+		this.availableRounds.set(slot, (int) (sequence >>> this.indexShift));
+	}
+
+	/**
+	 * Publishes the event only if there is a free slot, without waiting.  Used by the handler threads.
+	 */
+	private boolean tryPublish(Event event) {
+		long sequence;
+		do {
+			sequence = this.nextSequence.get();
+			if (sequence - this.capacity > getMinimumCursor()) {
+				return false;
+			}
+		} while (!this.nextSequence.compareAndSet(sequence, sequence + 1));
+		publish(sequence, event);
+		return true;
+	}
+
+	private void publishPendingEvents() {
+		Event event;
+		while ((event = this.pendingEvents.poll()) != null) {
+			publish(this.nextSequence.getAndIncrement(), event);
+		}
+	}
+
+	private long getMinimumCursor() {
+		long minimum = Long.MAX_VALUE;
+		for (HandlerThread handlerThread : this.handlerThreads) {
+			minimum = Math.min(minimum, handlerThread.cursor);
+		}
+		return minimum == Long.MAX_VALUE ? this.nextSequence.get() - 1 : minimum;
+	}
+
+	private boolean isAvailable(long sequence) {
+		return this.availableRounds.get((int) sequence & this.mask) == (int) (sequence >>> this.indexShift);
+	}
+
+	private void checkInitialized() {
+		if (this.handlerThreads == null) {
+			throw new IllegalStateException(".initProcessing() has to be called before processing events!");
+		}
+	}
+
+	@Override
+	public void addHandler(final EventHandler handler) {
+		if (this.handlerThreads != null) {
+			throw new IllegalStateException("Handlers can not be added after .initProcessing() was called!");
+		}
+		this.eventsHandlers.add(handler);
+	}
+
+	@Override
+	public void removeHandler(final EventHandler handler) {
+		this.eventsHandlers.remove(handler);
+	}
+
+	@Override
+	public void resetHandlers(int iteration) {
+		for (EventHandler handler : this.eventsHandlers) {
+			handler.reset(iteration);
+		}
+	}
+
+	@Override
+	public void initProcessing() {
+		List<EventsManager> eventsManagers = new ArrayList<>();
+		if (this.oneThreadPerHandler) {
+			for (EventHandler handler : this.eventsHandlers) {
+				eventsManagers.add(new SingleHandlerEventsManager(handler));
+			}
+		} else {
+			int threads = Math.min(this.numberOfThreads, this.eventsHandlers.size());
+			for (int i = 0; i < threads; i++) {
+				eventsManagers.add(new EventsManagerImpl());
+			}
+			for (int i = 0; i < this.eventsHandlers.size(); i++) {
+				eventsManagers.get(i % threads).addHandler(this.eventsHandlers.get(i));
+			}
+		}
+
+		this.exception = null;
+		long cursor = this.nextSequence.get() - 1;
+		this.cachedGatingSequence = cursor;
+		HandlerThread[] handlerThreads = new HandlerThread[eventsManagers.size()];
+		for (int i = 0; i < handlerThreads.length; i++) {
+			EventsManager eventsManager = eventsManagers.get(i);
+			eventsManager.initProcessing();
+			handlerThreads[i] = new HandlerThread(eventsManager, cursor);
+			handlerThreads[i].setDaemon(true);
+			if (eventsManager instanceof SingleHandlerEventsManager) {
+				handlerThreads[i].setName("RingBufferEventsManager: " + ((SingleHandlerEventsManager) eventsManager).getEventHandlerClassName());
+			} else {
+				handlerThreads[i].setName("RingBufferEventsManager" + i);
+			}
+		}
+		this.handlerThreads = handlerThreads;
+		for (HandlerThread handlerThread : handlerThreads) {
+			handlerThread.start();
+		}
+	}
+
+	@Override
+	public void afterSimStep(double time) {
+		if (this.syncOnTimeSteps) {
+			flush();
+		}
+		checkException();
+	}
+
+	@Override
+	public synchronized void finishProcessing() {
+		HandlerThread[] handlerThreads = this.handlerThreads;
+		if (handlerThreads == null) {
+			return;
+		}
+		flush();
+		for (HandlerThread handlerThread : handlerThreads) {
+			handlerThread.stopped = true;
+		}
+		try {
+			for (HandlerThread handlerThread : handlerThreads) {
+				handlerThread.join();
+			}
+		} catch (InterruptedException e) {
+			throw new RuntimeException("Exception while waiting on join...", e);
+		}
+		for (HandlerThread handlerThread : handlerThreads) {
+			handlerThread.eventsManager.finishProcessing();
+		}
+		this.handlerThreads = null;
+		// drop the references to the events of this iteration
+		for (int i = 0; i < this.capacity; i++) {
+			this.events[i] = null;
+		}
+		checkException();
+	}
+
+	/**
+	 * Waits until all events processed so far, including the events created by handlers in the meantime, are handled
+	 * by all handlers.
+	 */
+	public void flush() {
+		do {
+			publishPendingEvents();
+			long sequence = this.nextSequence.get() - 1;
+			int idleCount = 0;
+			while (getMinimumCursor() < sequence) {
+				checkException();
+				IdleStrategy.idle(idleCount++);
+			}
+		} while (!this.pendingEvents.isEmpty());
+	}
+
+	private void checkException() {
+		if (this.exception != null) {
+			throw new RuntimeException("Exception while processing events. Cannot guarantee that all events have been fully processed.", this.exception);
+		}
+	}
+
+	private final class HandlerThread extends Thread {
+
+		private final EventsManager eventsManager;
+		// all events up to this sequence are handled by this thread
+		private volatile long cursor;
+		private volatile boolean stopped = false;
+
+		HandlerThread(EventsManager eventsManager, long cursor) {
+			this.eventsManager = eventsManager;
+			this.cursor = cursor;
+		}
+
+		@Override
+		public void run() {
+			try {
+				long next = this.cursor + 1;
+				int idleCount = 0;
+				while (true) {
+					long end = next;
+					while (isAvailable(end)) {
+						end++;
+					}
+					if (end == next) {
+						if (this.stopped) {
+							return;
+						}
+						IdleStrategy.idle(idleCount++);
+						continue;
+					}
+					idleCount = 0;
+					for (long sequence = next; sequence < end; sequence++) {
+						this.eventsManager.processEvent(events[(int) sequence & mask]);
+					}
+					this.cursor = end - 1;
+					next = end;
+				}
+			} catch (Throwable e) {
+				log.error("Exception while processing events.", e);
+				exception = e;
+			}
+		}
+	}
+}
@@ -0,0 +1,462 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * EventWriterBinary.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.events.algorithms;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.core.events.EventsReaderBinary;
+import org.matsim.core.events.handler.BasicEventHandler;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.core.utils.io.UncheckedIOException;
+
+import com.github.luben.zstd.Zstd;
+
+/**
+ * Writes events in a compact binary format that can be read with {@link EventsReaderBinary}, or with
+ * {@link org.matsim.core.events.MatsimEventsReader} for files ending with <code>.bin</code>.
+ * <p>
+ * The events are written in chunks.  Within a chunk, the times, the event types and the values of each attribute are
+ * stored column by column and compressed with zstd.  Attribute values are stored as an index into a dictionary per
+ * attribute (e.g. all link ids), or as double if that keeps them unchanged.  Each chunk header contains the time range
+ * and the event types of the chunk, so readers can skip chunks that are not of interest.
+ * <p>
+ * File layout, all numbers big endian:
+ * <pre>
+ * file:       int MAGIC, int VERSION, chunk*
+ * chunk:      int eventCount, double minTime, double maxTime, int typeCount, int[typeCount] typeIndices,
+ *             section dictionary, section data
+ * section:    int rawLength, int compressedLength, byte[compressedLength]
+ * dictionary: varint newTypes, string*, varint newAttributes, string*,
+ *             varint newSchemas, (varint typeIndex, varint attributeCount, (varint attributeIndex, byte kind)*)*,
+ *             varint attributesWithNewValues, (varint attributeIndex, varint newValues, string*)*
+ * data:       time*, varint schemaIndex*, varint columnCount, (varint attributeIndex, varint length, byte[length])*
+ * time:       varlong (zigzag(delta to previous time) &lt;&lt; 1) for whole seconds, or varlong 1 and 8 bytes double
+ * string:     varint length, byte[length] utf-8
+ * </pre>
+ * A schema is an event type together with its attributes and their kind ({@link #STRING_VALUE}, {@link #DOUBLE_VALUE}
+ * or {@link #NULL_VALUE}).  The column of an attribute contains its values in the order of the events, as varint
+ * dictionary index, as 8 bytes double, or nothing for null.  Dictionaries are only appended to; the entries needed for a chunk are in the
+ * dictionary section of the chunk itself or of earlier chunks.
+ */
+public final class EventWriterBinary implements EventWriter, BasicEventHandler {
+
+	public static final int MAGIC = 0x4d45564e; // MEVN
+	public static final int VERSION = 1;
+	public static final byte STRING_VALUE = 0;
+	public static final byte DOUBLE_VALUE = 1;
+	public static final byte NULL_VALUE = 2;
+
+	private static final int DEFAULT_CHUNK_SIZE = 65536;
+	private static final int COMPRESSION_LEVEL = 3;
+
+	private final DataOutputStream out;
+	private final int chunkSize;
+
+	private final Map<String, Integer> types = new HashMap<>();
+	private final Map<String, Integer> attributes = new HashMap<>();
+	private final List<Map<String, Integer>> values = new ArrayList<>();
+	private final Map<Schema, Integer> schemas = new HashMap<>();
+
+	// dictionary entries added since the last chunk
+	private final List<String> newTypes = new ArrayList<>();
+	private final List<String> newAttributes = new ArrayList<>();
+	private final List<Schema> newSchemas = new ArrayList<>();
+	private final List<List<String>> newValues = new ArrayList<>();
+
+	// the current chunk
+	private int eventCount = 0;
+	private double minTime = Double.POSITIVE_INFINITY;
+	private double maxTime = Double.NEGATIVE_INFINITY;
+	private double lastTime = 0;
+	private boolean[] typeInChunk = new boolean[16];
+	private final Column times = new Column();
+	private final Column schemaIndices = new Column();
+	private final List<Column> columns = new ArrayList<>();
+
+	// scratch space for the schema of the current event
+	private final Schema lookup = new Schema();
+
+	public EventWriterBinary(final String filename) {
+		this(IOUtils.getOutputStream(IOUtils.getFileUrl(filename), false), DEFAULT_CHUNK_SIZE);
+	}
+
+	public EventWriterBinary(final OutputStream stream) {
+		this(stream, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * @param chunkSize number of events per chunk.  Larger chunks compress better, smaller chunks can be skipped more
+	 *                  selectively when reading.
+	 */
+	public EventWriterBinary(final OutputStream stream, final int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("chunkSize must be strictly positive, got " + chunkSize);
+		}
+		this.out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+		this.chunkSize = chunkSize;
+		try {
+			this.out.writeInt(MAGIC);
+			this.out.writeInt(VERSION);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void handleEvent(final Event event) {
+		double time = event.getTime();
+		Map<String, String> attr = event.getAttributes();
+
+		Schema schema = this.lookup;
+		schema.typeIndex = typeIndex(event.getEventType());
+		schema.attributeCount = 0;
+		schema.ensureCapacity(attr.size());
+		String[] valueStrings = new String[attr.size()];
+		for (Map.Entry<String, String> entry : attr.entrySet()) {
+			String key = entry.getKey();
+			if (key.equals(Event.ATTRIBUTE_TIME) || key.equals(Event.ATTRIBUTE_TYPE)) {
+				continue;
+			}
+			String value = entry.getValue();
+			int i = schema.attributeCount++;
+			schema.attributeIndices[i] = attributeIndex(key);
+			schema.kinds[i] = value == null ? NULL_VALUE : isLosslessDouble(value) ? DOUBLE_VALUE : STRING_VALUE;
+			valueStrings[i] = value;
+		}
+
+		Integer schemaIndex = this.schemas.get(schema);
+		if (schemaIndex == null) {
+			Schema copy = schema.copy();
+			schemaIndex = this.schemas.size();
+			this.schemas.put(copy, schemaIndex);
+			this.newSchemas.add(copy);
+		}
+
+		writeTime(time);
+		this.schemaIndices.writeVarLong(schemaIndex);
+		for (int i = 0; i < schema.attributeCount; i++) {
+			int attributeIndex = schema.attributeIndices[i];
+			Column column = this.columns.get(attributeIndex);
+			if (schema.kinds[i] == DOUBLE_VALUE) {
+				column.writeDouble(Double.parseDouble(valueStrings[i]));
+			} else if (schema.kinds[i] == STRING_VALUE) {
+				column.writeVarLong(valueIndex(attributeIndex, valueStrings[i]));
+			}
+		}
+
+		if (schema.typeIndex >= this.typeInChunk.length) {
+			this.typeInChunk = Arrays.copyOf(this.typeInChunk, 2 * schema.typeIndex + 1);
+		}
+		this.typeInChunk[schema.typeIndex] = true;
+		this.minTime = Math.min(this.minTime, time);
+		this.maxTime = Math.max(this.maxTime, time);
+		this.eventCount++;
+		if (this.eventCount == this.chunkSize) {
+			writeChunk();
+		}
+	}
+
+	@Override
+	public void closeFile() {
+		try {
+			if (this.eventCount > 0) {
+				writeChunk();
+			}
+			this.out.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void reset(final int iter) {
+	}
+
+	private void writeTime(double time) {
+		if (time == Math.rint(time) && this.lastTime == Math.rint(this.lastTime) && Math.abs(time) < 1e15 && Math.abs(this.lastTime) < 1e15) {
+			long delta = (long) time - (long) this.lastTime;
+			this.times.writeVarLong(((delta << 1) ^ (delta >> 63)) << 1);
+		} else {
+			this.times.writeVarLong(1);
+			this.times.writeDouble(time);
+		}
+		this.lastTime = time;
+	}
+
+	private void writeChunk() {
+		try {
+			Column dictionary = new Column();
+			dictionary.writeVarLong(this.newTypes.size());
+			for (String type : this.newTypes) {
+				dictionary.writeString(type);
+			}
+			dictionary.writeVarLong(this.newAttributes.size());
+			for (String attribute : this.newAttributes) {
+				dictionary.writeString(attribute);
+			}
+			dictionary.writeVarLong(this.newSchemas.size());
+			for (Schema schema : this.newSchemas) {
+				dictionary.writeVarLong(schema.typeIndex);
+				dictionary.writeVarLong(schema.attributeCount);
+				for (int i = 0; i < schema.attributeCount; i++) {
+					dictionary.writeVarLong(schema.attributeIndices[i]);
+					dictionary.writeByte(schema.kinds[i]);
+				}
+			}
+			int attributesWithNewValues = 0;
+			for (List<String> list : this.newValues) {
+				attributesWithNewValues += list.isEmpty() ? 0 : 1;
+			}
+			dictionary.writeVarLong(attributesWithNewValues);
+			for (int attributeIndex = 0; attributeIndex < this.newValues.size(); attributeIndex++) {
+				List<String> list = this.newValues.get(attributeIndex);
+				if (!list.isEmpty()) {
+					dictionary.writeVarLong(attributeIndex);
+					dictionary.writeVarLong(list.size());
+					for (String value : list) {
+						dictionary.writeString(value);
+					}
+					list.clear();
+				}
+			}
+			this.newTypes.clear();
+			this.newAttributes.clear();
+			this.newSchemas.clear();
+
+			Column data = new Column();
+			data.write(this.times);
+			data.write(this.schemaIndices);
+			int columnCount = 0;
+			for (Column column : this.columns) {
+				columnCount += column.size > 0 ? 1 : 0;
+			}
+			data.writeVarLong(columnCount);
+			for (int attributeIndex = 0; attributeIndex < this.columns.size(); attributeIndex++) {
+				Column column = this.columns.get(attributeIndex);
+				if (column.size > 0) {
+					data.writeVarLong(attributeIndex);
+					data.writeVarLong(column.size);
+					data.write(column);
+					column.size = 0;
+				}
+			}
+
+			this.out.writeInt(this.eventCount);
+			this.out.writeDouble(this.minTime);
+			this.out.writeDouble(this.maxTime);
+			int typeCount = 0;
+			for (boolean b : this.typeInChunk) {
+				typeCount += b ? 1 : 0;
+			}
+			this.out.writeInt(typeCount);
+			for (int typeIndex = 0; typeIndex < this.typeInChunk.length; typeIndex++) {
+				if (this.typeInChunk[typeIndex]) {
+					this.out.writeInt(typeIndex);
+				}
+			}
+			writeSection(dictionary);
+			writeSection(data);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		this.eventCount = 0;
+		this.minTime = Double.POSITIVE_INFINITY;
+		this.maxTime = Double.NEGATIVE_INFINITY;
+		this.lastTime = 0;
+		Arrays.fill(this.typeInChunk, false);
+		this.times.size = 0;
+		this.schemaIndices.size = 0;
+	}
+
+	private void writeSection(Column section) throws IOException {
+		byte[] compressed = Zstd.compress(Arrays.copyOf(section.data, section.size), COMPRESSION_LEVEL);
+		this.out.writeInt(section.size);
+		this.out.writeInt(compressed.length);
+		this.out.write(compressed);
+	}
+
+	private int typeIndex(String type) {
+		Integer index = this.types.get(type);
+		if (index == null) {
+			index = this.types.size();
+			this.types.put(type, index);
+			this.newTypes.add(type);
+		}
+		return index;
+	}
+
+	private int attributeIndex(String attribute) {
+		Integer index = this.attributes.get(attribute);
+		if (index == null) {
+			index = this.attributes.size();
+			this.attributes.put(attribute, index);
+			this.newAttributes.add(attribute);
+			this.values.add(new HashMap<>());
+			this.newValues.add(new ArrayList<>());
+			this.columns.add(new Column());
+		}
+		return index;
+	}
+
+	private int valueIndex(int attributeIndex, String value) {
+		Map<String, Integer> dictionary = this.values.get(attributeIndex);
+		Integer index = dictionary.get(value);
+		if (index == null) {
+			index = dictionary.size();
+			dictionary.put(value, index);
+			this.newValues.get(attributeIndex).add(value);
+		}
+		return index;
+	}
+
+	/**
+	 * @return whether the value is a double that is written the same way by {@link Double#toString(double)}, e.g.
+	 * "12.5" but not "12" or "1e3".  Only these values can be stored as double without changing their text.
+	 */
+	static boolean isLosslessDouble(String value) {
+		int length = value.length();
+		if (length == 0 || length > 24) {
+			return false;
+		}
+		boolean hasDot = false;
+		for (int i = 0; i < length; i++) {
+			char ch = value.charAt(i);
+			if (ch == '.') {
+				hasDot = true;
+			} else if (!(ch >= '0' && ch <= '9') && ch != '-' && ch != 'E') {
+				return false;
+			}
+		}
+		if (!hasDot) {
+			return false;
+		}
+		try {
+			return Double.toString(Double.parseDouble(value)).equals(value);
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	private static final class Schema {
+		private int typeIndex;
+		private int attributeCount;
+		private int[] attributeIndices = new int[8];
+		private byte[] kinds = new byte[8];
+
+		private void ensureCapacity(int capacity) {
+			if (capacity > this.attributeIndices.length) {
+				this.attributeIndices = Arrays.copyOf(this.attributeIndices, capacity);
+				this.kinds = Arrays.copyOf(this.kinds, capacity);
+			}
+		}
+
+		private Schema copy() {
+			Schema copy = new Schema();
+			copy.typeIndex = this.typeIndex;
+			copy.attributeCount = this.attributeCount;
+			copy.attributeIndices = Arrays.copyOf(this.attributeIndices, this.attributeCount);
+			copy.kinds = Arrays.copyOf(this.kinds, this.attributeCount);
+			return copy;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Schema)) {
+				return false;
+			}
+			Schema other = (Schema) o;
+			return this.typeIndex == other.typeIndex && this.attributeCount == other.attributeCount
+					&& Arrays.equals(this.attributeIndices, 0, this.attributeCount, other.attributeIndices, 0, other.attributeCount)
+					&& Arrays.equals(this.kinds, 0, this.attributeCount, other.kinds, 0, other.attributeCount);
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = this.typeIndex;
+			for (int i = 0; i < this.attributeCount; i++) {
+				hash = 31 * hash + this.attributeIndices[i];
+				hash = 31 * hash + this.kinds[i];
+			}
+			return hash;
+		}
+	}
+
+	/**
+	 * A growing byte array.
+	 */
+	private static final class Column {
+		private byte[] data = new byte[256];
+		private int size = 0;
+
+		private void ensureCapacity(int additional) {
+			if (this.size + additional > this.data.length) {
+				this.data = Arrays.copyOf(this.data, Math.max(2 * this.data.length, this.size + additional));
+			}
+		}
+
+		private void writeByte(int b) {
+			ensureCapacity(1);
+			this.data[this.size++] = (byte) b;
+		}
+
+		private void writeVarLong(long value) {
+			ensureCapacity(10);
+			while ((value & ~0x7fL) != 0) {
+				this.data[this.size++] = (byte) ((value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+			this.data[this.size++] = (byte) value;
+		}
+
+		private void writeDouble(double value) {
+			ensureCapacity(8);
+			long bits = Double.doubleToRawLongBits(value);
+			for (int shift = 56; shift >= 0; shift -= 8) {
+				this.data[this.size++] = (byte) (bits >>> shift);
+			}
+		}
+
+		private void writeString(String value) {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			writeVarLong(bytes.length);
+			ensureCapacity(bytes.length);
+			System.arraycopy(bytes, 0, this.data, this.size, bytes.length);
+			this.size += bytes.length;
+		}
+
+		private void write(Column column) {
+			ensureCapacity(column.size);
+			System.arraycopy(column.data, 0, this.data, this.size, column.size);
+			this.size += column.size;
+		}
+	}
+}
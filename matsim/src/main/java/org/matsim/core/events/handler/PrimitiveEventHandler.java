@@ -0,0 +1,47 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * PrimitiveEventHandler.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.events.handler;
+
+import org.matsim.core.events.PrimitiveEventsManager;
+
+/**
+ * Handles the most frequent core events without event objects.  Ids are passed as their index, see
+ * {@link org.matsim.api.core.v01.Id#index()} and {@link org.matsim.api.core.v01.Id#get(int, Class)}.
+ * <p>
+ * Only the {@link PrimitiveEventsManager} calls these methods.  There, a handler implementing this interface receives
+ * the events of these types <em>only</em> through this interface, even if it also implements e.g. the
+ * {@link org.matsim.api.core.v01.events.handler.LinkEnterEventHandler}.  All other events are passed to the usual
+ * handleEvent methods.  Other events managers ignore this interface.
+ */
+public interface PrimitiveEventHandler extends EventHandler {
+
+	default void handleLinkEnter(double time, int vehicleIndex, int linkIndex) {
+	}
+
+	default void handleLinkLeave(double time, int vehicleIndex, int linkIndex) {
+	}
+
+	default void handlePersonEntersVehicle(double time, int personIndex, int vehicleIndex) {
+	}
+
+	default void handlePersonLeavesVehicle(double time, int personIndex, int vehicleIndex) {
+	}
+}
@@ -30,7 +30,7 @@ import org.matsim.core.mobsim.framework.Mobsim;
 final class Hermes implements Mobsim {
 
 	final private static Logger log = LogManager.getLogger(Hermes.class);
-	private Realm realm;
+	private World world;
 	private Agent[] agents;
 	private ScenarioImporter scenarioImporter;
 	private final Scenario scenario;
@@ -44,12 +44,12 @@ final class Hermes implements Mobsim {
 	private void importScenario() throws Exception {
 		scenarioImporter = ScenarioImporter.instance(scenario, eventsManager);
 		scenarioImporter.generate();
-		this.realm = scenarioImporter.realm;
+		this.world = scenarioImporter.world;
 		this.agents = scenarioImporter.hermesAgents;
 	}
 
 	private void processEvents() {
-        eventsManager.processEvents(realm.getSortedEvents());
+        eventsManager.processEvents(world.getSortedEvents());
 
 		for (Agent agent : agents) {
 			if (agent != null && !agent.finished() && !agent.isTransitVehicle()) {
@@ -72,7 +72,7 @@ final class Hermes implements Mobsim {
 			eventsManager.initProcessing();
 
 			time = System.currentTimeMillis();
-			realm.run();
+			world.run();
 			log.info(String.format(
 					"Hermes took %d ms", System.currentTimeMillis() - time));
 
@@ -19,6 +19,7 @@
 package org.matsim.core.mobsim.hermes;
 
 import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.matsim.api.core.v01.TransportMode;
@@ -47,6 +48,19 @@ public final class HermesConfigGroup extends ReflectiveConfigGroup {
     public static final int MAX_EVENTS_AGENT = 65536;
 
     private static final String DETPT = "useDeterministicPt";
+    private static final String NUMBER_OF_REALMS = "numberOfRealms";
+    private static final String NUMBER_OF_REALMS_DESC = "Number of realms, i.e. geographic partitions of the network, Hermes splits the simulation into. "
+            + "Each realm owns the links and the queues of its part of the network. Vehicles moving from one realm to another are "
+            + "exchanged at the end of each time step, after the vehicles within the realms, so the results in congested parts of the network "
+            + "can differ slightly from the results with another number of realms. Default: 1, i.e. the whole network is simulated as one realm.";
+    private static final String NUMBER_OF_THREADS = "numberOfThreads";
+    private static final String NUMBER_OF_THREADS_DESC = "Number of threads used to simulate the realms in parallel within each time step. "
+            + "Only has an effect with more than one realm, so numberOfRealms should be at least numberOfThreads. The results do not "
+            + "depend on the number of threads. Scenarios with transit are always simulated on one thread. Default: 1.";
+    private static final String EVENTS_FLUSH_INTERVAL = "eventsFlushInterval";
+    private static final String EVENTS_FLUSH_INTERVAL_DESC = "time in seconds. The events of the simulated time are passed on to the events manager "
+            + "every eventsFlushInterval seconds while the simulation continues, so they can be processed (e.g. by a ParallelEventsManager) "
+            + "and garbage collected in the meantime. Set to 0 to pass on all events once the simulation has ended. Default: 3600.";
 
     // Number of simulation steps
     public static int SIM_STEPS = 30 * 60 * 60;
@@ -67,7 +81,6 @@ public final class HermesConfigGroup extends ReflectiveConfigGroup {
     private boolean deterministicPt = false;
     public static final boolean DEBUG_REALMS = false;
     public static final boolean DEBUG_EVENTS = false;
-    public static final boolean CONCURRENT_EVENT_PROCESSING = true;
 
     @Positive
     private double storageCapacityFactor = 1.0;
@@ -78,6 +91,15 @@ public final class HermesConfigGroup extends ReflectiveConfigGroup {
     @Positive
     private int stuckTime = 10;
 
+    @Positive
+    private int numberOfRealms = 1;
+
+    @Positive
+    private int numberOfThreads = 1;
+
+    @PositiveOrZero
+    private int eventsFlushInterval = 3600;
+
     public Set<String> getMainModes() {
         return mainModes;
     }
@@ -124,6 +146,36 @@ public final class HermesConfigGroup extends ReflectiveConfigGroup {
         this.stuckTime = stuckTime;
     }
 
+    @StringGetter(NUMBER_OF_REALMS)
+    public int getNumberOfRealms() {
+        return numberOfRealms;
+    }
+
+    @StringSetter(NUMBER_OF_REALMS)
+    public void setNumberOfRealms(int numberOfRealms) {
+        this.numberOfRealms = numberOfRealms;
+    }
+
+    @StringGetter(NUMBER_OF_THREADS)
+    public int getNumberOfThreads() {
+        return numberOfThreads;
+    }
+
+    @StringSetter(NUMBER_OF_THREADS)
+    public void setNumberOfThreads(int numberOfThreads) {
+        this.numberOfThreads = numberOfThreads;
+    }
+
+    @StringGetter(EVENTS_FLUSH_INTERVAL)
+    public int getEventsFlushInterval() {
+        return eventsFlushInterval;
+    }
+
+    @StringSetter(EVENTS_FLUSH_INTERVAL)
+    public void setEventsFlushInterval(int eventsFlushInterval) {
+        this.eventsFlushInterval = eventsFlushInterval;
+    }
+
     @StringSetter(FLOW_CAPACITY_FACTOR)
     public void setFlowCapacityFactor(double flowCapacityFactor) {
         this.flowCapacityFactor = flowCapacityFactor;
@@ -160,6 +212,9 @@ public final class HermesConfigGroup extends ReflectiveConfigGroup {
         comments.put(END_TIME, "Simulation End Time");
         comments.put(STUCKTIMEPARAM, STUCKTIMEPARAMDESC);
         comments.put(DETPT, DETPTDESC);
+        comments.put(NUMBER_OF_REALMS, NUMBER_OF_REALMS_DESC);
+        comments.put(NUMBER_OF_THREADS, NUMBER_OF_THREADS_DESC);
+        comments.put(EVENTS_FLUSH_INTERVAL, EVENTS_FLUSH_INTERVAL_DESC);
         return comments;
     }
 
@@ -171,5 +226,9 @@ public final class HermesConfigGroup extends ReflectiveConfigGroup {
         if (config.parallelEventHandling().getOneThreadPerHandler()!=true && config.controler().getMobsim().equals("hermes")){
             LogManager.getLogger(getClass()).warn("Hermes should be run with one thread per handler.");
         }
+        if (numberOfThreads > numberOfRealms) {
+            LogManager.getLogger(getClass()).warn("Hermes uses at most one thread per realm, but numberOfThreads (" + numberOfThreads
+                    + ") is larger than numberOfRealms (" + numberOfRealms + ").");
+        }
     }
 }
@@ -26,28 +26,44 @@ import org.matsim.api.core.v01.events.ActivityEndEvent;
 import org.matsim.api.core.v01.events.Event;
 import org.matsim.api.core.v01.events.PersonEntersVehicleEvent;
 import org.matsim.api.core.v01.events.PersonLeavesVehicleEvent;
-import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.api.experimental.events.VehicleArrivesAtFacilityEvent;
 import org.matsim.core.api.experimental.events.VehicleDepartsAtFacilityEvent;
 import org.matsim.core.events.EventArray;
 import org.matsim.core.utils.collections.IntArrayMap;
-import org.matsim.core.utils.misc.Time;
 import org.matsim.pt.transitSchedule.api.TransitStopFacility;
 import org.matsim.vehicles.Vehicle;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 
+/**
+ * A realm simulates a part of the network (see {@link HermesConfigGroup#getNumberOfRealms()}). It owns the links assigned to it
+ * and the agents currently on these links or sleeping in it.
+ * <p>
+ * Agents that want to enter a link of another realm are not pushed directly. They are collected as boundary moves and handed
+ * over in {@link #processBoundaryMoves()}, which the {@link World} calls for all realms, one after the other, at the end of each
+ * time step.  This way, during the agent and link phases of a time step, each realm only modifies its own links and agents.
+ */
 class Realm {
 	private final ScenarioImporter si;
+    // Index of this realm in the world.
+    private final int id;
+    // All realms of the world, indexed by realm id.
+    private final Realm[] realms;
     // Global array of links.
     // Note: the id of the link is its index in the array.
     private final HLink[] links;
+    // Realm of each link, indexed by link id.
+    private final int[] realmOfLink;
     // Internal realm links on hold until a specific timestamp (in seconds).
     // Internal means that the source and destination realm of are the same.
+    // Note: the queues are only created when something is delayed until that timestamp.
     private final ArrayList<ArrayDeque<HLink>> delayedLinksByWakeupTime;
     // Agents on hold until a specific timestamp (in seconds).
     private final ArrayList<ArrayDeque<Agent>> delayedAgentsByWakeupTime;
+    // Agents that want to enter a link of another realm in the current time step, and the link they are leaving (null if none).
+    private final ArrayList<Agent> boundaryAgents;
+    private final ArrayList<HLink> boundaryLinks;
     // Agents waiting in pt stations. Should be used as follows:
     // agent_stops.get(curr station id).get(line id) -> queue of agents
     private final IdMap<TransitStopFacility, IntArrayMap<ArrayDeque<Agent>>> agent_stops;
@@ -55,30 +71,31 @@ class Realm {
     protected int[][] route_stops_by_route_no;
     // line id of a particular route
     private final int[] line_of_route;
-    // queue of sorted events by time
-    private EventArray sortedEvents;
-    // MATSim event manager.
-    private final EventsManager eventsManager;
+    // events generated by this realm since they were last collected by the world
+    private final EventArray sortedEvents;
     // Current timestamp
     private int secs;
     Logger log = LogManager.getLogger(Realm.class);
 
-    public Realm(ScenarioImporter scenario, EventsManager eventsManager) {
+    public Realm(ScenarioImporter scenario, int id, Realm[] realms) {
         this.si = scenario;
+        this.id = id;
+        this.realms = realms;
         this.links = scenario.hermesLinks;
-        // The plus one is necessary because we peek into the next slot on each tick.
+        this.realmOfLink = scenario.realmOfLink;
         this.delayedLinksByWakeupTime = new ArrayList<>();
         this.delayedAgentsByWakeupTime = new ArrayList<>();
+        this.boundaryAgents = new ArrayList<>();
+        this.boundaryLinks = new ArrayList<>();
         this.agent_stops = scenario.agentStops;
         this.route_stops_by_route_no = scenario.routeStopsByRouteNo;
         this.line_of_route = scenario.lineOfRoute;
         this.sortedEvents = new EventArray();
-        this.eventsManager = eventsManager;
 
         // the last position is to store events that will not happen...
         for (int i = 0; i <= HermesConfigGroup.SIM_STEPS + 1; i++) {
-            delayedLinksByWakeupTime.add(new ArrayDeque<>());
-            delayedAgentsByWakeupTime.add(new ArrayDeque<>());
+            delayedLinksByWakeupTime.add(null);
+            delayedAgentsByWakeupTime.add(null);
         }
     }
 
@@ -88,15 +105,39 @@ class Realm {
         }
     }
 
-    private void addDelayedAgent(Agent agent, int until) {
+    void addDelayedAgent(Agent agent, int until) {
         if (HermesConfigGroup.DEBUG_REALMS) log(secs, String.format("agent %d delayed until %d", agent.id, until));
-        delayedAgentsByWakeupTime.get(Math.min(until, HermesConfigGroup.SIM_STEPS + 1)).add(agent);
+        getOrCreate(delayedAgentsByWakeupTime, Math.min(until, HermesConfigGroup.SIM_STEPS + 1)).add(agent);
     }
 
-    private void addDelayedLink(HLink link, int until) {
+    void addDelayedLink(HLink link, int until) {
         if (HermesConfigGroup.DEBUG_REALMS)
             log(secs, String.format("link %d delayed until %d size %d peek agent %d", link.id(), until, link.queue().size(), link.queue().peek().id));
-        delayedLinksByWakeupTime.get(Math.min(until, HermesConfigGroup.SIM_STEPS + 1)).add(link);
+        // links are always woken up by the realm they belong to.
+        getOrCreate(realms[realmOfLink[link.id()]].delayedLinksByWakeupTime, Math.min(until, HermesConfigGroup.SIM_STEPS + 1)).add(link);
+    }
+
+    private static <T> ArrayDeque<T> getOrCreate(ArrayList<ArrayDeque<T>> byWakeupTime, int time) {
+        ArrayDeque<T> queue = byWakeupTime.get(time);
+        if (queue == null) {
+            queue = new ArrayDeque<>();
+            byWakeupTime.set(time, queue);
+        }
+        return queue;
+    }
+
+    /**
+     * @return true if the next plan element of the agent is a link that belongs to another realm.
+     */
+    private boolean isBoundaryMove(Agent agent) {
+        long planentry = agent.nextPlan();
+        return Agent.getPlanHeader(planentry) == Agent.LinkType && realmOfLink[Agent.getLinkPlanEntry(planentry)] != id;
+    }
+
+    private void addBoundaryMove(Agent agent, HLink currLink) {
+        if (HermesConfigGroup.DEBUG_REALMS) log(secs, String.format("agent %d leaves realm %d", agent.id, id));
+        boundaryAgents.add(agent);
+        boundaryLinks.add(currLink);
     }
 
     private void advanceAgentandSetEventTime(Agent agent) {
@@ -206,10 +247,10 @@ class Realm {
         // drop agents
         for (Agent out : agent.egress(stopid)) {
             addDelayedAgent(out, secs + 1);
+            // set driver in agent's event (before the event is emitted)
+            setEventVehicle(out, Agent.getPlanEvent(out.nextPlan()), agent.id);
             // consume access, activate egress
             advanceAgentandSetEventTime(out);
-            // set driver in agent's event
-            setEventVehicle(out, Agent.getPlanEvent(out.currPlan()), agent.id);
         }
 
         // True is returned as the agent is already in the delayed list.
@@ -231,10 +272,10 @@ class Realm {
                     if (agent.willServeStop(egressStop)) {
                         if (agent.access(egressStop, in)) {
                             removed.add(in);
+                            // set driver in agent's event (before the event is emitted)
+                            setEventVehicle(in, Agent.getPlanEvent(in.nextPlan()), agent.id);
                             // consume wait in stop, activate access
                             advanceAgentandSetEventTime(in);
-                            // set driver in agent's event
-                            setEventVehicle(in, Agent.getPlanEvent(in.currPlan()), agent.id);
                         } else {
                             // agent could not enter, likely the vehicle is full
                             break;
@@ -279,6 +320,10 @@ class Realm {
         if (finished) {
             setEventTime(agent, agent.events().size() - 1, secs, true);
         }
+        if (!finished && isBoundaryMove(agent)) {
+            addBoundaryMove(agent, null);
+            return 0;
+        }
         // -1 is used in the processAgent because the agent is not in a link currently.
         if (!finished && !processAgent(agent, -1)) {
             addDelayedAgent(agent, secs + 1);
@@ -296,6 +341,11 @@ class Realm {
             if (finished) {
                 setEventTime(agent, agent.events().size() - 1, secs, true);
             }
+            if (!finished && isBoundaryMove(agent)) {
+                // the link is delayed again once the boundary move was processed.
+                addBoundaryMove(agent, link);
+                return routed;
+            }
             if (finished || processAgent(agent, link.id())) {
                 float storageCapacityPCE = agent.getStorageCapacityPCUE();
                 link.pop(storageCapacityPCE);
@@ -315,53 +365,91 @@ class Realm {
         return routed;
     }
 
-    public void run() throws Exception {
+    /**
+     * Wakes up the agents of this realm that are delayed until {@code time}.
+     */
+    void processAgents(int time) {
+        this.secs = time;
         int routed = 0;
         Agent agent;
-        HLink link;
-
-        while (secs != HermesConfigGroup.SIM_STEPS) {
-            if (secs % 3600 == 0) {
-                log.info("Hermes running at " + Time.writeTime(secs));
-            }
-            while ((agent = delayedAgentsByWakeupTime.get(secs).poll()) != null) {
+        ArrayDeque<Agent> agents = delayedAgentsByWakeupTime.get(secs);
+        if (agents != null) {
+            while ((agent = agents.poll()) != null) {
                 if (HermesConfigGroup.DEBUG_REALMS) {
                     log(secs, String.format("Processing agent %d", agent.id));
                 }
                 routed += processAgentActivities(agent);
-
             }
             delayedAgentsByWakeupTime.set(secs, null);
-            if (si.isDeterministicPt()) {
-                for (Event e : si.getDeterministicPtEvents().get(secs)) {
-                    sortedEvents.add(e);
-                }
-                si.getDeterministicPtEvents().get(secs).clear();
-            }
+        }
+        if (HermesConfigGroup.DEBUG_REALMS && routed > 0) {
+            log(secs, String.format("Processed %d agents", routed));
+        }
+    }
 
-            while ((link = delayedLinksByWakeupTime.get(secs).poll()) != null) {
+    /**
+     * Moves the agents on the links of this realm that are delayed until {@code time}.
+     */
+    void processLinks(int time) {
+        this.secs = time;
+        int routed = 0;
+        HLink link;
+        ArrayDeque<HLink> delayedLinks = delayedLinksByWakeupTime.get(secs);
+        if (delayedLinks != null) {
+            while ((link = delayedLinks.poll()) != null) {
                 if (HermesConfigGroup.DEBUG_REALMS) {
                     log(secs, String.format("Processing link %d", link.id()));
                 }
                 routed += processLinks(link);
             }
             delayedLinksByWakeupTime.set(secs, null);
-            if (HermesConfigGroup.DEBUG_REALMS && routed > 0) {
-                log(secs, String.format("Processed %d agents", routed));
-            }
-            if (HermesConfigGroup.CONCURRENT_EVENT_PROCESSING && secs % 3600 == 0 && sortedEvents.size() > 0) {
-                eventsManager.processEvents(sortedEvents);
-                sortedEvents = new EventArray();
-            }
+        }
+        if (HermesConfigGroup.DEBUG_REALMS && routed > 0) {
+            log(secs, String.format("Processed %d agents", routed));
+        }
+    }
 
-            routed = 0;
-            secs += 1;
+    /**
+     * Pushes the agents that want to leave this realm into the links of the other realms.  Must not run concurrently with any
+     * other realm, since it modifies links (and delays links) of other realms.
+     * <p>
+     * If the agent cannot enter the next link, it stays where it is and is tried again in the next time step.
+     */
+    void processBoundaryMoves() {
+        for (int i = 0; i < boundaryAgents.size(); i++) {
+            Agent agent = boundaryAgents.get(i);
+            HLink currLink = boundaryLinks.get(i);
+            boolean moved = processAgentLink(agent, agent.nextPlan(), currLink == null ? -1 : currLink.id());
+            if (currLink == null) {
+                if (!moved) {
+                    addDelayedAgent(agent, secs + 1);
+                }
+            } else if (moved) {
+                currLink.pop(agent.getStorageCapacityPCUE());
+                // continue with the agents behind, as if the agent had not left the realm.  Further boundary moves are
+                // appended to the lists and handled by this loop.
+                if (currLink.queue().peek() != null) {
+                    processLinks(currLink);
+                }
+            } else {
+                addDelayedLink(currLink, secs + 1);
+            }
         }
+        boundaryAgents.clear();
+        boundaryLinks.clear();
     }
 
+    /**
+     * Emits the events of the agent up to (and including) {@code agentId} with the given time.  Emitted events are released
+     * by the agent, so they can be garbage collected once the events manager has processed them (see
+     * {@link HermesConfigGroup#getEventsFlushInterval()}).  They must not be modified afterwards, since they might already be
+     * processed concurrently.
+     */
     public void setEventTime(Agent agent, int agentId, int time, boolean lastEvent) {
-        if (agentId != 0) {
+        // events before eventsIndex were already emitted.
+        if (agentId != 0 && agentId >= agent.eventsIndex) {
             EventArray agentEvents = agent.events();
+            Event[] agentEventsArray = agentEvents.array();
             Event event = agentEvents.get(agentId);
 
             for (; agent.eventsIndex <= agentId; agent.eventsIndex++) {
@@ -369,6 +457,7 @@ class Realm {
                 if (HermesConfigGroup.DEBUG_REALMS)
                     log(secs, String.format("agent %d setEventTime (eventsIndex=%d) %s", agent.id, agent.eventsIndex, agentEvents.get(agent.eventsIndex).toString()));
                 sortedEvents.add(agentEvents.get(agent.eventsIndex));
+                agentEventsArray[agent.eventsIndex] = null;
             }
 
             // Fix delay for PT events.
@@ -400,10 +489,8 @@ class Realm {
         }
     }
 
-    ArrayList<ArrayDeque<HLink>> delayedLinks() { return this.delayedLinksByWakeupTime; }
-
-    ArrayList<ArrayDeque<Agent>> delayedAgents() {
-        return this.delayedAgentsByWakeupTime;
+    int id() {
+        return this.id;
     }
 
     EventArray getSortedEvents() {
@@ -37,6 +37,7 @@ import org.matsim.core.population.routes.NetworkRoute;
 import org.matsim.core.router.TripStructureUtils;
 import org.matsim.core.utils.collections.ArrayMap;
 import org.matsim.core.utils.collections.IntArrayMap;
+import org.matsim.core.utils.geometry.RecursiveCoordinateBisection;
 import org.matsim.core.utils.misc.OptionalTime;
 import org.matsim.facilities.ActivityFacility;
 import org.matsim.pt.routes.TransitPassengerRoute;
@@ -76,8 +77,11 @@ class ScenarioImporter {
 	protected int[] routeOfRoute;
 	// Array of links that define the network.
 	protected HLink[] hermesLinks;
+	// Realm of each link. Should be used as follows:
+	// realm_of_link[link id] -> realm id
+	protected int[] realmOfLink;
 
-	protected Realm realm;
+	protected World world;
 	private final boolean deterministicPt;
 	// Agents waiting in pt stations. Should be used as follows:
 	// agent_stops.get(curr station id).get(line id) -> queue of agents
@@ -211,6 +215,18 @@ class ScenarioImporter {
 
 			hermesLinks[link_id] = new HLink(link_id, storageCapacity, length, speed, effectiveflowCapacityPerSec, scenario.getConfig().hermes().getStuckTime());
 		}
+
+		realmOfLink = new int[hermesLinks.length];
+		int numberOfRealms = scenario.getConfig().hermes().getNumberOfRealms();
+		if (numberOfRealms > 1) {
+			List<List<Link>> partitions = RecursiveCoordinateBisection.partition(matsim_links, numberOfRealms, Link::getCoord, l -> 1);
+			for (int realm = 0; realm < partitions.size(); realm++) {
+				for (Link matsim_link : partitions.get(realm)) {
+					realmOfLink[matsim_link.getId().index()] = realm;
+				}
+				log.info(String.format("Hermes realm %d has %d links", realm, partitions.get(realm).size()));
+			}
+		}
 	}
 
 	private void initRoutesStations() {
@@ -272,7 +288,12 @@ class ScenarioImporter {
 	}
 
 	private void generateRealms() {
-		realm = new Realm(this, eventsManager);
+		HermesConfigGroup hermesConfig = scenario.getConfig().hermes();
+		Realm[] realms = new Realm[hermesConfig.getNumberOfRealms()];
+		for (int i = 0; i < realms.length; i++) {
+			realms[i] = new Realm(this, i, realms);
+		}
+		world = new World(this, realms, eventsManager, hermesConfig.getNumberOfThreads(), hermesConfig.getEventsFlushInterval());
 
 		// Put agents in their initial location (link or activity center)
 		for (Agent agent : hermesAgents) {
@@ -294,7 +315,7 @@ class ScenarioImporter {
 				case Agent.SleepForType:
 				case Agent.SleepUntilType:
 					int sleep = Agent.getSleepPlanEntry(planentry);
-					realm.delayedAgents().get(Math.min(sleep, scenario.getConfig().hermes().getEndTime() + 1)).add(agent);
+					realms[getInitialRealm(agent)].addDelayedAgent(agent, Math.min(sleep, scenario.getConfig().hermes().getEndTime() + 1));
 					break;
 				default:
 					LogManager.getLogger(getClass()).error(String.format("ERROR -> unknown plan element type %d", type));
@@ -305,12 +326,26 @@ class ScenarioImporter {
 			if (link != null) {
 				int nextwakeup = link.nexttime();
 				if (nextwakeup > 0) {
-					realm.delayedLinks().get(nextwakeup).add(link);
+					realms[realmOfLink[link.id()]].addDelayedLink(link, nextwakeup);
 				}
 			}
 		}
 	}
 
+	/**
+	 * Agents that start with an activity are put into the realm of the first link they will enter, so that they do not have
+	 * to cross realms when they depart.
+	 */
+	private int getInitialRealm(Agent agent) {
+		for (int i = 0; i < agent.plan().size(); i++) {
+			long planentry = agent.plan().get(i);
+			if (Agent.getPlanHeader(planentry) == Agent.LinkType) {
+				return realmOfLink[Agent.getLinkPlanEntry(planentry)];
+			}
+		}
+		return 0;
+	}
+
 	private void processPlanActivity(
 			Id<Person> id,
 			PlanArray flatplan,
@@ -0,0 +1,181 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+package org.matsim.core.mobsim.hermes;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.EventArray;
+import org.matsim.core.utils.misc.Time;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
+
+/**
+ * Runs the sim-step loop over all {@link Realm}s.
+ * <p>
+ * Each time step consists of three phases: waking up delayed agents, moving agents over the links, and exchanging the agents
+ * that cross from one realm to another.  After each phase, the events of all realms are collected in realm order, so the
+ * resulting event stream does not depend on the number of threads or on how the threads are scheduled.  It does depend on the
+ * number of realms: agents crossing a realm boundary enter the next link only in the exchange phase, after the agents
+ * within the realms, so both the order of the events within a time step and, on congested links, the times at which agents
+ * enter them can differ from the simulation with one realm.  Every
+ * {@link HermesConfigGroup#getEventsFlushInterval()} seconds, the collected events are passed on to the events manager while
+ * the simulation continues.
+ * <p>
+ * During the first two phases, a realm only touches its own links and agents, so these phases run in parallel if
+ * {@link HermesConfigGroup#getNumberOfThreads()} is larger than one.  The boundary exchange modifies links of other realms and
+ * always runs sequentially.  Transit agents waiting at stops are shared between realms, so scenarios with transit stops are
+ * always simulated on one thread.
+ */
+class World {
+    private final ScenarioImporter si;
+    private final Realm[] realms;
+    // queue of sorted events by time
+    private EventArray sortedEvents;
+    // MATSim event manager.
+    private final EventsManager eventsManager;
+    // Interval (in seconds) in which events are passed on to the events manager (0 if only at the end of the simulation).
+    private final int eventsFlushInterval;
+    // Number of threads used for the agent and link phases.
+    private final int numberOfThreads;
+    // Thread pool for the agent and link phases (null if the realms are processed sequentially).
+    private ExecutorService pool;
+    // Current timestamp
+    private int secs;
+    Logger log = LogManager.getLogger(World.class);
+
+    public World(ScenarioImporter si, Realm[] realms, EventsManager eventsManager, int numberOfThreads, int eventsFlushInterval) {
+        this.si = si;
+        this.realms = realms;
+        this.eventsManager = eventsManager;
+        this.eventsFlushInterval = eventsFlushInterval;
+        this.sortedEvents = new EventArray();
+        int threads = Math.min(numberOfThreads, realms.length);
+        if (threads > 1 && si.agentStops.size() > 0) {
+            log.warn("Hermes simulates scenarios with transit stops on one thread, ignoring numberOfThreads = " + numberOfThreads);
+            threads = 1;
+        }
+        this.numberOfThreads = threads;
+    }
+
+    public void run() throws Exception {
+        if (numberOfThreads > 1) {
+            pool = Executors.newFixedThreadPool(numberOfThreads, new NamedThreadFactory());
+        }
+        try {
+            runSteps();
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+                pool = null;
+            }
+        }
+    }
+
+    private void runSteps() {
+        while (secs != HermesConfigGroup.SIM_STEPS) {
+            if (secs % 3600 == 0) {
+                log.info("Hermes running at " + Time.writeTime(secs));
+            }
+            processRealms(realm -> realm.processAgents(secs));
+            collectEvents();
+            if (si.isDeterministicPt()) {
+                for (Event e : si.getDeterministicPtEvents().get(secs)) {
+                    sortedEvents.add(e);
+                }
+                si.getDeterministicPtEvents().get(secs).clear();
+            }
+
+            processRealms(realm -> realm.processLinks(secs));
+            collectEvents();
+
+            // sequentially and in realm order, so the agents from other realms compete for the links in a fixed order.
+            for (Realm realm : realms) {
+                realm.processBoundaryMoves();
+            }
+            collectEvents();
+
+            // the events of this time step are complete, so everything collected so far can be passed on in time order.
+            if (eventsFlushInterval > 0 && secs % eventsFlushInterval == 0 && sortedEvents.size() > 0) {
+                eventsManager.processEvents(sortedEvents);
+                // the events manager might still be processing the array, so it must not be reused.
+                sortedEvents = new EventArray();
+            }
+
+            secs += 1;
+        }
+    }
+
+    /**
+     * Applies {@code phase} to all realms, in parallel if a thread pool is available.  Returns once all realms are done.
+     */
+    private void processRealms(Consumer<Realm> phase) {
+        if (pool == null) {
+            for (Realm realm : realms) {
+                phase.accept(realm);
+            }
+            return;
+        }
+        List<Future<?>> futures = new ArrayList<>(realms.length);
+        for (Realm realm : realms) {
+            futures.add(pool.submit(() -> phase.accept(realm)));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private void collectEvents() {
+        for (Realm realm : realms) {
+            EventArray realmEvents = realm.getSortedEvents();
+            Event[] array = realmEvents.array();
+            for (int i = 0; i < realmEvents.size(); i++) {
+                sortedEvents.add(array[i]);
+            }
+            realmEvents.clear();
+        }
+    }
+
+    EventArray getSortedEvents() {
+        return this.sortedEvents;
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private int count = 0;
+
+        @Override
+        public Thread newThread(Runnable r) {
+            return new Thread(r, "Hermes_PooledThread_" + count++);
+        }
+    }
+}
@@ -31,11 +31,13 @@ import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.events.PersonLeavesVehicleEvent;
 import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Node;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.groups.QSimConfigGroup;
 import org.matsim.core.config.groups.QSimConfigGroup.LinkDynamics;
+import org.matsim.core.config.groups.QSimConfigGroup.NetsimPartitioning;
 import org.matsim.core.config.groups.QSimConfigGroup.SnapshotStyle;
 import org.matsim.core.config.groups.QSimConfigGroup.VehicleBehavior;
 import org.matsim.core.gbl.Gbl;
@@ -86,6 +88,7 @@ abstract class AbstractQNetsimEngine<A extends AbstractQNetsimEngineRunner> impl
 	private final VehicularDepartureHandler dpHandler;
 //	private final Set<QLinkI> linksToActivateInitially = new HashSet<>();
 	protected final int numOfThreads;
+	private final NetsimPartitioning netsimPartitioning;
 	protected final QNetwork network;
 
 	private double infoTime = 0;
@@ -131,6 +134,7 @@ abstract class AbstractQNetsimEngine<A extends AbstractQNetsimEngineRunner> impl
 		network.initialize(this, sim.getAgentCounter(), sim.getSimTimer() );
 
 		this.numOfThreads = sim.getScenario().getConfig().qsim().getNumberOfThreads();
+		this.netsimPartitioning = sim.getScenario().getConfig().qsim().getNetsimPartitioning();
 	}
 	
 	static AbstractAgentSnapshotInfoBuilder createAgentSnapshotInfoBuilder(Scenario scenario, SnapshotLinkWidthCalculator linkWidthCalculator) {
@@ -389,43 +393,59 @@ abstract class AbstractQNetsimEngine<A extends AbstractQNetsimEngineRunner> impl
 		// only for statistics
 		int nodes[] = new int[this.engines.size()];
 		int links[] = new int[this.engines.size()];
+		int boundaryLinks[] = new int[this.engines.size()];
 
-		int roundRobin = 0;
-		for (QNodeI node : network.getNetsimNodes().values()) {
-			int i = roundRobin % this.engines.size();
-			if( node instanceof AbstractQNode){
-				((AbstractQNode) node).setNetElementActivationRegistry(this.engines.get(i));
+		List<List<QNodeI>> partitions = QNetworkPartitioner.partition(network.getNetsimNodes().values(), this.engines.size(), this.netsimPartitioning);
+		Map<Id<Node>, Integer> partitionOfNode = new HashMap<>();
+		for (int i = 0; i < partitions.size(); i++) {
+			for (QNodeI node : partitions.get(i)) {
+				partitionOfNode.put(node.getNode().getId(), i);
 			}
-			nodes[i]++;
-
-			// set activator for out links
-			for (Link outLink : node.getNode().getOutLinks().values()) {
-				AbstractQLink qLink = (AbstractQLink) network.getNetsimLink(outLink.getId());
-				// (must be of this type to work.  kai, feb'12)
-
-				// removing qsim as "person in the middle".  not fully sure if this is the same in the parallel impl.  kai, oct'10
-				qLink.setNetElementActivationRegistry(this.engines.get(i));
-
-				/*
-				 * If the QLink contains agents that end their activity in the first time
-				 * step, the link should be activated.
-				 */
-				// this set is always empty...
-//				if (linksToActivateInitially.remove(qLink) 
-//						|| qsim.getScenario().getConfig().qsim().getSimStarttimeInterpretation()==StarttimeInterpretation.onlyUseStarttime) {
-//					this.engines.get(i).registerLinkAsActive(qLink);
-//				}
-
-				links[i]++;
+		}
 
+		for (int i = 0; i < partitions.size(); i++) {
+			for (QNodeI node : partitions.get(i)) {
+				if( node instanceof AbstractQNode){
+					((AbstractQNode) node).setNetElementActivationRegistry(this.engines.get(i));
+				}
+				nodes[i]++;
+
+				// set activator for out links
+				for (Link outLink : node.getNode().getOutLinks().values()) {
+					AbstractQLink qLink = (AbstractQLink) network.getNetsimLink(outLink.getId());
+					// (must be of this type to work.  kai, feb'12)
+
+					// removing qsim as "person in the middle".  not fully sure if this is the same in the parallel impl.  kai, oct'10
+					qLink.setNetElementActivationRegistry(this.engines.get(i));
+
+					/*
+					 * If the QLink contains agents that end their activity in the first time
+					 * step, the link should be activated.
+					 */
+					// this set is always empty...
+//					if (linksToActivateInitially.remove(qLink)
+//							|| qsim.getScenario().getConfig().qsim().getSimStarttimeInterpretation()==StarttimeInterpretation.onlyUseStarttime) {
+//						this.engines.get(i).registerLinkAsActive(qLink);
+//					}
+
+					links[i]++;
+
+					/*
+					 * The buffer of a link whose to-node belongs to another runner is emptied by that other runner.
+					 * These are the links where vehicles cross from one partition to another.
+					 */
+					Integer toPartition = partitionOfNode.get(outLink.getToNode().getId());
+					if (toPartition != null && toPartition != i) {
+						boundaryLinks[i]++;
+					}
+				}
 			}
-
-			roundRobin++;
 		}
 
 		// print some statistics
 		for (int i = 0; i < this.engines.size(); i++) {
-			log.info("Assigned " + nodes[i] + " nodes and " + links[i] + " links to QSimEngineRunner #" + i);
+			log.info("Assigned " + nodes[i] + " nodes and " + links[i] + " links (" + boundaryLinks[i]
+					+ " of them leading to another runner) to QSimEngineRunner #" + i + "; partitioning: " + this.netsimPartitioning);
 		}
 
 //		this.linksToActivateInitially.clear();
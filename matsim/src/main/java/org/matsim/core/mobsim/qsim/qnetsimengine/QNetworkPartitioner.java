@@ -0,0 +1,77 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * QNetworkPartitioner.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.mobsim.qsim.qnetsimengine;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.matsim.core.config.groups.QSimConfigGroup.NetsimPartitioning;
+import org.matsim.core.utils.geometry.RecursiveCoordinateBisection;
+
+/**
+ * Distributes the nodes of a {@link QNetwork} over the runners of the QNetsimEngine.
+ * <p>
+ * A node and all its outgoing links are always handled by the same runner (see
+ * {@link AbstractQNetsimEngine}), so a vehicle only crosses from one runner to another when it is
+ * moved from the buffer of a link into the next link by a node of another runner.  These buffers
+ * are the boundary between the partitions: they are filled during the link phase and emptied during
+ * the node phase, and the barrier between the two phases makes sure that no two runners touch
+ * them at the same time.
+ * <p>
+ * With {@link NetsimPartitioning#roundRobin}, neighbouring nodes end up on different runners, so
+ * almost every link is a boundary link.  With {@link NetsimPartitioning#spatial}, the network is
+ * split by recursive coordinate bisection into geographically compact partitions of roughly the
+ * same number of links, so only the links along the cuts are shared between runners.
+ */
+final class QNetworkPartitioner {
+
+	private QNetworkPartitioner() {
+	}
+
+	static List<List<QNodeI>> partition(Collection<? extends QNodeI> nodes, int numberOfPartitions, NetsimPartitioning partitioning) {
+		switch (partitioning) {
+			case roundRobin:
+				List<List<QNodeI>> partitions = new ArrayList<>(numberOfPartitions);
+				for (int i = 0; i < numberOfPartitions; i++) {
+					partitions.add(new ArrayList<>());
+				}
+				int roundRobin = 0;
+				for (QNodeI node : nodes) {
+					partitions.get(roundRobin % numberOfPartitions).add(node);
+					roundRobin++;
+				}
+				return partitions;
+			case spatial:
+				return RecursiveCoordinateBisection.partition(nodes, numberOfPartitions, node -> node.getNode().getCoord(), QNetworkPartitioner::getWeight);
+			default:
+				throw new RuntimeException("Unknown netsim partitioning: " + partitioning);
+		}
+	}
+
+	/**
+	 * The work of a runner is dominated by its links, so nodes are weighted by their number of
+	 * outgoing links (plus one for the node itself).
+	 */
+	private static int getWeight(QNodeI node) {
+		return node.getNode().getOutLinks().size() + 1;
+	}
+}
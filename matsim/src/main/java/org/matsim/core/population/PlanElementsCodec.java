@@ -0,0 +1,470 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * PlanElementsCodec.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.population;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.api.core.v01.population.Route;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.population.routes.RouteFactories;
+import org.matsim.core.utils.io.UncheckedIOException;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.utils.objectattributes.ObjectAttributesConverter;
+import org.matsim.utils.objectattributes.attributable.Attributes;
+import org.matsim.vehicles.Vehicle;
+
+/**
+ * Encodes the activities and legs of a plan into a compact byte array, and decodes them again.
+ * <p></p>
+ * Plans can be kept in this compact form in memory (see {@link #compact(Plan)}), their plan elements are then only
+ * created again when {@link Plan#getPlanElements()} is called the next time. Ids are encoded with their index
+ * ({@link Id#index()}), unless id tables are given, e.g. when the encoded plan elements were read from a file.
+ * Only the standard activity, leg and route implementations, and attributes for which an
+ * {@link org.matsim.utils.objectattributes.AttributeConverter} is known, can be encoded.
+ */
+public final class PlanElementsCodec {
+
+	private static final byte ACTIVITY = 0;
+	private static final byte INTERACTION_ACTIVITY = 1;
+	private static final byte LEG = 2;
+
+	private final RouteFactories routeFactories;
+	private final ObjectAttributesConverter attributesConverter;
+	private final Id<Link>[] linkIds;
+	private final Id<ActivityFacility>[] facilityIds;
+	private final Id<Vehicle>[] vehicleIds;
+	private final Map<String, Class<?>> routeClasses = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates a codec that encodes ids with their index.
+	 */
+	public PlanElementsCodec(RouteFactories routeFactories, ObjectAttributesConverter attributesConverter) {
+		this(routeFactories, attributesConverter, null, null, null);
+	}
+
+	/**
+	 * Creates a codec that looks up ids in the given tables when decoding, e.g. because the plan elements were
+	 * encoded by another process. Such a codec cannot be used for encoding.
+	 */
+	public PlanElementsCodec(RouteFactories routeFactories, ObjectAttributesConverter attributesConverter,
+							 Id<Link>[] linkIds, Id<ActivityFacility>[] facilityIds, Id<Vehicle>[] vehicleIds) {
+		this.routeFactories = routeFactories;
+		this.attributesConverter = attributesConverter;
+		this.linkIds = linkIds;
+		this.facilityIds = facilityIds;
+		this.vehicleIds = vehicleIds;
+	}
+
+	private boolean usesIdTables() {
+		return this.linkIds != null;
+	}
+
+	/**
+	 * Replaces the plan elements of the plan with their encoded form, if possible. Nothing happens if the plan
+	 * elements cannot be encoded, or if the plan is already stored in compact form.
+	 *
+	 * @return <code>true</code> if the plan is stored in compact form afterwards
+	 */
+	public boolean compact(Plan plan) {
+		if (!(plan instanceof PlanImpl)) {
+			return false;
+		}
+		PlanImpl planImpl = (PlanImpl) plan;
+		if (planImpl.isCompact()) {
+			return true;
+		}
+		byte[] encoded = encode(planImpl.getPlanElements());
+		if (encoded == null) {
+			return false;
+		}
+		planImpl.setCompact(encoded, this);
+		return true;
+	}
+
+	/**
+	 * Creates a new plan whose plan elements are stored in the given encoded form.
+	 */
+	public Plan createCompactPlan(byte[] encodedPlanElements) {
+		PlanImpl plan = new PlanImpl();
+		plan.setCompact(encodedPlanElements, this);
+		return plan;
+	}
+
+	/**
+	 * Returns the plan elements of the plan in encoded form, without creating the plan elements if the plan is
+	 * stored in compact form by a codec encoding ids with their index.
+	 *
+	 * @return the encoded plan elements, or <code>null</code> if they cannot be encoded
+	 */
+	public byte[] getEncodedPlanElements(Plan plan) {
+		PlanImpl.EncodedPlanElements encoded = plan instanceof PlanImpl ? ((PlanImpl) plan).getEncodedPlanElements() : null;
+		if (encoded != null) {
+			if (!encoded.codec.usesIdTables()) {
+				return encoded.data;
+			}
+			return encode(encoded.decode());
+		}
+		return encode(plan.getPlanElements());
+	}
+
+	/**
+	 * @return the encoded plan elements, or <code>null</code> if they cannot be encoded
+	 */
+	public byte[] encode(List<PlanElement> planElements) {
+		if (usesIdTables()) {
+			throw new IllegalStateException("A codec using id tables cannot be used for encoding.");
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * planElements.size());
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			writeVarInt(out, planElements.size());
+			for (PlanElement pe : planElements) {
+				boolean success;
+				if (pe instanceof ActivityImpl || pe instanceof InteractionActivity) {
+					success = writeActivity(out, (Activity) pe);
+				} else if (pe instanceof LegImpl) {
+					success = writeLeg(out, (Leg) pe);
+				} else {
+					success = false;
+				}
+				if (!success) {
+					return null;
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	public List<PlanElement> decode(byte[] encodedPlanElements) {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(encodedPlanElements))) {
+			int count = readVarInt(in);
+			List<PlanElement> planElements = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				byte kind = in.readByte();
+				if (kind == LEG) {
+					planElements.add(readLeg(in));
+				} else {
+					planElements.add(readActivity(in, kind == INTERACTION_ACTIVITY));
+				}
+			}
+			return planElements;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private boolean writeActivity(DataOutput out, Activity act) throws IOException {
+		boolean isInteraction = act instanceof InteractionActivity;
+		out.writeByte(isInteraction ? INTERACTION_ACTIVITY : ACTIVITY);
+		writeString(out, act.getType());
+		Coord coord = act.getCoord();
+		int flags = (coord != null ? 1 : 0) | (coord != null && coord.hasZ() ? 2 : 0) | (act.getLinkId() != null ? 4 : 0) | (act.getFacilityId() != null ? 8 : 0);
+		if (!isInteraction) {
+			flags |= (act.getStartTime().isDefined() ? 16 : 0) | (act.getEndTime().isDefined() ? 32 : 0) | (act.getMaximumDuration().isDefined() ? 64 : 0);
+		}
+		out.writeByte(flags);
+		if (coord != null) {
+			out.writeDouble(coord.getX());
+			out.writeDouble(coord.getY());
+			if (coord.hasZ()) {
+				out.writeDouble(coord.getZ());
+			}
+		}
+		if (act.getLinkId() != null) {
+			writeVarInt(out, act.getLinkId().index());
+		}
+		if (act.getFacilityId() != null) {
+			writeVarInt(out, act.getFacilityId().index());
+		}
+		if (isInteraction) {
+			return true;
+		}
+		if (act.getStartTime().isDefined()) {
+			out.writeDouble(act.getStartTime().seconds());
+		}
+		if (act.getEndTime().isDefined()) {
+			out.writeDouble(act.getEndTime().seconds());
+		}
+		if (act.getMaximumDuration().isDefined()) {
+			out.writeDouble(act.getMaximumDuration().seconds());
+		}
+		return writeAttributes(out, act.getAttributes(), this.attributesConverter);
+	}
+
+	private Activity readActivity(DataInput in, boolean isInteraction) throws IOException {
+		String type = readString(in).intern();
+		Activity act = isInteraction ? new InteractionActivity(type) : new ActivityImpl(type);
+		int flags = in.readByte();
+		if ((flags & 1) != 0) {
+			double x = in.readDouble();
+			double y = in.readDouble();
+			act.setCoord((flags & 2) != 0 ? new Coord(x, y, in.readDouble()) : new Coord(x, y));
+		}
+		if ((flags & 4) != 0) {
+			act.setLinkId(getLinkId(readVarInt(in)));
+		}
+		if ((flags & 8) != 0) {
+			int index = readVarInt(in);
+			act.setFacilityId(this.facilityIds == null ? Id.get(index, ActivityFacility.class) : this.facilityIds[index]);
+		}
+		if (isInteraction) {
+			return act;
+		}
+		if ((flags & 16) != 0) {
+			act.setStartTime(in.readDouble());
+		}
+		if ((flags & 32) != 0) {
+			act.setEndTime(in.readDouble());
+		}
+		if ((flags & 64) != 0) {
+			act.setMaximumDuration(in.readDouble());
+		}
+		readAttributes(in, act.getAttributes(), this.attributesConverter);
+		return act;
+	}
+
+	private boolean writeLeg(DataOutput out, Leg leg) throws IOException {
+		out.writeByte(LEG);
+		writeString(out, leg.getMode());
+		Route route = leg.getRoute();
+		int flags = (leg.getRoutingMode() != null ? 1 : 0) | (leg.getDepartureTime().isDefined() ? 2 : 0) | (leg.getTravelTime().isDefined() ? 4 : 0) | (route != null ? 8 : 0);
+		out.writeByte(flags);
+		if (leg.getRoutingMode() != null) {
+			writeString(out, leg.getRoutingMode());
+		}
+		if (leg.getDepartureTime().isDefined()) {
+			out.writeDouble(leg.getDepartureTime().seconds());
+		}
+		if (leg.getTravelTime().isDefined()) {
+			out.writeDouble(leg.getTravelTime().seconds());
+		}
+		if (!writeAttributes(out, leg.getAttributes(), this.attributesConverter)) {
+			return false;
+		}
+		return route == null || writeRoute(out, route);
+	}
+
+	private Leg readLeg(DataInput in) throws IOException {
+		Leg leg = new LegImpl(readString(in));
+		int flags = in.readByte();
+		if ((flags & 1) != 0) {
+			leg.setRoutingMode(readString(in));
+		}
+		if ((flags & 2) != 0) {
+			leg.setDepartureTime(in.readDouble());
+		}
+		if ((flags & 4) != 0) {
+			leg.setTravelTime(in.readDouble());
+		}
+		readAttributes(in, leg.getAttributes(), this.attributesConverter);
+		if ((flags & 8) != 0) {
+			leg.setRoute(readRoute(in));
+		}
+		return leg;
+	}
+
+	private boolean writeRoute(DataOutput out, Route route) throws IOException {
+		String routeType = route.getRouteType();
+		if (routeType == null || getRouteClass(routeType) != route.getClass()) {
+			// the route could not be created again
+			return false;
+		}
+		writeString(out, routeType);
+		boolean isNetworkRoute = route instanceof NetworkRoute;
+		Id<Vehicle> vehicleId = isNetworkRoute ? ((NetworkRoute) route).getVehicleId() : null;
+		int flags = (route.getStartLinkId() != null ? 1 : 0) | (route.getEndLinkId() != null ? 2 : 0) | (route.getTravelTime().isDefined() ? 4 : 0)
+				| (isNetworkRoute ? 8 : 0) | (vehicleId != null ? 16 : 0) | (route.getRouteDescription() != null ? 32 : 0);
+		out.writeByte(flags);
+		if (route.getStartLinkId() != null) {
+			writeVarInt(out, route.getStartLinkId().index());
+		}
+		if (route.getEndLinkId() != null) {
+			writeVarInt(out, route.getEndLinkId().index());
+		}
+		if (route.getTravelTime().isDefined()) {
+			out.writeDouble(route.getTravelTime().seconds());
+		}
+		out.writeDouble(route.getDistance());
+		if (isNetworkRoute) {
+			NetworkRoute networkRoute = (NetworkRoute) route;
+			List<Id<Link>> linkIds = networkRoute.getLinkIds();
+			writeVarInt(out, linkIds.size());
+			for (Id<Link> linkId : linkIds) {
+				writeVarInt(out, linkId.index());
+			}
+			out.writeDouble(networkRoute.getTravelCost());
+			if (vehicleId != null) {
+				writeVarInt(out, vehicleId.index());
+			}
+		} else if (route.getRouteDescription() != null) {
+			writeString(out, route.getRouteDescription());
+		}
+		return true;
+	}
+
+	private Route readRoute(DataInput in) throws IOException {
+		String routeType = readString(in);
+		int flags = in.readByte();
+		Id<Link> startLinkId = (flags & 1) != 0 ? getLinkId(readVarInt(in)) : null;
+		Id<Link> endLinkId = (flags & 2) != 0 ? getLinkId(readVarInt(in)) : null;
+		Route route = this.routeFactories.createRoute(this.routeFactories.getRouteClassForType(routeType), startLinkId, endLinkId);
+		if ((flags & 4) != 0) {
+			route.setTravelTime(in.readDouble());
+		}
+		double distance = in.readDouble();
+		if ((flags & 8) != 0) {
+			NetworkRoute networkRoute = (NetworkRoute) route;
+			int count = readVarInt(in);
+			List<Id<Link>> linkIds = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				linkIds.add(getLinkId(readVarInt(in)));
+			}
+			networkRoute.setLinkIds(startLinkId, linkIds, endLinkId);
+			networkRoute.setTravelCost(in.readDouble());
+			if ((flags & 16) != 0) {
+				int index = readVarInt(in);
+				networkRoute.setVehicleId(this.vehicleIds == null ? Id.get(index, Vehicle.class) : this.vehicleIds[index]);
+			}
+		} else if ((flags & 32) != 0) {
+			route.setRouteDescription(readString(in));
+		}
+		// set the distance last, as setting the route description may change it
+		route.setDistance(distance);
+		return route;
+	}
+
+	private Class<?> getRouteClass(String routeType) {
+		return this.routeClasses.computeIfAbsent(routeType, type -> {
+			try {
+				return this.routeFactories.createRoute(this.routeFactories.getRouteClassForType(type), null, null).getClass();
+			} catch (RuntimeException e) {
+				// the route factory cannot create routes without links, so routes of this type are not encoded
+				return Void.class;
+			}
+		});
+	}
+
+	private Id<Link> getLinkId(int index) {
+		return this.linkIds == null ? Id.get(index, Link.class) : this.linkIds[index];
+	}
+
+	/**
+	 * Writes the attributes as class names and values converted to strings. Maps and collections are not supported,
+	 * as they would not be read again with the same class.
+	 *
+	 * @return <code>false</code> if an attribute value could not be converted
+	 */
+	public static boolean writeAttributes(DataOutput out, Attributes attributes, ObjectAttributesConverter converter) throws IOException {
+		writeVarInt(out, attributes.size());
+		if (attributes.size() == 0) {
+			return true;
+		}
+		// the converter caches converters, and may be used by multiple threads materializing plans
+		synchronized (converter) {
+			for (Map.Entry<String, Object> e : attributes.getAsMap().entrySet()) {
+				Object value = e.getValue();
+				if (value instanceof Map || value instanceof Collection) {
+					return false;
+				}
+				String valueString = converter.convertToString(value);
+				if (valueString == null) {
+					return false;
+				}
+				writeString(out, e.getKey());
+				writeString(out, value.getClass().getName());
+				writeString(out, valueString);
+			}
+		}
+		return true;
+	}
+
+	public static void readAttributes(DataInput in, Attributes attributes, ObjectAttributesConverter converter) throws IOException {
+		int count = readVarInt(in);
+		if (count == 0) {
+			return;
+		}
+		synchronized (converter) {
+			for (int i = 0; i < count; i++) {
+				String name = readString(in);
+				String className = readString(in);
+				String value = readString(in);
+				attributes.putAttribute(name, converter.convert(className, value));
+			}
+		}
+	}
+
+	public static void writeString(DataOutput out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(out, bytes.length);
+		out.write(bytes);
+	}
+
+	public static String readString(DataInput in) throws IOException {
+		byte[] bytes = new byte[readVarInt(in)];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes a non-negative int with 1 to 5 bytes, depending on its size.
+	 */
+	public static void writeVarInt(DataOutput out, int value) throws IOException {
+		int v = value;
+		while ((v & ~0x7F) != 0) {
+			out.writeByte((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		out.writeByte(v);
+	}
+
+	public static int readVarInt(DataInput in) throws IOException {
+		int value = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = in.readByte();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+
+}
@@ -38,7 +38,12 @@ import org.matsim.utils.objectattributes.attributable.AttributesImpl;
 
 /* deliberately package */  final class PlanImpl implements Plan {
 
-	private ArrayList<PlanElement> actsLegs = new ArrayList<>();
+	// null if the plan elements are only stored in encoded form.  Volatile, as the plan elements of a compact plan
+	// might be created by one of several threads reading the plan, see materialize().
+	private volatile ArrayList<PlanElement> actsLegs = new ArrayList<>();
+
+	// if set, the plan elements are stored in encoded form
+	private volatile EncodedPlanElements encodedPlanElements = null;
 
 	private Double score = null;
 	private Person person = null;
@@ -124,17 +129,60 @@ import org.matsim.utils.objectattributes.attributable.AttributesImpl;
 
 	@Override
 	public final List<PlanElement> getPlanElements() {
-		return this.actsLegs;
+		List<PlanElement> planElements = this.actsLegs;
+		return planElements != null ? planElements : materialize();
 	}
 
 	@Override
 	public final void addLeg(final Leg leg) {
-		this.actsLegs.add(leg);
+		getPlanElements().add(leg);
 	}
 
 	@Override
 	public final void addActivity(final Activity act) {
-		this.actsLegs.add(act);
+		getPlanElements().add(act);
+	}
+
+	/* package */ boolean isCompact() {
+		return this.actsLegs == null;
+	}
+
+	/**
+	 * @return the encoded plan elements, or <code>null</code> if the plan is not stored in compact form
+	 */
+	/* package */ EncodedPlanElements getEncodedPlanElements() {
+		return this.encodedPlanElements;
+	}
+
+	/* package */ synchronized void setCompact(byte[] encodedPlanElements, PlanElementsCodec codec) {
+		this.encodedPlanElements = new EncodedPlanElements(encodedPlanElements, codec);
+		this.actsLegs = null;
+	}
+
+	private synchronized List<PlanElement> materialize() {
+		// another thread might have created the plan elements in the meantime
+		if (this.actsLegs == null) {
+			this.actsLegs = new ArrayList<>(this.encodedPlanElements.decode());
+			this.encodedPlanElements = null;
+		}
+		return this.actsLegs;
+	}
+
+	/**
+	 * Plan elements in encoded form, together with the codec that can decode them.
+	 */
+	/* package */ static final class EncodedPlanElements {
+		final byte[] data;
+		final PlanElementsCodec codec;
+
+		EncodedPlanElements(byte[] data, PlanElementsCodec codec) {
+			this.data = data;
+			this.codec = codec;
+		}
+
+		List<PlanElement> decode() {
+			return this.codec.decode(this.data);
+		}
 	}
 
 	@Override
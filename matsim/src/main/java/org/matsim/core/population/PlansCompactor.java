@@ -0,0 +1,72 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * PlansCompactor.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.population;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.controler.events.IterationEndsEvent;
+import org.matsim.core.controler.listener.IterationEndsListener;
+import org.matsim.utils.objectattributes.ObjectAttributesConverter;
+
+import com.google.inject.Inject;
+
+/**
+ * Stores the plan elements of all plans that are not selected in compact form at the end of each iteration. The plan
+ * elements are created again as soon as a plan is used, e.g. by a replanning strategy or after it has been selected
+ * for the next mobsim run.
+ */
+/* deliberately package */ class PlansCompactor implements IterationEndsListener {
+
+	private static final Logger log = LogManager.getLogger(PlansCompactor.class);
+
+	private final Population population;
+	private final PlanElementsCodec codec;
+
+	@Inject
+	PlansCompactor(Population population, ObjectAttributesConverter attributesConverter) {
+		this.population = population;
+		// knows the attribute converters bound with AbstractModule.addAttributeConverterBinding, so such attributes can be compacted as well
+		this.codec = new PlanElementsCodec(population.getFactory().getRouteFactories(), attributesConverter);
+	}
+
+	@Override
+	public void notifyIterationEnds(IterationEndsEvent event) {
+		long compactPlans = 0;
+		long plans = 0;
+		for (Person person : this.population.getPersons().values()) {
+			Plan selectedPlan = person.getSelectedPlan();
+			for (Plan plan : person.getPlans()) {
+				if (plan == selectedPlan) {
+					continue;
+				}
+				plans++;
+				if (this.codec.compact(plan)) {
+					compactPlans++;
+				}
+			}
+		}
+		log.info(compactPlans + " of " + plans + " unselected plans are stored in compact form.");
+	}
+
+}
@@ -424,6 +424,19 @@ public final class PopulationUtils {
 		}
 	}
 
+	/**
+	 * Returns the plan elements of the plan, without re-creating them permanently if the plan is stored in compact form
+	 * (see {@link PlanElementsCodec}). The plan elements are then decoded copies, so this is only meant for read access,
+	 * e.g. when writing plans to a file.
+	 */
+	public static List<PlanElement> getPlanElementsForReading(final Plan plan) {
+		PlanImpl.EncodedPlanElements encoded = plan instanceof PlanImpl ? ((PlanImpl) plan).getEncodedPlanElements() : null;
+		if (encoded != null) {
+			return encoded.decode();
+		}
+		return plan.getPlanElements();
+	}
+
 	/**
 	 * @return sorted map containing containing the persons as values and their ids as keys.
 	 */
@@ -0,0 +1,159 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * BinaryPopulationReader.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.population.io;
+
+import static org.matsim.core.population.PlanElementsCodec.readAttributes;
+import static org.matsim.core.population.PlanElementsCodec.readString;
+import static org.matsim.core.population.PlanElementsCodec.readVarInt;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.population.PlanElementsCodec;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.core.utils.io.UncheckedIOException;
+import org.matsim.core.utils.misc.Counter;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.utils.objectattributes.AttributeConverter;
+import org.matsim.utils.objectattributes.ObjectAttributesConverter;
+import org.matsim.vehicles.Vehicle;
+
+/**
+ * Reads a population written by {@link BinaryPopulationWriter}.
+ * <p></p>
+ * All plans are kept in compact form, their activities and legs are only created when they are accessed for the
+ * first time. The persons are added to the population of the scenario.
+ */
+public final class BinaryPopulationReader {
+
+	private static final Logger log = LogManager.getLogger(BinaryPopulationReader.class);
+
+	/**
+	 * File name extension of binary population files, optionally followed by the extension of a compression format.
+	 */
+	public static final String FILE_EXTENSION = ".pop.bin";
+
+	private final Scenario scenario;
+	private final ObjectAttributesConverter attributesConverter = new ObjectAttributesConverter();
+
+	public BinaryPopulationReader(final Scenario scenario) {
+		this.scenario = scenario;
+	}
+
+	public void putAttributeConverter(final Class<?> clazz, final AttributeConverter<?> converter) {
+		this.attributesConverter.putAttributeConverter(clazz, converter);
+	}
+
+	public void putAttributeConverters(final Map<Class<?>, AttributeConverter<?>> converters) {
+		this.attributesConverter.putAttributeConverters(converters);
+	}
+
+	/**
+	 * @return <code>true</code> if the file name has the extension of binary population files
+	 */
+	public static boolean isBinaryPopulationFile(final URL url) {
+		String path = url.getPath();
+		for (String compression : new String[] {"", ".gz", ".lz4", ".zst"}) {
+			if (path.endsWith(FILE_EXTENSION + compression)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public void readFile(final String filename) {
+		readURL(IOUtils.getFileUrl(filename));
+	}
+
+	public void readURL(final URL url) {
+		log.info("Reading binary population from " + url);
+		Population population = this.scenario.getPopulation();
+		Counter counter = new Counter("[" + this.getClass().getSimpleName() + "] read person # ");
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(IOUtils.getInputStream(url)))) {
+			if (in.readInt() != BinaryPopulationWriter.FILE_MAGIC || in.readInt() != BinaryPopulationWriter.FILE_VERSION) {
+				throw new IllegalArgumentException("unsupported binary population file: " + url);
+			}
+			Id<Link>[] linkIds = readIds(in, Link.class);
+			Id<ActivityFacility>[] facilityIds = readIds(in, ActivityFacility.class);
+			Id<Vehicle>[] vehicleIds = readIds(in, Vehicle.class);
+			PlanElementsCodec codec = new PlanElementsCodec(population.getFactory().getRouteFactories(), this.attributesConverter,
+					linkIds, facilityIds, vehicleIds);
+
+			String name = readString(in);
+			if (!name.isEmpty()) {
+				population.setName(name);
+			}
+			readAttributes(in, population.getAttributes(), this.attributesConverter);
+			int personCount = readVarInt(in);
+			for (int i = 0; i < personCount; i++) {
+				population.addPerson(readPerson(in, population, codec));
+				counter.incCounter();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		counter.printCounter();
+	}
+
+	private Person readPerson(DataInputStream in, Population population, PlanElementsCodec codec) throws IOException {
+		Person person = population.getFactory().createPerson(Id.create(readString(in), Person.class));
+		readAttributes(in, person.getAttributes(), this.attributesConverter);
+		int planCount = readVarInt(in);
+		for (int i = 0; i < planCount; i++) {
+			int flags = in.readByte();
+			Double score = (flags & 2) != 0 ? in.readDouble() : null;
+			String type = (flags & 4) != 0 ? readString(in) : null;
+			byte[] planElements = new byte[readVarInt(in)];
+			in.readFully(planElements);
+			Plan plan = codec.createCompactPlan(planElements);
+			plan.setScore(score);
+			plan.setType(type);
+			readAttributes(in, plan.getAttributes(), this.attributesConverter);
+			person.addPlan(plan);
+			if ((flags & 1) != 0) {
+				person.setSelectedPlan(plan);
+			}
+		}
+		return person;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> Id<T>[] readIds(DataInputStream in, Class<T> idClass) throws IOException {
+		int count = readVarInt(in);
+		Id<T>[] ids = new Id[count];
+		for (int i = 0; i < count; i++) {
+			ids[i] = Id.create(readString(in), idClass);
+		}
+		return ids;
+	}
+
+}
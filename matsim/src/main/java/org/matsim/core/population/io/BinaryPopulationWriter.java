@@ -0,0 +1,144 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * BinaryPopulationWriter.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.population.io;
+
+import static org.matsim.core.population.PlanElementsCodec.writeAttributes;
+import static org.matsim.core.population.PlanElementsCodec.writeString;
+import static org.matsim.core.population.PlanElementsCodec.writeVarInt;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.api.internal.MatsimWriter;
+import org.matsim.core.population.PersonUtils;
+import org.matsim.core.population.PlanElementsCodec;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.core.utils.io.UncheckedIOException;
+import org.matsim.core.utils.misc.Counter;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.utils.objectattributes.AttributeConverter;
+import org.matsim.utils.objectattributes.ObjectAttributesConverter;
+import org.matsim.vehicles.Vehicle;
+
+/**
+ * Writes a population in a compact binary format, which can be read by {@link BinaryPopulationReader}.
+ * <p></p>
+ * The plan elements are stored in the same encoded form that is used for plans kept in compact form in memory (see
+ * {@link PlanElementsCodec}), so plans that are stored in compact form are written without creating their plan
+ * elements. Coordinates are written as they are, without any coordinate transformation. Only the standard
+ * activity, leg and route implementations, and attributes for which an {@link AttributeConverter} is known,
+ * can be written.
+ */
+public final class BinaryPopulationWriter implements MatsimWriter {
+
+	private static final Logger log = LogManager.getLogger(BinaryPopulationWriter.class);
+
+	static final int FILE_MAGIC = 0x4d504f50; // "MPOP"
+	static final int FILE_VERSION = 1;
+
+	private final Population population;
+	private final ObjectAttributesConverter attributesConverter = new ObjectAttributesConverter();
+
+	public BinaryPopulationWriter(final Population population) {
+		this.population = population;
+	}
+
+	public void putAttributeConverter(final Class<?> clazz, final AttributeConverter<?> converter) {
+		this.attributesConverter.putAttributeConverter(clazz, converter);
+	}
+
+	public void putAttributeConverters(final Map<Class<?>, AttributeConverter<?>> converters) {
+		this.attributesConverter.putAttributeConverters(converters);
+	}
+
+	@Override
+	public void write(final String filename) {
+		log.info("Writing binary population to " + filename);
+		PlanElementsCodec codec = new PlanElementsCodec(this.population.getFactory().getRouteFactories(), this.attributesConverter);
+		Counter counter = new Counter("[" + this.getClass().getSimpleName() + "] dumped person # ");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(IOUtils.getOutputStream(IOUtils.getFileUrl(filename), false)))) {
+			out.writeInt(FILE_MAGIC);
+			out.writeInt(FILE_VERSION);
+			// ids are written with their index, so the tables are required to get the ids back
+			writeIds(out, Link.class);
+			writeIds(out, ActivityFacility.class);
+			writeIds(out, Vehicle.class);
+
+			writeString(out, this.population.getName() == null ? "" : this.population.getName());
+			checkAttributes(writeAttributes(out, this.population.getAttributes(), this.attributesConverter), "population");
+			writeVarInt(out, this.population.getPersons().size());
+			for (Person person : this.population.getPersons().values()) {
+				writePerson(out, person, codec);
+				counter.incCounter();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		counter.printCounter();
+	}
+
+	private void writePerson(DataOutputStream out, Person person, PlanElementsCodec codec) throws IOException {
+		writeString(out, person.getId().toString());
+		checkAttributes(writeAttributes(out, person.getAttributes(), this.attributesConverter), "person " + person.getId());
+		writeVarInt(out, person.getPlans().size());
+		for (Plan plan : person.getPlans()) {
+			int flags = (PersonUtils.isSelected(plan) ? 1 : 0) | (plan.getScore() != null ? 2 : 0) | (plan.getType() != null ? 4 : 0);
+			out.writeByte(flags);
+			if (plan.getScore() != null) {
+				out.writeDouble(plan.getScore());
+			}
+			if (plan.getType() != null) {
+				writeString(out, plan.getType());
+			}
+			byte[] planElements = codec.getEncodedPlanElements(plan);
+			if (planElements == null) {
+				throw new IllegalArgumentException("The plan elements of a plan of person " + person.getId() + " cannot be written in binary format.");
+			}
+			writeVarInt(out, planElements.length);
+			out.write(planElements);
+			checkAttributes(writeAttributes(out, plan.getAttributes(), this.attributesConverter), "a plan of person " + person.getId());
+		}
+	}
+
+	private static void writeIds(DataOutputStream out, Class<?> idClass) throws IOException {
+		int count = Id.getNumberOfIds(idClass);
+		writeVarInt(out, count);
+		for (int i = 0; i < count; i++) {
+			writeString(out, Id.get(i, idClass).toString());
+		}
+	}
+
+	private static void checkAttributes(boolean written, String owner) {
+		if (!written) {
+			throw new IllegalArgumentException("The attributes of " + owner + " cannot be written in binary format.");
+		}
+	}
+
+}
@@ -0,0 +1,210 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * ParallelPopulationReaderMatsimV6.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.population.io;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.utils.objectattributes.AttributeConverter;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Parallel implementation of the PopulationReaderMatsimV6. The main thread only parses the xml file and creates
+ * empty person objects which are added to the population to ensure that their order is not changed. The xml data
+ * of the persons is handed over in batches to worker threads, which create the plans, routes and attributes.
+ * Population streaming is not supported by this reader, {@link PopulationReader} uses the non-parallel reader then.
+ */
+/* deliberately package */ class ParallelPopulationReaderMatsimV6 extends PopulationReaderMatsimV6 {
+
+	private static final Logger log = LogManager.getLogger(ParallelPopulationReaderMatsimV6.class);
+
+	private static final int PERSONS_PER_BATCH = 100;
+
+	private final Scenario scenario;
+	private final int numThreads;
+	private final BlockingQueue<List<Tag>> queue;
+	private final Map<Class<?>, AttributeConverter<?>> attributeConverters = new HashMap<>();
+
+	private Thread[] threads = null;
+	private ParallelPopulationReaderMatsimV6Runner[] runners = null;
+	private List<Tag> currentBatch = new ArrayList<>();
+	private int personsInCurrentBatch = 0;
+	private boolean isInPerson = false;
+
+	ParallelPopulationReaderMatsimV6(
+			final String inputCRS,
+			final String targetCRS,
+			final Scenario scenario,
+			final int numThreads) {
+		super(inputCRS, targetCRS, scenario);
+		this.scenario = scenario;
+		this.numThreads = numThreads;
+		this.queue = new ArrayBlockingQueue<>(4 * numThreads);
+	}
+
+	@Override
+	public void putAttributeConverter(final Class<?> clazz, AttributeConverter<?> converter) {
+		super.putAttributeConverter(clazz, converter);
+		this.attributeConverters.put(clazz, converter);
+	}
+
+	@Override
+	public void putAttributeConverters(final Map<Class<?>, AttributeConverter<?>> converters) {
+		super.putAttributeConverters(converters);
+		this.attributeConverters.putAll(converters);
+	}
+
+	private void initThreads() {
+		// the population attributes, including the coordinate reference system, are read at this point
+		this.threads = new Thread[this.numThreads];
+		this.runners = new ParallelPopulationReaderMatsimV6Runner[this.numThreads];
+		for (int i = 0; i < this.numThreads; i++) {
+			ParallelPopulationReaderMatsimV6Runner runner = new ParallelPopulationReaderMatsimV6Runner(this.scenario, this.queue);
+			runner.coordinateTransformation = this.coordinateTransformation;
+			runner.putAttributeConverters(this.attributeConverters);
+			Thread thread = new Thread(runner);
+			thread.setDaemon(true);
+			thread.setName(ParallelPopulationReaderMatsimV6Runner.class.getSimpleName() + i);
+			this.runners[i] = runner;
+			this.threads[i] = thread;
+			thread.start();
+		}
+	}
+
+	@Override
+	public void startTag(final String name, final Attributes atts, final Stack<String> context) {
+		if (!this.isInPerson) {
+			if (!PERSON.equals(name)) {
+				super.startTag(name, atts, context);
+				return;
+			}
+			if (this.threads == null) {
+				log.info("Start parallel population reading with " + this.numThreads + " threads...");
+				initThreads();
+			}
+			this.isInPerson = true;
+			Person person = PopulationUtils.getFactory().createPerson(Id.create(atts.getValue("id"), Person.class));
+			this.scenario.getPopulation().addPerson(person);
+			this.currentBatch.add(new PersonTag(person));
+			return;
+		}
+		// We have to create copies of the attributes because the object is re-used by the parser!
+		this.currentBatch.add(new StartTag(name, new AttributesImpl(atts)));
+	}
+
+	@Override
+	public void endTag(final String name, final String content, final Stack<String> context) {
+		if (!this.isInPerson) {
+			if (POPULATION.equals(name) && this.threads != null) {
+				finishThreads();
+			}
+			super.endTag(name, content, context);
+			return;
+		}
+		if (PERSON.equals(name)) {
+			this.isInPerson = false;
+			this.personsInCurrentBatch++;
+			if (this.personsInCurrentBatch == PERSONS_PER_BATCH) {
+				putBatch(this.currentBatch);
+				this.currentBatch = new ArrayList<>();
+				this.personsInCurrentBatch = 0;
+			}
+			return;
+		}
+		this.currentBatch.add(new EndTag(name, content));
+	}
+
+	private void finishThreads() {
+		if (!this.currentBatch.isEmpty()) {
+			putBatch(this.currentBatch);
+			this.currentBatch = new ArrayList<>();
+		}
+		// signal the threads that they should end parsing
+		for (int i = 0; i < this.numThreads; i++) {
+			putBatch(new ArrayList<>());
+		}
+		try {
+			for (Thread thread : this.threads) {
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+		for (ParallelPopulationReaderMatsimV6Runner runner : this.runners) {
+			if (runner.exception != null) {
+				throw new RuntimeException("Error while reading the population in parallel.", runner.exception);
+			}
+		}
+		log.info("Finished parallel population reading...");
+	}
+
+	private void putBatch(List<Tag> batch) {
+		try {
+			this.queue.put(batch);
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	abstract static class Tag {
+	}
+
+	static final class PersonTag extends Tag {
+		final Person person;
+
+		PersonTag(Person person) {
+			this.person = person;
+		}
+	}
+
+	static final class StartTag extends Tag {
+		final String name;
+		final Attributes atts;
+
+		StartTag(String name, Attributes atts) {
+			this.name = name;
+			this.atts = atts;
+		}
+	}
+
+	static final class EndTag extends Tag {
+		final String name;
+		final String content;
+
+		EndTag(String name, String content) {
+			this.name = name;
+			this.content = content;
+		}
+	}
+
+}
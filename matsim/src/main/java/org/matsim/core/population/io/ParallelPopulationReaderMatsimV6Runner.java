@@ -0,0 +1,95 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * ParallelPopulationReaderMatsimV6Runner.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.population.io;
+
+import java.util.List;
+import java.util.Stack;
+import java.util.concurrent.BlockingQueue;
+
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.core.population.io.ParallelPopulationReaderMatsimV6.EndTag;
+import org.matsim.core.population.io.ParallelPopulationReaderMatsimV6.PersonTag;
+import org.matsim.core.population.io.ParallelPopulationReaderMatsimV6.StartTag;
+import org.matsim.core.population.io.ParallelPopulationReaderMatsimV6.Tag;
+
+/**
+ * Runnable used by ParallelPopulationReaderMatsimV6.
+ * Processes the xml data of persons taken from a BlockingQueue which is filled
+ * in the main class. An empty list signals that no further data has to be parsed.
+ */
+/* deliberately package */ class ParallelPopulationReaderMatsimV6Runner extends PopulationReaderMatsimV6 implements Runnable {
+
+	private final BlockingQueue<List<Tag>> queue;
+	private final Stack<String> context = new Stack<>();
+	/*package*/ volatile Throwable exception = null;
+
+	ParallelPopulationReaderMatsimV6Runner(final Scenario scenario, final BlockingQueue<List<Tag>> queue) {
+		super(null, null, scenario);
+		this.queue = queue;
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			List<Tag> tags;
+			try {
+				tags = this.queue.take();
+			} catch (InterruptedException e) {
+				this.exception = e;
+				return;
+			}
+			if (tags.isEmpty()) {
+				return;
+			}
+			if (this.exception != null) {
+				// keep on taking data from the queue, so the main thread is not blocked
+				continue;
+			}
+			try {
+				processTags(tags);
+			} catch (Throwable e) {
+				this.exception = e;
+			}
+		}
+	}
+
+	private void processTags(List<Tag> tags) {
+		for (Tag tag : tags) {
+			if (tag instanceof PersonTag) {
+				// the person was already created and added to the population by the main thread
+				this.currperson = ((PersonTag) tag).person;
+				this.context.clear();
+				this.context.push(POPULATION);
+				this.context.push(PERSON);
+			} else if (tag instanceof StartTag) {
+				StartTag startTag = (StartTag) tag;
+				this.startTag(startTag.name, startTag.atts, this.context);
+				this.context.push(startTag.name);
+			} else if (tag instanceof EndTag) {
+				EndTag endTag = (EndTag) tag;
+				this.context.pop();
+				this.endTag(endTag.name, endTag.content, this.context);
+			}
+		}
+		this.currperson = null;
+	}
+
+}
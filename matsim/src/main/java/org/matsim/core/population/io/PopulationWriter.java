@@ -20,10 +20,20 @@
 
 package org.matsim.core.population.io;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -52,6 +62,9 @@ public final class PopulationWriter extends AbstractMatsimWriter implements Mats
 
 	private final static Logger log = LogManager.getLogger(PopulationWriter.class);
 	private Map<Class<?>,AttributeConverter<?>> converters = new HashMap<>();
+	private int numberOfThreads = 1;
+
+	private static final int PERSONS_PER_CHUNK = 100;
 
 
 	public PopulationWriter(final Population population) {
@@ -129,6 +142,14 @@ public final class PopulationWriter extends AbstractMatsimWriter implements Mats
 		this.converters.put( key, converter );
 	}
 
+	/**
+	 * Sets the number of threads used to convert the persons to xml when writing the current (v6) format.
+	 * The persons are still written in the same order as with a single thread.
+	 */
+	public void setNumberOfThreads( final int numberOfThreads ) {
+		this.numberOfThreads = numberOfThreads;
+	}
+
 	/**
 	 * Writes all plans to the file.
 	 */
@@ -176,11 +197,79 @@ public final class PopulationWriter extends AbstractMatsimWriter implements Mats
 
 
 	private  final void writePersons() {
+		if (this.numberOfThreads > 1 && this.handler instanceof PopulationWriterHandlerImplV6) {
+			writePersonsInParallel((PopulationWriterHandlerImplV6) this.handler);
+			return;
+		}
 		for (Person p : PopulationUtils.getSortedPersons(this.population).values()) {
 			writePerson(p);
 		}
 	}
 
+	/**
+	 * Converts chunks of persons to xml in multiple threads, but writes the chunks in their original order.
+	 */
+	private void writePersonsInParallel(final PopulationWriterHandlerImplV6 handler) {
+		ExecutorService executor = Executors.newFixedThreadPool(this.numberOfThreads, runnable -> {
+			Thread thread = new Thread(runnable, PopulationWriter.class.getSimpleName());
+			thread.setDaemon(true);
+			return thread;
+		});
+		Deque<Future<String>> chunks = new ArrayDeque<>();
+		Deque<Integer> chunkSizes = new ArrayDeque<>();
+		try {
+			List<Person> chunk = new ArrayList<>(PERSONS_PER_CHUNK);
+			for (Person p : PopulationUtils.getSortedPersons(this.population).values()) {
+				if ((this.write_person_fraction < 1.0) && (MatsimRandom.getRandom().nextDouble() >= this.write_person_fraction)) {
+					continue;
+				}
+				chunk.add(p);
+				if (chunk.size() == PERSONS_PER_CHUNK) {
+					List<Person> persons = chunk;
+					chunks.add(executor.submit(() -> writeChunk(handler.createCopy(), persons)));
+					chunkSizes.add(persons.size());
+					chunk = new ArrayList<>(PERSONS_PER_CHUNK);
+					// limit the number of chunks kept in memory
+					if (chunks.size() >= 4 * this.numberOfThreads) {
+						writeNextChunk(chunks, chunkSizes);
+					}
+				}
+			}
+			if (!chunk.isEmpty()) {
+				List<Person> persons = chunk;
+				chunks.add(executor.submit(() -> writeChunk(handler.createCopy(), persons)));
+				chunkSizes.add(persons.size());
+			}
+			while (!chunks.isEmpty()) {
+				writeNextChunk(chunks, chunkSizes);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException(e);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void writeNextChunk(Deque<Future<String>> chunks, Deque<Integer> chunkSizes) throws IOException, InterruptedException, ExecutionException {
+		this.writer.write(chunks.poll().get());
+		int chunkSize = chunkSizes.poll();
+		for (int i = 0; i < chunkSize; i++) {
+			counter.incCounter();
+		}
+	}
+
+	private static String writeChunk(final PopulationWriterHandler handler, final List<Person> persons) throws IOException {
+		StringWriter chunk = new StringWriter();
+		try (BufferedWriter out = new BufferedWriter(chunk)) {
+			for (Person person : persons) {
+				handler.writePerson(person, out);
+			}
+		}
+		return chunk.toString();
+	}
+
 	private final void writePerson(final Person person) {
 		try {
 			if ((this.write_person_fraction < 1.0) && (MatsimRandom.getRandom().nextDouble() >= this.write_person_fraction)) {
@@ -25,6 +25,7 @@ import static org.matsim.core.utils.io.XmlUtils.encodeContent;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.logging.log4j.LogManager;
@@ -39,6 +40,7 @@ import org.matsim.api.core.v01.population.PlanElement;
 import org.matsim.api.core.v01.population.Population;
 import org.matsim.api.core.v01.population.Route;
 import org.matsim.core.population.PersonUtils;
+import org.matsim.core.population.PopulationUtils;
 import org.matsim.core.population.routes.NetworkRoute;
 import org.matsim.core.router.TripStructureUtils;
 import org.matsim.core.utils.geometry.CoordinateTransformation;
@@ -63,6 +65,7 @@ import org.matsim.vehicles.Vehicle;
 	// TODO: infrastructure to inject converters
 	private final AttributesXmlWriterDelegate attributesWriter = new AttributesXmlWriterDelegate();
 	private final CoordinateTransformation coordinateTransformation;
+	private final Map<Class<?>, AttributeConverter<?>> converters = new HashMap<>();
 
 	PopulationWriterHandlerImplV6(CoordinateTransformation coordinateTransformation) {
 		this.coordinateTransformation = coordinateTransformation;
@@ -71,6 +74,16 @@ import org.matsim.vehicles.Vehicle;
 	@Override
 	public void putAttributeConverters( final Map<Class<?>, AttributeConverter<?>> converters ) {
 		this.attributesWriter.putAttributeConverters( converters );
+		this.converters.putAll( converters );
+	}
+
+	/**
+	 * @return a new handler with the same settings, e.g. to write persons in another thread
+	 */
+	/*package*/ PopulationWriterHandlerImplV6 createCopy() {
+		PopulationWriterHandlerImplV6 copy = new PopulationWriterHandlerImplV6(this.coordinateTransformation);
+		copy.putAttributeConverters(this.converters);
+		return copy;
 	}
 
 	@Override
@@ -98,7 +111,7 @@ import org.matsim.vehicles.Vehicle;
 		for (Plan plan : person.getPlans()) {
 			startPlan(plan, out);
 			// act/leg
-			for (PlanElement pe : plan.getPlanElements()) {
+			for (PlanElement pe : PopulationUtils.getPlanElementsForReading(plan)) {
 				if (pe instanceof Activity) {
 					Activity act = (Activity) pe;
 					this.writeAct(act, out);
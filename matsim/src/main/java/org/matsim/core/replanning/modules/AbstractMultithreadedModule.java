@@ -25,14 +25,21 @@ import org.apache.logging.log4j.Logger;
 import org.matsim.api.core.v01.population.Plan;
 import org.matsim.api.core.v01.replanning.PlanStrategyModule;
 import org.matsim.core.config.groups.GlobalConfigGroup;
+import org.matsim.core.config.groups.GlobalConfigGroup.ReplanningThreadScheduling;
 import org.matsim.core.population.algorithms.PlanAlgorithm;
 import org.matsim.core.replanning.ReplanningContext;
 import org.matsim.core.utils.misc.Counter;
 
-import java.lang.Thread.UncaughtExceptionHandler;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * An abstract strategy module for running multiple plan algorithms in parallel.
@@ -41,15 +48,20 @@ import java.util.concurrent.atomic.AtomicReference;
  * Just overwrite getPlanAlgoInstance() to return an instance of your plan
  * algorithm.
  * <p></p>
- * <code>initThreads()</code> creates the threads, but does not yet start them.
+ * <code>initThreads()</code> creates one plan algorithm instance per thread.
  * <p></p>
- * <code>handlePlan(Plan)</code> distributes the plans equally to all threads.
+ * <code>handlePlan(Plan)</code> collects the plans.
  * <p></p>
- * <code>finishReplanning()</code> finally starts the threads and waits for all threads to be finished.
+ * <code>finishReplanning()</code> finally hands the plans to the threads and waits for all threads to be finished.
+ * The threads are shared by all modules and kept across iterations, until {@link #shutdownThreads()} is called when the
+ * controler shuts down. Outside of a controler, idle threads end after one hour.
  * <p></p>
+ * With {@link ReplanningThreadScheduling#roundRobin}, the plans are distributed equally to all threads.
  * While this approach does not lead to optimal performance gains ("slow threads" vs.
- * "fast threads"), it helps building reproducible runs.  Additionally, as the threads are only
- * started after all to-be-handled plans are added, we can use unsynchronized data structures.
+ * "fast threads"), it helps building reproducible runs.  With {@link ReplanningThreadScheduling#dynamic},
+ * idle threads fetch the next small chunk of plans, so a few slow plans do not keep all the other threads
+ * waiting, at the price of not knowing in advance which plan algorithm instance handles which plan.
+ * As the threads only start after all to-be-handled plans are added, we can use unsynchronized data structures.
  * <p></p>
  * Design comments/questions:<ul>
  * <li> As a consequence of the design, the instances that getPlanAlgoInstance() returns, need to be thread-safe.  kai, dec'12
@@ -60,21 +72,23 @@ import java.util.concurrent.atomic.AtomicReference;
  */
 abstract public class AbstractMultithreadedModule implements PlanStrategyModule {
 	private final int numOfThreads;
+	private final ReplanningThreadScheduling scheduling;
 
-	private PlanAlgoThread[] algothreads = null;
-	private Thread[] threads = null;
+	private PlanAlgorithm[] algos = null;
 	private PlanAlgorithm directAlgo = null;
 	private String name = null;
+	private Counter counter = null;
 
-	private int count = 0;
-
-	private final AtomicReference<Throwable> hadException = new AtomicReference<>(null);
-	private final ExceptionHandler exceptionHandler = new ExceptionHandler(this.hadException);
+	private List<Plan> plans = new ArrayList<>();
 
 	private ReplanningContext replanningContext;
 
 	static final private Logger log = LogManager.getLogger(AbstractMultithreadedModule.class);
 
+	// shared by all modules, so the threads are not created again for every module and iteration
+	private static ExecutorService executor = null;
+	private static final AtomicInteger threadCount = new AtomicInteger(0);
+
 	/**
 	 * Design comments:<ul>
 	 * <li> The way I understand this, the instances that this method returns need to be thread-safe (i.e. independent from each other).  They can,
@@ -85,10 +99,16 @@ abstract public class AbstractMultithreadedModule implements PlanStrategyModule
 
 	public AbstractMultithreadedModule(GlobalConfigGroup globalConfigGroup) {
 		this.numOfThreads = globalConfigGroup.getNumberOfThreads();
+		this.scheduling = globalConfigGroup.getReplanningThreadScheduling();
 	}
 
 	public AbstractMultithreadedModule(final int numOfThreads) {
+		this(numOfThreads, ReplanningThreadScheduling.roundRobin);
+	}
+
+	public AbstractMultithreadedModule(final int numOfThreads, final ReplanningThreadScheduling scheduling) {
 		this.numOfThreads = numOfThreads;
+		this.scheduling = scheduling;
 	}
 	
 	protected void beforePrepareReplanningHook(@SuppressWarnings("unused") ReplanningContext replanningContextTmp) {
@@ -119,8 +139,7 @@ abstract public class AbstractMultithreadedModule implements PlanStrategyModule
 	@Override
 	public final void handlePlan(final Plan plan) {
 		if (this.directAlgo == null) {
-			this.algothreads[this.count % this.numOfThreads].addPlanToThread(plan);
-			this.count++;
+			this.plans.add(plan);
 		} else {
 			this.directAlgo.run(plan);
 		}
@@ -139,101 +158,185 @@ abstract public class AbstractMultithreadedModule implements PlanStrategyModule
 		
 		if (this.directAlgo == null) {
 			// only try to start threads if we did not directly work on all the plans
-			log.info("[" + this.name + "] starting " + this.threads.length + " threads, handling " + this.count + " plans");
-
-			// start threads
-			for (Thread thread : this.threads) {
-				thread.start();
+			log.info("[" + this.name + "] starting " + this.algos.length + " threads, handling " + this.plans.size() + " plans");
+
+			PlanAlgoWorker[] workers = new PlanAlgoWorker[this.algos.length];
+			AtomicInteger nextPlan = new AtomicInteger(0);
+			int chunkSize = Math.max(1, Math.min(256, this.plans.size() / (this.algos.length * 32)));
+			List<Future<?>> futures = new ArrayList<>();
+			long start = System.nanoTime();
+			for (int i = 0; i < this.algos.length; i++) {
+				workers[i] = this.scheduling == ReplanningThreadScheduling.dynamic
+						? new DynamicPlanAlgoWorker(this.algos[i], this.counter, this.plans, nextPlan, chunkSize)
+						: new RoundRobinPlanAlgoWorker(this.algos[i], this.counter, this.plans, i, this.algos.length);
+				futures.add(submit(workers[i]));
 			}
 
 			// wait until each thread is finished
+			Throwable throwable = null;
 			try {
-				for (Thread thread : this.threads) {
-					thread.join();
+				for (int i = 0; i < futures.size(); i++) {
+					try {
+						futures.get(i).get();
+					} catch (InterruptedException e) {
+						throw new RuntimeException(e);
+					} catch (ExecutionException e) {
+						log.error("Thread " + this.name + "." + i + " died with exception. Will stop after all threads finished.", e.getCause());
+						throwable = e.getCause();
+					}
+				}
+			} finally {
+				// only has an effect if waiting was interrupted
+				for (Future<?> future : futures) {
+					future.cancel(true);
 				}
-			} catch (InterruptedException e) {
-				throw new RuntimeException(e);
 			}
-			log.info("[" + this.name + "] all " + this.threads.length + " threads finished.");
-			Throwable throwable = this.hadException.get();
+			long wallTime = System.nanoTime() - start;
+			log.info("[" + this.name + "] all " + this.algos.length + " threads finished.");
+			logStatistics(workers, wallTime);
 			if (throwable != null) {
+				this.algos = null;
+				this.plans = new ArrayList<>();
 				throw new RuntimeException("Some threads crashed, thus not all plans may have been handled.", throwable);
 			}
 		}
 		// reset
-		this.algothreads = null;
-		this.threads = null;
+		this.algos = null;
+		this.plans = new ArrayList<>();
 		this.replanningContext = null;
-		this.count = 0;
 		
 		this.afterFinishReplanningHook();
 	}
 
+	private static synchronized Future<?> submit(Runnable worker) {
+		if (executor == null) {
+			executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 1, TimeUnit.HOURS, new SynchronousQueue<>(), r -> {
+				Thread thread = new Thread(r, "replanning." + threadCount.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return executor.submit(worker);
+	}
+
+	/**
+	 * Shuts down the threads shared by all modules once their current plans are handled. Called when the controler
+	 * shuts down. Modules used afterwards start new threads.
+	 */
+	public static synchronized void shutdownThreads() {
+		if (executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+	}
+
+	private void logStatistics(PlanAlgoWorker[] workers, long wallTime) {
+		long maxBusyTime = 0;
+		long totalIdleTime = 0;
+		for (int i = 0; i < workers.length; i++) {
+			PlanAlgoWorker worker = workers[i];
+			long idleTime = Math.max(0, wallTime - worker.busyTime);
+			maxBusyTime = Math.max(maxBusyTime, worker.busyTime);
+			totalIdleTime += idleTime;
+			if (log.isDebugEnabled()) {
+				log.debug(String.format(Locale.US, "[%s] thread %d handled %d plans, busy %.2f s, idle %.2f s", this.name, i,
+						worker.handledPlans, worker.busyTime / 1e9, idleTime / 1e9));
+			}
+		}
+		log.info(String.format(Locale.US, "[%s] wall time %.2f s, longest thread busy %.2f s, average idle %.2f s", this.name,
+				wallTime / 1e9, maxBusyTime / 1e9, workers.length == 0 ? 0.0 : totalIdleTime / 1e9 / workers.length));
+	}
+
 	private void initThreads() {
-		if (this.threads != null) {
+		if (this.algos != null) {
 			throw new RuntimeException("threads are already initialized");
 		}
 
-		this.hadException.set(null);
-		this.threads = new Thread[this.numOfThreads];
-		this.algothreads = new PlanAlgoThread[this.numOfThreads];
+		this.algos = new PlanAlgorithm[this.numOfThreads];
 
-		Counter counter = null;
-		// setup threads
+		// setup plan algorithms, one per thread
 		for (int i = 0; i < this.numOfThreads; i++) {
 			PlanAlgorithm algo = getPlanAlgoInstance();
-			if (i == 0) {
+			if (i == 0 && this.name == null) {
 				this.name = algo.getClass().getSimpleName();
-				counter = new Counter("[" + this.name + "] handled plan # ");
 			}
-			PlanAlgoThread algothread = new PlanAlgoThread(algo, counter);
-			Thread thread = new Thread(algothread, this.name + "." + i);
-			thread.setUncaughtExceptionHandler(this.exceptionHandler);
-			this.threads[i] = thread;
-			this.algothreads[i] = algothread;
+			this.algos[i] = algo;
 		}
+		this.counter = new Counter("[" + this.name + "] handled plan # ");
 	}
 
 	/* package (for a test) */ final int getNumOfThreads() {
 		return numOfThreads;
 	}
 
-	private final static class ExceptionHandler implements UncaughtExceptionHandler {
+	private static abstract class PlanAlgoWorker implements Runnable {
 
-		private final AtomicReference<Throwable> hadException;
+		final PlanAlgorithm planAlgo;
+		final Counter counter;
+		final List<Plan> plans;
+		long busyTime = 0;
+		int handledPlans = 0;
 
-		public ExceptionHandler(final AtomicReference<Throwable> hadException) {
-			this.hadException = hadException;
+		PlanAlgoWorker(final PlanAlgorithm algo, final Counter counter, final List<Plan> plans) {
+			this.planAlgo = algo;
+			this.counter = counter;
+			this.plans = plans;
 		}
 
-		@Override
-		public void uncaughtException(Thread t, Throwable e) {
-			log.error("Thread " + t.getName() + " died with exception. Will stop after all threads finished.", e);
-			this.hadException.set(e);
+		final void handle(int from, int to, int step) {
+			long start = System.nanoTime();
+			try {
+				for (int i = from; i < to; i += step) {
+					this.planAlgo.run(this.plans.get(i));
+					this.handledPlans++;
+					this.counter.incCounter();
+				}
+			} finally {
+				this.busyTime += System.nanoTime() - start;
+			}
 		}
-
 	}
 
-	private final static class PlanAlgoThread implements Runnable {
+	/**
+	 * Handles every n-th plan, so each plan algorithm instance always gets the same plans in the same order.
+	 */
+	private final static class RoundRobinPlanAlgoWorker extends PlanAlgoWorker {
 
-		private final PlanAlgorithm planAlgo;
-		private final List<Plan> plans = new LinkedList<>();
-		private final Counter counter;
+		private final int offset;
+		private final int numOfThreads;
 
-		public PlanAlgoThread(final PlanAlgorithm algo, final Counter counter) {
-			this.planAlgo = algo;
-			this.counter = counter;
+		RoundRobinPlanAlgoWorker(final PlanAlgorithm algo, final Counter counter, final List<Plan> plans, final int offset, final int numOfThreads) {
+			super(algo, counter, plans);
+			this.offset = offset;
+			this.numOfThreads = numOfThreads;
 		}
 
-		public void addPlanToThread(final Plan plan) {
-			this.plans.add(plan);
+		@Override
+		public void run() {
+			handle(this.offset, this.plans.size(), this.numOfThreads);
+		}
+	}
+
+	/**
+	 * Fetches chunks of consecutive plans from a shared position until all plans are handled.
+	 */
+	private final static class DynamicPlanAlgoWorker extends PlanAlgoWorker {
+
+		private final AtomicInteger nextPlan;
+		private final int chunkSize;
+
+		DynamicPlanAlgoWorker(final PlanAlgorithm algo, final Counter counter, final List<Plan> plans, final AtomicInteger nextPlan, final int chunkSize) {
+			super(algo, counter, plans);
+			this.nextPlan = nextPlan;
+			this.chunkSize = chunkSize;
 		}
 
 		@Override
 		public void run() {
-			for (Plan plan : this.plans) {
-				this.planAlgo.run(plan);
-				this.counter.incCounter();
+			int size = this.plans.size();
+			int from;
+			while ((from = this.nextPlan.getAndAdd(this.chunkSize)) < size) {
+				handle(from, Math.min(size, from + this.chunkSize), 1);
 			}
 		}
 	}
@@ -0,0 +1,200 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * CachingLeastCostPathCalculator.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.router;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.vehicles.Vehicle;
+
+/**
+ * A {@link LeastCostPathCalculator} that remembers the paths calculated by another calculator, keyed by start node,
+ * end node and departure time bin, in a {@link Cache} that can be shared by multiple threads.
+ * <p></p>
+ * When a cached path is found, its travel time is re-calculated with the current travel times. If it changed by
+ * more than the given relative threshold compared to when the path was calculated, e.g. because the travel times
+ * were updated after an iteration, the path is calculated again. Otherwise, the cached path is returned with the
+ * current travel time and cost. Note that a cached path is not re-checked for alternatives that became faster, and
+ * that the path does not depend on the person or vehicle, so e.g. routing randomness is lost for cached paths.
+ */
+public final class CachingLeastCostPathCalculator implements LeastCostPathCalculator {
+
+	private final LeastCostPathCalculator delegate;
+	private final Cache cache;
+	private final TravelTime travelTime;
+	private final TravelDisutility travelDisutility;
+
+	public CachingLeastCostPathCalculator(LeastCostPathCalculator delegate, Cache cache, TravelTime travelTime, TravelDisutility travelDisutility) {
+		this.delegate = delegate;
+		this.cache = cache;
+		this.travelTime = travelTime;
+		this.travelDisutility = travelDisutility;
+	}
+
+	@Override
+	public Path calcLeastCostPath(Node fromNode, Node toNode, double starttime, Person person, Vehicle vehicle) {
+		Key key = new Key(fromNode.getId().index(), toNode.getId().index(), (int) Math.floor(starttime / this.cache.timeBinSize));
+		Entry entry = this.cache.get(key);
+		if (entry != null) {
+			double time = starttime;
+			double cost = 0;
+			for (Link link : entry.links) {
+				cost += this.travelDisutility.getLinkTravelDisutility(link, time, person, vehicle);
+				time += this.travelTime.getLinkTravelTime(link, time, person, vehicle);
+			}
+			double newTravelTime = time - starttime;
+			if (Math.abs(newTravelTime - entry.travelTime) <= this.cache.maxRelativeTravelTimeChange * entry.travelTime) {
+				this.cache.hits.incrementAndGet();
+				return new Path(entry.nodes, entry.links, newTravelTime, cost);
+			}
+			this.cache.invalidated.incrementAndGet();
+		}
+		Path path = this.delegate.calcLeastCostPath(fromNode, toNode, starttime, person, vehicle);
+		if (path != null) {
+			this.cache.put(key, new Entry(path));
+		}
+		return path;
+	}
+
+	/**
+	 * A thread-safe cache with bounded size, evicting the least recently used paths.
+	 */
+	public static final class Cache {
+
+		private static final Logger log = LogManager.getLogger(Cache.class);
+		private static final int SEGMENTS = 16;
+
+		private final double timeBinSize;
+		private final double maxRelativeTravelTimeChange;
+		private final Segment[] segments = new Segment[SEGMENTS];
+		private final AtomicLong lookups = new AtomicLong();
+		private final AtomicLong nextLog = new AtomicLong(1000);
+		final AtomicLong hits = new AtomicLong();
+		final AtomicLong invalidated = new AtomicLong();
+
+		/**
+		 * @param maxSize the maximum number of cached paths
+		 * @param timeBinSize the size of a departure time bin, in seconds
+		 * @param maxRelativeTravelTimeChange cached paths whose current travel time differs by more than this fraction are calculated again
+		 */
+		public Cache(int maxSize, double timeBinSize, double maxRelativeTravelTimeChange) {
+			this.timeBinSize = timeBinSize;
+			this.maxRelativeTravelTimeChange = maxRelativeTravelTimeChange;
+			int segmentSize = Math.max(1, maxSize / SEGMENTS);
+			for (int i = 0; i < SEGMENTS; i++) {
+				this.segments[i] = new Segment(segmentSize);
+			}
+		}
+
+		Entry get(Key key) {
+			long count = this.lookups.incrementAndGet();
+			long next = this.nextLog.get();
+			if (count >= next && this.nextLog.compareAndSet(next, next * 2)) {
+				log.info("route cache: " + count + " lookups, " + this.hits.get() + " hits, " + this.invalidated.get() + " invalidated.");
+			}
+			Segment segment = segment(key);
+			synchronized (segment) {
+				return segment.get(key);
+			}
+		}
+
+		void put(Key key, Entry entry) {
+			Segment segment = segment(key);
+			synchronized (segment) {
+				segment.put(key, entry);
+			}
+		}
+
+		private Segment segment(Key key) {
+			return this.segments[(key.hashCode() & 0x7fffffff) % SEGMENTS];
+		}
+
+		public long getHits() {
+			return this.hits.get();
+		}
+
+		public long getLookups() {
+			return this.lookups.get();
+		}
+	}
+
+	private static final class Segment extends LinkedHashMap<Key, Entry> {
+		private final int maxSize;
+
+		Segment(int maxSize) {
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+			return size() > this.maxSize;
+		}
+	}
+
+	private static final class Key {
+		private final int fromNode;
+		private final int toNode;
+		private final int timeBin;
+
+		Key(int fromNode, int toNode, int timeBin) {
+			this.fromNode = fromNode;
+			this.toNode = toNode;
+			this.timeBin = timeBin;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return this.fromNode == other.fromNode && this.toNode == other.toNode && this.timeBin == other.timeBin;
+		}
+
+		@Override
+		public int hashCode() {
+			return (this.fromNode * 31 + this.toNode) * 31 + this.timeBin;
+		}
+	}
+
+	private static final class Entry {
+		private final List<Node> nodes;
+		private final List<Link> links;
+		private final double travelTime;
+
+		Entry(Path path) {
+			this.nodes = List.copyOf(path.nodes);
+			this.links = List.copyOf(path.links);
+			this.travelTime = path.travelTime;
+		}
+	}
+}
@@ -22,10 +22,14 @@ import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.network.Network;
 import org.matsim.api.core.v01.population.PopulationFactory;
 import org.matsim.core.config.groups.PlansCalcRouteConfigGroup.ModeRoutingParams;
+import org.matsim.core.router.speedy.SpeedyGraph;
 import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.core.router.util.TravelTime;
 import org.matsim.core.utils.timing.TimeInterpretation;
 
 import javax.annotation.Nullable;
+import java.util.function.Supplier;
 
 /**
  * @author nagel
@@ -67,6 +71,23 @@ public final class DefaultRoutingModules {
 				routeAlgo);
 	}
 
+	/**
+	 * Creates network router without access/egress, which batches requests with the same start link, person and departure time bin,
+	 * see {@link NetworkRoutingModule}.
+	 */
+	static RoutingModule createPureNetworkRouter( String mode, PopulationFactory popFact, Network net, final LeastCostPathCalculator routeAlgo,
+												  Supplier<SpeedyGraph> graphSupplier, TravelTime travelTime, TravelDisutility travelDisutility, double batchTimeBinSize ) {
+		return new NetworkRoutingModule(
+				mode,
+				popFact,
+				net,
+				routeAlgo,
+				graphSupplier,
+				travelTime,
+				travelDisutility,
+				batchTimeBinSize);
+	}
+
 	// TODO: make package private again
 	// Please use injection (NetworkRoutingProvider) to get a NetworkRoutingInclAccessEgressModule - kn/gl nov'19
 	public static RoutingModule createAccessEgressNetworkRouter( String mode,
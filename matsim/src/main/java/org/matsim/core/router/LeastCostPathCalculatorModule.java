@@ -26,6 +26,8 @@ import org.matsim.core.config.Config;
 import org.matsim.core.config.groups.ControlerConfigGroup;
 import org.matsim.core.controler.AbstractModule;
 import org.matsim.core.router.speedy.SpeedyALTFactory;
+import org.matsim.core.router.speedy.SpeedyCCHAStarFactory;
+import org.matsim.core.router.speedy.SpeedyCCHFactory;
 import org.matsim.core.router.util.*;
 
 public class LeastCostPathCalculatorModule extends AbstractModule {
@@ -47,6 +49,12 @@ public class LeastCostPathCalculatorModule extends AbstractModule {
             bind(LeastCostPathCalculatorFactory.class).to(FastAStarLandmarksFactory.class);
         } else if (config.controler().getRoutingAlgorithmType().equals(ControlerConfigGroup.RoutingAlgorithmType.SpeedyALT)) {
             bind(LeastCostPathCalculatorFactory.class).to(SpeedyALTFactory.class);
+        } else if (config.controler().getRoutingAlgorithmType().equals(ControlerConfigGroup.RoutingAlgorithmType.SpeedyCCH)) {
+            bind(LeastCostPathCalculatorFactory.class).to(SpeedyCCHFactory.class);
+            // drops the metrics of the travel times of the last iteration
+            addControlerListenerBinding().to(SpeedyCCHFactory.class);
+        } else if (config.controler().getRoutingAlgorithmType().equals(ControlerConfigGroup.RoutingAlgorithmType.SpeedyCCHAStar)) {
+            bind(LeastCostPathCalculatorFactory.class).to(SpeedyCCHAStarFactory.class);
         }
     }
 
@@ -18,8 +18,15 @@
  * *********************************************************************** */
 package org.matsim.core.router;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
 
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Link;
@@ -33,15 +40,24 @@ import org.matsim.core.gbl.Gbl;
 import org.matsim.core.network.NetworkUtils;
 import org.matsim.core.population.routes.NetworkRoute;
 import org.matsim.core.population.routes.RouteUtils;
+import org.matsim.core.router.speedy.LeastCostPathTree;
+import org.matsim.core.router.speedy.SpeedyGraph;
 import org.matsim.core.router.util.LeastCostPathCalculator;
 import org.matsim.core.router.util.LeastCostPathCalculator.Path;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.core.router.util.TravelTime;
 import org.matsim.facilities.Facility;
-import org.matsim.vehicles.Vehicle;
-import org.matsim.vehicles.VehicleUtils;
 
 /**
  * This wraps a "computer science" {@link LeastCostPathCalculator}, which routes from a node to another node, into something that
  * routes from a {@link Facility} to another {@link Facility}, as we need in MATSim.
+ * <p></p>
+ * If created with a graph, travel time and travel disutility, {@link #calcRoutes(List)} answers all requests with the same start link,
+ * person and departure time with one {@link LeastCostPathTree}. The routes have the same least cost as the ones of
+ * {@link #calcRoute(RoutingRequest)}, but may differ from them if several paths have that cost. With a batch time bin size &gt; 0,
+ * the requests of the same time bin share one tree, departing at the earliest departure time of the requests in the bin. Their
+ * routes are then only approximate, as the later requests are routed with the travel times of up to one bin earlier.
+ * The batched requests do not use the {@link LeastCostPathCalculator} of this module, and thus not the route cache either.
  * 
  * @author thibautd
  */
@@ -55,12 +71,36 @@ public final class NetworkRoutingModule implements RoutingModule {
 	private final Network network;
 	private final LeastCostPathCalculator routeAlgo;
 
+	private final Supplier<SpeedyGraph> graphSupplier; // null if requests should not be batched
+	private final TravelTime travelTime;
+	private final TravelDisutility travelDisutility;
+	private final double batchTimeBinSize;
+	private LeastCostPathTree tree = null;
+	private BitSet targetNodes = null;
+
 
 	 public NetworkRoutingModule(
 			final String mode,
 			final PopulationFactory populationFactory,
 			final Network network,
 			final LeastCostPathCalculator routeAlgo) {
+		 this(mode, populationFactory, network, routeAlgo, null, null, null, 0);
+	}
+
+	/**
+	 * @param graphSupplier provides the graph of the network for batched routing, only called when needed.
+	 * @param batchTimeBinSize requests departing in the same time bin of this size are batched with approximate results,
+	 *                         0 to only batch requests with the same departure time
+	 */
+	 /* package-private */ NetworkRoutingModule(
+			final String mode,
+			final PopulationFactory populationFactory,
+			final Network network,
+			final LeastCostPathCalculator routeAlgo,
+			final Supplier<SpeedyGraph> graphSupplier,
+			final TravelTime travelTime,
+			final TravelDisutility travelDisutility,
+			final double batchTimeBinSize) {
 		 Gbl.assertNotNull(network);
 //		 Gbl.assertIf( network.getLinks().size()>0 ) ; // otherwise network for mode probably not defined
 		 // makes many tests fail.  
@@ -68,6 +108,10 @@ public final class NetworkRoutingModule implements RoutingModule {
 		 this.routeAlgo = routeAlgo;
 		 this.mode = mode;
 		 this.populationFactory = populationFactory;
+		 this.graphSupplier = graphSupplier;
+		 this.travelTime = travelTime;
+		 this.travelDisutility = travelDisutility;
+		 this.batchTimeBinSize = batchTimeBinSize;
 	}
 
 	@Override
@@ -77,23 +121,11 @@ public final class NetworkRoutingModule implements RoutingModule {
 		final double departureTime = request.getDepartureTime();
 		final Person person = request.getPerson();
 		
-		Leg newLeg = this.populationFactory.createLeg( this.mode );
-
 		Gbl.assertNotNull(fromFacility);
 		Gbl.assertNotNull(toFacility);
 
-		Link fromLink = this.network.getLinks().get(fromFacility.getLinkId());
-		if ( fromLink==null ) {
-			Gbl.assertNotNull( fromFacility.getCoord() ) ;
-			fromLink = NetworkUtils.getNearestLink( network, fromFacility.getCoord()) ;
-		}
-		Link toLink = this.network.getLinks().get(toFacility.getLinkId());
-		if ( toLink==null ) {
-			Gbl.assertNotNull( toFacility.getCoord() ) ;
-			toLink = NetworkUtils.getNearestLink(network, toFacility.getCoord());
-		}
-		Gbl.assertNotNull(fromLink);
-		Gbl.assertNotNull(toLink);
+		Link fromLink = getLink(fromFacility);
+		Link toLink = getLink(toFacility);
 		
 		if (toLink != fromLink) {
 			// (a "true" route)
@@ -108,22 +140,104 @@ public final class NetworkRoutingModule implements RoutingModule {
 			Path path = this.routeAlgo.calcLeastCostPath(startNode, endNode, departureTime, person, null);
 			if (path == null)
 				throw new RuntimeException("No route found from node " + startNode.getId() + " to node " + endNode.getId() + " by mode " + this.mode + ".");
-			NetworkRoute route = this.populationFactory.getRouteFactories().createRoute(NetworkRoute.class, fromLink.getId(), toLink.getId());
-			route.setLinkIds(fromLink.getId(), NetworkUtils.getLinkIds(path.links), toLink.getId());
-			route.setTravelTime(path.travelTime);
-			route.setTravelCost(path.travelCost);
-			route.setDistance(RouteUtils.calcDistance(route, 1.0, 1.0, this.network));
-			newLeg.setRoute(route);
-			newLeg.setTravelTime(path.travelTime);
+			return createLeg(fromLink, toLink, departureTime, NetworkUtils.getLinkIds(path.links), path.travelTime, path.travelCost);
 		} else {
 			// create an empty route == staying on place if toLink == endLink
 			// note that we still do a route: someone may drive from one location to another on the link. kai, dec'15
-			NetworkRoute route = this.populationFactory.getRouteFactories().createRoute(NetworkRoute.class, fromLink.getId(), toLink.getId());
+			return createLeg(fromLink, toLink, departureTime, null, 0, 0);
+		}
+	}
+
+	@Override
+	public List<List<? extends PlanElement>> calcRoutes(List<RoutingRequest> requests) {
+		if (this.graphSupplier == null) {
+			return RoutingModule.super.calcRoutes(requests);
+		}
+		List<List<? extends PlanElement>> routes = new ArrayList<>(Collections.nCopies(requests.size(), null));
+		Link[] fromLinks = new Link[requests.size()];
+		Link[] toLinks = new Link[requests.size()];
+		Map<BatchKey, List<Integer>> batches = new LinkedHashMap<>();
+		for (int i = 0; i < requests.size(); i++) {
+			RoutingRequest request = requests.get(i);
+			Gbl.assertNotNull(request.getFromFacility());
+			Gbl.assertNotNull(request.getToFacility());
+			fromLinks[i] = getLink(request.getFromFacility());
+			toLinks[i] = getLink(request.getToFacility());
+			if (fromLinks[i] == toLinks[i]) {
+				routes.set(i, createLeg(fromLinks[i], toLinks[i], request.getDepartureTime(), null, 0, 0));
+			} else {
+				double timeBin = this.batchTimeBinSize > 0 ? Math.floor(request.getDepartureTime() / this.batchTimeBinSize) : request.getDepartureTime();
+				batches.computeIfAbsent(new BatchKey(fromLinks[i], request.getPerson(), timeBin), k -> new ArrayList<>()).add(i);
+			}
+		}
+		for (List<Integer> batch : batches.values()) {
+			if (batch.size() == 1) {
+				int i = batch.get(0);
+				routes.set(i, calcRoute(requests.get(i)));
+			} else {
+				calcBatch(requests, batch, fromLinks, toLinks, routes);
+			}
+		}
+		return routes;
+	}
+
+	private void calcBatch(List<RoutingRequest> requests, List<Integer> batch, Link[] fromLinks, Link[] toLinks, List<List<? extends PlanElement>> routes) {
+		if (this.tree == null) {
+			this.tree = new LeastCostPathTree(this.graphSupplier.get(), this.travelTime, this.travelDisutility);
+			this.targetNodes = new BitSet();
+		}
+		Link fromLink = fromLinks[batch.get(0)];
+		Person person = requests.get(batch.get(0)).getPerson();
+		double departureTime = Double.POSITIVE_INFINITY;
+		this.targetNodes.clear();
+		for (int i : batch) {
+			departureTime = Math.min(departureTime, requests.get(i).getDepartureTime());
+			this.targetNodes.set(toLinks[i].getFromNode().getId().index());
+		}
+		int[] remainingTargets = { this.targetNodes.cardinality() };
+		Node startNode = fromLink.getToNode();
+		this.tree.calculate(startNode.getId().index(), departureTime, person, null,
+				(nodeIndex, arrivalTime, travelCost, distance, depTime) -> this.targetNodes.get(nodeIndex) && --remainingTargets[0] == 0);
+
+		for (int i : batch) {
+			Link toLink = toLinks[i];
+			int endNodeIndex = toLink.getFromNode().getId().index();
+			if (this.tree.getTime(endNodeIndex).isUndefined())
+				throw new RuntimeException("No route found from node " + startNode.getId() + " to node " + toLink.getFromNode().getId() + " by mode " + this.mode + ".");
+			List<Id<Link>> linkIds = new ArrayList<>();
+			for (int nodeIndex = endNodeIndex; this.tree.getComingFromLink(nodeIndex) >= 0; nodeIndex = this.tree.getComingFrom(nodeIndex)) {
+				linkIds.add(Id.get(this.tree.getComingFromLink(nodeIndex), Link.class));
+			}
+			Collections.reverse(linkIds);
+			double travelTime = this.tree.getTime(endNodeIndex).seconds() - departureTime;
+			routes.set(i, createLeg(fromLink, toLink, requests.get(i).getDepartureTime(), linkIds, travelTime, this.tree.getCost(endNodeIndex)));
+		}
+	}
+
+	private Link getLink(Facility facility) {
+		Link link = this.network.getLinks().get(facility.getLinkId());
+		if ( link==null ) {
+			Gbl.assertNotNull( facility.getCoord() ) ;
+			link = NetworkUtils.getNearestLink( network, facility.getCoord()) ;
+		}
+		Gbl.assertNotNull(link);
+		return link;
+	}
+
+	private List<? extends PlanElement> createLeg(Link fromLink, Link toLink, double departureTime, List<Id<Link>> linkIds, double travelTime, double travelCost) {
+		Leg newLeg = this.populationFactory.createLeg( this.mode );
+		NetworkRoute route = this.populationFactory.getRouteFactories().createRoute(NetworkRoute.class, fromLink.getId(), toLink.getId());
+		if (linkIds != null) {
+			route.setLinkIds(fromLink.getId(), linkIds, toLink.getId());
+			route.setTravelTime(travelTime);
+			route.setTravelCost(travelCost);
+			route.setDistance(RouteUtils.calcDistance(route, 1.0, 1.0, this.network));
+		} else {
 			route.setTravelTime(0);
 			route.setDistance(0.0);
-			newLeg.setRoute(route);
-			newLeg.setTravelTime(0);
 		}
+		newLeg.setRoute(route);
+		newLeg.setTravelTime(travelTime);
 		newLeg.setDepartureTime(departureTime);
 
 		return Arrays.asList( newLeg );
@@ -134,4 +248,30 @@ public final class NetworkRoutingModule implements RoutingModule {
 		return "[NetworkRoutingModule: mode="+this.mode+"]";
 	}
 
+	private static final class BatchKey {
+		private final Link fromLink;
+		private final Person person;
+		private final double timeBin;
+
+		BatchKey(Link fromLink, Person person, double timeBin) {
+			this.fromLink = fromLink;
+			this.person = person;
+			this.timeBin = timeBin;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof BatchKey)) {
+				return false;
+			}
+			BatchKey other = (BatchKey) o;
+			return this.fromLink == other.fromLink && this.person == other.person && this.timeBin == other.timeBin;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(this.fromLink, this.person, this.timeBin);
+		}
+	}
+
 }
@@ -32,8 +32,10 @@ import org.matsim.core.config.groups.PlansCalcRouteConfigGroup;
 import org.matsim.core.network.NetworkUtils;
 import org.matsim.core.network.algorithms.TransportModeNetworkFilter;
 import org.matsim.core.router.costcalculators.TravelDisutilityFactory;
+import org.matsim.core.router.speedy.SpeedyGraph;
 import org.matsim.core.router.util.LeastCostPathCalculator;
 import org.matsim.core.router.util.LeastCostPathCalculatorFactory;
+import org.matsim.core.router.util.TravelDisutility;
 import org.matsim.core.router.util.TravelTime;
 import org.matsim.core.utils.timing.TimeInterpretation;
 
@@ -44,6 +46,7 @@ import javax.inject.Provider;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Supplier;
 
 public class NetworkRoutingProvider implements Provider<RoutingModule> {
 	private static final Logger log = LogManager.getLogger( NetworkRoutingProvider.class ) ;
@@ -92,6 +95,27 @@ public class NetworkRoutingProvider implements Provider<RoutingModule> {
 
 	private final String mode;
 
+	private CachingLeastCostPathCalculator.Cache routeCache = null;
+
+	private synchronized CachingLeastCostPathCalculator.Cache getRouteCache() {
+		// one cache per provider, i.e. per mode, shared by all threads
+		if (this.routeCache == null) {
+			this.routeCache = new CachingLeastCostPathCalculator.Cache(plansCalcRouteConfigGroup.getRouteCacheSize(),
+					plansCalcRouteConfigGroup.getRouteCacheTimeBinSize(), plansCalcRouteConfigGroup.getRouteCacheMaxRelativeTravelTimeChange());
+		}
+		return this.routeCache;
+	}
+
+	private SpeedyGraph graph = null;
+
+	private synchronized SpeedyGraph getGraph(Network filteredNetwork) {
+		// only created when routes are batched, shared by all threads
+		if (this.graph == null) {
+			this.graph = new SpeedyGraph(filteredNetwork);
+		}
+		return this.graph;
+	}
+
 	@Override
 	public RoutingModule get() {
 		log.debug( "requesting network routing module with routingMode="
@@ -122,11 +146,15 @@ public class NetworkRoutingProvider implements Provider<RoutingModule> {
 		if (travelTime == null) {
 			throw new RuntimeException("No TravelTime bound for mode "+routingMode+".");
 		}
+		TravelDisutility travelDisutility = travelDisutilityFactory.createTravelDisutility(travelTime);
 		LeastCostPathCalculator routeAlgo =
 				leastCostPathCalculatorFactory.createPathCalculator(
 						filteredNetwork,
-						travelDisutilityFactory.createTravelDisutility(travelTime),
+						travelDisutility,
 						travelTime);
+		if ( plansCalcRouteConfigGroup.getRouteCacheSize() > 0 ) {
+			routeAlgo = new CachingLeastCostPathCalculator(routeAlgo, getRouteCache(), travelTime, travelDisutility);
+		}
 
 		// the following again refers to the (transport)mode, since it will determine the mode of the leg on the network:
 		if ( !plansCalcRouteConfigGroup.getAccessEgressType().equals(PlansCalcRouteConfigGroup.AccessEgressType.none) ) {
@@ -143,7 +171,11 @@ public class NetworkRoutingProvider implements Provider<RoutingModule> {
 			}
 			
 		} else {
-			return DefaultRoutingModules.createPureNetworkRouter(mode, populationFactory, filteredNetwork, routeAlgo);
+			final Network routingNetwork = filteredNetwork;
+			// with the route cache, the requests are not batched, so they all use the cache
+			Supplier<SpeedyGraph> graphSupplier = plansCalcRouteConfigGroup.getRouteCacheSize() > 0 ? null : () -> getGraph(routingNetwork);
+			return DefaultRoutingModules.createPureNetworkRouter(mode, populationFactory, filteredNetwork, routeAlgo,
+					graphSupplier, travelTime, travelDisutility, plansCalcRouteConfigGroup.getBatchRoutingTimeBinSize());
 		}
 	}
 }
@@ -19,6 +19,7 @@
  * *********************************************************************** */
 package org.matsim.core.router;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.matsim.api.core.v01.population.PlanElement;
@@ -51,6 +52,26 @@ public interface RoutingModule {
 	 * @return a list of {@link PlanElement}, in proper order, representing the trip.
 	 */
 	public List<? extends PlanElement> calcRoute(RoutingRequest request);
+
+	/**
+	 * Computes the routes for multiple requests at once, e.g. for the many destinations a mode or location choice
+	 * estimator evaluates for one agent. Implementations may answer requests sharing the same origin and a similar
+	 * departure time with a single one-to-many search, which is much faster than independent point-to-point queries.
+	 * The default implementation simply calls {@link #calcRoute(RoutingRequest)} for each request. Only the network
+	 * routing module without access/egress overrides it, see {@link NetworkRoutingModule}; pt routing modules, e.g. the
+	 * one of SwissRailRaptor, use the default, as a raptor least cost tree only yields stop-to-stop costs, not complete trips.
+	 *
+	 * @param requests the requests to route
+	 * @return the routes, in the same order as the requests. An entry may be <code>null</code> if no route was found,
+	 * just like {@link #calcRoute(RoutingRequest)} may return <code>null</code>.
+	 */
+	public default List<List<? extends PlanElement>> calcRoutes(List<RoutingRequest> requests) {
+		List<List<? extends PlanElement>> routes = new ArrayList<>(requests.size());
+		for (RoutingRequest request : requests) {
+			routes.add(calcRoute(request));
+		}
+		return routes;
+	}
 	
 	// NOTE: It makes some sense to _not_ have the vehicle as an argument here ... since that only makes sense for vehicular modes. kai, feb'19
 	// NOTE: But now we have replaced the arguments with the RoutingRequest interface, which could now have a derived VehicularRoutingRequest if needed. shoerl, aug'21
@@ -194,6 +194,44 @@ public final class TripRouter implements MatsimExtensionPoint {
 		throw new UnknownModeException( "unregistered main mode |"+mainMode+"|: does not pertain to "+routingModules.keySet() );
 	}
 
+	/**
+	 * Routes multiple trips with the given main mode at once. The routing module may answer requests sharing
+	 * the same origin and a similar departure time with a single one-to-many search, see
+	 * {@link RoutingModule#calcRoutes(List)}. This is useful for estimators evaluating many destinations
+	 * or alternatives for one agent.
+	 *
+	 * @param mainMode the main mode for the trips
+	 * @param requests the requests to route
+	 * @return the trips, in the same order as the requests
+	 *
+	 * @throws UnknownModeException if no RoutingModule is registered for the
+	 * given mode.
+	 */
+	public synchronized List<List<? extends PlanElement>> calcRoutes(
+			final String mainMode,
+			final List<RoutingRequest> requests) {
+		RoutingModule module = routingModules.get( mainMode );
+
+		if (module != null) {
+			List<List<? extends PlanElement>> trips = new ArrayList<>( module.calcRoutes( requests ) );
+			Preconditions.checkState( trips.size() == requests.size(), "%s returned %s routes for %s requests", module, trips.size(), requests.size() );
+
+			for (int i = 0; i < trips.size(); i++) {
+				List<? extends PlanElement> trip = trips.get( i );
+				if ( trip == null ) {
+					trip = fallbackRoutingModule.calcRoute( requests.get( i ) ) ;
+					trips.set( i, trip );
+				}
+				for (Leg leg: TripStructureUtils.getLegs(trip)) {
+					TripStructureUtils.setRoutingMode(leg, mainMode);
+				}
+			}
+			return trips;
+		}
+
+		throw new UnknownModeException( "unregistered main mode |"+mainMode+"|: does not pertain to "+routingModules.keySet() );
+	}
+
 	public static class UnknownModeException extends RuntimeException {
 		private UnknownModeException(
 				final String msg) {
@@ -0,0 +1,89 @@
+package org.matsim.core.router.speedy;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Function;
+
+/**
+ * Keeps preprocessed data that depends on the weight of every link, e.g. landmarks or a customized lower-bound metric,
+ * so router instances created with equal link weights can share it.
+ *
+ * The entries are found by a hash of the weights, and only the most recently used entries are kept, so the cache
+ * does not grow without bounds if the weights change in every iteration.
+ *
+ * This class is thread-safe. Threads requesting data that is not yet cached wait until it is created, data for
+ * different link weights can be created concurrently.
+ */
+final class LinkWeightsCache<T> {
+
+	private final Map<Key, FutureTask<T>> entries;
+
+	LinkWeightsCache(int maxSize) {
+		this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, FutureTask<T>> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	T get(double[] linkWeights, Function<double[], T> creator) {
+		Key key = new Key(linkWeights);
+		FutureTask<T> task;
+		boolean isNew = false;
+		synchronized (this) {
+			task = this.entries.get(key);
+			if (task == null) {
+				task = new FutureTask<>(() -> creator.apply(linkWeights));
+				this.entries.put(key, task);
+				isNew = true;
+			}
+		}
+		if (isNew) {
+			task.run();
+		}
+		try {
+			return task.get();
+		} catch (ExecutionException e) {
+			synchronized (this) {
+				this.entries.remove(key, task);
+			}
+			Throwable cause = e.getCause();
+			throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+	}
+
+	synchronized void clear() {
+		this.entries.clear();
+	}
+
+	synchronized int size() {
+		return this.entries.size();
+	}
+
+	private static final class Key {
+		private final double[] linkWeights;
+		private final int hash;
+
+		Key(double[] linkWeights) {
+			this.linkWeights = linkWeights;
+			this.hash = Arrays.hashCode(linkWeights);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Key && ((Key) obj).hash == this.hash && Arrays.equals(((Key) obj).linkWeights, this.linkWeights);
+		}
+	}
+}
@@ -7,6 +7,20 @@ import org.matsim.api.core.v01.network.Node;
 import org.matsim.core.router.speedy.SpeedyGraph.LinkIterator;
 import org.matsim.core.router.util.TravelDisutility;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
@@ -18,6 +32,10 @@ import java.util.concurrent.Future;
 /**
  * Preprocessed data for the ALT algorithm, see {@link SpeedyALT}.
  *
+ * The trees of the landmarks are calculated in parallel. If a cache directory is given, the landmark data is stored
+ * in a file named after a hash of the graph (including the ids of all links and nodes) and of the minimum travel
+ * disutilities of the links, and re-used whenever the same graph and minimum travel disutilities are used again.
+ *
  * This class is thread-safe and can safely be used by multiple threads.
  *
  * @author mrieser / Simunto, sponsored by SBB Swiss Federal Railways
@@ -26,27 +44,60 @@ class SpeedyALTData {
 
 	private final static Logger LOG = LogManager.getLogger(SpeedyALTData.class);
 
+	private final static int FILE_MAGIC = 0x53414c54; // "SALT"
+	private final static int FILE_VERSION = 1;
+
 	final SpeedyGraph graph;
 	private final int landmarksCount;
-	private final TravelDisutility travelCosts;
+	private final double[] linkWeights; // minimum travel disutility per link
+	private final int numberOfThreads;
 	private final int[] landmarksNodeIndices;
 	private final double[] nodesData; // for each node: 2 values per landmark
 	private final int[] deadendData;
 	private final double minTravelCostPerLength;
 
 	public SpeedyALTData(SpeedyGraph graph, int landmarksCount, TravelDisutility travelCosts) {
+		this(graph, landmarksCount, getLinkWeights(graph, travelCosts), 4, null);
+	}
+
+	/**
+	 * @param linkWeights the minimum travel disutility of each link, see {@link #getLinkWeights(SpeedyGraph, TravelDisutility)}
+	 * @param numberOfThreads the number of threads used to calculate the trees of the landmarks
+	 * @param cacheDirectory directory to store and look up the landmark data, or <code>null</code> to always calculate the landmarks
+	 */
+	SpeedyALTData(SpeedyGraph graph, int landmarksCount, double[] linkWeights, int numberOfThreads, File cacheDirectory) {
 		this.graph = graph;
 		this.landmarksCount = landmarksCount;
-		this.travelCosts = travelCosts;
+		this.linkWeights = linkWeights;
+		this.numberOfThreads = Math.max(1, numberOfThreads);
 		this.landmarksNodeIndices = new int[landmarksCount];
 		this.nodesData = new double[graph.nodeCount * (landmarksCount * 2)];
 		this.deadendData = new int[graph.nodeCount];
 
 		this.findDeadEnds();
-		this.calcLandmarks();
+		if (cacheDirectory == null) {
+			this.calcLandmarks();
+		} else {
+			File file = new File(cacheDirectory, "speedyALT-" + calcHash() + ".landmarks");
+			if (!(file.exists() && this.readLandmarks(file))) {
+				this.calcLandmarks();
+				this.writeLandmarks(file);
+			}
+		}
 		this.minTravelCostPerLength = this.calcMinTravelCostPerLength();
 	}
 
+	static double[] getLinkWeights(SpeedyGraph graph, TravelDisutility travelCosts) {
+		double[] weights = new double[graph.linkCount];
+		for (int linkIdx = 0; linkIdx < graph.linkCount; linkIdx++) {
+			Link link = graph.getLink(linkIdx);
+			if (link != null) {
+				weights[linkIdx] = travelCosts.getLinkMinimumTravelDisutility(link);
+			}
+		}
+		return weights;
+	}
+
 	private void findDeadEnds() {
 		LOG.info("find dead ends...");
 
@@ -143,7 +194,7 @@ class SpeedyALTData {
 		}
 
 		Future<double[]>[] trees = new Future[this.landmarksCount * 2];
-		ExecutorService executor = Executors.newFixedThreadPool(4);
+		ExecutorService executor = Executors.newFixedThreadPool(this.numberOfThreads);
 
 		int firstLandmarkIndex = firstNode.getId().index();
 		this.landmarksNodeIndices[0] = firstLandmarkIndex;
@@ -158,15 +209,102 @@ class SpeedyALTData {
 			trees[i * 2 + 1] = executor.submit(() -> calculateTreeBackward(nextLandmark));
 		}
 
-		for (int i = 0; i < trees.length; i++) {
-			try {
+		try {
+			for (int i = 0; i < trees.length; i++) {
 				double[] data = trees[i].get();
 				setNodeData(data, i);
-			} catch (InterruptedException | ExecutionException e) {
-				LOG.error(e);
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException("Could not calculate the landmarks.", e);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private String calcHash() {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			DataOutputStream out = new DataOutputStream(new DigestOutputStream(OutputStream.nullOutputStream(), digest));
+			out.writeInt(this.graph.nodeCount);
+			out.writeInt(this.graph.linkCount);
+			out.writeInt(this.landmarksCount);
+			for (int nodeIdx = 0; nodeIdx < this.graph.nodeCount; nodeIdx++) {
+				Node node = this.graph.getNode(nodeIdx);
+				out.writeUTF(node == null ? "" : node.getId().toString());
+			}
+			for (int linkIdx = 0; linkIdx < this.graph.linkCount; linkIdx++) {
+				Link link = this.graph.getLink(linkIdx);
+				if (link == null) {
+					out.writeInt(-1);
+				} else {
+					out.writeInt(linkIdx);
+					out.writeUTF(link.getId().toString());
+					out.writeInt(link.getFromNode().getId().index());
+					out.writeInt(link.getToNode().getId().index());
+					out.writeDouble(this.linkWeights[linkIdx]);
+				}
+			}
+			out.flush();
+			StringBuilder hash = new StringBuilder();
+			for (byte b : digest.digest()) {
+				hash.append(String.format("%02x", b));
+			}
+			return hash.toString();
+		} catch (NoSuchAlgorithmException | IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private boolean readLandmarks(File file) {
+		LOG.info("read landmarks from " + file + "...");
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+			if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+				LOG.warn("Unsupported landmarks file " + file + ", landmarks will be calculated again.");
+				return false;
+			}
+			if (in.readInt() != this.landmarksCount || in.readInt() != this.nodesData.length) {
+				LOG.warn("Landmarks file " + file + " does not match the network, landmarks will be calculated again.");
+				return false;
+			}
+			for (int i = 0; i < this.landmarksCount; i++) {
+				this.landmarksNodeIndices[i] = in.readInt();
+			}
+			for (int i = 0; i < this.nodesData.length; i++) {
+				this.nodesData[i] = in.readDouble();
+			}
+			return true;
+		} catch (IOException e) {
+			LOG.warn("Could not read landmarks from " + file + ", landmarks will be calculated again.", e);
+			return false;
+		}
+	}
+
+	private void writeLandmarks(File file) {
+		LOG.info("write landmarks to " + file + "...");
+		File tmpFile = null;
+		try {
+			Files.createDirectories(file.getParentFile().toPath());
+			// write to a temporary file first, so parallel runs never see an incomplete file
+			tmpFile = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 1 << 16))) {
+				out.writeInt(FILE_MAGIC);
+				out.writeInt(FILE_VERSION);
+				out.writeInt(this.landmarksCount);
+				out.writeInt(this.nodesData.length);
+				for (int nodeIdx : this.landmarksNodeIndices) {
+					out.writeInt(nodeIdx);
+				}
+				for (double value : this.nodesData) {
+					out.writeDouble(value);
+				}
+			}
+			Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			LOG.warn("Could not write landmarks to " + file + ".", e);
+			if (tmpFile != null) {
+				tmpFile.delete();
 			}
 		}
-		executor.shutdown();
 	}
 
 	private double calcMinTravelCostPerLength() {
@@ -175,7 +313,7 @@ class SpeedyALTData {
 		for (int linkIdx = 0; linkIdx < graph.linkCount; linkIdx++) {
 			Link link = this.graph.getLink(linkIdx);
 			if (link != null) {
-				double cost = this.travelCosts.getLinkMinimumTravelDisutility(link) / link.getLength();
+				double cost = this.linkWeights[linkIdx] / link.getLength();
 				if (cost < minCost) {
 					minCost = cost;
 				}
@@ -249,7 +387,7 @@ class SpeedyALTData {
 			while (outLI.next()) {
 				int toNode = outLI.getToNodeIndex();
 
-				double newCost = currCost + this.travelCosts.getLinkMinimumTravelDisutility(this.graph.getLink(outLI.getLinkIndex()));
+				double newCost = currCost + this.linkWeights[outLI.getLinkIndex()];
 
 				double oldCost = data[toNode];
 				if (Double.isFinite(oldCost)) {
@@ -283,7 +421,7 @@ class SpeedyALTData {
 			while (inLI.next()) {
 				int fromNode = inLI.getFromNodeIndex();
 
-				double newCost = currCost + this.travelCosts.getLinkMinimumTravelDisutility(this.graph.getLink(inLI.getLinkIndex()));
+				double newCost = currCost + this.linkWeights[inLI.getLinkIndex()];
 
 				double oldCost = data[fromNode];
 				if (Double.isFinite(oldCost)) {
@@ -1,35 +1,71 @@
 package org.matsim.core.router.speedy;
 
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
 import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.config.Config;
 import org.matsim.core.router.util.LeastCostPathCalculator;
 import org.matsim.core.router.util.LeastCostPathCalculatorFactory;
 import org.matsim.core.router.util.TravelDisutility;
 import org.matsim.core.router.util.TravelTime;
 
+import java.io.File;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * Creates {@link SpeedyALT} instances.
+ *
+ * The landmarks are calculated once per network and minimum travel disutilities of the links, so multiple modes or
+ * travel disutilities with the same minimum travel disutilities share the same landmarks. Only the landmarks of the
+ * {@value #MAX_LANDMARKS_PER_GRAPH} most recently used sets of minimum travel disutilities are kept per network. If a cache directory is
+ * configured ({@link org.matsim.core.config.groups.ControlerConfigGroup#getLandmarksCacheDirectory()}), the landmarks
+ * are also stored on disk and re-used by later runs.
+ *
  * @author mrieser / Simunto, sponsored by SBB Swiss Federal Railways
  */
+@Singleton
 public class SpeedyALTFactory implements LeastCostPathCalculatorFactory {
 
 	private final Map<Network, SpeedyGraph> graphs = new ConcurrentHashMap<>();
-	private final Map<SpeedyGraph, SpeedyALTData> landmarksData = new ConcurrentHashMap<>();
+	private static final int MAX_LANDMARKS_PER_GRAPH = 4;
+
+	private final Map<SpeedyGraph, LinkWeightsCache<SpeedyALTData>> landmarksData = new ConcurrentHashMap<>();
+	private final int numberOfThreads;
+	private final File cacheDirectory;
+
+	public SpeedyALTFactory() {
+		this(4, null);
+	}
+
+	@Inject
+	public SpeedyALTFactory(Config config) {
+		this(config.global().getNumberOfThreads(),
+				config.controler().getLandmarksCacheDirectory() == null ? null : new File(config.controler().getLandmarksCacheDirectory()));
+	}
+
+	/**
+	 * @param numberOfThreads the number of threads used to calculate the landmarks
+	 * @param cacheDirectory directory to store and look up the landmarks, or <code>null</code> to always calculate them
+	 */
+	public SpeedyALTFactory(int numberOfThreads, File cacheDirectory) {
+		this.numberOfThreads = numberOfThreads;
+		this.cacheDirectory = cacheDirectory;
+	}
 
 	@Override
 	public LeastCostPathCalculator createPathCalculator(Network network, TravelDisutility travelCosts, TravelTime travelTimes) {
-		SpeedyGraph graph = this.graphs.get(network);
-		if (graph == null) {
-			graph = new SpeedyGraph(network);
-			this.graphs.put(network, graph);
-		}
-		SpeedyALTData landmarks = this.landmarksData.get(graph);
-		if (landmarks == null) {
-			landmarks = new SpeedyALTData(graph, 16, travelCosts);
-			this.landmarksData.put(graph, landmarks);
-		}
+		SpeedyGraph graph = this.graphs.computeIfAbsent(network, SpeedyGraph::new);
+		double[] linkWeights = SpeedyALTData.getLinkWeights(graph, travelCosts);
+		SpeedyALTData landmarks = this.landmarksData.computeIfAbsent(graph, g -> new LinkWeightsCache<>(MAX_LANDMARKS_PER_GRAPH))
+				.get(linkWeights, weights -> new SpeedyALTData(graph, 16, weights, this.numberOfThreads, this.cacheDirectory));
 		return new SpeedyALT(landmarks, travelTimes, travelCosts);
 	}
 
+	/*package (for a test)*/ int getCachedLandmarksCount(Network network) {
+		SpeedyGraph graph = this.graphs.get(network);
+		LinkWeightsCache<SpeedyALTData> cache = graph == null ? null : this.landmarksData.get(graph);
+		return cache == null ? 0 : cache.size();
+	}
+
 }
@@ -0,0 +1,193 @@
+package org.matsim.core.router.speedy;
+
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.vehicles.Vehicle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A least cost path calculator based on a customizable contraction hierarchy (CCH), see {@link SpeedyCCHData}
+ * and {@link SpeedyCCHMetric}.
+ *
+ * A query runs two small Dijkstra searches that only follow upward arcs of the hierarchy, one from the start
+ * node and one (backwards) from the end node, and combines them at the node where they meet with the lowest
+ * cost. The resulting arcs are then unpacked to the original links.
+ *
+ * The hierarchy uses one customized metric per time bin, the bin is selected by the departure time. The
+ * path is thus optimal for the travel disutilities at that time bin, while the travel time and cost of the
+ * returned path are calculated with the actual departure times at each link. As the metrics are shared by
+ * all agents, person- or vehicle-specific travel disutilities are not taken into account when searching
+ * the path.
+ *
+ * This class is NOT thread-safe, but the hierarchy and metrics can be shared among multiple instances.
+ */
+public class SpeedyCCH implements LeastCostPathCalculator {
+
+	private final SpeedyCCHData data;
+	private final SpeedyCCHMetric[] metrics;
+	private final double timeBinSize;
+	private final TravelTime tt;
+	private final TravelDisutility td;
+	private final double[] forwardCost;
+	private final double[] backwardCost;
+	private final int[] forwardArc;
+	private final int[] backwardArc;
+	private final int[] forwardIterationIds;
+	private final int[] backwardIterationIds;
+	private int currentIteration = Integer.MIN_VALUE;
+	private final DAryMinHeap forwardPQ;
+	private final DAryMinHeap backwardPQ;
+	private final int[] stack = new int[256];
+
+	SpeedyCCH(SpeedyCCHMetric[] metrics, double timeBinSize, TravelTime tt, TravelDisutility td) {
+		this.data = metrics[0].data;
+		this.metrics = metrics;
+		this.timeBinSize = timeBinSize;
+		this.tt = tt;
+		this.td = td;
+		int n = this.data.rankCount;
+		this.forwardCost = new double[n];
+		this.backwardCost = new double[n];
+		this.forwardArc = new int[n];
+		this.backwardArc = new int[n];
+		this.forwardIterationIds = new int[n];
+		this.backwardIterationIds = new int[n];
+		this.forwardPQ = new DAryMinHeap(n, 4);
+		this.backwardPQ = new DAryMinHeap(n, 4);
+	}
+
+	@Override
+	public Path calcLeastCostPath(Node startNode, Node endNode, double startTime, Person person, Vehicle vehicle) {
+		this.currentIteration++;
+		if (this.currentIteration == Integer.MAX_VALUE) {
+			// reset iteration as we overflow
+			Arrays.fill(this.forwardIterationIds, this.currentIteration);
+			Arrays.fill(this.backwardIterationIds, this.currentIteration);
+			this.currentIteration = Integer.MIN_VALUE;
+		}
+
+		int startRank = this.data.rankOfNode[startNode.getId().index()];
+		int endRank = this.data.rankOfNode[endNode.getId().index()];
+		if (startRank < 0 || endRank < 0) {
+			return null;
+		}
+		SpeedyCCHMetric metric = this.metrics[getTimeBin(startTime)];
+
+		this.forwardPQ.clear();
+		this.backwardPQ.clear();
+		this.forwardCost[startRank] = 0;
+		this.forwardArc[startRank] = -1;
+		this.forwardIterationIds[startRank] = this.currentIteration;
+		this.forwardPQ.insert(startRank, 0);
+		this.backwardCost[endRank] = 0;
+		this.backwardArc[endRank] = -1;
+		this.backwardIterationIds[endRank] = this.currentIteration;
+		this.backwardPQ.insert(endRank, 0);
+
+		double bestCost = Double.POSITIVE_INFINITY;
+		int meetingRank = -1;
+		int[] firstArc = this.data.firstArc;
+		int[] arcHead = this.data.arcHead;
+
+		while (true) {
+			double forwardMin = this.forwardPQ.isEmpty() ? Double.POSITIVE_INFINITY : this.forwardCost[this.forwardPQ.peek()];
+			double backwardMin = this.backwardPQ.isEmpty() ? Double.POSITIVE_INFINITY : this.backwardCost[this.backwardPQ.peek()];
+			boolean forward = forwardMin <= backwardMin;
+			if ((forward ? forwardMin : backwardMin) >= bestCost) {
+				break;
+			}
+			DAryMinHeap pq = forward ? this.forwardPQ : this.backwardPQ;
+			double[] cost = forward ? this.forwardCost : this.backwardCost;
+			int[] usedArc = forward ? this.forwardArc : this.backwardArc;
+			int[] iterationIds = forward ? this.forwardIterationIds : this.backwardIterationIds;
+			int[] otherIterationIds = forward ? this.backwardIterationIds : this.forwardIterationIds;
+			double[] otherCost = forward ? this.backwardCost : this.forwardCost;
+			double[] weights = forward ? metric.upWeight : metric.downWeight;
+
+			int rank = pq.poll();
+			double currCost = cost[rank];
+			if (otherIterationIds[rank] == this.currentIteration) {
+				double total = currCost + otherCost[rank];
+				if (total < bestCost) {
+					bestCost = total;
+					meetingRank = rank;
+				}
+			}
+
+			for (int arc = firstArc[rank], end = firstArc[rank + 1]; arc < end; arc++) {
+				double newCost = currCost + weights[arc];
+				if (newCost == Double.POSITIVE_INFINITY) {
+					continue;
+				}
+				int head = arcHead[arc];
+				if (iterationIds[head] == this.currentIteration) {
+					if (newCost < cost[head]) {
+						pq.decreaseKey(head, newCost);
+						cost[head] = newCost;
+						usedArc[head] = arc;
+					}
+				} else {
+					iterationIds[head] = this.currentIteration;
+					cost[head] = newCost;
+					usedArc[head] = arc;
+					pq.insert(head, newCost);
+				}
+			}
+		}
+
+		if (meetingRank < 0) {
+			return null;
+		}
+		return constructPath(metric, startNode, meetingRank, startTime, person, vehicle);
+	}
+
+	private int getTimeBin(double time) {
+		int bin = (int) (time / this.timeBinSize);
+		if (bin < 0) {
+			return 0;
+		}
+		return Math.min(bin, this.metrics.length - 1);
+	}
+
+	private Path constructPath(SpeedyCCHMetric metric, Node startNode, int meetingRank, double startTime, Person person, Vehicle vehicle) {
+		List<Link> links = new ArrayList<>();
+
+		// forward part: collect the arcs from the meeting node back to the start, then unpack them in reverse order
+		List<Integer> forwardArcs = new ArrayList<>();
+		int rank = meetingRank;
+		while (this.forwardArc[rank] >= 0) {
+			int arc = this.forwardArc[rank];
+			forwardArcs.add(arc);
+			rank = this.data.getArcTail(arc);
+		}
+		for (int i = forwardArcs.size() - 1; i >= 0; i--) {
+			metric.unpack(forwardArcs.get(i), true, links, this.stack);
+		}
+
+		// backward part: the arcs are already in the right order, going downwards towards the end
+		rank = meetingRank;
+		while (this.backwardArc[rank] >= 0) {
+			int arc = this.backwardArc[rank];
+			metric.unpack(arc, false, links, this.stack);
+			rank = this.data.getArcTail(arc);
+		}
+
+		List<Node> nodes = new ArrayList<>(links.size() + 1);
+		nodes.add(startNode);
+		double time = startTime;
+		double cost = 0;
+		for (Link link : links) {
+			nodes.add(link.getToNode());
+			cost += this.td.getLinkTravelDisutility(link, time, person, vehicle);
+			time += this.tt.getLinkTravelTime(link, time, person, vehicle);
+		}
+		return new Path(nodes, links, time - startTime, cost);
+	}
+}
@@ -0,0 +1,186 @@
+package org.matsim.core.router.speedy;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.vehicles.Vehicle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A time-dependent A*-search using exact lower bounds calculated with a customizable contraction hierarchy
+ * as potentials, see {@link SpeedyCCHPotential}.
+ *
+ * The search itself works on the original graph and evaluates the travel times and disutilities at the actual
+ * time a link is entered, just like {@link SpeedyDijkstra}, so it answers departure-time queries with the same
+ * results. The potentials are the least costs to the destination in a metric that is customized with the
+ * minimum travel disutility of each link ({@link TravelDisutility#getLinkMinimumTravelDisutility(Link)}).
+ * As these are exact distances in the lower-bound graph, they are much tighter than the landmark estimates
+ * of {@link SpeedyALT}, and nodes from which the destination cannot be reached are never expanded.
+ *
+ * This implementation is not thread-safe. In the case of multi-threading, every thread should use
+ * a separate instance. (But the used {@link SpeedyCCHMetric} is thread-safe and can be shared by multiple
+ * instances).
+ */
+public class SpeedyCCHAStar implements LeastCostPathCalculator {
+
+	private final static Logger LOG = LogManager.getLogger(SpeedyCCHAStar.class);
+
+	private final SpeedyGraph graph;
+	private final SpeedyCCHPotential potential;
+	private final TravelTime tt;
+	private final TravelDisutility td;
+	private final double[] data; // 2 entries per node: cost to node, time
+	private int currentIteration = Integer.MIN_VALUE;
+	private final int[] iterationIds;
+	private final int[] comingFrom;
+	private final int[] usedLink;
+	private final SpeedyGraph.LinkIterator outLI;
+	private final DAryMinHeap pq;
+
+	SpeedyCCHAStar(SpeedyCCHMetric lowerBounds, TravelTime tt, TravelDisutility td) {
+		this.graph = lowerBounds.data.graph;
+		this.potential = new SpeedyCCHPotential(lowerBounds);
+		this.tt = tt;
+		this.td = td;
+		this.data = new double[this.graph.nodeCount * 2];
+		this.iterationIds = new int[this.graph.nodeCount];
+		this.comingFrom = new int[this.graph.nodeCount];
+		this.usedLink = new int[this.graph.nodeCount];
+		this.pq = new DAryMinHeap(this.graph.nodeCount, 6);
+		this.outLI = this.graph.getOutLinkIterator();
+		Arrays.fill(this.iterationIds, this.currentIteration);
+	}
+
+	private double getCost(int nodeIndex) {
+		return this.data[nodeIndex * 2];
+	}
+
+	private double getTimeRaw(int nodeIndex) {
+		return this.data[nodeIndex * 2 + 1];
+	}
+
+	private void setData(int nodeIndex, double cost, double time) {
+		int index = nodeIndex * 2;
+		this.data[index] = cost;
+		this.data[index + 1] = time;
+		this.iterationIds[nodeIndex] = this.currentIteration;
+	}
+
+	@Override
+	public Path calcLeastCostPath(Node startNode, Node endNode, double startTime, Person person, Vehicle vehicle) {
+		this.currentIteration++;
+		if (this.currentIteration == Integer.MAX_VALUE) {
+			// reset iteration as we overflow
+			Arrays.fill(this.iterationIds, this.currentIteration);
+			this.currentIteration = Integer.MIN_VALUE;
+		}
+		int startNodeIndex = startNode.getId().index();
+		int endNodeIndex = endNode.getId().index();
+
+		this.potential.setTarget(endNodeIndex);
+		double estimation = this.potential.getPotential(startNodeIndex);
+
+		this.comingFrom[startNodeIndex] = -1;
+		setData(startNodeIndex, 0, startTime);
+		this.pq.clear();
+		if (estimation < Double.POSITIVE_INFINITY) {
+			this.pq.insert(startNodeIndex, estimation);
+		}
+		boolean foundEndNode = false;
+
+		while (!this.pq.isEmpty()) {
+			final int nodeIdx = this.pq.poll();
+			if (nodeIdx == endNodeIndex) {
+				foundEndNode = true;
+				break;
+			}
+
+			double currTime = getTimeRaw(nodeIdx);
+			double currCost = getCost(nodeIdx);
+
+			this.outLI.reset(nodeIdx);
+			while (this.outLI.next()) {
+				int linkIdx = this.outLI.getLinkIndex();
+				int toNode = this.outLI.getToNodeIndex();
+				estimation = this.potential.getPotential(toNode);
+				if (estimation == Double.POSITIVE_INFINITY) {
+					continue; // the destination cannot be reached from this node
+				}
+				Link link = this.graph.getLink(linkIdx);
+
+				double travelTime = this.tt.getLinkTravelTime(link, currTime, person, vehicle);
+				double newTime = currTime + travelTime;
+				double travelCost = this.td.getLinkTravelDisutility(link, currTime, person, vehicle);
+				double newCost = currCost + travelCost;
+
+				if (this.iterationIds[toNode] == this.currentIteration) {
+					// this node was already visited in this route-query
+					double oldCost = getCost(toNode);
+					if (newCost < oldCost) {
+						this.pq.decreaseKey(toNode, newCost + estimation);
+						setData(toNode, newCost, newTime);
+						this.comingFrom[toNode] = nodeIdx;
+						this.usedLink[toNode] = linkIdx;
+					}
+				} else {
+					setData(toNode, newCost, newTime);
+					this.pq.insert(toNode, newCost + estimation);
+					this.comingFrom[toNode] = nodeIdx;
+					this.usedLink[toNode] = linkIdx;
+				}
+			}
+		}
+
+		if (foundEndNode) {
+			return constructPath(endNodeIndex, startTime);
+		}
+		LOG.warn("No route was found from node " + startNode.getId() + " to node " + endNode.getId() + ". Some possible reasons:");
+		LOG.warn("  * Network is not connected.  Run NetworkCleaner().") ;
+		LOG.warn("  * Network for considered mode does not even exist.  Modes need to be entered for each link in network.xml.");
+		LOG.warn("  * Network for considered mode is not connected to starting or ending point of route.  Setting insertingAccessEgressWalk to true may help.");
+		LOG.warn("This will now return null, but it may fail later with a NullPointerException.");
+		return null;
+	}
+
+	private Path constructPath(int endNodeIndex, double startTime) {
+		double travelCost = getCost(endNodeIndex);
+		double arrivalTime = getTimeRaw(endNodeIndex);
+		if (Double.isInfinite(arrivalTime)) {
+			throw new RuntimeException("Undefined time on end node");
+		}
+		double travelTime = arrivalTime - startTime;
+
+		List<Node> nodes = new ArrayList<>();
+		List<Link> links = new ArrayList<>();
+
+		int nodeIndex = endNodeIndex;
+
+		nodes.add(this.graph.getNode(nodeIndex));
+
+		int linkIndex = this.usedLink[nodeIndex];
+		nodeIndex = this.comingFrom[nodeIndex];
+
+		while (nodeIndex >= 0) {
+			nodes.add(this.graph.getNode(nodeIndex));
+			links.add(this.graph.getLink(linkIndex));
+
+			linkIndex = this.usedLink[nodeIndex];
+			nodeIndex = this.comingFrom[nodeIndex];
+		}
+
+		Collections.reverse(nodes);
+		Collections.reverse(links);
+
+		return new Path(nodes, links, travelTime, travelCost);
+	}
+
+}
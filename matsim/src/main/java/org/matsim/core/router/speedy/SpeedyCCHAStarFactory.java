@@ -0,0 +1,59 @@
+package org.matsim.core.router.speedy;
+
+import com.google.inject.Singleton;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.util.LeastCostPathCalculatorFactory;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.core.router.util.TravelTime;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Creates {@link SpeedyCCHAStar} instances.
+ *
+ * The contraction is done once per network. The lower-bound metric is customized with the minimum travel
+ * disutilities of the links, and shared by all path calculators whose travel disutilities have the same minimum
+ * travel disutilities, so a changed minimum (e.g. due to new tolls or other parameters for another subpopulation)
+ * always leads to a new customization. Only the {@value #MAX_METRICS_PER_NETWORK} most recently used metrics are
+ * kept per network. The travel times themselves are always evaluated at query time, so changed travel times never
+ * require any preprocessing.
+ */
+@Singleton
+public class SpeedyCCHAStarFactory implements LeastCostPathCalculatorFactory {
+
+	private final static Logger LOG = LogManager.getLogger(SpeedyCCHAStarFactory.class);
+
+	private static final int MAX_METRICS_PER_NETWORK = 4;
+
+	private final Map<Network, SpeedyGraph> graphs = new ConcurrentHashMap<>();
+	private final Map<SpeedyGraph, SpeedyCCHData> hierarchies = new ConcurrentHashMap<>();
+	private final Map<SpeedyCCHData, LinkWeightsCache<SpeedyCCHMetric>> lowerBounds = new ConcurrentHashMap<>();
+
+	@Override
+	public LeastCostPathCalculator createPathCalculator(Network network, TravelDisutility travelCosts, TravelTime travelTimes) {
+		SpeedyGraph graph = this.graphs.computeIfAbsent(network, SpeedyGraph::new);
+		SpeedyCCHData hierarchy = this.hierarchies.computeIfAbsent(graph, SpeedyCCHData::new);
+		double[] linkWeights = getMinimumLinkWeights(graph, travelCosts);
+		SpeedyCCHMetric metric = this.lowerBounds.computeIfAbsent(hierarchy, h -> new LinkWeightsCache<>(MAX_METRICS_PER_NETWORK))
+				.get(linkWeights, weights -> {
+					LOG.info("customizing contraction hierarchy with minimum travel disutilities...");
+					return new SpeedyCCHMetric(hierarchy, weights);
+				});
+		return new SpeedyCCHAStar(metric, travelTimes, travelCosts);
+	}
+
+	private static double[] getMinimumLinkWeights(SpeedyGraph graph, TravelDisutility travelCosts) {
+		double[] weights = new double[graph.linkCount];
+		for (int linkIdx = 0; linkIdx < graph.linkCount; linkIdx++) {
+			Link link = graph.getLink(linkIdx);
+			weights[linkIdx] = link == null ? Double.POSITIVE_INFINITY : travelCosts.getLinkMinimumTravelDisutility(link);
+		}
+		return weights;
+	}
+
+}
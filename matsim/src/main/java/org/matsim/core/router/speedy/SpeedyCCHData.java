@@ -0,0 +1,353 @@
+package org.matsim.core.router.speedy;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.router.speedy.SpeedyGraph.LinkIterator;
+
+import java.util.Arrays;
+
+/**
+ * Metric-independent part of a customizable contraction hierarchy (CCH) for a {@link SpeedyGraph}.
+ *
+ * The nodes are ordered using a nested dissection based on geometric bisection of the node coordinates:
+ * the nodes separating the two halves of a cell get the highest ranks of that cell, the two halves are
+ * then ordered recursively. The graph is then contracted symbolically along this order, which results in
+ * an undirected chordal super-graph of the network whose arcs always point from a lower ranked to a
+ * higher ranked node. As the contraction does not depend on any travel times or costs, it only has to be
+ * done once per network. The actual weights are computed in a (much cheaper) customization step,
+ * see {@link SpeedyCCHMetric}.
+ *
+ * This class is thread-safe and can safely be used by multiple threads.
+ */
+class SpeedyCCHData {
+
+	private final static Logger LOG = LogManager.getLogger(SpeedyCCHData.class);
+
+	private final static int[] EMPTY = new int[0];
+
+	final SpeedyGraph graph;
+	final int rankCount;
+	final int arcCount;
+	final int[] rankOfNode; // for each node index: the rank in the hierarchy, or -1 if the node is not part of the graph
+	final int[] nodeOfRank;
+	final int[] firstArc; // for each rank: the first upward arc, arcs of rank r are [firstArc[r], firstArc[r+1])
+	final int[] arcHead; // for each arc: the rank of the higher node, sorted ascending per rank
+	final int[] arcOfLink; // for each link index: the arc containing the link, or -1
+
+	private int nextRank;
+	private int stamp = 0;
+	private int[] marks;
+
+	SpeedyCCHData(SpeedyGraph graph) {
+		this.graph = graph;
+		this.rankOfNode = new int[graph.nodeCount];
+		Arrays.fill(this.rankOfNode, -1);
+
+		int count = 0;
+		for (int nodeIdx = 0; nodeIdx < graph.nodeCount; nodeIdx++) {
+			if (graph.getNode(nodeIdx) != null) {
+				count++;
+			}
+		}
+		int[] nodes = new int[count];
+		count = 0;
+		for (int nodeIdx = 0; nodeIdx < graph.nodeCount; nodeIdx++) {
+			if (graph.getNode(nodeIdx) != null) {
+				nodes[count++] = nodeIdx;
+			}
+		}
+		this.rankCount = count;
+		this.nodeOfRank = new int[count];
+
+		LOG.info("computing nested dissection order for " + count + " nodes...");
+		this.marks = new int[graph.nodeCount];
+		this.nextRank = count - 1;
+		dissect(nodes, 0, count, graph.getOutLinkIterator(), graph.getInLinkIterator(), new int[count]);
+		this.marks = null;
+
+		LOG.info("contracting graph...");
+		int[][] upper = contract();
+		this.firstArc = new int[count + 1];
+		int arcs = 0;
+		for (int rank = 0; rank < count; rank++) {
+			this.firstArc[rank] = arcs;
+			arcs += upper[rank].length;
+		}
+		this.firstArc[count] = arcs;
+		this.arcCount = arcs;
+		this.arcHead = new int[arcs];
+		for (int rank = 0; rank < count; rank++) {
+			System.arraycopy(upper[rank], 0, this.arcHead, this.firstArc[rank], upper[rank].length);
+			upper[rank] = null;
+		}
+
+		this.arcOfLink = new int[graph.linkCount];
+		Arrays.fill(this.arcOfLink, -1);
+		for (int linkIdx = 0; linkIdx < graph.linkCount; linkIdx++) {
+			Link link = graph.getLink(linkIdx);
+			if (link == null) {
+				continue;
+			}
+			int fromRank = this.rankOfNode[link.getFromNode().getId().index()];
+			int toRank = this.rankOfNode[link.getToNode().getId().index()];
+			if (fromRank != toRank) {
+				this.arcOfLink[linkIdx] = findArc(Math.min(fromRank, toRank), Math.max(fromRank, toRank));
+			}
+		}
+		LOG.info("contraction hierarchy has " + arcs + " arcs for " + count + " nodes.");
+	}
+
+	/**
+	 * @return the index of the arc between the two ranks, or -1 if there is no such arc
+	 */
+	int findArc(int lowerRank, int higherRank) {
+		int index = Arrays.binarySearch(this.arcHead, this.firstArc[lowerRank], this.firstArc[lowerRank + 1], higherRank);
+		return index < 0 ? -1 : index;
+	}
+
+	/**
+	 * @return the rank of the lower node of the given arc
+	 */
+	int getArcTail(int arc) {
+		int index = Arrays.binarySearch(this.firstArc, arc);
+		if (index < 0) {
+			return -index - 2;
+		}
+		// there might be several ranks without any arcs, use the last one starting at this arc
+		while (this.firstArc[index + 1] == arc) {
+			index++;
+		}
+		return index;
+	}
+
+	/**
+	 * Orders the nodes in nodes[from, to), assigning the highest free ranks to the separator nodes
+	 * and then recursing into both halves.
+	 */
+	private void dissect(int[] nodes, int from, int to, LinkIterator outLI, LinkIterator inLI, int[] tmp) {
+		int size = to - from;
+		if (size <= 2) {
+			for (int i = from; i < to; i++) {
+				assignRank(nodes[i]);
+			}
+			return;
+		}
+
+		// try several cut directions and keep the one with the smallest separator
+		int mid = from + size / 2;
+		int bestDirection = -1;
+		int bestSeparatorSize = Integer.MAX_VALUE;
+		boolean bestSeparatorOnLeft = true;
+		for (int direction = 0; direction < 4; direction++) {
+			System.arraycopy(nodes, from, tmp, from, size);
+			select(tmp, from, to, mid, direction);
+			int leftStamp = markHalves(tmp, from, mid, to);
+			int leftBoundary = countBoundary(tmp, from, mid, leftStamp + 1, outLI, inLI);
+			int rightBoundary = countBoundary(tmp, mid, to, leftStamp, outLI, inLI);
+			int separatorSize = Math.min(leftBoundary, rightBoundary);
+			if (separatorSize < bestSeparatorSize) {
+				bestSeparatorSize = separatorSize;
+				bestDirection = direction;
+				bestSeparatorOnLeft = leftBoundary <= rightBoundary;
+			}
+		}
+
+		select(nodes, from, to, mid, bestDirection);
+		int leftStamp = markHalves(nodes, from, mid, to);
+
+		// move the separator nodes to the end of their half, assign them the highest ranks
+		int sepFrom = bestSeparatorOnLeft ? from : mid;
+		int sepTo = bestSeparatorOnLeft ? mid : to;
+		int otherStamp = bestSeparatorOnLeft ? leftStamp + 1 : leftStamp;
+		int end = sepTo;
+		for (int i = sepTo - 1; i >= sepFrom; i--) {
+			int node = nodes[i];
+			if (hasNeighbor(node, otherStamp, outLI, inLI)) {
+				end--;
+				nodes[i] = nodes[end];
+				nodes[end] = node;
+			}
+		}
+		for (int i = sepTo - 1; i >= end; i--) {
+			assignRank(nodes[i]);
+		}
+
+		if (bestSeparatorOnLeft) {
+			dissect(nodes, mid, to, outLI, inLI, tmp);
+			dissect(nodes, from, end, outLI, inLI, tmp);
+		} else {
+			dissect(nodes, from, mid, outLI, inLI, tmp);
+			dissect(nodes, mid, end, outLI, inLI, tmp);
+		}
+	}
+
+	private void assignRank(int node) {
+		int rank = this.nextRank--;
+		this.rankOfNode[node] = rank;
+		this.nodeOfRank[rank] = node;
+	}
+
+	private int markHalves(int[] nodes, int from, int mid, int to) {
+		int leftStamp = ++this.stamp;
+		int rightStamp = ++this.stamp;
+		for (int i = from; i < mid; i++) {
+			this.marks[nodes[i]] = leftStamp;
+		}
+		for (int i = mid; i < to; i++) {
+			this.marks[nodes[i]] = rightStamp;
+		}
+		return leftStamp;
+	}
+
+	private int countBoundary(int[] nodes, int from, int to, int otherStamp, LinkIterator outLI, LinkIterator inLI) {
+		int count = 0;
+		for (int i = from; i < to; i++) {
+			if (hasNeighbor(nodes[i], otherStamp, outLI, inLI)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private boolean hasNeighbor(int node, int otherStamp, LinkIterator outLI, LinkIterator inLI) {
+		outLI.reset(node);
+		while (outLI.next()) {
+			if (this.marks[outLI.getToNodeIndex()] == otherStamp) {
+				return true;
+			}
+		}
+		inLI.reset(node);
+		while (inLI.next()) {
+			if (this.marks[inLI.getFromNodeIndex()] == otherStamp) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private double key(int node, int direction) {
+		Coord coord = this.graph.getNode(node).getCoord();
+		switch (direction) {
+			case 0: return coord.getX();
+			case 1: return coord.getY();
+			case 2: return coord.getX() + coord.getY();
+			default: return coord.getX() - coord.getY();
+		}
+	}
+
+	/**
+	 * Partially sorts nodes[from, to) (quickselect) such that the node at position k is at its sorted
+	 * position and all nodes before (after) it have a smaller-or-equal (larger-or-equal) key.
+	 */
+	private void select(int[] nodes, int from, int to, int k, int direction) {
+		int lo = from;
+		int hi = to - 1;
+		while (lo < hi) {
+			double pivot = key(nodes[(lo + hi) >>> 1], direction);
+			int i = lo;
+			int j = hi;
+			while (i <= j) {
+				while (key(nodes[i], direction) < pivot) i++;
+				while (key(nodes[j], direction) > pivot) j--;
+				if (i <= j) {
+					int t = nodes[i];
+					nodes[i] = nodes[j];
+					nodes[j] = t;
+					i++;
+					j--;
+				}
+			}
+			if (k <= j) {
+				hi = j;
+			} else if (k >= i) {
+				lo = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Symbolic contraction: contracting a node connects all its higher ranked neighbors with each other.
+	 * It is enough to add them to the neighbors of the lowest of them, as this one will in turn pass them
+	 * on when it gets contracted.
+	 */
+	private int[][] contract() {
+		int[][] upper = new int[this.rankCount][];
+		LinkIterator outLI = this.graph.getOutLinkIterator();
+		LinkIterator inLI = this.graph.getInLinkIterator();
+		int[] buffer = new int[16];
+		for (int rank = 0; rank < this.rankCount; rank++) {
+			int node = this.nodeOfRank[rank];
+			int size = 0;
+			outLI.reset(node);
+			while (outLI.next()) {
+				int other = this.rankOfNode[outLI.getToNodeIndex()];
+				if (other > rank) {
+					if (size == buffer.length) buffer = Arrays.copyOf(buffer, size * 2);
+					buffer[size++] = other;
+				}
+			}
+			inLI.reset(node);
+			while (inLI.next()) {
+				int other = this.rankOfNode[inLI.getFromNodeIndex()];
+				if (other > rank) {
+					if (size == buffer.length) buffer = Arrays.copyOf(buffer, size * 2);
+					buffer[size++] = other;
+				}
+			}
+			upper[rank] = sortedUnique(buffer, size);
+		}
+
+		for (int rank = 0; rank < this.rankCount; rank++) {
+			int[] neighbors = upper[rank];
+			if (neighbors.length > 1) {
+				int lowest = neighbors[0];
+				upper[lowest] = union(upper[lowest], neighbors);
+			}
+		}
+		return upper;
+	}
+
+	private static int[] sortedUnique(int[] values, int size) {
+		if (size == 0) {
+			return EMPTY;
+		}
+		Arrays.sort(values, 0, size);
+		int count = 1;
+		for (int i = 1; i < size; i++) {
+			if (values[i] != values[count - 1]) {
+				values[count++] = values[i];
+			}
+		}
+		return Arrays.copyOf(values, count);
+	}
+
+	/** merges two sorted arrays, ignoring the first element of b. */
+	private static int[] union(int[] a, int[] b) {
+		int[] result = new int[a.length + b.length - 1];
+		int i = 0;
+		int j = 1;
+		int count = 0;
+		while (i < a.length && j < b.length) {
+			if (a[i] < b[j]) {
+				result[count++] = a[i++];
+			} else if (a[i] > b[j]) {
+				result[count++] = b[j++];
+			} else {
+				result[count++] = a[i++];
+				j++;
+			}
+		}
+		while (i < a.length) result[count++] = a[i++];
+		while (j < b.length) result[count++] = b[j++];
+		return count == result.length ? result : Arrays.copyOf(result, count);
+	}
+
+	Node getNode(int rank) {
+		return this.graph.getNode(this.nodeOfRank[rank]);
+	}
+}
@@ -0,0 +1,219 @@
+package org.matsim.core.router.speedy;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.groups.TravelTimeCalculatorConfigGroup;
+import org.matsim.core.controler.events.IterationStartsEvent;
+import org.matsim.core.controler.listener.IterationStartsListener;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.util.LeastCostPathCalculatorFactory;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.core.trafficmonitoring.TimeBinUtils;
+import org.matsim.vehicles.Vehicle;
+import org.matsim.vehicles.VehicleType;
+import org.matsim.vehicles.VehicleUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Creates {@link SpeedyCCH} instances.
+ *
+ * The expensive contraction is done once per network. The metrics of all time bins are customized once per set of
+ * travel disutilities, and shared by all path calculators created with the same travel disutilities, e.g. by all
+ * routing threads. To find the metrics, the travel disutilities of all links are only evaluated in the middle time
+ * bin, the other time bins are only evaluated when new metrics are customized. Within these, time bins with equal
+ * weights (e.g. during the night) share a metric. As the middle time bin alone can not detect changed travel times in
+ * the other time bins, all metrics are dropped at the start of each iteration, when the travel times of the last
+ * iteration are used for the first time. Only the metrics of the {@value #MAX_METRIC_SETS_PER_NETWORK} most recently
+ * used travel disutilities are kept per network, so factories used outside of a controler do not keep the metrics of
+ * old travel times forever.
+ *
+ * The metrics are shared by all agents and vehicles, so they can not contain person- or vehicle-dependent travel
+ * disutilities, e.g. randomized ones (routing randomness &gt; 0, see
+ * {@link org.matsim.core.config.groups.PlansCalcRouteConfigGroup#getRoutingRandomness()}), ones with different
+ * parameters per subpopulation, or ones that depend on the maximum velocity of the vehicle type. Such travel
+ * disutilities are detected by evaluating them in the middle time bin for several placeholder persons, one per
+ * subpopulation in the scoring config, and for two placeholder vehicles, once per class of travel disutility.
+ * {@link SpeedyALT} is used for them instead. Travel disutilities that depend on other attributes of the persons or
+ * vehicles can not be detected and must not be used with this factory.
+ */
+@Singleton
+public class SpeedyCCHFactory implements LeastCostPathCalculatorFactory, IterationStartsListener {
+
+	private final static Logger LOG = LogManager.getLogger(SpeedyCCHFactory.class);
+
+	private static final int MAX_METRIC_SETS_PER_NETWORK = 8;
+
+	private final double timeBinSize;
+	private final int numberOfTimeBins;
+	private final Person[] placeholderPersons;
+	private final Vehicle[] placeholderVehicles;
+	private final LeastCostPathCalculatorFactory personDependentFactory;
+	private final Map<Network, SpeedyGraph> graphs = new ConcurrentHashMap<>();
+	private final Map<SpeedyGraph, SpeedyCCHData> hierarchies = new ConcurrentHashMap<>();
+	private final Map<SpeedyCCHData, LinkWeightsCache<SpeedyCCHMetric[]>> metrics = new ConcurrentHashMap<>();
+	private final Map<Class<?>, Boolean> personDependentTypes = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates a factory with hourly metrics for one day, independent of the time bins of the travel time calculator.
+	 */
+	public SpeedyCCHFactory() {
+		this(3600, 24);
+	}
+
+	/**
+	 * Creates a factory with one metric per time bin of the travel time calculator, see
+	 * {@link TravelTimeCalculatorConfigGroup#getTraveltimeBinSize()} and {@link TravelTimeCalculatorConfigGroup#getMaxTime()}.
+	 */
+	public SpeedyCCHFactory(Config config) {
+		this(config, new SpeedyALTFactory(config));
+	}
+
+	/**
+	 * @param speedyALTFactory the factory for person- or vehicle-dependent travel disutilities
+	 */
+	@Inject
+	public SpeedyCCHFactory(Config config, SpeedyALTFactory speedyALTFactory) {
+		this(config.travelTimeCalculator().getTraveltimeBinSize(),
+				TimeBinUtils.getTimeBinCount(config.travelTimeCalculator().getMaxTime(), config.travelTimeCalculator().getTraveltimeBinSize()),
+				config.planCalcScore().getScoringParametersPerSubpopulation().keySet(), speedyALTFactory);
+	}
+
+	/**
+	 * @param timeBinSize the duration of a time bin in seconds
+	 * @param numberOfTimeBins the number of time bins, departures after the last time bin use the metric of the last time bin
+	 */
+	public SpeedyCCHFactory(double timeBinSize, int numberOfTimeBins) {
+		this(timeBinSize, numberOfTimeBins, Collections.emptySet(), new SpeedyALTFactory());
+	}
+
+	private SpeedyCCHFactory(double timeBinSize, int numberOfTimeBins, Collection<String> subpopulations, LeastCostPathCalculatorFactory personDependentFactory) {
+		this.timeBinSize = timeBinSize;
+		this.numberOfTimeBins = numberOfTimeBins;
+		this.personDependentFactory = personDependentFactory;
+		List<Person> persons = new ArrayList<>();
+		// two persons without subpopulation to detect randomized travel disutilities
+		persons.add(PopulationUtils.getFactory().createPerson(Id.create("speedyCCH", Person.class)));
+		persons.add(PopulationUtils.getFactory().createPerson(Id.create("speedyCCH_2", Person.class)));
+		for (String subpopulation : subpopulations) {
+			if (subpopulation != null) {
+				Person person = PopulationUtils.getFactory().createPerson(Id.create("speedyCCH_" + subpopulation, Person.class));
+				PopulationUtils.putSubpopulation(person, subpopulation);
+				persons.add(person);
+			}
+		}
+		this.placeholderPersons = persons.toArray(new Person[0]);
+		// a vehicle of the default type and a slow one, to detect travel disutilities depending on the vehicle
+		VehicleType slowType = VehicleUtils.createVehicleType(Id.create("speedyCCH_slow", VehicleType.class));
+		slowType.setMaximumVelocity(1.0);
+		this.placeholderVehicles = new Vehicle[] {
+				VehicleUtils.createVehicle(Id.createVehicleId("speedyCCH"), VehicleUtils.getDefaultVehicleType()),
+				VehicleUtils.createVehicle(Id.createVehicleId("speedyCCH_slow"), slowType)
+		};
+	}
+
+	@Override
+	public void notifyIterationStarts(IterationStartsEvent event) {
+		// the travel times of the last iteration are used from now on
+		this.metrics.values().forEach(LinkWeightsCache::clear);
+	}
+
+	@Override
+	public LeastCostPathCalculator createPathCalculator(Network network, TravelDisutility travelCosts, TravelTime travelTimes) {
+		SpeedyGraph graph = this.graphs.computeIfAbsent(network, SpeedyGraph::new);
+		int middleBin = this.numberOfTimeBins / 2;
+		double[] middleBinWeights = getLinkWeights(graph, travelCosts, getTime(middleBin), this.placeholderPersons[0], this.placeholderVehicles[0]);
+		boolean isPersonDependent = this.personDependentTypes.computeIfAbsent(travelCosts.getClass(), type -> {
+			boolean dependent = isPersonDependent(graph, travelCosts, getTime(middleBin), middleBinWeights);
+			if (dependent) {
+				LOG.warn("The travel disutility " + type.getName() + " depends on the person or vehicle, e.g. due to routing randomness " +
+						"or subpopulation-specific parameters. SpeedyALT is used instead of SpeedyCCH for such travel disutilities.");
+			}
+			return dependent;
+		});
+		if (isPersonDependent) {
+			return this.personDependentFactory.createPathCalculator(network, travelCosts, travelTimes);
+		}
+		SpeedyCCHData hierarchy = this.hierarchies.computeIfAbsent(graph, SpeedyCCHData::new);
+		SpeedyCCHMetric[] binMetrics = this.metrics.computeIfAbsent(hierarchy, h -> new LinkWeightsCache<>(MAX_METRIC_SETS_PER_NETWORK))
+				.get(middleBinWeights, weights -> customize(hierarchy, graph, travelCosts, middleBin, weights));
+		return new SpeedyCCH(binMetrics, this.timeBinSize, travelTimes, travelCosts);
+	}
+
+	/**
+	 * Customizes the metrics of all time bins. Time bins with equal weights share a metric.
+	 */
+	private SpeedyCCHMetric[] customize(SpeedyCCHData hierarchy, SpeedyGraph graph, TravelDisutility travelCosts, int middleBin, double[] middleBinWeights) {
+		LinkWeightsCache<SpeedyCCHMetric> binCache = new LinkWeightsCache<>(this.numberOfTimeBins);
+		AtomicInteger customized = new AtomicInteger();
+		SpeedyCCHMetric[] binMetrics = IntStream.range(0, this.numberOfTimeBins).parallel()
+				.mapToObj(bin -> {
+					double[] weights = bin == middleBin ? middleBinWeights
+							: getLinkWeights(graph, travelCosts, getTime(bin), this.placeholderPersons[0], this.placeholderVehicles[0]);
+					return binCache.get(weights, w -> {
+						customized.incrementAndGet();
+						return new SpeedyCCHMetric(hierarchy, w);
+					});
+				})
+				.toArray(SpeedyCCHMetric[]::new);
+		LOG.info("customized contraction hierarchy for " + customized.get() + " of " + this.numberOfTimeBins + " time bins.");
+		return binMetrics;
+	}
+
+	/**
+	 * Compares the link weights of the first placeholder person and vehicle with the ones of the other placeholder
+	 * persons and vehicles at the given time.
+	 */
+	private boolean isPersonDependent(SpeedyGraph graph, TravelDisutility travelCosts, double time, double[] linkWeights) {
+		for (int p = 1; p < this.placeholderPersons.length; p++) {
+			if (!Arrays.equals(linkWeights, getLinkWeights(graph, travelCosts, time, this.placeholderPersons[p], this.placeholderVehicles[0]))) {
+				return true;
+			}
+		}
+		for (int v = 1; v < this.placeholderVehicles.length; v++) {
+			if (!Arrays.equals(linkWeights, getLinkWeights(graph, travelCosts, time, this.placeholderPersons[0], this.placeholderVehicles[v]))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private double getTime(int bin) {
+		return (bin + 0.5) * this.timeBinSize;
+	}
+
+	/**
+	 * Evaluates the travel disutility of all links of the graph at the given time, typically the middle of a time bin.
+	 */
+	private static double[] getLinkWeights(SpeedyGraph graph, TravelDisutility td, double time, Person person, Vehicle vehicle) {
+		double[] weights = new double[graph.linkCount];
+		for (int linkIdx = 0; linkIdx < graph.linkCount; linkIdx++) {
+			Link link = graph.getLink(linkIdx);
+			weights[linkIdx] = link == null ? Double.POSITIVE_INFINITY : td.getLinkTravelDisutility(link, time, person, vehicle);
+		}
+		return weights;
+	}
+
+	/*package (for a test)*/ int getCachedMetricCount(Network network) {
+		SpeedyCCHData hierarchy = this.hierarchies.get(this.graphs.get(network));
+		LinkWeightsCache<SpeedyCCHMetric[]> cache = hierarchy == null ? null : this.metrics.get(hierarchy);
+		return cache == null ? 0 : cache.size();
+	}
+}
@@ -0,0 +1,129 @@
+package org.matsim.core.router.speedy;
+
+import org.matsim.api.core.v01.network.Link;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Weights of a customizable contraction hierarchy, see {@link SpeedyCCHData}.
+ *
+ * Each arc of the hierarchy gets a weight for the upward direction (from the lower to the higher ranked node)
+ * and one for the downward direction. The customization first initializes the arcs with the weights of the
+ * links they represent and then relaxes all lower triangles in increasing rank order, which is correct as
+ * the hierarchy is chordal. Each weight remembers either the original link or the middle node of the triangle
+ * it was derived from, so paths can be unpacked again.
+ *
+ * Customizing a metric only takes a linear pass over the triangles of the hierarchy and is thus much cheaper
+ * than a new contraction; it is meant to be repeated whenever the travel times change.
+ *
+ * This class is thread-safe and can safely be used by multiple threads.
+ */
+class SpeedyCCHMetric {
+
+	final SpeedyCCHData data;
+	final double[] upWeight;
+	final double[] downWeight;
+	private final int[] upVia; // >= 0: rank of the middle node, < 0: -(linkIndex + 1)
+	private final int[] downVia;
+
+	SpeedyCCHMetric(SpeedyCCHData data, double[] linkWeights) {
+		this.data = data;
+		this.upWeight = new double[data.arcCount];
+		this.downWeight = new double[data.arcCount];
+		this.upVia = new int[data.arcCount];
+		this.downVia = new int[data.arcCount];
+		Arrays.fill(this.upWeight, Double.POSITIVE_INFINITY);
+		Arrays.fill(this.downWeight, Double.POSITIVE_INFINITY);
+		Arrays.fill(this.upVia, Integer.MIN_VALUE);
+		Arrays.fill(this.downVia, Integer.MIN_VALUE);
+
+		for (int linkIdx = 0; linkIdx < data.arcOfLink.length; linkIdx++) {
+			int arc = data.arcOfLink[linkIdx];
+			if (arc < 0) {
+				continue;
+			}
+			double weight = linkWeights[linkIdx];
+			Link link = data.graph.getLink(linkIdx);
+			boolean up = data.rankOfNode[link.getFromNode().getId().index()] < data.rankOfNode[link.getToNode().getId().index()];
+			if (up && weight < this.upWeight[arc]) {
+				this.upWeight[arc] = weight;
+				this.upVia[arc] = -(linkIdx + 1);
+			} else if (!up && weight < this.downWeight[arc]) {
+				this.downWeight[arc] = weight;
+				this.downVia[arc] = -(linkIdx + 1);
+			}
+		}
+
+		customize();
+	}
+
+	/**
+	 * Relaxes all lower triangles (u, v, w) with u &lt; v &lt; w: v -&gt; u -&gt; w may be cheaper than v -&gt; w.
+	 */
+	private void customize() {
+		int[] firstArc = this.data.firstArc;
+		int[] arcHead = this.data.arcHead;
+		for (int u = 0; u < this.data.rankCount; u++) {
+			int end = firstArc[u + 1];
+			for (int uv = firstArc[u]; uv < end; uv++) {
+				int v = arcHead[uv];
+				double vToU = this.downWeight[uv];
+				double uToV = this.upWeight[uv];
+				if (vToU == Double.POSITIVE_INFINITY && uToV == Double.POSITIVE_INFINITY) {
+					continue;
+				}
+				int vw = firstArc[v];
+				for (int uw = uv + 1; uw < end; uw++) {
+					int w = arcHead[uw];
+					while (arcHead[vw] < w) {
+						vw++;
+					}
+					double viaUp = vToU + this.upWeight[uw];
+					if (viaUp < this.upWeight[vw]) {
+						this.upWeight[vw] = viaUp;
+						this.upVia[vw] = u;
+					}
+					double viaDown = this.downWeight[uw] + uToV;
+					if (viaDown < this.downWeight[vw]) {
+						this.downWeight[vw] = viaDown;
+						this.downVia[vw] = u;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the links represented by the given arc in the given direction to the list.
+	 */
+	void unpack(int arc, boolean up, List<Link> links, int[] stack) {
+		int size = 0;
+		stack[size++] = arc * 2 + (up ? 1 : 0);
+		while (size > 0) {
+			int item = stack[--size];
+			int a = item >> 1;
+			boolean isUp = (item & 1) == 1;
+			int via = isUp ? this.upVia[a] : this.downVia[a];
+			if (via < 0) {
+				links.add(this.data.graph.getLink(-(via + 1)));
+				continue;
+			}
+			int low = this.data.getArcTail(a);
+			int high = this.data.arcHead[a];
+			int lowArc = this.data.findArc(via, low);
+			int highArc = this.data.findArc(via, high);
+			if (size + 2 > stack.length) {
+				stack = Arrays.copyOf(stack, stack.length * 2);
+			}
+			// up: low -> via -> high; down: high -> via -> low. push the second part first.
+			if (isUp) {
+				stack[size++] = highArc * 2 + 1;
+				stack[size++] = lowArc * 2;
+			} else {
+				stack[size++] = lowArc * 2 + 1;
+				stack[size++] = highArc * 2;
+			}
+		}
+	}
+}
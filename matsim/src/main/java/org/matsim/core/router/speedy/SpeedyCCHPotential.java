@@ -0,0 +1,156 @@
+package org.matsim.core.router.speedy;
+
+import java.util.Arrays;
+
+/**
+ * Calculates the exact least cost from arbitrary nodes to a fixed target node in a {@link SpeedyCCHMetric},
+ * typically customized with lower bounds of the travel disutilities. This can then be used as potential
+ * in an A*-search (CH-potentials).
+ *
+ * After setting the target, a backward search from the target explores all nodes reachable from the target
+ * on upward arcs. The cost of another node is then the minimum over the upward paths from that node to any of
+ * these nodes, which is evaluated lazily and memoized for the current target. The upward paths are followed with an
+ * explicit stack, as they can be very long in large hierarchies.
+ *
+ * Based on "Using Incremental Many-to-One Queries to Build a Fast and Tight Heuristic for A* in Road Networks"
+ * by Ben Strasser and Tim Zeitz, 2021.
+ *
+ * This class is NOT thread-safe.
+ */
+class SpeedyCCHPotential {
+
+	private final SpeedyCCHMetric metric;
+	private final SpeedyCCHData data;
+	private final double[] targetCost; // cost from a node to the target on downward arcs
+	private final double[] potential;
+	private final int[] targetIterationIds;
+	private final int[] potentialIterationIds;
+	private final int[] stackRank;
+	private final int[] stackArc;
+	private final double[] stackBest;
+	private int currentIteration = Integer.MIN_VALUE;
+	private final DAryMinHeap pq;
+
+	SpeedyCCHPotential(SpeedyCCHMetric metric) {
+		this.metric = metric;
+		this.data = metric.data;
+		int n = this.data.rankCount;
+		this.targetCost = new double[n];
+		this.potential = new double[n];
+		this.targetIterationIds = new int[n];
+		this.potentialIterationIds = new int[n];
+		// upward arcs always lead to a higher rank, so the stack never contains more than all ranks
+		this.stackRank = new int[n];
+		this.stackArc = new int[n];
+		this.stackBest = new double[n];
+		this.pq = new DAryMinHeap(n, 4);
+		Arrays.fill(this.targetIterationIds, this.currentIteration);
+		Arrays.fill(this.potentialIterationIds, this.currentIteration);
+	}
+
+	/**
+	 * Sets the target node (by node index) and discards all previously calculated potentials.
+	 */
+	void setTarget(int targetNodeIndex) {
+		this.currentIteration++;
+		if (this.currentIteration == Integer.MAX_VALUE) {
+			// reset iteration as we overflow
+			Arrays.fill(this.targetIterationIds, this.currentIteration);
+			Arrays.fill(this.potentialIterationIds, this.currentIteration);
+			this.currentIteration = Integer.MIN_VALUE;
+		}
+		int targetRank = this.data.rankOfNode[targetNodeIndex];
+		if (targetRank < 0) {
+			return;
+		}
+
+		int[] firstArc = this.data.firstArc;
+		int[] arcHead = this.data.arcHead;
+		double[] downWeight = this.metric.downWeight;
+		this.pq.clear();
+		this.targetCost[targetRank] = 0;
+		this.targetIterationIds[targetRank] = this.currentIteration;
+		this.pq.insert(targetRank, 0);
+		while (!this.pq.isEmpty()) {
+			int rank = this.pq.poll();
+			double currCost = this.targetCost[rank];
+			for (int arc = firstArc[rank], end = firstArc[rank + 1]; arc < end; arc++) {
+				double newCost = currCost + downWeight[arc];
+				if (newCost == Double.POSITIVE_INFINITY) {
+					continue;
+				}
+				int head = arcHead[arc];
+				if (this.targetIterationIds[head] == this.currentIteration) {
+					if (newCost < this.targetCost[head]) {
+						this.pq.decreaseKey(head, newCost);
+						this.targetCost[head] = newCost;
+					}
+				} else {
+					this.targetIterationIds[head] = this.currentIteration;
+					this.targetCost[head] = newCost;
+					this.pq.insert(head, newCost);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the least cost from the given node (by node index) to the target, or positive infinity if the target cannot be reached
+	 */
+	double getPotential(int nodeIndex) {
+		int rank = this.data.rankOfNode[nodeIndex];
+		if (rank < 0) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return getPotentialOfRank(rank);
+	}
+
+	private double getPotentialOfRank(int rank) {
+		if (this.potentialIterationIds[rank] == this.currentIteration) {
+			return this.potential[rank];
+		}
+		int[] firstArc = this.data.firstArc;
+		int[] arcHead = this.data.arcHead;
+		double[] upWeight = this.metric.upWeight;
+		int size = push(rank, 0);
+		while (size > 0) {
+			int top = size - 1;
+			int r = this.stackRank[top];
+			int arc = this.stackArc[top];
+			int end = firstArc[r + 1];
+			double best = this.stackBest[top];
+			boolean descended = false;
+			for (; arc < end; arc++) {
+				double weight = upWeight[arc];
+				if (weight < best) {
+					int head = arcHead[arc];
+					if (this.potentialIterationIds[head] != this.currentIteration) {
+						// evaluate the head first, then continue with this arc
+						this.stackArc[top] = arc;
+						this.stackBest[top] = best;
+						size = push(head, size);
+						descended = true;
+						break;
+					}
+					double cost = weight + this.potential[head];
+					if (cost < best) {
+						best = cost;
+					}
+				}
+			}
+			if (!descended) {
+				this.potential[r] = best;
+				this.potentialIterationIds[r] = this.currentIteration;
+				size--;
+			}
+		}
+		return this.potential[rank];
+	}
+
+	private int push(int rank, int size) {
+		this.stackRank[size] = rank;
+		this.stackArc[size] = this.data.firstArc[rank];
+		this.stackBest[size] = this.targetIterationIds[rank] == this.currentIteration ? this.targetCost[rank] : Double.POSITIVE_INFINITY;
+		return size + 1;
+	}
+}
@@ -34,6 +34,7 @@ import org.matsim.core.network.NetworkUtils;
 import org.matsim.core.network.io.MatsimNetworkReader;
 import org.matsim.core.network.io.NetworkChangeEventsParser;
 import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.io.BinaryPopulationReader;
 import org.matsim.core.population.io.PopulationReader;
 import org.matsim.core.utils.io.IOUtils;
 import org.matsim.core.utils.io.UncheckedIOException;
@@ -198,9 +199,27 @@ class ScenarioLoaderImpl {
             final String targetCRS = config.global().getCoordinateSystem();
 			final String internalCRS = config.global().getCoordinateSystem();
 
-            final PopulationReader reader = new PopulationReader(targetCRS, internalCRS, this.scenario);
-            reader.putAttributeConverters( attributeConverters );
-            reader.parse( populationFileName );
+            if (BinaryPopulationReader.isBinaryPopulationFile(populationFileName)) {
+				// binary population files contain coordinates in the internal coordinate system.  They are not transformed, as this
+				// would require to decode all the compact plans.
+				final String inputCRS = config.plans().getInputCRS();
+				if ( inputCRS != null && !inputCRS.equals( internalCRS ) ) {
+					throw new RuntimeException( "plans.inputCRS " + inputCRS + " differs from global.coordinateSystem " + internalCRS
+							+ ", but binary population files are not transformed. Write the binary population in " + internalCRS + " instead." );
+				}
+				final BinaryPopulationReader reader = new BinaryPopulationReader(this.scenario);
+				reader.putAttributeConverters( attributeConverters );
+				reader.readURL( populationFileName );
+				final String fileCRS = ProjectionUtils.getCRS( this.scenario.getPopulation() );
+				if ( fileCRS != null && internalCRS != null && !fileCRS.equals( internalCRS ) ) {
+					throw new RuntimeException( "the binary population " + populationFileName + " is in " + fileCRS
+							+ ", which differs from global.coordinateSystem " + internalCRS + ". Binary population files are not transformed." );
+				}
+			} else {
+				final PopulationReader reader = new PopulationReader(targetCRS, internalCRS, this.scenario);
+				reader.putAttributeConverters( attributeConverters );
+				reader.parse( populationFileName );
+			}
 
 			PopulationUtils.printPlansCount(this.scenario.getPopulation()) ;
 		}
@@ -105,6 +105,15 @@ public final class EventsToActivities implements ActivityStartEventHandler, Acti
         this.activityHandlers.add(activityHandler);
     }
 
+    /**
+     * Passes an activity that was created by another instance on to the activity handlers of this one.
+     */
+    void notifyActivityHandlers(PersonExperiencedActivity activity) {
+        for (ActivityHandler activityHandler : this.activityHandlers) {
+            activityHandler.handleActivity(activity);
+        }
+    }
+
     public void finish() {
         this.activities.forEach((id, activity) -> {
             for (ActivityHandler activityHandler : this.activityHandlers) {
@@ -166,6 +166,14 @@ public final class EventsToLegs
 		this.network = network;
 	}
 
+	/**
+	 * Creates a new instance with the same network and transit schedule, but without any state or leg handlers.
+	 */
+	EventsToLegs(EventsToLegs template) {
+		this.network = template.network;
+		this.transitSchedule = template.transitSchedule;
+	}
+
 	@Override
 	public void reset(int iteration) {
 		legs.clear();
@@ -365,4 +373,13 @@ public final class EventsToLegs
 	public void addLegHandler(LegHandler legHandler) {
 		this.legHandlers.add(legHandler);
 	}
+
+	/**
+	 * Passes a leg that was created by another instance on to the leg handlers of this one.
+	 */
+	void notifyLegHandlers(PersonExperiencedLeg leg) {
+		for (LegHandler legHandler : legHandlers) {
+			legHandler.handleLeg(leg);
+		}
+	}
 }
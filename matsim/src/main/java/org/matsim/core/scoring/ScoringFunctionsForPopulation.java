@@ -21,9 +21,12 @@
 package org.matsim.core.scoring;
 
 import com.google.inject.Inject;
+import com.google.inject.Provider;
 import gnu.trove.TDoubleCollection;
 import gnu.trove.iterator.TDoubleIterator;
 import gnu.trove.list.array.TDoubleArrayList;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.IdMap;
 import org.matsim.api.core.v01.events.ActivityEndEvent;
@@ -58,13 +61,17 @@ import org.matsim.core.events.handler.BasicEventHandler;
 import org.matsim.core.population.PopulationUtils;
 import org.matsim.core.router.StageActivityTypeIdentifier;
 import org.matsim.core.router.TripStructureUtils;
+import org.matsim.core.scoring.functions.CharyparNagelBatchScoring;
+import org.matsim.core.scoring.functions.CharyparNagelScoringFunctionFactory;
 import org.matsim.core.utils.io.IOUtils;
 import org.matsim.vehicles.Vehicle;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Map.Entry;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static org.matsim.core.router.TripStructureUtils.Trip;
@@ -73,28 +80,48 @@ import static org.matsim.core.router.TripStructureUtils.Trip;
  * This class helps EventsToScore by keeping ScoringFunctions for the entire Population - one per Person -, and dispatching Activities
  * and Legs to the ScoringFunctions. It also gives out the ScoringFunctions, so they can be given other events by EventsToScore.
  * It is not independently useful. Please do not make public.
+ * <p></p>
+ * If more than one scoring shard is configured ({@link org.matsim.core.config.groups.ParallelEventHandlingConfigGroup#getNumberOfScoringShards()}),
+ * the persons are distributed to the shards by the index of their id, and every shard is added as separate handler to the events
+ * manager, so the shards can handle the events in parallel. Each shard then uses its own EventsToActivities and EventsToLegs, and
+ * passes the experienced activities and legs on to the handlers of the injected ones, one call at a time. The last activities of
+ * the persons are passed on in {@link #finishScoringFunctions()}. Link and vehicle events are only handled by the shards of the
+ * persons who drive or ride in the vehicle, all other shards drop them after looking up the index of the vehicle.
+ * <p></p>
+ * If batch scoring is configured ({@link org.matsim.core.config.groups.PlanCalcScoreConfigGroup#isUsingBatchScoring()}) and the
+ * {@link CharyparNagelScoringFunctionFactory} is used, the scoring functions only contain the parts based on events (money, stuck
+ * agents, score events, pt line switches), see {@link CharyparNagelScoringFunctionFactory#createEventScoringFunction(Person)}, and
+ * are not given the experienced activities and legs. Instead, the plans of the {@link ExperiencedPlansService} are scored at once by
+ * {@link CharyparNagelBatchScoring} in {@link #finishScoringFunctions()}, and the scores are added to the scoring functions.
  * 
  * @author michaz
  *
  */
  final class ScoringFunctionsForPopulation implements BasicEventHandler {
 	
+	private static final Logger log = LogManager.getLogger(ScoringFunctionsForPopulation.class);
+
 	private final Population population;
 	private final ScoringFunctionFactory scoringFunctionFactory;
-	
-	private final EventsToLegs legsDelegate;
-	private final EventsToActivities actsDelegate;
-
-	private final IdMap<Person, ScoringFunction> agentScorers = new IdMap<>(Person.class);
-	private final IdMap<Person, TDoubleCollection> partialScores = new IdMap<>(Person.class);
+	private final Shard[] shards;
+	private final CharyparNagelScoringFunctionFactory batchScoringFunctionFactory;
+	private final CharyparNagelBatchScoring batchScoring;
+	private final Provider<ExperiencedPlansService> experiencedPlansService;
 	private final AtomicReference<Throwable> exception = new AtomicReference<>();
-	private final IdMap<Person, Plan> tripRecords = new IdMap<>(Person.class);
-	
-	private final Vehicle2DriverEventHandler vehicles2Drivers = new Vehicle2DriverEventHandler();
 
-	@Inject
 	ScoringFunctionsForPopulation(ControlerListenerManager controlerListenerManager, EventsManager eventsManager, EventsToActivities eventsToActivities, EventsToLegs eventsToLegs,
 						 Population population, ScoringFunctionFactory scoringFunctionFactory, Config config) {
+		this(controlerListenerManager, eventsManager, eventsToActivities, eventsToLegs, population, scoringFunctionFactory, config, null);
+	}
+
+	/**
+	 * @param experiencedPlansService provides the plans for batch scoring. It is only used after the mobsim, as the
+	 *                                {@link ExperiencedPlansServiceImpl} itself depends on this class.
+	 */
+	@Inject
+	ScoringFunctionsForPopulation(ControlerListenerManager controlerListenerManager, EventsManager eventsManager, EventsToActivities eventsToActivities, EventsToLegs eventsToLegs,
+						 Population population, ScoringFunctionFactory scoringFunctionFactory, Config config,
+						 Provider<ExperiencedPlansService> experiencedPlansService) {
 		ControlerConfigGroup controlerConfigGroup = config.controler();
 		
 		if (controlerConfigGroup.getEventTypeToCreateScoringFunctions() == ControlerConfigGroup.EventTypeToCreateScoringFunctions.IterationStarts) {
@@ -106,153 +133,83 @@ import static org.matsim.core.router.TripStructureUtils.Trip;
 		}
 
 		this.population = population;
-		this.legsDelegate = eventsToLegs;
-		this.actsDelegate = eventsToActivities;
 		this.scoringFunctionFactory = scoringFunctionFactory;
-
-		eventsManager.addHandler(this);
-		eventsToActivities.addActivityHandler(this::handleActivity);
-		eventsToLegs.addLegHandler(this::handleLeg);
-	}
-
-	private void init() {
-		for (Person person : this.population.getPersons().values()) {
-			this.agentScorers.put(person.getId(), this.scoringFunctionFactory.createNewScoringFunction(person ) );
-			this.partialScores.put(person.getId(), new TDoubleArrayList());
-			this.tripRecords.put(person.getId(), PopulationUtils.createPlan());
-		}
-	}
-
-	@Override
-	public void handleEvent(Event o) {
-		// this is for the stuff that is directly based on events. note that this passes on _all_ person events, even those which are
-		// aggregated into legs and activities. for the time being, not all PersonEvents may "implement HasPersonId". link enter/leave events
-		// are NOT passed on, for performance reasons. kai/dominik, dec'12
-		if (o instanceof HasPersonId) {
-			ScoringFunction scoringFunction = getScoringFunctionForAgent(((HasPersonId) o).getPersonId());
-			if (scoringFunction != null) {
-				if (o instanceof PersonStuckEvent) {
-					scoringFunction.agentStuck(o.getTime());
-				} else if (o instanceof PersonMoneyEvent) {
-					scoringFunction.addMoney(((PersonMoneyEvent) o).getAmount());
-					// yy looking at this, I am a bit skeptic if it truly makes sense to not pass this additionally into the general events handling function below.
-					// A use case might be different utilities of money by money transaction type (e.g. toll, fare, reimbursement, ...).  kai, mar'17
-				} else if (o instanceof PersonScoreEvent) {
-					scoringFunction.addScore(((PersonScoreEvent) o).getAmount());
-				}
-				scoringFunction.handleEvent(o);
-				// passing this on in any case, see comment above.  kai, mar'17
+		this.experiencedPlansService = experiencedPlansService;
+		if (config.planCalcScore().isUsingBatchScoring() && scoringFunctionFactory instanceof CharyparNagelScoringFunctionFactory
+				&& experiencedPlansService != null) {
+			this.batchScoringFunctionFactory = (CharyparNagelScoringFunctionFactory) scoringFunctionFactory;
+			this.batchScoring = this.batchScoringFunctionFactory.createBatchScoring();
+		} else {
+			if (config.planCalcScore().isUsingBatchScoring()) {
+				log.warn("Batch scoring needs the " + CharyparNagelScoringFunctionFactory.class.getSimpleName() + " and the experienced plans. "
+						+ "The activities and legs are passed to the scoring functions of " + scoringFunctionFactory.getClass().getName() + ".");
 			}
+			this.batchScoringFunctionFactory = null;
+			this.batchScoring = null;
 		}
+		boolean batch = this.batchScoring != null;
 
-		// Establish and end connection between driver and vehicle
-		if (o instanceof VehicleEntersTrafficEvent) {
-			this.vehicles2Drivers.handleEvent((VehicleEntersTrafficEvent) o);
-		}
-		if (o instanceof VehicleLeavesTrafficEvent) {
-			this.vehicles2Drivers.handleEvent((VehicleLeavesTrafficEvent) o);
-		}
-
-		// Pass LinkEnterEvent to person scoring, required e.g. for bicycle where link attributes are observed in scoring
-		/*
-		 * (This shouldn't really be more expensive than passing the link events to the router: here, we have a map lookup
-		 * for agentId, there we have a map lookup for linkId. Should be somewhat similar in terms of average
-		 * computational complexity. In BetaTravelTest, 194sec w/ "false", 193sec w/ "true". However, the experienced
-		 * plans service in fact does the same thing, so we should be able to get away without having to do this twice.
-		 * kai, mar'17)
-		 */
-		if (o instanceof LinkEnterEvent) {
-			Id<Vehicle> vehicleId = ((LinkEnterEvent)o).getVehicleId();
-			Id<Person> driverId = this.vehicles2Drivers.getDriverOfVehicle(vehicleId);
-			ScoringFunction scoringFunction = getScoringFunctionForAgent( driverId );
-			// (this will NOT do the scoring function lookup twice since LinkEnterEvent is not an instance of HasPersonId.  kai, mar'17)
-			if (scoringFunction != null) {
-				scoringFunction.handleEvent(o);
+		int numberOfShards = Math.max(1, config.parallelEventHandling().getNumberOfScoringShards());
+		this.shards = new Shard[numberOfShards];
+		if (numberOfShards == 1) {
+			Shard shard = new Shard(0, 1, eventsToActivities, eventsToLegs, batch);
+			this.shards[0] = shard;
+			eventsManager.addHandler(this);
+			eventsToActivities.addActivityHandler(shard::handleActivity);
+			eventsToLegs.addLegHandler(shard::handleLeg);
+		} else {
+			// the shards run on different threads of a parallel events manager, but the handlers of the injected
+			// EventsToActivities and EventsToLegs (e.g. ExperiencedPlansService) expect the calls one after the other.
+			Object forwardingLock = new Object();
+			for (int i = 0; i < numberOfShards; i++) {
+				EventsToActivities shardActivities = new EventsToActivities();
+				EventsToLegs shardLegs = new EventsToLegs(eventsToLegs);
+				Shard shard = new Shard(i, numberOfShards, shardActivities, shardLegs, batch);
+				this.shards[i] = shard;
+				shardActivities.addActivityHandler(shard::handleActivity);
+				shardActivities.addActivityHandler(activity -> {
+					synchronized (forwardingLock) {
+						eventsToActivities.notifyActivityHandlers(activity);
+					}
+				});
+				shardLegs.addLegHandler(shard::handleLeg);
+				shardLegs.addLegHandler(leg -> {
+					synchronized (forwardingLock) {
+						eventsToLegs.notifyLegHandlers(leg);
+					}
+				});
+				eventsManager.addHandler(shard);
 			}
 		}
-
-		/* Now also handle events for eventsToLegs and eventsToActivities.
-		 * This class deliberately only implements BasicEventHandler and not the individual event handlers required
-		 * by EventsToLegs and EventsToActivities to better control the order in which events are passed to scoring
-		 * functions. By handling the delegation here *after* having the events passed to scoringFunction.handleEvent()
-		 * makes sure that the corresponding event was already seen by a scoring function when the call to handleActivity(),
-		 * handleLeg() or handleTrip() is done.
-		 */
-		if (o instanceof ActivityStartEvent) this.handleActivityStart((ActivityStartEvent) o);
-		if (o instanceof ActivityEndEvent) this.actsDelegate.handleEvent((ActivityEndEvent) o);
-
-		if (o instanceof PersonDepartureEvent) this.legsDelegate.handleEvent((PersonDepartureEvent) o);
-		if (o instanceof PersonArrivalEvent) this.legsDelegate.handleEvent((PersonArrivalEvent) o);
-		if (o instanceof LinkEnterEvent) this.legsDelegate.handleEvent((LinkEnterEvent) o);
-		if (o instanceof TeleportationArrivalEvent) this.legsDelegate.handleEvent((TeleportationArrivalEvent) o);
-		if (o instanceof TransitDriverStartsEvent) this.legsDelegate.handleEvent((TransitDriverStartsEvent) o);
-		if (o instanceof PersonEntersVehicleEvent) this.legsDelegate.handleEvent((PersonEntersVehicleEvent) o);
-		if (o instanceof VehicleArrivesAtFacilityEvent) this.legsDelegate.handleEvent((VehicleArrivesAtFacilityEvent) o);
-		if (o instanceof VehicleEntersTrafficEvent) this.legsDelegate.handleEvent((VehicleEntersTrafficEvent) o);
-		if (o instanceof VehicleLeavesTrafficEvent) this.legsDelegate.handleEvent((VehicleLeavesTrafficEvent) o);
 	}
 
-	private void handleActivityStart(ActivityStartEvent event) {
-		this.actsDelegate.handleEvent(event);
-		if (!StageActivityTypeIdentifier.isStageActivity( event.getActType() ) ) {
-			this.callTripScoring(event);
+	private void init() {
+		for (Person person : this.population.getPersons().values()) {
+			ScoringFunction scoringFunction = this.batchScoringFunctionFactory != null
+					? this.batchScoringFunctionFactory.createEventScoringFunction(person)
+					: this.scoringFunctionFactory.createNewScoringFunction(person );
+			getShard(person.getId()).init(person, scoringFunction);
 		}
 	}
 
-	private void callTripScoring(ActivityStartEvent event) {
-		Plan plan = this.tripRecords.get(event.getPersonId()); // as container for trip
-		if (plan != null) {
-			// we are at a real activity, which is not the first one we see for this agent.  output the trip ...
-			Activity activity = PopulationUtils.createActivityFromLinkId(event.getActType(), event.getLinkId());
-			activity.setStartTime(event.getTime());
-			plan.addActivity(activity);
-			final List<Trip> trips = TripStructureUtils.getTrips(plan);
-			// yyyyyy should in principle only return one trip.  There are, however, situations where it returns two trips, in particular
-			// in conjunction with the minibus raptor.  Possibly something that has to do with not alternating between acts and legs.
-			// (To make matters worse, it passes on my local machine, but fails in jenkins.  Possibly, the byte buffer memory management
-			// in the minibus raptor implementation has issues--???) kai, sep'18
-
-			ScoringFunction scoringFunction = ScoringFunctionsForPopulation.this.getScoringFunctionForAgent(event.getPersonId());
-			for (Trip trip : trips) {
-				if (trip != null) {
-					scoringFunction.handleTrip(trip);
-				}
-			}
+	private Shard getShard(Id<Person> personId) {
+		return this.shards.length == 1 ? this.shards[0] : this.shards[personId.index() % this.shards.length];
+	}
 
-			// ... and clean out the intermediate plan (which will remain in tripRecords).
-			plan.getPlanElements().clear();
+	@Override
+	public void handleEvent(Event o) {
+		// only called directly if there is just one shard, otherwise the shards are added to the events manager.
+		for (Shard shard : this.shards) {
+			shard.handleEvent(o);
 		}
 	}
 
 	void handleLeg(PersonExperiencedLeg o) {
-		Id<Person> agentId = o.getAgentId();
-		Leg leg = o.getLeg();
-		ScoringFunction scoringFunction = ScoringFunctionsForPopulation.this.getScoringFunctionForAgent(agentId);
-		if (scoringFunction != null) {
-			scoringFunction.handleLeg(leg);
-			TDoubleCollection partialScoresForAgent = this.partialScores.get(agentId);
-			partialScoresForAgent.add(scoringFunction.getScore());
-		}
-		Plan plan = this.tripRecords.get( agentId ) ; // as container for trip
-		if ( plan!=null ) {
-			plan.addLeg( leg );
-		}
+		getShard(o.getAgentId()).handleLeg(o);
 	}
 
 	void handleActivity(PersonExperiencedActivity o) {
-		Id<Person> agentId = o.getAgentId();
-		Activity activity = o.getActivity();
-		ScoringFunction scoringFunction = ScoringFunctionsForPopulation.this.getScoringFunctionForAgent(agentId);
-		if (scoringFunction != null) {
-			scoringFunction.handleActivity(activity);
-			TDoubleCollection partialScoresForAgent = this.partialScores.get(agentId);
-			partialScoresForAgent.add(scoringFunction.getScore());
-		}
-		
-		Plan plan = this.tripRecords.get( agentId ); // as container for trip
-		if ( plan!= null ) {
-			plan.addActivity( activity );
-		}
+		getShard(o.getAgentId()).handleActivity(o);
 	}
 
 	/**
@@ -266,7 +223,10 @@ import static org.matsim.core.router.TripStructureUtils.Trip;
 	 * @return The scoring function for the specified agent.
 	 */
 	ScoringFunction getScoringFunctionForAgent(final Id<Person> agentId) {
-		return this.agentScorers.get(agentId);
+		if (agentId == null) {
+			return null;
+		}
+		return getShard(agentId).agentScorers.get(agentId);
 	}
 
 	void finishScoringFunctions() {
@@ -279,19 +239,51 @@ import static org.matsim.core.router.TripStructureUtils.Trip;
 				throw new RuntimeException(throwable);
 			}
 		}
-		for (ScoringFunction sf : this.agentScorers.values()) {
-			sf.finish();
+		if (this.shards.length == 1) {
+			// the last activities were already passed on by the injected EventsToActivities after the mobsim
+			if (this.batchScoring != null) {
+				scoreExperiencedPlans();
+			}
+			this.shards[0].finishScoringFunctions();
+		} else {
+			// the injected EventsToActivities does not see any events in this case, so the shards have to pass on the last
+			// activities, to their own scoring functions as well as to the handlers of the injected one.
+			// The scoring functions are already used concurrently by the shards while handling events.
+			Arrays.stream(this.shards).parallel().forEach(Shard::finishActivities);
+			if (this.batchScoring != null) {
+				scoreExperiencedPlans();
+			}
+			Arrays.stream(this.shards).parallel().forEach(Shard::finishScoringFunctions);
+		}
+	}
+
+	/**
+	 * Scores the activities and legs of all experienced plans at once, and adds the scores to the scoring functions.
+	 */
+	private void scoreExperiencedPlans() {
+		IdMap<Person, Plan> experiencedPlans = this.experiencedPlansService.get().getExperiencedPlans();
+		List<Person> persons = new ArrayList<>(this.population.getPersons().values());
+		List<Plan> plans = new ArrayList<>(persons.size());
+		for (Person person : persons) {
+			plans.add(experiencedPlans.get(person.getId()));
 		}
-		for (Entry<Id<Person>, TDoubleCollection> entry : this.partialScores.entrySet()) {
-			entry.getValue().add(this.getScoringFunctionForAgent(entry.getKey()).getScore());
+		double[] scores = this.batchScoring.scorePlans(persons, plans);
+		for (int i = 0; i < scores.length; i++) {
+			getScoringFunctionForAgent(persons.get(i).getId()).addScore(scores[i]);
 		}
 	}
 
 	void writePartialScores(String iterationFilename) {
 		try ( BufferedWriter out = IOUtils.getBufferedWriter(iterationFilename) ) {
-			for (Entry<Id<Person>, TDoubleCollection> entry : this.partialScores.entrySet()) {
-				out.write(entry.getKey().toString());
-				TDoubleIterator iterator = entry.getValue().iterator();
+			// write the persons ordered by the index of their ids, independent of the shards
+			for (int index = 0; index < Id.getNumberOfIds(Person.class); index++) {
+				Id<Person> personId = Id.get(index, Person.class);
+				TDoubleCollection partialScoresForAgent = getShard(personId).partialScores.get(personId);
+				if (partialScoresForAgent == null) {
+					continue;
+				}
+				out.write(personId.toString());
+				TDoubleIterator iterator = partialScoresForAgent.iterator();
 				while (iterator.hasNext()) {
 					out.write('\t');
 					out.write(String.valueOf(iterator.next()));
@@ -305,8 +297,239 @@ import static org.matsim.core.router.TripStructureUtils.Trip;
 
 	@Override
 	public void reset(int iteration) {
-		this.legsDelegate.reset(iteration);
-		this.actsDelegate.reset(iteration);
+		for (Shard shard : this.shards) {
+			shard.reset(iteration);
+		}
+	}
+
+	/**
+	 * The scoring functions and the state to create experienced activities and legs for the persons with
+	 * <code>personId.index() % shardCount == shardIndex</code>.
+	 */
+	private static final class Shard implements BasicEventHandler {
+
+		private final int shardIndex;
+		private final int shardCount;
+
+		private final EventsToLegs legsDelegate;
+		private final EventsToActivities actsDelegate;
+
+		private final IdMap<Person, ScoringFunction> agentScorers = new IdMap<>(Person.class);
+		private final IdMap<Person, TDoubleCollection> partialScores = new IdMap<>(Person.class);
+		private final IdMap<Person, Plan> tripRecords = new IdMap<>(Person.class);
+		// with batch scoring, the activities and legs are scored at once after the mobsim
+		private final boolean batch;
+
+		private final Vehicle2DriverEventHandler vehicles2Drivers = new Vehicle2DriverEventHandler();
+		// indexed by vehicle index, set once a person of this shard has driven or entered the vehicle
+		private final BitSet vehicles = new BitSet();
+
+		Shard(int shardIndex, int shardCount, EventsToActivities actsDelegate, EventsToLegs legsDelegate, boolean batch) {
+			this.shardIndex = shardIndex;
+			this.shardCount = shardCount;
+			this.actsDelegate = actsDelegate;
+			this.legsDelegate = legsDelegate;
+			this.batch = batch;
+		}
+
+		void init(Person person, ScoringFunction scoringFunction) {
+			this.agentScorers.put(person.getId(), scoringFunction);
+			this.partialScores.put(person.getId(), new TDoubleArrayList());
+			this.tripRecords.put(person.getId(), PopulationUtils.createPlan());
+		}
+
+		private boolean isResponsibleFor(Id<Vehicle> vehicleId) {
+			return this.shardCount == 1 || this.vehicles.get(vehicleId.index());
+		}
+
+		private boolean isResponsibleFor(Event o) {
+			if (this.shardCount == 1 || !(o instanceof HasPersonId)) {
+				return true;
+			}
+			Id<Person> personId = ((HasPersonId) o).getPersonId();
+			return personId == null || personId.index() % this.shardCount == this.shardIndex;
+		}
+
+		@Override
+		public void handleEvent(Event o) {
+			if (o instanceof LinkEnterEvent) {
+				handleLinkEnter((LinkEnterEvent) o);
+				return;
+			}
+			if (o instanceof VehicleEntersTrafficEvent || o instanceof VehicleLeavesTrafficEvent) {
+				// the vehicle is only of interest for the shards of its driver and its passengers
+				Id<Vehicle> vehicleId = o instanceof VehicleEntersTrafficEvent ? ((VehicleEntersTrafficEvent) o).getVehicleId()
+						: ((VehicleLeavesTrafficEvent) o).getVehicleId();
+				if (isResponsibleFor(o)) {
+					this.vehicles.set(vehicleId.index());
+				} else if (!isResponsibleFor(vehicleId)) {
+					return;
+				}
+			}
+			// this is for the stuff that is directly based on events. note that this passes on _all_ person events, even those which are
+			// aggregated into legs and activities. for the time being, not all PersonEvents may "implement HasPersonId". link enter/leave events
+			// are NOT passed on, for performance reasons. kai/dominik, dec'12
+			if (o instanceof HasPersonId) {
+				ScoringFunction scoringFunction = getScoringFunctionForAgent(((HasPersonId) o).getPersonId());
+				if (scoringFunction != null) {
+					if (o instanceof PersonStuckEvent) {
+						scoringFunction.agentStuck(o.getTime());
+					} else if (o instanceof PersonMoneyEvent) {
+						scoringFunction.addMoney(((PersonMoneyEvent) o).getAmount());
+						// yy looking at this, I am a bit skeptic if it truly makes sense to not pass this additionally into the general events handling function below.
+						// A use case might be different utilities of money by money transaction type (e.g. toll, fare, reimbursement, ...).  kai, mar'17
+					} else if (o instanceof PersonScoreEvent) {
+						scoringFunction.addScore(((PersonScoreEvent) o).getAmount());
+					}
+					scoringFunction.handleEvent(o);
+					// passing this on in any case, see comment above.  kai, mar'17
+				}
+			}
+
+			// Establish and end connection between driver and vehicle, for the drivers of this shard
+			if (o instanceof VehicleEntersTrafficEvent && isResponsibleFor(o)) {
+				this.vehicles2Drivers.handleEvent((VehicleEntersTrafficEvent) o);
+			}
+			if (o instanceof VehicleLeavesTrafficEvent && isResponsibleFor(o)) {
+				this.vehicles2Drivers.handleEvent((VehicleLeavesTrafficEvent) o);
+			}
+
+			/* Now also handle events for eventsToLegs and eventsToActivities.
+			 * This class deliberately only implements BasicEventHandler and not the individual event handlers required
+			 * by EventsToLegs and EventsToActivities to better control the order in which events are passed to scoring
+			 * functions. By handling the delegation here *after* having the events passed to scoringFunction.handleEvent()
+			 * makes sure that the corresponding event was already seen by a scoring function when the call to handleActivity(),
+			 * handleLeg() or handleTrip() is done.
+			 * Events that refer to vehicles are passed on to the shards of the driver and of all passengers, as they may be in
+			 * different shards.
+			 */
+			if (isResponsibleFor(o)) {
+				if (o instanceof ActivityStartEvent) this.handleActivityStart((ActivityStartEvent) o);
+				if (o instanceof ActivityEndEvent) this.actsDelegate.handleEvent((ActivityEndEvent) o);
+
+				if (o instanceof PersonDepartureEvent) this.legsDelegate.handleEvent((PersonDepartureEvent) o);
+				if (o instanceof PersonArrivalEvent) this.legsDelegate.handleEvent((PersonArrivalEvent) o);
+				if (o instanceof TeleportationArrivalEvent) this.legsDelegate.handleEvent((TeleportationArrivalEvent) o);
+				if (o instanceof PersonEntersVehicleEvent) {
+					this.vehicles.set(((PersonEntersVehicleEvent) o).getVehicleId().index());
+					this.legsDelegate.handleEvent((PersonEntersVehicleEvent) o);
+				}
+			}
+			if (o instanceof TransitDriverStartsEvent) this.legsDelegate.handleEvent((TransitDriverStartsEvent) o);
+			if (o instanceof VehicleArrivesAtFacilityEvent) this.legsDelegate.handleEvent((VehicleArrivesAtFacilityEvent) o);
+			if (o instanceof VehicleEntersTrafficEvent) this.legsDelegate.handleEvent((VehicleEntersTrafficEvent) o);
+			if (o instanceof VehicleLeavesTrafficEvent) this.legsDelegate.handleEvent((VehicleLeavesTrafficEvent) o);
+		}
+
+		private void handleLinkEnter(LinkEnterEvent event) {
+			if (event.getVehicleId() == null || !isResponsibleFor(event.getVehicleId())) {
+				return;
+			}
+			// Pass LinkEnterEvent to person scoring, required e.g. for bicycle where link attributes are observed in scoring
+			/*
+			 * (This shouldn't really be more expensive than passing the link events to the router: here, we have a map lookup
+			 * for agentId, there we have a map lookup for linkId. Should be somewhat similar in terms of average
+			 * computational complexity. In BetaTravelTest, 194sec w/ "false", 193sec w/ "true". However, the experienced
+			 * plans service in fact does the same thing, so we should be able to get away without having to do this twice.
+			 * kai, mar'17)
+			 */
+			Id<Person> driverId = this.vehicles2Drivers.getDriverOfVehicle(event.getVehicleId());
+			ScoringFunction scoringFunction = getScoringFunctionForAgent( driverId );
+			// (this will NOT do the scoring function lookup twice since LinkEnterEvent is not an instance of HasPersonId.  kai, mar'17)
+			if (scoringFunction != null) {
+				scoringFunction.handleEvent(event);
+			}
+			this.legsDelegate.handleEvent(event);
+		}
+
+		private void handleActivityStart(ActivityStartEvent event) {
+			this.actsDelegate.handleEvent(event);
+			if (!StageActivityTypeIdentifier.isStageActivity( event.getActType() ) ) {
+				this.callTripScoring(event);
+			}
+		}
+
+		private void callTripScoring(ActivityStartEvent event) {
+			Plan plan = this.tripRecords.get(event.getPersonId()); // as container for trip
+			if (plan != null) {
+				// we are at a real activity, which is not the first one we see for this agent.  output the trip ...
+				Activity activity = PopulationUtils.createActivityFromLinkId(event.getActType(), event.getLinkId());
+				activity.setStartTime(event.getTime());
+				plan.addActivity(activity);
+				final List<Trip> trips = TripStructureUtils.getTrips(plan);
+				// yyyyyy should in principle only return one trip.  There are, however, situations where it returns two trips, in particular
+				// in conjunction with the minibus raptor.  Possibly something that has to do with not alternating between acts and legs.
+				// (To make matters worse, it passes on my local machine, but fails in jenkins.  Possibly, the byte buffer memory management
+				// in the minibus raptor implementation has issues--???) kai, sep'18
+
+				ScoringFunction scoringFunction = getScoringFunctionForAgent(event.getPersonId());
+				for (Trip trip : trips) {
+					if (trip != null) {
+						scoringFunction.handleTrip(trip);
+					}
+				}
+
+				// ... and clean out the intermediate plan (which will remain in tripRecords).
+				plan.getPlanElements().clear();
+			}
+		}
+
+		void handleLeg(PersonExperiencedLeg o) {
+			Id<Person> agentId = o.getAgentId();
+			Leg leg = o.getLeg();
+			ScoringFunction scoringFunction = getScoringFunctionForAgent(agentId);
+			if (scoringFunction != null && !this.batch) {
+				scoringFunction.handleLeg(leg);
+				TDoubleCollection partialScoresForAgent = this.partialScores.get(agentId);
+				partialScoresForAgent.add(scoringFunction.getScore());
+			}
+			Plan plan = this.tripRecords.get( agentId ) ; // as container for trip
+			if ( plan!=null ) {
+				plan.addLeg( leg );
+			}
+		}
+
+		void handleActivity(PersonExperiencedActivity o) {
+			Id<Person> agentId = o.getAgentId();
+			Activity activity = o.getActivity();
+			ScoringFunction scoringFunction = getScoringFunctionForAgent(agentId);
+			if (scoringFunction != null && !this.batch) {
+				scoringFunction.handleActivity(activity);
+				TDoubleCollection partialScoresForAgent = this.partialScores.get(agentId);
+				partialScoresForAgent.add(scoringFunction.getScore());
+			}
+
+			Plan plan = this.tripRecords.get( agentId ); // as container for trip
+			if ( plan!= null ) {
+				plan.addActivity( activity );
+			}
+		}
+
+		private ScoringFunction getScoringFunctionForAgent(final Id<Person> agentId) {
+			return agentId == null ? null : this.agentScorers.get(agentId);
+		}
+
+		void finishActivities() {
+			this.actsDelegate.finish();
+			// forget the last activities, so they are not passed on again if the scoring functions are finished once more
+			this.actsDelegate.reset(-1);
+		}
+
+		void finishScoringFunctions() {
+			for (ScoringFunction sf : this.agentScorers.values()) {
+				sf.finish();
+			}
+			this.partialScores.forEach((personId, partialScoresForAgent) -> partialScoresForAgent.add(this.agentScorers.get(personId).getScore()));
+		}
+
+		@Override
+		public void reset(int iteration) {
+			this.vehicles.clear();
+			this.vehicles2Drivers.reset(iteration);
+			this.legsDelegate.reset(iteration);
+			this.actsDelegate.reset(iteration);
+		}
+
 	}
 
 }
@@ -0,0 +1,545 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * CharyparNagelBatchScoring.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.scoring.functions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.IdMap;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.api.core.v01.population.Route;
+import org.matsim.core.gbl.Gbl;
+import org.matsim.core.utils.misc.OptionalTime;
+
+/**
+ * Computes the activity and leg scores of {@link CharyparNagelActivityScoring} and {@link CharyparNagelLegScoring}
+ * for many plans at once, e.g. for the experienced plans of all persons after the mobsim.
+ * <p></p>
+ * The result is <em>not</em> the complete score of a plan: it is the sum of the activity and leg scores only, i.e.
+ * what {@link CharyparNagelActivityScoring#getScore()} and {@link CharyparNagelLegScoring#getScore()} return when
+ * they only get the activities and legs of the plan. The controler's scoring uses it instead of passing the
+ * activities and legs to the scoring functions if {@link org.matsim.core.config.groups.PlanCalcScoreConfigGroup#isUsingBatchScoring()}
+ * is set and the default {@link CharyparNagelScoringFunctionFactory} is used, see
+ * {@link CharyparNagelScoringFunctionFactory#createBatchScoring()}. It can also be used for analyses that need these
+ * parts of the score for a whole population.
+ * <p></p>
+ * Instead of creating a scoring function per person, the activities and legs of a chunk of persons are copied into
+ * primitive arrays, and the scores are computed in tight loops using flattened tables of the scoring parameters.
+ * The chunks are scored in parallel.
+ * <p></p>
+ * Only the parts of the score that can be derived from the plans are computed. Money, stuck agents, score events as
+ * well as the line switch and waiting corrections for pt legs are based on events and are not included, so the
+ * event-based scoring functions are still required for them: the scoring functions of the persons still get all events,
+ * only the activities and legs are scored here. Custom scoring functions are not affected by this class.
+ */
+public final class CharyparNagelBatchScoring {
+
+	/*package (for a test)*/ static final int PERSONS_PER_CHUNK = 16384;
+	private static final String NOT_SPECIFIED = "not specified";
+
+	private static final Logger log = LogManager.getLogger(CharyparNagelBatchScoring.class);
+	private static final AtomicInteger nanDistanceWarnings = new AtomicInteger();
+
+	private final ScoringParametersForPerson scoringParameters;
+
+	public CharyparNagelBatchScoring(Scenario scenario) {
+		this(new SubpopulationScoringParameters(scenario));
+	}
+
+	public CharyparNagelBatchScoring(ScoringParametersForPerson scoringParameters) {
+		this.scoringParameters = scoringParameters;
+	}
+
+	/**
+	 * Scores the experienced plans, e.g. from {@link org.matsim.core.scoring.ExperiencedPlansService#getExperiencedPlans()}.
+	 * The scoring parameters are looked up with the persons of the population.
+	 *
+	 * @return the sum of the activity and leg scores per person, see the class documentation
+	 */
+	public IdMap<Person, Double> scoreExperiencedPlans(Population population, Map<Id<Person>, ? extends Plan> experiencedPlans) {
+		List<Person> persons = new ArrayList<>(experiencedPlans.size());
+		List<Plan> plans = new ArrayList<>(experiencedPlans.size());
+		for (Map.Entry<Id<Person>, ? extends Plan> e : experiencedPlans.entrySet()) {
+			Person person = population.getPersons().get(e.getKey());
+			if (person == null) {
+				throw new IllegalArgumentException("person " + e.getKey() + " is not part of the population.");
+			}
+			persons.add(person);
+			plans.add(e.getValue());
+		}
+		double[] scores = scorePlans(persons, plans);
+		IdMap<Person, Double> result = new IdMap<>(Person.class, persons.size());
+		for (int i = 0; i < scores.length; i++) {
+			result.put(persons.get(i).getId(), scores[i]);
+		}
+		return result;
+	}
+
+	/**
+	 * Scores <code>plans.get(i)</code> with the scoring parameters of <code>persons.get(i)</code>.
+	 * The activities need start and/or end times and the legs departure and travel times, as in experienced plans.
+	 *
+	 * @return the sum of the activity and leg scores per plan, see the class documentation
+	 */
+	public double[] scorePlans(List<Person> persons, List<? extends Plan> plans) {
+		if (persons.size() != plans.size()) {
+			throw new IllegalArgumentException("persons and plans must have the same size.");
+		}
+		ParameterTables tables = new ParameterTables();
+		int[] parameterSets = new int[persons.size()];
+		for (int i = 0; i < parameterSets.length; i++) {
+			parameterSets[i] = tables.getParameterSet(this.scoringParameters.getScoringParameters(persons.get(i)));
+		}
+
+		double[] scores = new double[plans.size()];
+		int chunkCount = (plans.size() + PERSONS_PER_CHUNK - 1) / PERSONS_PER_CHUNK;
+		IntStream.range(0, chunkCount).parallel().forEach(c -> {
+			int from = c * PERSONS_PER_CHUNK;
+			int to = Math.min(plans.size(), from + PERSONS_PER_CHUNK);
+			Chunk chunk = new Chunk(tables);
+			for (int i = from; i < to; i++) {
+				chunk.addPlan(i - from, parameterSets[i], plans.get(i));
+			}
+			chunk.scoreActivities(scores, from);
+			chunk.scoreLegs(scores, from);
+		});
+		return scores;
+	}
+
+	/**
+	 * The scoring parameters of all parameter sets flattened into arrays. Every row contains the parameters for
+	 * one activity type (or mode) of one parameter set, including the values of the parameter set itself.
+	 * <p></p>
+	 * Parameter sets with equal values share their rows. Providers like the income dependent ones create a new
+	 * {@link ScoringParameters} instance per person, but only few distinct values.
+	 */
+	private static final class ParameterTables {
+
+		private final Map<ScoringParameters, Integer> parameterSetIndices = new IdentityHashMap<>();
+		private final Map<List<Object>, Integer> parameterSetIndicesByValues = new HashMap<>();
+		private final List<Map<String, Integer>> activityRowsPerSet = new ArrayList<>();
+		private final List<Map<String, Integer>> modeRowsPerSet = new ArrayList<>();
+		private final List<ScoringParameters> parameterSets = new ArrayList<>();
+
+		private int activityRowCount = 0;
+		private int modeRowCount = 0;
+
+		// activity rows
+		private boolean[] scoreAtAll = new boolean[0];
+		private boolean[] hasOpeningInterval = new boolean[0];
+		private double[] openingTime = new double[0];
+		private double[] closingTime = new double[0];
+		private double[] latestStartTime = new double[0];
+		private double[] earliestEndTime = new double[0];
+		private double[] minimalDuration = new double[0];
+		private double[] typicalDuration = new double[0];
+		private double[] zeroUtilityDuration_h = new double[0];
+		private double[] slopeAtZeroUtility = new double[0];
+		private double[] marginalUtilityOfWaiting_s = new double[0];
+		private double[] marginalUtilityOfLateArrival_s = new double[0];
+		private double[] marginalUtilityOfEarlyDeparture_s = new double[0];
+		private double[] marginalUtilityOfPerforming_s = new double[0];
+		private boolean[] usingOldScoringBelowZeroUtilityDuration = new boolean[0];
+
+		// mode rows
+		private double[] marginalUtilityOfTraveling_s = new double[0];
+		private boolean[] hasDistanceUtility = new boolean[0];
+		private double[] marginalUtilityOfDistance_m = new double[0];
+		private double[] monetaryDistanceUtility_m = new double[0];
+		private double[] constant = new double[0];
+		private double[] dailyConstant = new double[0];
+
+		int getParameterSet(ScoringParameters params) {
+			Integer index = this.parameterSetIndices.get(params);
+			if (index == null) {
+				index = this.parameterSetIndicesByValues.computeIfAbsent(getValues(params), values -> addParameterSet(params));
+				this.parameterSetIndices.put(params, index);
+			}
+			return index;
+		}
+
+		private int addParameterSet(ScoringParameters params) {
+			int index = this.parameterSets.size();
+			this.parameterSets.add(params);
+			this.activityRowsPerSet.add(addActivityRows(params));
+			this.modeRowsPerSet.add(addModeRows(params));
+			return index;
+		}
+
+		/**
+		 * @return all values of the parameter set which are used by the batch scoring, for finding equal parameter sets
+		 */
+		private static List<Object> getValues(ScoringParameters params) {
+			Map<String, List<Object>> activityValues = new HashMap<>();
+			for (ActivityUtilityParameters actParams : params.utilParams.values()) {
+				activityValues.put(actParams.getType(), Arrays.asList(actParams.isScoreAtAll(), actParams.getOpeningTime(),
+						actParams.getClosingTime(), actParams.getLatestStartTime(), actParams.getEarliestEndTime(),
+						actParams.getMinimalDuration(), actParams.getTypicalDuration(), actParams.getZeroUtilityDuration_h()));
+			}
+			Map<String, List<Object>> modeValues = new HashMap<>();
+			for (Map.Entry<String, ModeUtilityParameters> e : params.modeParams.entrySet()) {
+				ModeUtilityParameters mp = e.getValue();
+				modeValues.put(e.getKey(), Arrays.asList(mp.marginalUtilityOfTraveling_s, mp.marginalUtilityOfDistance_m,
+						mp.monetaryDistanceCostRate, mp.constant, mp.dailyUtilityConstant, mp.dailyMoneyConstant));
+			}
+			return Arrays.asList(params.scoreActs, params.simulationPeriodInDays, params.marginalUtilityOfWaiting_s,
+					params.marginalUtilityOfLateArrival_s, params.marginalUtilityOfEarlyDeparture_s, params.marginalUtilityOfPerforming_s,
+					params.marginalUtilityOfMoney, params.usingOldScoringBelowZeroUtilityDuration, activityValues, modeValues);
+		}
+
+		int getActivityRow(int parameterSet, String activityType) {
+			Integer row = this.activityRowsPerSet.get(parameterSet).get(activityType);
+			if (row == null) {
+				throw new IllegalArgumentException("acttype \"" + activityType + "\" is not known in utility parameters " +
+						"(module name=\"planCalcScore\" in the config file).");
+			}
+			return row;
+		}
+
+		int getModeRow(int parameterSet, String mode) {
+			Integer row = this.modeRowsPerSet.get(parameterSet).get(mode);
+			if (row == null) {
+				throw new RuntimeException("just encountered mode for which no scoring parameters are defined: " + mode);
+			}
+			return row;
+		}
+
+		ScoringParameters getScoringParameters(int parameterSet) {
+			return this.parameterSets.get(parameterSet);
+		}
+
+		private Map<String, Integer> addActivityRows(ScoringParameters params) {
+			Map<String, Integer> rows = new HashMap<>();
+			ensureActivityRowCapacity(this.activityRowCount + params.utilParams.size());
+			for (ActivityUtilityParameters actParams : params.utilParams.values()) {
+				int r = this.activityRowCount++;
+				rows.put(actParams.getType(), r);
+				OptionalTime opening = actParams.getOpeningTime();
+				OptionalTime closing = actParams.getClosingTime();
+				this.scoreAtAll[r] = actParams.isScoreAtAll();
+				this.hasOpeningInterval[r] = opening.isDefined() && closing.isDefined();
+				// undefined times are replaced by values for which the corresponding comparisons are never true
+				this.openingTime[r] = opening.orElse(Double.NEGATIVE_INFINITY);
+				this.closingTime[r] = closing.orElse(Double.POSITIVE_INFINITY);
+				this.latestStartTime[r] = actParams.getLatestStartTime().orElse(Double.POSITIVE_INFINITY);
+				this.earliestEndTime[r] = actParams.getEarliestEndTime().orElse(Double.NEGATIVE_INFINITY);
+				this.minimalDuration[r] = actParams.getMinimalDuration().orElse(Double.NEGATIVE_INFINITY);
+				this.typicalDuration[r] = actParams.getTypicalDuration();
+				this.zeroUtilityDuration_h[r] = actParams.getZeroUtilityDuration_h();
+				this.slopeAtZeroUtility[r] = params.marginalUtilityOfPerforming_s * actParams.getTypicalDuration() / ( 3600.*actParams.getZeroUtilityDuration_h() );
+				this.marginalUtilityOfWaiting_s[r] = params.marginalUtilityOfWaiting_s;
+				this.marginalUtilityOfLateArrival_s[r] = params.marginalUtilityOfLateArrival_s;
+				this.marginalUtilityOfEarlyDeparture_s[r] = params.marginalUtilityOfEarlyDeparture_s;
+				this.marginalUtilityOfPerforming_s[r] = params.marginalUtilityOfPerforming_s;
+				this.usingOldScoringBelowZeroUtilityDuration[r] = params.usingOldScoringBelowZeroUtilityDuration;
+			}
+			return rows;
+		}
+
+		private Map<String, Integer> addModeRows(ScoringParameters params) {
+			Map<String, Integer> rows = new HashMap<>();
+			Map<String, ModeUtilityParameters> modeParams = new HashMap<>(params.modeParams);
+			ModeUtilityParameters walkParams = params.modeParams.get(TransportMode.walk);
+			if (walkParams != null) {
+				// same fallback as in CharyparNagelLegScoring. The modes still get their own rows, as the daily constants are per mode.
+				modeParams.putIfAbsent(TransportMode.transit_walk, walkParams);
+				modeParams.putIfAbsent(TransportMode.non_network_walk, walkParams);
+			}
+			ensureModeRowCapacity(this.modeRowCount + modeParams.size());
+			for (Map.Entry<String, ModeUtilityParameters> e : modeParams.entrySet()) {
+				int r = this.modeRowCount++;
+				rows.put(e.getKey(), r);
+				ModeUtilityParameters mp = e.getValue();
+				this.marginalUtilityOfTraveling_s[r] = mp.marginalUtilityOfTraveling_s;
+				this.hasDistanceUtility[r] = mp.marginalUtilityOfDistance_m != 0.0 || mp.monetaryDistanceCostRate != 0.0;
+				this.marginalUtilityOfDistance_m[r] = mp.marginalUtilityOfDistance_m;
+				this.monetaryDistanceUtility_m[r] = mp.monetaryDistanceCostRate * params.marginalUtilityOfMoney;
+				this.constant[r] = mp.constant;
+				this.dailyConstant[r] = mp.dailyUtilityConstant + mp.dailyMoneyConstant * params.marginalUtilityOfMoney;
+			}
+			return rows;
+		}
+
+		private void ensureActivityRowCapacity(int rowCount) {
+			if (rowCount <= this.scoreAtAll.length) {
+				return;
+			}
+			int size = Math.max(rowCount, 2 * this.scoreAtAll.length);
+			this.scoreAtAll = Arrays.copyOf(this.scoreAtAll, size);
+			this.hasOpeningInterval = Arrays.copyOf(this.hasOpeningInterval, size);
+			this.openingTime = Arrays.copyOf(this.openingTime, size);
+			this.closingTime = Arrays.copyOf(this.closingTime, size);
+			this.latestStartTime = Arrays.copyOf(this.latestStartTime, size);
+			this.earliestEndTime = Arrays.copyOf(this.earliestEndTime, size);
+			this.minimalDuration = Arrays.copyOf(this.minimalDuration, size);
+			this.typicalDuration = Arrays.copyOf(this.typicalDuration, size);
+			this.zeroUtilityDuration_h = Arrays.copyOf(this.zeroUtilityDuration_h, size);
+			this.slopeAtZeroUtility = Arrays.copyOf(this.slopeAtZeroUtility, size);
+			this.marginalUtilityOfWaiting_s = Arrays.copyOf(this.marginalUtilityOfWaiting_s, size);
+			this.marginalUtilityOfLateArrival_s = Arrays.copyOf(this.marginalUtilityOfLateArrival_s, size);
+			this.marginalUtilityOfEarlyDeparture_s = Arrays.copyOf(this.marginalUtilityOfEarlyDeparture_s, size);
+			this.marginalUtilityOfPerforming_s = Arrays.copyOf(this.marginalUtilityOfPerforming_s, size);
+			this.usingOldScoringBelowZeroUtilityDuration = Arrays.copyOf(this.usingOldScoringBelowZeroUtilityDuration, size);
+		}
+
+		private void ensureModeRowCapacity(int rowCount) {
+			if (rowCount <= this.marginalUtilityOfTraveling_s.length) {
+				return;
+			}
+			int size = Math.max(rowCount, 2 * this.marginalUtilityOfTraveling_s.length);
+			this.marginalUtilityOfTraveling_s = Arrays.copyOf(this.marginalUtilityOfTraveling_s, size);
+			this.hasDistanceUtility = Arrays.copyOf(this.hasDistanceUtility, size);
+			this.marginalUtilityOfDistance_m = Arrays.copyOf(this.marginalUtilityOfDistance_m, size);
+			this.monetaryDistanceUtility_m = Arrays.copyOf(this.monetaryDistanceUtility_m, size);
+			this.constant = Arrays.copyOf(this.constant, size);
+			this.dailyConstant = Arrays.copyOf(this.dailyConstant, size);
+		}
+	}
+
+	/**
+	 * The activities and legs of a chunk of persons in structure-of-arrays form.
+	 */
+	private static final class Chunk {
+
+		private final ParameterTables tables;
+
+		private int activityCount = 0;
+		private int[] activityPerson = new int[PERSONS_PER_CHUNK * 4];
+		private int[] activityRow = new int[PERSONS_PER_CHUNK * 4];
+		private double[] arrivalTime = new double[PERSONS_PER_CHUNK * 4];
+		private double[] departureTime = new double[PERSONS_PER_CHUNK * 4];
+
+		private int legCount = 0;
+		private int[] legPerson = new int[PERSONS_PER_CHUNK * 4];
+		private int[] legRow = new int[PERSONS_PER_CHUNK * 4];
+		private double[] travelTime = new double[PERSONS_PER_CHUNK * 4];
+		private double[] distance = new double[PERSONS_PER_CHUNK * 4];
+		private boolean[] isFirstLegOfMode = new boolean[PERSONS_PER_CHUNK * 4];
+
+		Chunk(ParameterTables tables) {
+			this.tables = tables;
+		}
+
+		/**
+		 * Adds the activities and legs of a plan, handling the first and last activity in the same way as
+		 * {@link org.matsim.core.scoring.SumScoringFunction} and {@link CharyparNagelActivityScoring}.
+		 */
+		void addPlan(int person, int parameterSet, Plan plan) {
+			int firstLegOfPerson = this.legCount;
+			Activity firstActivity = null;
+			for (PlanElement pe : plan.getPlanElements()) {
+				if (pe instanceof Activity) {
+					Activity act = (Activity) pe;
+					if (act.getStartTime().isUndefined() && act.getEndTime().isDefined()) {
+						firstActivity = act;
+					} else if (act.getStartTime().isDefined() && act.getEndTime().isDefined()) {
+						addActivity(person, parameterSet, act, act.getStartTime().seconds(), act.getEndTime().seconds());
+					} else if (act.getStartTime().isDefined() && act.getEndTime().isUndefined()) {
+						if (firstActivity == null) {
+							throw new RuntimeException("Trying to score a last activity without a first activity. Activity=" + act);
+						}
+						addOvernightActivity(person, parameterSet, firstActivity, act);
+						firstActivity = null;
+					} else {
+						throw new RuntimeException(
+								"Trying to score an activity without start or end time. Should not happen. Activity=" + act);
+					}
+				} else if (pe instanceof Leg) {
+					addLeg(person, parameterSet, (Leg) pe, firstLegOfPerson);
+				}
+			}
+			if (firstActivity != null) {
+				addActivity(person, parameterSet, firstActivity, 0.0, firstActivity.getEndTime().seconds());
+			}
+		}
+
+		private void addOvernightActivity(int person, int parameterSet, Activity firstActivity, Activity lastActivity) {
+			if (lastActivity.getType().equals(firstActivity.getType()) || firstActivity.getType().equals(NOT_SPECIFIED)) {
+				addActivity(person, parameterSet, lastActivity, lastActivity.getStartTime().seconds(), firstActivity.getEndTime().seconds() + 24 * 3600);
+			} else {
+				ScoringParameters params = this.tables.getScoringParameters(parameterSet);
+				if (params.scoreActs) {
+					addActivity(person, parameterSet, firstActivity, 0.0, firstActivity.getEndTime().seconds());
+					addActivity(person, parameterSet, lastActivity, lastActivity.getStartTime().seconds(), params.simulationPeriodInDays * 24 * 3600);
+				}
+			}
+		}
+
+		private void addActivity(int person, int parameterSet, Activity act, double arrival, double departure) {
+			int i = this.activityCount++;
+			if (i == this.activityRow.length) {
+				int size = 2 * i;
+				this.activityPerson = Arrays.copyOf(this.activityPerson, size);
+				this.activityRow = Arrays.copyOf(this.activityRow, size);
+				this.arrivalTime = Arrays.copyOf(this.arrivalTime, size);
+				this.departureTime = Arrays.copyOf(this.departureTime, size);
+			}
+			this.activityPerson[i] = person;
+			this.activityRow[i] = this.tables.getActivityRow(parameterSet, act.getType());
+			this.arrivalTime[i] = arrival;
+			this.departureTime[i] = departure;
+		}
+
+		private void addLeg(int person, int parameterSet, Leg leg, int firstLegOfPerson) {
+			if (leg.getDepartureTime().isUndefined() || leg.getTravelTime().isUndefined()) {
+				throw new RuntimeException("Trying to score a leg without departure or travel time. Leg=" + leg);
+			}
+			int i = this.legCount++;
+			if (i == this.legRow.length) {
+				int size = 2 * i;
+				this.legPerson = Arrays.copyOf(this.legPerson, size);
+				this.legRow = Arrays.copyOf(this.legRow, size);
+				this.travelTime = Arrays.copyOf(this.travelTime, size);
+				this.distance = Arrays.copyOf(this.distance, size);
+				this.isFirstLegOfMode = Arrays.copyOf(this.isFirstLegOfMode, size);
+			}
+			int row = this.tables.getModeRow(parameterSet, leg.getMode());
+			boolean isFirst = true;
+			for (int j = firstLegOfPerson; j < i; j++) {
+				if (this.legRow[j] == row) {
+					isFirst = false;
+					break;
+				}
+			}
+			Route route = leg.getRoute();
+			this.legPerson[i] = person;
+			this.legRow[i] = row;
+			this.travelTime[i] = leg.getTravelTime().seconds();
+			this.distance[i] = route == null ? Double.NaN : route.getDistance();
+			this.isFirstLegOfMode[i] = isFirst;
+		}
+
+		/**
+		 * Same computation as {@link CharyparNagelActivityScoring#calcActScore(double, double, Activity)}.
+		 */
+		void scoreActivities(double[] scores, int offset) {
+			final ParameterTables t = this.tables;
+			for (int i = 0; i < this.activityCount; i++) {
+				int r = this.activityRow[i];
+				if (!t.scoreAtAll[r]) {
+					continue;
+				}
+				double arrival = this.arrivalTime[i];
+				double departure = this.departureTime[i];
+				double activityStart = arrival < t.openingTime[r] ? t.openingTime[r] : arrival;
+				double activityEnd = t.closingTime[r] < departure ? t.closingTime[r] : departure;
+				if (t.hasOpeningInterval[r] && (t.openingTime[r] > departure || t.closingTime[r] < arrival)) {
+					// agent could not perform action
+					activityStart = departure;
+					activityEnd = departure;
+				}
+				double duration = activityEnd - activityStart;
+
+				double tmpScore = 0.0;
+				if (arrival < activityStart) {
+					tmpScore += t.marginalUtilityOfWaiting_s[r] * (activityStart - arrival);
+				}
+				if (activityStart > t.latestStartTime[r]) {
+					tmpScore += t.marginalUtilityOfLateArrival_s[r] * (activityStart - t.latestStartTime[r]);
+				}
+				if (t.usingOldScoringBelowZeroUtilityDuration[r]) {
+					if (duration > 0) {
+						double utilPerf = t.marginalUtilityOfPerforming_s[r] * t.typicalDuration[r]
+								* Math.log((duration / 3600.0) / t.zeroUtilityDuration_h[r]);
+						double utilWait = t.marginalUtilityOfWaiting_s[r] * duration;
+						tmpScore += Math.max(0, Math.max(utilPerf, utilWait));
+					} else {
+						tmpScore += 2*t.marginalUtilityOfLateArrival_s[r]*Math.abs(duration);
+					}
+				} else if (duration >= 3600.*t.zeroUtilityDuration_h[r]) {
+					tmpScore += t.marginalUtilityOfPerforming_s[r] * t.typicalDuration[r]
+							* Math.log((duration / 3600.0) / t.zeroUtilityDuration_h[r]);
+				} else {
+					if (t.slopeAtZeroUtility[r] < 0.) {
+						throw new RuntimeException( "slope at zero utility < 0.; this should not happen ...");
+					}
+					tmpScore -= t.slopeAtZeroUtility[r] * (t.zeroUtilityDuration_h[r]*3600. - duration);
+				}
+				if (activityEnd < t.earliestEndTime[r]) {
+					tmpScore += t.marginalUtilityOfEarlyDeparture_s[r] * (t.earliestEndTime[r] - activityEnd);
+				}
+				if (activityEnd < departure) {
+					tmpScore += t.marginalUtilityOfWaiting_s[r] * (departure - activityEnd);
+				}
+				if (duration < t.minimalDuration[r]) {
+					tmpScore += t.marginalUtilityOfEarlyDeparture_s[r] * (t.minimalDuration[r] - duration);
+				}
+				scores[offset + this.activityPerson[i]] += tmpScore;
+			}
+		}
+
+		/**
+		 * Same computation as {@link CharyparNagelLegScoring#calcLegScore(double, double, Leg)}.
+		 */
+		void scoreLegs(double[] scores, int offset) {
+			final ParameterTables t = this.tables;
+			for (int i = 0; i < this.legCount; i++) {
+				int r = this.legRow[i];
+				double tmpScore = this.travelTime[i] * t.marginalUtilityOfTraveling_s[r];
+				if (t.hasDistanceUtility[r]) {
+					if (Double.isNaN(this.distance[i])) {
+						warnNaNDistance();
+					}
+					tmpScore += t.marginalUtilityOfDistance_m[r] * this.distance[i];
+					tmpScore += t.monetaryDistanceUtility_m[r] * this.distance[i];
+				}
+				tmpScore += t.constant[r];
+				if (this.isFirstLegOfMode[i]) {
+					tmpScore += t.dailyConstant[r];
+				}
+				scores[offset + this.legPerson[i]] += tmpScore;
+			}
+		}
+
+		/**
+		 * Same warning as in {@link CharyparNagelLegScoring}. Instead of failing the whole batch, the score of the
+		 * plan becomes NaN.
+		 */
+		private static void warnNaNDistance() {
+			int count = nanDistanceWarnings.incrementAndGet();
+			if (count <= 10) {
+				log.warn("distance is NaN. Will make score of this plan NaN. Possible reason: Simulation does not report " +
+						"a distance for this trip. Possible reason for that: mode is teleported and router does not " +
+						"write distance into plan.  Needs to be fixed or these plans will die out.");
+				if (count == 10) {
+					log.warn(Gbl.FUTURE_SUPPRESSED);
+				}
+			}
+		}
+	}
+
+}
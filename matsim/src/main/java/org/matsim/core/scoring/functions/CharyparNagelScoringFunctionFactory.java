@@ -90,4 +90,32 @@ public final class CharyparNagelScoringFunctionFactory implements ScoringFunctio
 		sumScoringFunction.addScoringFunction(new ScoreEventScoring());
 		return sumScoringFunction;
 	}
+
+	/**
+	 * Creates a scoring function with only the parts of {@link #createNewScoringFunction(Person)} which are based on
+	 * events: money, stuck agents, score events, and the line switch and waiting corrections of pt legs. It must not be
+	 * given the activities and legs, their scores are computed by {@link #createBatchScoring()} and added with
+	 * {@link ScoringFunction#addScore(double)}.
+	 */
+	public ScoringFunction createEventScoringFunction(Person person) {
+
+		final ScoringParameters parameters = params.getScoringParameters( person );
+
+		SumScoringFunction sumScoringFunction = new SumScoringFunction();
+		// only for the pt corrections in handleEvent, as the legs are not passed on
+		sumScoringFunction.addScoringFunction(new CharyparNagelLegScoring( parameters , this.network, config.transit().getTransitModes() ));
+		sumScoringFunction.addScoringFunction(new CharyparNagelMoneyScoring( parameters ));
+		sumScoringFunction.addScoringFunction(new CharyparNagelAgentStuckScoring( parameters ));
+		sumScoringFunction.addScoringFunction(new ScoreEventScoring());
+		return sumScoringFunction;
+	}
+
+	/**
+	 * Creates a batch scoring engine with the same scoring parameters as the scoring functions of this factory.
+	 * It computes the scores of {@link CharyparNagelActivityScoring} and {@link CharyparNagelLegScoring}, see
+	 * {@link #createEventScoringFunction(Person)} for the remaining parts of the score.
+	 */
+	public CharyparNagelBatchScoring createBatchScoring() {
+		return new CharyparNagelBatchScoring(this.params);
+	}
 }
@@ -0,0 +1,245 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * PrimitiveTravelTimeAggregator.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+package org.matsim.core.trafficmonitoring;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.vehicles.Vehicle;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Collects the link enter times of vehicles and the travel times per link and time slot of the {@link TravelTimeCalculator}
+ * in primitive arrays, which are indexed by the index of the vehicle and link ids (see {@link Id#index()}). Compared
+ * to storing the link enter events in a map and updating the {@link TravelTimeData} for every link leave event, this
+ * neither boxes values nor allocates objects while events are handled.
+ * <p></p>
+ * The collected travel times are only transferred to the {@link TravelTimeData} objects when travel times are requested
+ * the next time (see {@link #flush(DataContainerProvider)}), typically after the mobsim has finished.
+ * <p></p>
+ * The event handling methods are not thread-safe, the handler must only receive events from one thread at a time, as is
+ * the case with all events managers in MATSim. Travel times can however be requested by other threads while events are
+ * still handled (e.g. for within-day replanning). The new travel times are therefore collected in a write buffer, which
+ * is only used by the handling thread and takes no lock. The flush swaps it with an empty buffer, waits until a travel
+ * time that is possibly still added to the old buffer is complete, and then adds the old buffer to the sums it owns.
+ */
+final class PrimitiveTravelTimeAggregator {
+
+	private final int numSlots;
+
+	// indexed by vehicle index
+	private double[] enterTimes = new double[0];
+	private int[] enterLinkIndices = new int[0];
+	private final BitSet ignoredVehicles = new BitSet();
+
+	// the travel times added since the last flush, the write buffer is swapped with the spare buffer in the flush
+	private volatile TravelTimeBuffer writeBuffer;
+	private TravelTimeBuffer spareBuffer;
+	// incremented before and after a travel time is added, so it is odd while the write buffer is used
+	private volatile long writeSequence = 0;
+	private volatile long flushedSequence = 0;
+
+	// indexed by link index, only used by the flush
+	private double[][] travelTimeSums = new double[0][];
+	private int[][] counts = new int[0][];
+
+	PrimitiveTravelTimeAggregator(int numSlots) {
+		this.numSlots = numSlots;
+		this.writeBuffer = new TravelTimeBuffer(numSlots);
+		this.spareBuffer = new TravelTimeBuffer(numSlots);
+	}
+
+	boolean isIgnored(Id<Vehicle> vehicleId) {
+		return this.ignoredVehicles.get(vehicleId.index());
+	}
+
+	void setIgnored(Id<Vehicle> vehicleId, boolean ignored) {
+		this.ignoredVehicles.set(vehicleId.index(), ignored);
+	}
+
+	/**
+	 * Stores the link enter time of the vehicle.
+	 *
+	 * @return the index of the link the vehicle entered before, or -1 if the vehicle was not on a link.
+	 */
+	int enterLink(Id<Vehicle> vehicleId, Id<Link> linkId, double time) {
+		int vehicleIndex = vehicleId.index();
+		if (vehicleIndex >= this.enterTimes.length) {
+			growVehicleArrays(vehicleIndex);
+		}
+		int previousLinkIndex = this.enterLinkIndices[vehicleIndex];
+		this.enterLinkIndices[vehicleIndex] = linkId.index();
+		this.enterTimes[vehicleIndex] = time;
+		return previousLinkIndex;
+	}
+
+	/**
+	 * @return the time the vehicle entered its current link, or {@link Double#NaN} if the vehicle is not on a link.
+	 */
+	double getEnterTime(Id<Vehicle> vehicleId) {
+		int vehicleIndex = vehicleId.index();
+		if (vehicleIndex >= this.enterTimes.length || this.enterLinkIndices[vehicleIndex] < 0) {
+			return Double.NaN;
+		}
+		return this.enterTimes[vehicleIndex];
+	}
+
+	/**
+	 * @return the index of the link the vehicle was on, or -1 if the vehicle was not on a link.
+	 */
+	int removeVehicle(Id<Vehicle> vehicleId) {
+		int vehicleIndex = vehicleId.index();
+		if (vehicleIndex >= this.enterTimes.length) {
+			return -1;
+		}
+		int linkIndex = this.enterLinkIndices[vehicleIndex];
+		this.enterLinkIndices[vehicleIndex] = -1;
+		return linkIndex;
+	}
+
+	void addTravelTime(Id<Link> linkId, int timeSlot, double travelTime) {
+		// only this thread changes the sequence
+		long sequence = this.writeSequence + 1;
+		this.writeSequence = sequence;
+		this.writeBuffer.add(linkId.index(), timeSlot, travelTime);
+		this.writeSequence = sequence + 1;
+	}
+
+	boolean hasPendingData() {
+		return this.writeSequence != this.flushedSequence;
+	}
+
+	/**
+	 * Sets the average travel times of all links with new travel times since the last call in their {@link TravelTimeData}.
+	 * As the sums are kept until the next reset, the travel times of a time slot are always averaged over all vehicles
+	 * that entered the link in that slot.
+	 */
+	synchronized void flush(DataContainerProvider dataContainerProvider) {
+		long sequence = this.writeSequence;
+		if (sequence == this.flushedSequence) {
+			return;
+		}
+		TravelTimeBuffer buffer = this.writeBuffer;
+		this.writeBuffer = this.spareBuffer;
+		// a travel time that was started before the swap may still be added to the old buffer
+		long current = this.writeSequence;
+		if ((current & 1) != 0) {
+			while (this.writeSequence == current) {
+				Thread.onSpinWait();
+			}
+		}
+
+		for (int linkIndex = buffer.changedLinks.nextSetBit(0); linkIndex >= 0; linkIndex = buffer.changedLinks.nextSetBit(linkIndex + 1)) {
+			if (linkIndex >= this.travelTimeSums.length) {
+				int newLength = Math.max(linkIndex + 1, Id.getNumberOfIds(Link.class));
+				this.travelTimeSums = Arrays.copyOf(this.travelTimeSums, newLength);
+				this.counts = Arrays.copyOf(this.counts, newLength);
+			}
+			double[] sums = this.travelTimeSums[linkIndex];
+			if (sums == null) {
+				sums = new double[this.numSlots];
+				this.travelTimeSums[linkIndex] = sums;
+				this.counts[linkIndex] = new int[this.numSlots];
+			}
+			int[] linkCounts = this.counts[linkIndex];
+			double[] newSums = buffer.sums[linkIndex];
+			int[] newCounts = buffer.counts[linkIndex];
+			TravelTimeData data = dataContainerProvider.getTravelTimeData(Id.get(linkIndex, Link.class), true);
+			for (int slot = 0; slot < this.numSlots; slot++) {
+				if (newCounts[slot] > 0) {
+					sums[slot] += newSums[slot];
+					linkCounts[slot] += newCounts[slot];
+					data.setTravelTime(slot, sums[slot] / linkCounts[slot]);
+				}
+			}
+			data.setNeedsConsolidation(true);
+		}
+		buffer.clear();
+		this.spareBuffer = buffer;
+		this.flushedSequence = sequence;
+	}
+
+	/**
+	 * Must be called by the thread handling the events, while no travel times are requested.
+	 */
+	synchronized void reset() {
+		Arrays.fill(this.enterLinkIndices, -1);
+		this.ignoredVehicles.clear();
+		for (int linkIndex = 0; linkIndex < this.travelTimeSums.length; linkIndex++) {
+			if (this.travelTimeSums[linkIndex] != null) {
+				Arrays.fill(this.travelTimeSums[linkIndex], 0.0);
+				Arrays.fill(this.counts[linkIndex], 0);
+			}
+		}
+		this.writeBuffer.clear();
+		this.flushedSequence = this.writeSequence;
+	}
+
+	private void growVehicleArrays(int vehicleIndex) {
+		int oldLength = this.enterTimes.length;
+		int newLength = Math.max(vehicleIndex + 1, Math.max(Id.getNumberOfIds(Vehicle.class), oldLength * 2));
+		this.enterTimes = Arrays.copyOf(this.enterTimes, newLength);
+		this.enterLinkIndices = Arrays.copyOf(this.enterLinkIndices, newLength);
+		Arrays.fill(this.enterLinkIndices, oldLength, newLength, -1);
+	}
+
+	/**
+	 * Travel time sums and counts per link and time slot, indexed by link index. The per-slot arrays are only created for
+	 * links with traffic and kept when the buffer is cleared.
+	 */
+	private static final class TravelTimeBuffer {
+
+		private final int numSlots;
+		private double[][] sums = new double[0][];
+		private int[][] counts = new int[0][];
+		private final BitSet changedLinks = new BitSet();
+
+		TravelTimeBuffer(int numSlots) {
+			this.numSlots = numSlots;
+		}
+
+		void add(int linkIndex, int timeSlot, double travelTime) {
+			if (linkIndex >= this.sums.length) {
+				int newLength = Math.max(linkIndex + 1, Id.getNumberOfIds(Link.class));
+				this.sums = Arrays.copyOf(this.sums, newLength);
+				this.counts = Arrays.copyOf(this.counts, newLength);
+			}
+			double[] linkSums = this.sums[linkIndex];
+			if (linkSums == null) {
+				linkSums = new double[this.numSlots];
+				this.sums[linkIndex] = linkSums;
+				this.counts[linkIndex] = new int[this.numSlots];
+			}
+			linkSums[timeSlot] += travelTime;
+			this.counts[linkIndex][timeSlot]++;
+			this.changedLinks.set(linkIndex);
+		}
+
+		void clear() {
+			for (int linkIndex = this.changedLinks.nextSetBit(0); linkIndex >= 0; linkIndex = this.changedLinks.nextSetBit(linkIndex + 1)) {
+				Arrays.fill(this.sums[linkIndex], 0.0);
+				Arrays.fill(this.counts[linkIndex], 0);
+			}
+			this.changedLinks.clear();
+		}
+	}
+
+}
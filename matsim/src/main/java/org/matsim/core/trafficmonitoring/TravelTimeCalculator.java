@@ -102,6 +102,9 @@ public final class TravelTimeCalculator implements LinkEnterEventHandler, LinkLe
 
 	private TravelTimeDataFactory ttDataFactory = null;
 
+	// if set, replaces linkEnterEvents and vehiclesToIgnore, and collects the link travel times before they are stored in linkData
+	private PrimitiveTravelTimeAggregator primitiveAggregator = null;
+
 	@Inject private QSimConfigGroup qsimConfig ;
 	TravelTimeGetter travelTimeGetter ;
 
@@ -139,6 +142,9 @@ public final class TravelTimeCalculator implements LinkEnterEventHandler, LinkLe
 					throw new RuntimeException( config.getTravelTimeGetterType() + " is unknown!" );
 			}
 		}
+		if ( config.isUsingPrimitiveAggregation() ) {
+			calculator.primitiveAggregator = new PrimitiveTravelTimeAggregator( calculator.numSlots );
+		}
 		return calculator;
 	}
 
@@ -177,6 +183,7 @@ public final class TravelTimeCalculator implements LinkEnterEventHandler, LinkLe
 		private Set<String> analyzedModes = null ;
 		private TravelTimeCalculatorConfigGroup ttcConfig;
 		private boolean toBeConfigured = false ;
+		private boolean usingPrimitiveAggregation = false ;
 
 		public Builder( Network network ) {
 			this.network = network ;
@@ -206,6 +213,10 @@ public final class TravelTimeCalculator implements LinkEnterEventHandler, LinkLe
 			this.analyzedModes = analyzedModes;
 		}
 
+		public void setUsingPrimitiveAggregation( boolean usingPrimitiveAggregation ){
+			this.usingPrimitiveAggregation = usingPrimitiveAggregation;
+		}
+
 		public void configure ( TravelTimeCalculatorConfigGroup ttcConfig ) {
 			// yyyyyy this is a fix to get the outward API sorted out somewhat better.  kai, feb'19
 			// yyyyyy presumably would like to replace this with setters for {@link TravelTimeDataFactory} and {@link TravelTimeGetter}.  But it ain't that easy because
@@ -221,6 +232,9 @@ public final class TravelTimeCalculator implements LinkEnterEventHandler, LinkLe
 			if( toBeConfigured ){
 				TravelTimeCalculator.configure( abc, this.ttcConfig, this.network );
 			}
+			if( usingPrimitiveAggregation && abc.primitiveAggregator == null ){
+				abc.primitiveAggregator = new PrimitiveTravelTimeAggregator( abc.numSlots );
+			}
 			return abc ;
 		}
 
@@ -268,6 +282,10 @@ public final class TravelTimeCalculator implements LinkEnterEventHandler, LinkLe
 
 	@Override
 	public void handleEvent(final LinkEnterEvent e) {
+		if (this.primitiveAggregator != null) {
+			handleLinkEnterPrimitive(e);
+			return;
+		}
 		/* if only some modes are analyzed, we check whether the vehicles
 		 * performs a trip with one of those modes. if not, we skip the event. */
 		if (filterAnalyzedModes && vehiclesToIgnore.contains(e.getVehicleId())) return;
@@ -284,8 +302,29 @@ public final class TravelTimeCalculator implements LinkEnterEventHandler, LinkLe
 		}
 	}
 
+	private void handleLinkEnterPrimitive(final LinkEnterEvent e) {
+		if (filterAnalyzedModes && this.primitiveAggregator.isIgnored(e.getVehicleId())) return;
+
+		double enterTime = this.primitiveAggregator.getEnterTime(e.getVehicleId());
+		int previousLinkIndex = this.primitiveAggregator.enterLink(e.getVehicleId(), e.getLinkId(), e.getTime());
+		if ((previousLinkIndex >= 0) && this.calculateLinkToLinkTravelTimes) {
+			Tuple<Id<Link>, Id<Link>> fromToLink = new Tuple<>(Id.get(previousLinkIndex, Link.class), e.getLinkId());
+			TravelTimeData data = getLinkToLinkTravelTimeData(fromToLink );
+			final int timeSlot = this.aggregator.getTimeSlotIndex(enterTime );
+			data.addTravelTime(timeSlot, e.getTime() - enterTime );
+			data.setNeedsConsolidation( true );
+		}
+	}
+
 	@Override
 	public void handleEvent(final LinkLeaveEvent e) {
+		if (this.calculateLinkTravelTimes && this.primitiveAggregator != null) {
+			double enterTime = this.primitiveAggregator.getEnterTime(e.getVehicleId());
+			if (!Double.isNaN(enterTime)) {
+				this.primitiveAggregator.addTravelTime(e.getLinkId(), this.aggregator.getTimeSlotIndex(enterTime), e.getTime() - enterTime);
+			}
+			return;
+		}
 		if (this.calculateLinkTravelTimes) {
 			LinkEnterEvent oldEvent = this.linkEnterEvents.get(e.getVehicleId());
 			if (oldEvent != null) {
@@ -305,7 +344,11 @@ public final class TravelTimeCalculator implements LinkEnterEventHandler, LinkLe
 		 * starts a leg on a non analyzed transport mode, add the vehicle
 		 * to the filtered vehicles set. */
 		if (filterAnalyzedModes && !analyzedModes.contains(event.getNetworkMode())) {
-			this.vehiclesToIgnore.add(event.getVehicleId());
+			if (this.primitiveAggregator != null) {
+				this.primitiveAggregator.setIgnored(event.getVehicleId(), true);
+			} else {
+				this.vehiclesToIgnore.add(event.getVehicleId());
+			}
 		}
 	}
 
@@ -314,6 +357,11 @@ public final class TravelTimeCalculator implements LinkEnterEventHandler, LinkLe
 		/* remove EnterEvents from list when a vehicle arrives.
 		 * otherwise, the activity duration would counted as travel time, when the
 		 * vehicle departs again and leaves the link! */
+		if (this.primitiveAggregator != null) {
+			this.primitiveAggregator.removeVehicle(event.getVehicleId());
+			if (filterAnalyzedModes) this.primitiveAggregator.setIgnored(event.getVehicleId(), false);
+			return;
+		}
 		this.linkEnterEvents.remove(event.getVehicleId());
 
 		// try to remove vehicles from set with filtered vehicles
@@ -325,14 +373,25 @@ public final class TravelTimeCalculator implements LinkEnterEventHandler, LinkLe
 		/* remove EnterEvents from list when a bus stops on a link.
 		 * otherwise, the stop time would counted as travel time, when the
 		 * bus departs again and leaves the link! */
+		if (this.primitiveAggregator != null) {
+			this.primitiveAggregator.removeVehicle(event.getVehicleId());
+			return;
+		}
 		this.linkEnterEvents.remove(event.getVehicleId());
 	}
 
 	@Override
 	public void handleEvent(VehicleAbortsEvent event) {
-		LinkEnterEvent e = this.linkEnterEvents.remove(event.getVehicleId());
-		if (e != null) {
-			TravelTimeData data = this.dataContainerProvider.getTravelTimeData(e.getLinkId(), true);
+		Id<Link> linkId = null;
+		if (this.primitiveAggregator != null) {
+			int linkIndex = this.primitiveAggregator.removeVehicle(event.getVehicleId());
+			if (linkIndex >= 0) linkId = Id.get(linkIndex, Link.class);
+		} else {
+			LinkEnterEvent e = this.linkEnterEvents.remove(event.getVehicleId());
+			if (e != null) linkId = e.getLinkId();
+		}
+		if (linkId != null) {
+			TravelTimeData data = this.dataContainerProvider.getTravelTimeData(linkId, true);
 			data.setNeedsConsolidation( true );
 
 			//			this.aggregator.addStuckEventTravelTime(data, e.getTime(), event.getTime());
@@ -348,7 +407,13 @@ public final class TravelTimeCalculator implements LinkEnterEventHandler, LinkLe
 		}
 
 		// try to remove vehicle from set with filtered vehicles
-		if (filterAnalyzedModes) this.vehiclesToIgnore.remove(event.getVehicleId());
+		if (filterAnalyzedModes) {
+			if (this.primitiveAggregator != null) {
+				this.primitiveAggregator.setIgnored(event.getVehicleId(), false);
+			} else {
+				this.vehiclesToIgnore.remove(event.getVehicleId());
+			}
+		}
 	}
 
 	private TravelTimeData getLinkToLinkTravelTimeData( Tuple<Id<Link>, Id<Link>> fromLinkToLink ) {
@@ -368,6 +433,9 @@ public final class TravelTimeCalculator implements LinkEnterEventHandler, LinkLe
 	 */
 	private double getLinkTravelTime(final Link link, final double time) {
 		if (this.calculateLinkTravelTimes) {
+			if (this.primitiveAggregator != null && this.primitiveAggregator.hasPendingData()) {
+				this.primitiveAggregator.flush(this.dataContainerProvider);
+			}
 
 			TravelTimeData data = this.dataContainerProvider.getTravelTimeData(link, true);
 			if ( data.isNeedingConsolidation() ) {
@@ -435,6 +503,9 @@ public final class TravelTimeCalculator implements LinkEnterEventHandler, LinkLe
 		}
 		this.linkEnterEvents.clear();
 		this.vehiclesToIgnore.clear();
+		if (this.primitiveAggregator != null) {
+			this.primitiveAggregator.reset();
+		}
 	}
 
 	/**
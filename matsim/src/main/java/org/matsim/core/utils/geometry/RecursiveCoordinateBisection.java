@@ -0,0 +1,100 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * RecursiveCoordinateBisection.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.utils.geometry;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+import org.matsim.api.core.v01.Coord;
+
+/**
+ * Splits a set of located objects into a given number of geographically compact partitions of
+ * (roughly) the same total weight.
+ * <p>
+ * The objects are recursively split along the longer side of their bounding box, such that the
+ * weights of the two parts correspond to the number of partitions each part still has to be split
+ * into.  Used to distribute the network over the threads of a mobsim, so that neighbouring links
+ * are handled by the same thread.
+ */
+public final class RecursiveCoordinateBisection {
+
+	private RecursiveCoordinateBisection() {
+	}
+
+	/**
+	 * @return a list of exactly {@code numberOfPartitions} partitions; partitions may be empty if there are fewer objects than partitions.
+	 */
+	public static <T> List<List<T>> partition(Collection<? extends T> objects, int numberOfPartitions, Function<T, Coord> coordGetter, ToIntFunction<T> weightGetter) {
+		if (numberOfPartitions < 1) {
+			throw new IllegalArgumentException("Number of partitions must be strictly positive, got " + numberOfPartitions);
+		}
+		List<List<T>> partitions = new ArrayList<>(numberOfPartitions);
+		for (int i = 0; i < numberOfPartitions; i++) {
+			partitions.add(new ArrayList<>());
+		}
+		bisect(new ArrayList<>(objects), 0, numberOfPartitions, partitions, coordGetter, weightGetter);
+		return partitions;
+	}
+
+	private static <T> void bisect(List<T> objects, int firstPartition, int numberOfPartitions, List<List<T>> partitions,
+			Function<T, Coord> coordGetter, ToIntFunction<T> weightGetter) {
+		if (numberOfPartitions == 1 || objects.size() <= 1) {
+			partitions.get(firstPartition).addAll(objects);
+			return;
+		}
+
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		long totalWeight = 0;
+		for (T object : objects) {
+			Coord coord = coordGetter.apply(object);
+			minX = Math.min(minX, coord.getX());
+			minY = Math.min(minY, coord.getY());
+			maxX = Math.max(maxX, coord.getX());
+			maxY = Math.max(maxY, coord.getY());
+			totalWeight += weightGetter.applyAsInt(object);
+		}
+		if (maxX - minX >= maxY - minY) {
+			objects.sort(Comparator.comparingDouble(object -> coordGetter.apply(object).getX()));
+		} else {
+			objects.sort(Comparator.comparingDouble(object -> coordGetter.apply(object).getY()));
+		}
+
+		int leftPartitions = numberOfPartitions / 2;
+		double leftTargetWeight = (double) totalWeight * leftPartitions / numberOfPartitions;
+		int split = 0;
+		long leftWeight = 0;
+		while (split < objects.size() - 1 && leftWeight + weightGetter.applyAsInt(objects.get(split)) / 2.0 <= leftTargetWeight) {
+			leftWeight += weightGetter.applyAsInt(objects.get(split));
+			split++;
+		}
+
+		bisect(new ArrayList<>(objects.subList(0, split)), firstPartition, leftPartitions, partitions, coordGetter, weightGetter);
+		bisect(new ArrayList<>(objects.subList(split, objects.size())), firstPartition + leftPartitions, numberOfPartitions - leftPartitions, partitions,
+				coordGetter, weightGetter);
+	}
+}
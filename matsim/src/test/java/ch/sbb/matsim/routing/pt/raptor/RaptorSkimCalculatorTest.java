@@ -0,0 +1,78 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package ch.sbb.matsim.routing.pt.raptor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.testcases.MatsimTestUtils;
+
+public class RaptorSkimCalculatorTest {
+
+    @Rule
+    public MatsimTestUtils utils = new MatsimTestUtils();
+
+    @Test
+    public void testSkimMatrices() throws IOException {
+        Fixture f = new Fixture();
+        f.init();
+        RaptorStaticConfig raptorConfig = RaptorUtils.createStaticConfig(f.config);
+        raptorConfig.setOptimization(RaptorStaticConfig.RaptorOptimization.OneToAllRouting);
+        SwissRailRaptorData data = SwissRailRaptorData.create(f.schedule, null, raptorConfig, f.network, null);
+        RaptorParameters parameters = RaptorUtils.createParameters(f.config);
+
+        Map<String, Coord[]> coordsPerZone = new LinkedHashMap<>();
+        coordsPerZone.put("A", new Coord[] { new Coord(3800, 5100), new Coord(4100, 4900) });
+        coordsPerZone.put("B", new Coord[] { new Coord(28100, 4950) });
+        coordsPerZone.put("C", new Coord[0]);
+
+        File file1 = new File(this.utils.getOutputDirectory(), "skims1.bin");
+        new RaptorSkimCalculator(data, parameters, 1).calcSkimMatrices(coordsPerZone, 6 * 3600, 7 * 3600, 120, file1);
+        File file3 = new File(this.utils.getOutputDirectory(), "skims3.bin");
+        new RaptorSkimCalculator(data, parameters, 3).calcSkimMatrices(coordsPerZone, 6 * 3600, 7 * 3600, 120, file3);
+        Assert.assertArrayEquals("the result must not depend on the number of threads", Files.readAllBytes(file1.toPath()), Files.readAllBytes(file3.toPath()));
+
+        RaptorSkimMatrices skims = RaptorSkimMatrices.read(file1);
+        Assert.assertEquals(List.of("A", "B", "C"), skims.getZoneIds());
+
+        float travelTime = skims.get(RaptorSkimCalculator.METRIC_TRAVEL_TIME, "A", "B");
+        float accessTime = skims.get(RaptorSkimCalculator.METRIC_ACCESS_TIME, "A", "B");
+        float egressTime = skims.get(RaptorSkimCalculator.METRIC_EGRESS_TIME, "A", "B");
+        float inVehicleTime = skims.get(RaptorSkimCalculator.METRIC_IN_VEHICLE_TIME, "A", "B");
+        Assert.assertTrue(accessTime > 0);
+        Assert.assertTrue(egressTime > 0);
+        Assert.assertTrue(inVehicleTime > 0);
+        Assert.assertTrue(accessTime + inVehicleTime + egressTime <= travelTime + 1e-3);
+        Assert.assertTrue(skims.get(RaptorSkimCalculator.METRIC_FREQUENCY, "A", "B") > 0);
+
+        // zone C has no points, so it is not connected
+        Assert.assertEquals(Float.POSITIVE_INFINITY, skims.get(RaptorSkimCalculator.METRIC_TRAVEL_TIME, "A", "C"), 0.0);
+        Assert.assertEquals(Float.POSITIVE_INFINITY, skims.get(RaptorSkimCalculator.METRIC_TRAVEL_TIME, "C", "B"), 0.0);
+        Assert.assertEquals(0.0f, skims.get(RaptorSkimCalculator.METRIC_FREQUENCY, "C", "B"), 0.0);
+    }
+}
@@ -4,16 +4,31 @@
 
 package ch.sbb.matsim.routing.pt.raptor;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
+import org.matsim.pt.transitSchedule.api.Departure;
+import org.matsim.pt.transitSchedule.api.TransitRoute;
+import org.matsim.pt.transitSchedule.api.TransitRouteStop;
+import org.matsim.pt.transitSchedule.api.TransitScheduleFactory;
+import org.matsim.core.utils.geometry.CoordUtils;
 import org.matsim.pt.transitSchedule.api.TransitStopFacility;
+import org.matsim.testcases.MatsimTestUtils;
 
 /**
  * @author mrieser / SBB
  */
 public class SwissRailRaptorDataTest {
 
+    @Rule
+    public MatsimTestUtils utils = new MatsimTestUtils();
+
     @Test
     public void testTransfersFromSchedule() {
         Fixture f = new Fixture();
@@ -28,9 +43,9 @@ public class SwissRailRaptorDataTest {
         Id<TransitStopFacility> stopId9 = Id.create(9, TransitStopFacility.class);
         Id<TransitStopFacility> stopId18 = Id.create(18, TransitStopFacility.class);
         Id<TransitStopFacility> stopId19 = Id.create(19, TransitStopFacility.class);
-        for (SwissRailRaptorData.RTransfer t : data.transfers) {
-            TransitStopFacility fromStop = data.routeStops[t.fromRouteStop].routeStop.getStopFacility();
-            TransitStopFacility toStop = data.routeStops[t.toRouteStop].routeStop.getStopFacility();
+        for (int t = 0; t < data.countTransfers; t++) {
+            TransitStopFacility fromStop = data.routeStops[data.getTransferFromRouteStop(t)].routeStop.getStopFacility();
+            TransitStopFacility toStop = data.routeStops[data.getTransferToRouteStop(t)].routeStop.getStopFacility();
             if (fromStop.getId().equals(stopId19) && toStop.getId().equals(stopId9)) {
                 Assert.fail("There should not be any transfer between stop facilities 19 and 9.");
             }
@@ -41,45 +56,166 @@ public class SwissRailRaptorDataTest {
         f.schedule.getMinimalTransferTimes().set(stopId19, stopId9, 345);
         SwissRailRaptorData data2 = SwissRailRaptorData.create(f.schedule, null, raptorConfig, f.network, null);
         int foundTransferCount = 0;
-        for (SwissRailRaptorData.RTransfer t : data2.transfers) {
-            TransitStopFacility fromStop = data2.routeStops[t.fromRouteStop].routeStop.getStopFacility();
-            TransitStopFacility toStop = data2.routeStops[t.toRouteStop].routeStop.getStopFacility();
+        for (int t = 0; t < data2.countTransfers; t++) {
+            TransitStopFacility fromStop = data2.routeStops[data2.getTransferFromRouteStop(t)].routeStop.getStopFacility();
+            TransitStopFacility toStop = data2.routeStops[data2.getTransferToRouteStop(t)].routeStop.getStopFacility();
             if (fromStop.getId().equals(stopId19) && toStop.getId().equals(stopId9)) {
                 foundTransferCount++;
             }
         }
         Assert.assertEquals("wrong number of transfers between stop facilities 19 and 9.", 1, foundTransferCount);
-        Assert.assertEquals("number of transfers should have incrased.", data.transfers.length + 1, data2.transfers.length);
+        Assert.assertEquals("number of transfers should have incrased.", data.countTransfers + 1, data2.countTransfers);
 
         // assign a high transfer time to a "default" transfer
         f.schedule.getMinimalTransferTimes().set(stopId5, stopId18, 456);
         SwissRailRaptorData data3 = SwissRailRaptorData.create(f.schedule, null, raptorConfig, f.network, null);
         boolean foundCorrectTransfer = false;
-        for (SwissRailRaptorData.RTransfer t : data3.transfers) {
-            TransitStopFacility fromStop = data3.routeStops[t.fromRouteStop].routeStop.getStopFacility();
-            TransitStopFacility toStop = data3.routeStops[t.toRouteStop].routeStop.getStopFacility();
+        for (int t = 0; t < data3.countTransfers; t++) {
+            TransitStopFacility fromStop = data3.routeStops[data3.getTransferFromRouteStop(t)].routeStop.getStopFacility();
+            TransitStopFacility toStop = data3.routeStops[data3.getTransferToRouteStop(t)].routeStop.getStopFacility();
             if (fromStop.getId().equals(stopId5) && toStop.getId().equals(stopId18)) {
-                Assert.assertEquals("transfer has wrong transfer time.", 456, t.transferTime);
+                Assert.assertEquals("transfer has wrong transfer time.", 456, data3.getTransferTime(t));
                 foundCorrectTransfer = true;
             }
         }
         Assert.assertTrue("did not find overwritten transfer", foundCorrectTransfer);
-        Assert.assertEquals("number of transfers should have stayed the same.", data2.transfers.length, data3.transfers.length);
+        Assert.assertEquals("number of transfers should have stayed the same.", data2.countTransfers, data3.countTransfers);
 
         // assign a low transfer time to a "default" transfer
         f.schedule.getMinimalTransferTimes().set(stopId5, stopId18, 0.2);
         SwissRailRaptorData data4 = SwissRailRaptorData.create(f.schedule, null, raptorConfig, f.network, null);
         foundCorrectTransfer = false;
-        for (SwissRailRaptorData.RTransfer t : data4.transfers) {
-            TransitStopFacility fromStop = data4.routeStops[t.fromRouteStop].routeStop.getStopFacility();
-            TransitStopFacility toStop = data4.routeStops[t.toRouteStop].routeStop.getStopFacility();
+        for (int t = 0; t < data4.countTransfers; t++) {
+            TransitStopFacility fromStop = data4.routeStops[data4.getTransferFromRouteStop(t)].routeStop.getStopFacility();
+            TransitStopFacility toStop = data4.routeStops[data4.getTransferToRouteStop(t)].routeStop.getStopFacility();
             if (fromStop.getId().equals(stopId5) && toStop.getId().equals(stopId18)) {
-                Assert.assertEquals("transfer has wrong transfer time.", 1, t.transferTime); // transferTime gets rounded up to int vlues
+                Assert.assertEquals("transfer has wrong transfer time.", 1, data4.getTransferTime(t)); // transferTime gets rounded up to int vlues
                 foundCorrectTransfer = true;
             }
         }
         Assert.assertTrue("did not find overwritten transfer", foundCorrectTransfer);
-        Assert.assertEquals("number of transfers should have stayed the same.", data2.transfers.length, data4.transfers.length);
+        Assert.assertEquals("number of transfers should have stayed the same.", data2.countTransfers, data4.countTransfers);
+    }
+
+    @Test
+    public void testTransfersCache() {
+        Fixture f = new Fixture();
+        f.init();
+
+        RaptorStaticConfig raptorConfig = RaptorUtils.createStaticConfig(f.config);
+        SwissRailRaptorData expected = SwissRailRaptorData.create(f.schedule, null, raptorConfig, f.network, null);
+
+        File cacheDirectory = new File(this.utils.getOutputDirectory(), "transfers");
+        raptorConfig.setTransfersCacheDirectory(cacheDirectory.getPath());
+        SwissRailRaptorData written = SwissRailRaptorData.create(f.schedule, null, raptorConfig, f.network, null);
+        Assert.assertEquals(1, cacheDirectory.listFiles().length);
+        SwissRailRaptorData mapped = SwissRailRaptorData.create(f.schedule, null, raptorConfig, f.network, null);
+        Assert.assertEquals(1, cacheDirectory.listFiles().length);
+
+        for (SwissRailRaptorData data : new SwissRailRaptorData[] { written, mapped }) {
+            Assert.assertTrue("transfers should be memory-mapped", data.transfers.isDirect());
+            Assert.assertEquals(expected.countTransfers, data.countTransfers);
+            for (int t = 0; t < expected.countTransfers; t++) {
+                Assert.assertEquals(expected.getTransferFromRouteStop(t), data.getTransferFromRouteStop(t));
+                Assert.assertEquals(expected.getTransferToRouteStop(t), data.getTransferToRouteStop(t));
+                Assert.assertEquals(expected.getTransferTime(t), data.getTransferTime(t));
+                Assert.assertEquals(expected.getTransferDistance(t), data.getTransferDistance(t));
+            }
+            for (int i = 0; i < expected.countRouteStops; i++) {
+                Assert.assertEquals(expected.routeStops[i].indexFirstTransfer, data.routeStops[i].indexFirstTransfer);
+                Assert.assertEquals(expected.routeStops[i].countTransfers, data.routeStops[i].countTransfers);
+            }
+        }
+
+        // other minimal transfer times: other file
+        f.schedule.getMinimalTransferTimes().set(Id.create(19, TransitStopFacility.class), Id.create(9, TransitStopFacility.class), 345);
+        SwissRailRaptorData.create(f.schedule, null, raptorConfig, f.network, null);
+        Assert.assertEquals(2, cacheDirectory.listFiles().length);
+    }
+
+    @SuppressWarnings("deprecation")
+    @Test
+    public void testDeprecatedTransferProvider() {
+        Fixture f = new Fixture();
+        f.init();
+
+        RaptorStaticConfig raptorConfig = RaptorUtils.createStaticConfig(f.config);
+        SwissRailRaptorData data = SwissRailRaptorData.create(f.schedule, null, raptorConfig, f.network, null);
+        for (int t = 0; t < data.countTransfers; t++) {
+            Transfer expected = data.getTransferProvider(t, null).get();
+            SwissRailRaptorData.RTransfer rTransfer = new SwissRailRaptorData.RTransfer(data.getTransferFromRouteStop(t), data.getTransferToRouteStop(t),
+                    data.getTransferTime(t), data.getTransferDistance(t));
+            Transfer transfer = data.getTransferProvider(rTransfer, null).get();
+            Assert.assertSame(expected.getFromStop(), transfer.getFromStop());
+            Assert.assertSame(expected.getToStop(), transfer.getToStop());
+            Assert.assertSame(expected.getFromTransitRoute(), transfer.getFromTransitRoute());
+            Assert.assertSame(expected.getToTransitRoute(), transfer.getToTransitRoute());
+            Assert.assertEquals(expected.getTransferTime(), transfer.getTransferTime(), 0.0);
+            Assert.assertEquals(expected.getTransferDistance(), transfer.getTransferDistance(), 0.0);
+        }
+    }
+
+    @Test
+    public void testUpdate() {
+        Fixture f = new Fixture();
+        f.init();
+
+        RaptorStaticConfig raptorConfig = RaptorUtils.createStaticConfig(f.config);
+        SwissRailRaptorData previous = SwissRailRaptorData.create(f.schedule, null, raptorConfig, f.network, null);
+
+        // replace a route, add a departure to another one and change a minimal transfer time
+        TransitRoute removedRoute = f.redLine.getRoutes().get(Id.create("red G > C", TransitRoute.class));
+        f.redLine.removeRoute(removedRoute);
+        TransitScheduleFactory builder = f.schedule.getFactory();
+        List<TransitRouteStop> stops = new ArrayList<>();
+        for (TransitRouteStop stop : removedRoute.getStops()) {
+            stops.add(builder.createTransitRouteStopBuilder(stop.getStopFacility()).departureOffset(stop.getDepartureOffset().seconds()).build());
+        }
+        TransitRoute newRoute = builder.createTransitRoute(Id.create("red G > C new", TransitRoute.class), removedRoute.getRoute(), stops, "train");
+        newRoute.addDeparture(builder.createDeparture(Id.create("r<new", Departure.class), 6.5 * 3600));
+        f.redLine.addRoute(newRoute);
+        TransitRoute blueRoute = f.blueLine.getRoutes().get(Id.create("blue A > I", TransitRoute.class));
+        blueRoute.addDeparture(builder.createDeparture(Id.create("b>new", Departure.class), 5.0 * 3600));
+        f.schedule.getMinimalTransferTimes().set(Id.create(19, TransitStopFacility.class), Id.create(9, TransitStopFacility.class), 345);
+
+        assertSameAsCreated(previous, f, raptorConfig);
+    }
+
+    @Test
+    public void testUpdateWithMovedStop() {
+        Fixture f = new Fixture();
+        f.init();
+
+        RaptorStaticConfig raptorConfig = RaptorUtils.createStaticConfig(f.config);
+        SwissRailRaptorData previous = SwissRailRaptorData.create(f.schedule, null, raptorConfig, f.network, null);
+
+        // move a stop next to another one, without changing any route
+        TransitStopFacility stop = f.schedule.getFacilities().get(Id.create(19, TransitStopFacility.class));
+        TransitStopFacility other = f.schedule.getFacilities().get(Id.create(9, TransitStopFacility.class));
+        Assert.assertTrue(CoordUtils.calcEuclideanDistance(stop.getCoord(), other.getCoord()) > 0);
+        stop.setCoord(new Coord(other.getCoord().getX() + 10, other.getCoord().getY()));
+
+        assertSameAsCreated(previous, f, raptorConfig);
+    }
+
+    private static void assertSameAsCreated(SwissRailRaptorData previous, Fixture f, RaptorStaticConfig raptorConfig) {
+        SwissRailRaptorData expected = SwissRailRaptorData.create(f.schedule, null, raptorConfig, f.network, null);
+        SwissRailRaptorData updated = SwissRailRaptorData.update(previous, f.schedule, null, f.network);
+
+        Assert.assertArrayEquals(expected.departures, updated.departures);
+        Assert.assertEquals(expected.countRouteStops, updated.countRouteStops);
+        Assert.assertEquals(expected.countTransfers, updated.countTransfers);
+        for (int t = 0; t < expected.countTransfers; t++) {
+            Assert.assertEquals(expected.getTransferFromRouteStop(t), updated.getTransferFromRouteStop(t));
+            Assert.assertEquals(expected.getTransferToRouteStop(t), updated.getTransferToRouteStop(t));
+            Assert.assertEquals(expected.getTransferTime(t), updated.getTransferTime(t));
+            Assert.assertEquals(expected.getTransferDistance(t), updated.getTransferDistance(t));
+        }
+        for (int i = 0; i < expected.countRouteStops; i++) {
+            Assert.assertSame(expected.routeStops[i].route, updated.routeStops[i].route);
+            Assert.assertEquals(expected.routeStops[i].indexFirstTransfer, updated.routeStops[i].indexFirstTransfer);
+            Assert.assertEquals(expected.routeStops[i].countTransfers, updated.routeStops[i].countTransfers);
+        }
     }
 
-}
\ No newline at end of file
+}
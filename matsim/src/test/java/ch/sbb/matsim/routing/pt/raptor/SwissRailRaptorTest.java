@@ -702,6 +702,67 @@ public class SwissRailRaptorTest {
         assertRaptorRoute(routes.get(5), "06:40:12", "07:11:56", 1, 7.3466666);
     }
 
+    @Test
+    public void testRangeQueryParallel() {
+        Fixture f = new Fixture();
+        f.init();
+        SwissRailRaptor raptor = createTransitRouter(f.schedule, f.config, f.network);
+        ConfigUtils.addOrGetModule(f.config, SwissRailRaptorConfigGroup.class).setRangeQueryThreads(4);
+        SwissRailRaptor parallelRaptor = createTransitRouter(f.schedule, f.config, f.network);
+
+        Coord fromCoord = new Coord(3800, 5100);
+        Coord toCoord = new Coord(28100, 4950);
+        double depTime = 5.0 * 3600 + 50 * 60;
+        for (double maxLaterDeparture : new double[] { 3600, 4 * 3600, 12 * 3600 }) {
+            List<RaptorRoute> routes = raptor.calcRoutes(new FakeFacility(fromCoord), new FakeFacility(toCoord), depTime - 600, depTime, depTime + maxLaterDeparture, null, new AttributesImpl());
+            List<RaptorRoute> parallelRoutes = parallelRaptor.calcRoutes(new FakeFacility(fromCoord), new FakeFacility(toCoord), depTime - 600, depTime, depTime + maxLaterDeparture, null, new AttributesImpl());
+
+            Assert.assertFalse(routes.isEmpty());
+            Assert.assertEquals(routes.size(), parallelRoutes.size());
+            for (int i = 0; i < routes.size(); i++) {
+                RaptorRoute route = routes.get(i);
+                RaptorRoute parallelRoute = parallelRoutes.get(i);
+                Assert.assertEquals(route.getNumberOfTransfers(), parallelRoute.getNumberOfTransfers());
+                Assert.assertEquals(route.getDepartureTime(), parallelRoute.getDepartureTime(), 1e-8);
+                Assert.assertEquals(route.getTravelTime(), parallelRoute.getTravelTime(), 1e-8);
+                Assert.assertEquals(route.getTotalCosts(), parallelRoute.getTotalCosts(), 1e-8);
+            }
+        }
+    }
+
+    @Test
+    public void testRangeQueryParallelWithSeparateCostCalculators() {
+        Fixture f = new Fixture();
+        f.init();
+        ConfigUtils.addOrGetModule(f.config, SwissRailRaptorConfigGroup.class).setRangeQueryThreads(4);
+        SwissRailRaptorData data = SwissRailRaptorData.create(f.schedule, null, RaptorUtils.createStaticConfig(f.config), f.network, null);
+        List<RaptorInVehicleCostCalculator> inVehicleCostCalculators = Collections.synchronizedList(new ArrayList<>());
+        List<RaptorTransferCostCalculator> transferCostCalculators = Collections.synchronizedList(new ArrayList<>());
+        SwissRailRaptor raptor = new SwissRailRaptor(data, new DefaultRaptorParametersForPerson(f.config), new LeastCostRaptorRouteSelector(),
+                new DefaultRaptorStopFinder(new DefaultRaptorIntermodalAccessEgress(), null),
+                () -> {
+                    RaptorInVehicleCostCalculator calculator = new DefaultRaptorInVehicleCostCalculator();
+                    inVehicleCostCalculators.add(calculator);
+                    return calculator;
+                },
+                () -> {
+                    RaptorTransferCostCalculator calculator = new DefaultRaptorTransferCostCalculator();
+                    transferCostCalculators.add(calculator);
+                    return calculator;
+                });
+        Assert.assertEquals(1, inVehicleCostCalculators.size());
+
+        double depTime = 5.0 * 3600 + 50 * 60;
+        for (int i = 0; i < 2; i++) {
+            List<RaptorRoute> routes = raptor.calcRoutes(new FakeFacility(new Coord(3800, 5100)), new FakeFacility(new Coord(28100, 4950)),
+                    depTime - 600, depTime, depTime + 12 * 3600, null, new AttributesImpl());
+            Assert.assertFalse(routes.isEmpty());
+        }
+        // one calculator per thread, created only once
+        Assert.assertEquals(4, inVehicleCostCalculators.size());
+        Assert.assertEquals(4, transferCostCalculators.size());
+    }
+
     private void assertRaptorRoute(RaptorRoute route, String depTime, String arrTime, int expectedTransfers, double expectedCost) {
         Assert.assertEquals("wrong number of transfers", expectedTransfers, route.getNumberOfTransfers());
         Assert.assertEquals("wrong departure time", Time.parseTime(depTime), route.getDepartureTime(), 0.99);
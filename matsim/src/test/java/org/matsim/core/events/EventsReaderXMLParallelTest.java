@@ -0,0 +1,147 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * EventsReaderXMLParallelTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.events;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.ActivityStartEvent;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.GenericEvent;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.LinkLeaveEvent;
+import org.matsim.api.core.v01.events.PersonMoneyEvent;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.config.groups.ControlerConfigGroup;
+import org.matsim.core.events.algorithms.EventWriterXML;
+import org.matsim.testcases.MatsimTestUtils;
+import org.matsim.testcases.utils.EventsCollector;
+
+public class EventsReaderXMLParallelTest {
+
+	@Rule
+	public MatsimTestUtils utils = new MatsimTestUtils();
+
+	@Test
+	public void testSameEventsAsSequentialReader() {
+		String filename = utils.getOutputDirectory() + "events.xml.gz";
+		EventWriterXML writer = new EventWriterXML(filename);
+		for (int i = 0; i < 50000; i++) {
+			writer.handleEvent(new LinkEnterEvent(i, Id.createVehicleId("v" + i % 17), Id.createLinkId("l" + i % 31)));
+			writer.handleEvent(new LinkLeaveEvent(i + 0.5, Id.createVehicleId("v<\"&>" + i % 17), Id.createLinkId("l" + i % 31)));
+			if (i % 100 == 0) {
+				writer.handleEvent(new ActivityStartEvent(i, Id.createPersonId("p" + i), Id.createLinkId("l1"), null, "work", new Coord(1.5, 2.5)));
+				writer.handleEvent(new PersonMoneyEvent(i, Id.createPersonId("p" + i), 1.25, "toll", "city & co"));
+				GenericEvent event = new GenericEvent("custom", i);
+				event.getAttributes().put("text", "a 'quoted' value");
+				writer.handleEvent(event);
+			}
+		}
+		writer.closeFile();
+
+		List<Event> expected = read(filename, 1);
+		Assert.assertEquals(2 * 50000 + 3 * 500, expected.size());
+		Assert.assertEquals(expected, read(filename, 4));
+	}
+
+	@Test
+	public void testCommentsAndCustomEvents() {
+		String xml = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+				+ "<events version=\"1.0\">\n"
+				+ "<!-- a comment with <event time=\"0.0\" type=\"ignored\"/> -->\n"
+				+ "\t<event time=\"1.0\" type=\"entered link\" vehicle=\"v&#228;\" link=\"l&apos;1\"  />\n"
+				+ "\t<event type='custom' time='2.0' value='x&#x41;\ny' ></event>\n"
+				+ "</events>";
+
+		EventsCollector collector = new EventsCollector();
+		EventsManager events = EventsUtils.createEventsManager();
+		events.addHandler(collector);
+		MatsimEventsReader reader = new MatsimEventsReader(events);
+		reader.addCustomEventMapper("custom", event -> new GenericEvent("mapped", event.getTime()));
+		reader.setNumberOfThreads(2);
+		reader.readStream(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), ControlerConfigGroup.EventsFileFormat.xml);
+
+		Assert.assertEquals(2, collector.getEvents().size());
+		Assert.assertEquals(new LinkEnterEvent(1.0, Id.createVehicleId("vä"), Id.createLinkId("l'1")), collector.getEvents().get(0));
+		Assert.assertEquals("mapped", collector.getEvents().get(1).getEventType());
+		Assert.assertEquals(2.0, collector.getEvents().get(1).getTime(), 0.0);
+	}
+
+	@Test
+	public void testElementsAcrossBlocks() {
+		StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<events version=\"1.0\">\n");
+		for (int i = 0; i < 20; i++) {
+			xml.append("<event\n\ttime=\"").append(i).append(".0\"\n\ttype=\"entered link\"\n\tvehicle=\"v>").append(i)
+					.append("\"\n\tlink=\"l&amp;").append(i % 3).append("\"\n/>\n");
+			xml.append("<!-- a comment\nwith <event time=\"0.0\" type=\"ignored\"/> over\nseveral lines -->\n");
+			xml.append("<event time=\"").append(i).append(".5\" type=\"left link\" vehicle=\"v").append(i).append("\" link=\"l1\"></event>\n");
+		}
+		xml.append("</events>\n");
+		byte[] bytes = xml.toString().getBytes(StandardCharsets.UTF_8);
+
+		EventsCollector expected = new EventsCollector();
+		EventsManager expectedEvents = EventsUtils.createEventsManager();
+		expectedEvents.addHandler(expected);
+		new EventsReaderXMLv1(expectedEvents).parse(new ByteArrayInputStream(bytes));
+		Assert.assertEquals(40, expected.getEvents().size());
+
+		for (int blockSize : new int[] { 1, 7, 16, 61, 100 }) {
+			EventsCollector collector = new EventsCollector();
+			EventsManager events = EventsUtils.createEventsManager();
+			events.addHandler(collector);
+			new EventsReaderXMLParallel(events, 3, blockSize).readStream(new ByteArrayInputStream(bytes));
+			Assert.assertEquals("block size " + blockSize, expected.getEvents(), collector.getEvents());
+		}
+	}
+
+	@Test
+	public void testTruncatedFile() {
+		String xml = "<events version=\"1.0\">\n"
+				+ "<event time=\"1.0\" type=\"entered link\" vehicle=\"v1\" link=\"l1\" />\n"
+				+ "<event time=\"2.0\" type=\"entered link\"\n vehicle=\"v1\" link=\"l";
+		for (int blockSize : new int[] { 8, 1024 }) {
+			EventsManager events = EventsUtils.createEventsManager();
+			try {
+				new EventsReaderXMLParallel(events, 2, blockSize).readStream(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+				Assert.fail("expected an exception for the truncated event, block size " + blockSize);
+			} catch (IllegalArgumentException e) {
+				Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("Unterminated"));
+			}
+		}
+	}
+
+	private static List<Event> read(String filename, int numberOfThreads) {
+		EventsCollector collector = new EventsCollector();
+		EventsManager events = EventsUtils.createEventsManager();
+		events.addHandler(collector);
+		MatsimEventsReader reader = new MatsimEventsReader(events);
+		reader.setNumberOfThreads(numberOfThreads);
+		reader.readFile(filename);
+		return new ArrayList<>(collector.getEvents());
+	}
+}
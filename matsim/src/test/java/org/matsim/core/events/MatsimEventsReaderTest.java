@@ -0,0 +1,138 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * MatsimEventsReaderTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.events;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.GenericEvent;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.LinkLeaveEvent;
+import org.matsim.api.core.v01.events.PersonMoneyEvent;
+import org.matsim.api.core.v01.events.VehicleEntersTrafficEvent;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.algorithms.EventWriter;
+import org.matsim.core.events.algorithms.EventWriterBinary;
+import org.matsim.core.events.algorithms.EventWriterJson;
+import org.matsim.core.events.algorithms.EventWriterXML;
+import org.matsim.core.events.handler.BasicEventHandler;
+import org.matsim.testcases.MatsimTestUtils;
+import org.matsim.testcases.utils.EventsCollector;
+
+public class MatsimEventsReaderTest {
+
+	@Rule
+	public MatsimTestUtils utils = new MatsimTestUtils();
+
+	@Test
+	public void testEventTypesAndTimeWindow() {
+		List<Event> all = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			all.add(new LinkEnterEvent(i, Id.createVehicleId("v" + i % 7), Id.createLinkId("l" + i % 11)));
+			all.add(new LinkLeaveEvent(i, Id.createVehicleId("v" + i % 7), Id.createLinkId("l" + i % 11)));
+			all.add(new PersonMoneyEvent(i, Id.createPersonId("p" + i % 5), 2.5, "toll", "city"));
+			all.add(new GenericEvent("custom", i));
+		}
+		Set<String> eventTypes = Set.of(LinkEnterEvent.EVENT_TYPE, PersonMoneyEvent.EVENT_TYPE);
+		List<Event> expected = all.stream()
+				.filter(e -> eventTypes.contains(e.getEventType()) && e.getTime() >= 100 && e.getTime() <= 200)
+				.collect(Collectors.toList());
+
+		String xml = utils.getOutputDirectory() + "events.xml.gz";
+		String json = utils.getOutputDirectory() + "events.ndjson";
+		String binary = utils.getOutputDirectory() + "events.bin";
+		write(all, new EventWriterXML(xml));
+		write(all, new EventWriterJson(new File(json)));
+		write(all, new EventWriterBinary(binary));
+
+		for (String filename : List.of(xml, json, binary)) {
+			for (int numberOfThreads : new int[] {1, 3}) {
+				EventsCollector collector = new EventsCollector();
+				EventsManager events = EventsUtils.createEventsManager();
+				events.addHandler(collector);
+				MatsimEventsReader reader = new MatsimEventsReader(events);
+				reader.setNumberOfThreads(numberOfThreads);
+				reader.setEventTypes(eventTypes);
+				reader.setTimeWindow(100, 200);
+				reader.readFile(filename);
+				Assert.assertEquals(filename, expected, collector.getEvents());
+			}
+		}
+
+		EventsCollector collector = new EventsCollector();
+		EventsManager events = EventsUtils.createEventsManager();
+		events.addHandler(collector);
+		EventsUtils.readEvents(events, xml, Set.of("custom"), Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+		Assert.assertEquals(1000, collector.getEvents().size());
+	}
+
+	@Test
+	public void testEventTypesWithOldEventNames() {
+		List<Event> all = new ArrayList<>();
+		List<Event> expected = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			GenericEvent wait2link = new GenericEvent("wait2link", i);
+			wait2link.getAttributes().put("person", "p" + i % 5);
+			wait2link.getAttributes().put("link", "l" + i % 11);
+			all.add(wait2link);
+			expected.add(new VehicleEntersTrafficEvent(i, Id.createPersonId("p" + i % 5), Id.createLinkId("l" + i % 11), Id.createVehicleId("p" + i % 5), null, 1.0));
+
+			GenericEvent agentMoney = new GenericEvent("agentMoney", i);
+			agentMoney.getAttributes().put("person", "p" + i % 5);
+			agentMoney.getAttributes().put("amount", "2.5");
+			all.add(agentMoney);
+			expected.add(new PersonMoneyEvent(i, Id.createPersonId("p" + i % 5), 2.5, null, null));
+
+			all.add(new LinkEnterEvent(i, Id.createVehicleId("v" + i % 7), Id.createLinkId("l" + i % 11)));
+		}
+		Set<String> eventTypes = Set.of(VehicleEntersTrafficEvent.EVENT_TYPE, PersonMoneyEvent.EVENT_TYPE);
+
+		String xml = utils.getOutputDirectory() + "events.xml.gz";
+		String json = utils.getOutputDirectory() + "events.ndjson";
+		String binary = utils.getOutputDirectory() + "events.bin";
+		write(all, new EventWriterXML(xml));
+		write(all, new EventWriterJson(new File(json)));
+		write(all, new EventWriterBinary(binary));
+
+		for (String filename : List.of(xml, json, binary)) {
+			EventsCollector collector = new EventsCollector();
+			EventsManager events = EventsUtils.createEventsManager();
+			events.addHandler(collector);
+			MatsimEventsReader reader = new MatsimEventsReader(events);
+			reader.setEventTypes(eventTypes);
+			reader.readFile(filename);
+			Assert.assertEquals(filename, expected, collector.getEvents());
+		}
+	}
+
+	private static <T extends EventWriter & BasicEventHandler> void write(List<Event> events, T writer) {
+		events.forEach(writer::handleEvent);
+		writer.closeFile();
+	}
+}
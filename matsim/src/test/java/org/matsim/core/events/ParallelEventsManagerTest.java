@@ -1,9 +1,18 @@
 package org.matsim.core.events;
 
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.junit.Before;
 import org.junit.Test;
+import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
 import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.handler.EventHandler;
+import org.matsim.testcases.utils.EventsCollector;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThrows;
@@ -49,4 +58,100 @@ public class ParallelEventsManagerTest {
         assertEquals(0, handler.counter);
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void eventsOnlyReachThreadsWithHandlers() {
+        // batches of 1000 events are passed on as they are if the events are synchronized on sim steps
+        for (int batchSize : new int[] {1, 1000}) {
+            ParallelEventsManager m = new ParallelEventsManager(true, 3, 16);
+            EventsManagerImplTest.CountingMyEventHandler[] myEventHandlers = new EventsManagerImplTest.CountingMyEventHandler[3];
+            for (int i = 0; i < myEventHandlers.length; i++) {
+                myEventHandlers[i] = new EventsManagerImplTest.CountingMyEventHandler();
+                m.addHandler(myEventHandlers[i]);
+            }
+            EventsCollector collector = new EventsCollector();
+            m.addHandler(collector);
+
+            for (int iteration = 0; iteration < 2; iteration++) {
+                m.resetHandlers(iteration);
+                m.initProcessing();
+                EventArray array = new EventArray(batchSize);
+                for (int i = 0; i < 200; i++) {
+                    array.add(i % 2 == 0 ? new EventsManagerImplTest.MyEvent(i) : new LinkEnterEvent(i, Id.createVehicleId(0), Id.createLinkId(0)));
+                    if (array.size() == batchSize) {
+                        m.processEvents(array);
+                        array = new EventArray(batchSize);
+                    }
+                }
+                m.processEvents(array);
+                m.finishProcessing();
+
+                for (EventsManagerImplTest.CountingMyEventHandler myEventHandler : myEventHandlers) {
+                    assertEquals(100, myEventHandler.counter);
+                }
+                assertEquals(200, collector.getEvents().size());
+            }
+        }
+    }
+
+    @Test
+    public void costsOfRemovedHandlersAreDropped() {
+        ParallelEventsManager m = new ParallelEventsManager(false, 2, 16);
+        EventsCollector kept = new EventsCollector();
+        EventsCollector removed = new EventsCollector();
+        m.addHandler(kept);
+        m.addHandler(removed);
+        runIteration(m, 0);
+        assertEquals(Set.of(kept, removed), m.getHandlerCosts().keySet());
+
+        m.removeHandler(removed);
+        assertEquals(Set.of(kept), m.getHandlerCosts().keySet());
+
+        EventsCollector added = new EventsCollector();
+        m.addHandler(added);
+        m.addHandler(removed);
+        runIteration(m, 1);
+        assertEquals(Set.of(kept, added, removed), m.getHandlerCosts().keySet());
+
+        // the costs are collected again in every iteration, only for the handlers of that iteration
+        m.removeHandler(removed);
+        EventsCollector addedLater = new EventsCollector();
+        m.addHandler(addedLater);
+        runIteration(m, 2);
+        assertEquals(Set.of(kept, added, addedLater), m.getHandlerCosts().keySet());
+    }
+
+    private static void runIteration(EventsManager m, int iteration) {
+        m.resetHandlers(iteration);
+        m.initProcessing();
+        for (int i = 0; i < 100; i++) {
+            m.processEvent(new LinkEnterEvent(i, Id.createVehicleId(0), Id.createLinkId(0)));
+        }
+        m.finishProcessing();
+    }
+
+    @Test
+    public void balanceHandlers() {
+        List<EventHandler> handlers = List.of(new EventsCollector(), new EventsCollector(), new EventsCollector(),
+                new EventsCollector(), new EventsCollector());
+
+        // without costs, the handlers are distributed round robin
+        List<List<EventHandler>> handlersOfThreads = ParallelEventsManager.balanceHandlers(handlers, new IdentityHashMap<>(), 2);
+        assertEquals(List.of(List.of(handlers.get(0), handlers.get(2), handlers.get(4)), List.of(handlers.get(1), handlers.get(3))),
+                handlersOfThreads);
+
+        // the expensive handler gets a thread of its own
+        Map<EventHandler, Long> costs = new IdentityHashMap<>();
+        costs.put(handlers.get(0), 10L);
+        costs.put(handlers.get(1), 10L);
+        costs.put(handlers.get(2), 40L);
+        costs.put(handlers.get(3), 10L);
+        costs.put(handlers.get(4), 10L);
+        handlersOfThreads = ParallelEventsManager.balanceHandlers(handlers, costs, 2);
+        assertEquals(List.of(List.of(handlers.get(2)), List.of(handlers.get(0), handlers.get(1), handlers.get(3), handlers.get(4))),
+                handlersOfThreads);
+
+        // never more threads than handlers
+        assertEquals(5, ParallelEventsManager.balanceHandlers(handlers, costs, 8).size());
+    }
+}
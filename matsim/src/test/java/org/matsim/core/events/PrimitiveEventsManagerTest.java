@@ -0,0 +1,220 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * PrimitiveEventsManagerTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.LinkLeaveEvent;
+import org.matsim.api.core.v01.events.PersonEntersVehicleEvent;
+import org.matsim.api.core.v01.events.PersonLeavesVehicleEvent;
+import org.matsim.api.core.v01.events.PersonStuckEvent;
+import org.matsim.api.core.v01.events.handler.LinkEnterEventHandler;
+import org.matsim.api.core.v01.events.handler.PersonStuckEventHandler;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.core.events.handler.PrimitiveEventHandler;
+import org.matsim.testcases.utils.EventsCollector;
+import org.matsim.vehicles.Vehicle;
+
+public class PrimitiveEventsManagerTest {
+
+	@Test
+	public void testObjectAndPrimitiveHandlers() {
+		PrimitiveEventsManager events = new PrimitiveEventsManager(true, 16);
+		EventsCollector collector = new EventsCollector();
+		RecordingPrimitiveHandler primitiveHandler = new RecordingPrimitiveHandler();
+		events.addHandler(collector);
+		events.addHandler(primitiveHandler);
+
+		List<Event> expected = List.of(
+				new LinkEnterEvent(1.0, Id.createVehicleId("v1"), Id.createLinkId("l1")),
+				new PersonStuckEvent(2.0, Id.createPersonId("p1"), Id.createLinkId("l1"), "car"),
+				new LinkLeaveEvent(3.0, Id.createVehicleId("v1"), Id.createLinkId("l1")),
+				new PersonEntersVehicleEvent(4.0, Id.createPersonId("p1"), Id.createVehicleId("v1")),
+				new PersonLeavesVehicleEvent(5.0, Id.createPersonId("p1"), Id.createVehicleId("v1")));
+
+		events.initProcessing();
+		for (Event event : expected) {
+			events.processEvent(event);
+			events.afterSimStep(event.getTime());
+		}
+		events.finishProcessing();
+
+		assertEquals(expected, collector.getEvents());
+		assertEquals(List.of(
+				"enter 1.0 " + Id.createVehicleId("v1").index() + " " + Id.createLinkId("l1").index(),
+				"stuck 2.0",
+				"leave 3.0 " + Id.createVehicleId("v1").index() + " " + Id.createLinkId("l1").index(),
+				"entersVehicle 4.0 " + Id.createPersonId("p1").index() + " " + Id.createVehicleId("v1").index(),
+				"leavesVehicle 5.0 " + Id.createPersonId("p1").index() + " " + Id.createVehicleId("v1").index()), primitiveHandler.calls);
+	}
+
+	@Test
+	public void testLinkEventsWithoutVehicle() {
+		PrimitiveEventsManager events = new PrimitiveEventsManager(true, 16);
+		EventsCollector collector = new EventsCollector();
+		RecordingPrimitiveHandler primitiveHandler = new RecordingPrimitiveHandler();
+		events.addHandler(collector);
+		events.addHandler(primitiveHandler);
+
+		List<Event> expected = List.of(
+				new LinkEnterEvent(1.0, null, Id.createLinkId("l1")),
+				new LinkLeaveEvent(2.0, null, Id.createLinkId("l1")));
+
+		events.initProcessing();
+		for (Event event : expected) {
+			events.processEvent(event);
+		}
+		events.finishProcessing();
+
+		// the events can not be compared with equals, as their attributes need a vehicle id
+		assertEquals(expected.size(), collector.getEvents().size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertSame(expected.get(i), collector.getEvents().get(i));
+		}
+		assertEquals(List.of(), primitiveHandler.calls);
+	}
+
+	@Test
+	public void testPrimitiveProducer() {
+		PrimitiveEventsManager events = new PrimitiveEventsManager(false, 16);
+		EventsCollector collector = new EventsCollector();
+		events.addHandler(collector);
+
+		Id<Vehicle> vehicleId = Id.createVehicleId("v1");
+		Id<Link> linkId = Id.createLinkId("l1");
+		events.initProcessing();
+		events.processLinkEnter(1.0, vehicleId.index(), linkId.index());
+		events.processLinkLeave(2.0, vehicleId.index(), linkId.index());
+		events.finishProcessing();
+
+		assertEquals(List.of(new LinkEnterEvent(1.0, vehicleId, linkId), new LinkLeaveEvent(2.0, vehicleId, linkId)), collector.getEvents());
+	}
+
+	@Test
+	public void testSeveralProducersWithSmallBuffer() throws InterruptedException {
+		PrimitiveEventsManager events = new PrimitiveEventsManager(false, 4);
+		CountingLinkEnterHandler objectHandler = new CountingLinkEnterHandler();
+		RecordingPrimitiveHandler primitiveHandler = new RecordingPrimitiveHandler();
+		events.addHandler(objectHandler);
+		events.addHandler(primitiveHandler);
+
+		int eventsPerThread = 10000;
+		events.initProcessing();
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			Thread thread = new Thread(() -> {
+				for (int i = 0; i < eventsPerThread; i++) {
+					events.processEvent(new LinkEnterEvent(i, Id.createVehicleId("v1"), Id.createLinkId("l1")));
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		events.finishProcessing();
+
+		assertEquals(4 * eventsPerThread, objectHandler.counter);
+		assertEquals(4 * eventsPerThread, primitiveHandler.calls.size());
+	}
+
+	@Test
+	public void testEventHandlerCanProduceAdditionalEvent() {
+		PrimitiveEventsManager events = new PrimitiveEventsManager(true, 1);
+		events.addHandler((LinkEnterEventHandler) event -> events.processEvent(
+				new PersonStuckEvent(event.getTime(), Id.createPersonId(0), Id.createLinkId(0), "car")));
+		EventsCollector collector = new EventsCollector();
+		events.addHandler(collector);
+
+		events.initProcessing();
+		events.processEvent(new LinkEnterEvent(0.0, Id.createVehicleId(0), Id.createLinkId(0)));
+		events.processEvent(new LinkEnterEvent(1.0, Id.createVehicleId(0), Id.createLinkId(0)));
+		events.finishProcessing();
+
+		assertEquals(4, collector.getEvents().size());
+	}
+
+	@Test
+	public void testExceptionInHandler() {
+		PrimitiveEventsManager events = new PrimitiveEventsManager(true, 16);
+		events.addHandler((LinkEnterEventHandler) event -> {
+			throw new IllegalStateException("handler failed");
+		});
+
+		events.initProcessing();
+		events.processEvent(new LinkEnterEvent(0.0, Id.createVehicleId(0), Id.createLinkId(0)));
+		assertThrows(RuntimeException.class, () -> events.afterSimStep(0.0));
+	}
+
+	@Test
+	public void testForgetInit() {
+		PrimitiveEventsManager events = new PrimitiveEventsManager(true, 16);
+		assertThrows(IllegalStateException.class, () -> events.processEvent(new LinkEnterEvent(0.0, Id.createVehicleId(0), Id.createLinkId(0))));
+	}
+
+	private static class RecordingPrimitiveHandler implements PrimitiveEventHandler, PersonStuckEventHandler {
+		private final List<String> calls = new ArrayList<>();
+
+		@Override
+		public void handleLinkEnter(double time, int vehicleIndex, int linkIndex) {
+			calls.add("enter " + time + " " + vehicleIndex + " " + linkIndex);
+		}
+
+		@Override
+		public void handleLinkLeave(double time, int vehicleIndex, int linkIndex) {
+			calls.add("leave " + time + " " + vehicleIndex + " " + linkIndex);
+		}
+
+		@Override
+		public void handlePersonEntersVehicle(double time, int personIndex, int vehicleIndex) {
+			calls.add("entersVehicle " + time + " " + personIndex + " " + vehicleIndex);
+		}
+
+		@Override
+		public void handlePersonLeavesVehicle(double time, int personIndex, int vehicleIndex) {
+			calls.add("leavesVehicle " + time + " " + personIndex + " " + vehicleIndex);
+		}
+
+		@Override
+		public void handleEvent(PersonStuckEvent event) {
+			calls.add("stuck " + event.getTime());
+		}
+	}
+
+	private static class CountingLinkEnterHandler implements LinkEnterEventHandler {
+		private int counter = 0;
+
+		@Override
+		public void handleEvent(LinkEnterEvent event) {
+			counter++;
+		}
+	}
+}
@@ -0,0 +1,159 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * RingBufferEventsManagerTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.LinkLeaveEvent;
+import org.matsim.api.core.v01.events.PersonStuckEvent;
+import org.matsim.api.core.v01.events.handler.LinkEnterEventHandler;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.testcases.utils.EventsCollector;
+
+public class RingBufferEventsManagerTest {
+
+	@Test
+	public void testAllHandlersSeeAllEventsInOrder() {
+		for (boolean oneThreadPerHandler : new boolean[] {true, false}) {
+			RingBufferEventsManager events = new RingBufferEventsManager(false, oneThreadPerHandler, 2, 8);
+			List<EventsCollector> collectors = new ArrayList<>();
+			for (int i = 0; i < 3; i++) {
+				EventsCollector collector = new EventsCollector();
+				collectors.add(collector);
+				events.addHandler(collector);
+			}
+
+			List<Event> expected = new ArrayList<>();
+			for (int i = 0; i < 1000; i++) {
+				expected.add(new LinkEnterEvent(i, Id.createVehicleId(i % 7), Id.createLinkId(i % 13)));
+			}
+
+			events.initProcessing();
+			for (Event event : expected.subList(0, 500)) {
+				events.processEvent(event);
+			}
+			EventArray array = new EventArray();
+			for (Event event : expected.subList(500, 1000)) {
+				array.add(event);
+			}
+			events.processEvents(array);
+			events.finishProcessing();
+
+			for (EventsCollector collector : collectors) {
+				assertEquals(expected, collector.getEvents());
+			}
+		}
+	}
+
+	@Test
+	public void testSeveralProducers() throws InterruptedException {
+		RingBufferEventsManager events = new RingBufferEventsManager(false, true, 0, 16);
+		EventsCollector collector = new EventsCollector();
+		events.addHandler(collector);
+
+		int eventsPerThread = 10000;
+		events.initProcessing();
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			Thread thread = new Thread(() -> {
+				for (int i = 0; i < eventsPerThread; i++) {
+					events.processEvent(new LinkEnterEvent(i, Id.createVehicleId(0), Id.createLinkId(0)));
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		events.finishProcessing();
+
+		assertEquals(4 * eventsPerThread, collector.getEvents().size());
+	}
+
+	@Test
+	public void testEventHandlerCanProduceAdditionalEventLateInSimStep() {
+		// with a ring buffer of one event, the events of the handler can never be added directly
+		RingBufferEventsManager events = new RingBufferEventsManager(true, true, 0, 1);
+		events.addHandler((LinkEnterEventHandler) event -> events.processEvent(
+				new PersonStuckEvent(event.getTime(), Id.createPersonId(0), Id.createLinkId(0), "car")));
+		EventsCollector collector = new EventsCollector();
+		events.addHandler(collector);
+
+		events.initProcessing();
+		events.processEvent(new LinkEnterEvent(0.0, Id.createVehicleId(0), Id.createLinkId(0)));
+		events.processEvent(new LinkLeaveEvent(0.0, Id.createVehicleId(0), Id.createLinkId(0)));
+		events.afterSimStep(0.0);
+		Assertions.assertThat(collector.getEvents()).contains(
+				new PersonStuckEvent(0.0, Id.createPersonId(0), Id.createLinkId(0), "car"));
+		events.processEvent(new LinkEnterEvent(1.0, Id.createVehicleId(0), Id.createLinkId(0)));
+		events.processEvent(new LinkLeaveEvent(1.0, Id.createVehicleId(0), Id.createLinkId(0)));
+		events.afterSimStep(1.0);
+		events.finishProcessing();
+
+		Assertions.assertThat(collector.getEvents()).containsExactlyInAnyOrder(
+				new LinkEnterEvent(0.0, Id.createVehicleId(0), Id.createLinkId(0)),
+				new LinkLeaveEvent(0.0, Id.createVehicleId(0), Id.createLinkId(0)),
+				new PersonStuckEvent(0.0, Id.createPersonId(0), Id.createLinkId(0), "car"),
+				new LinkEnterEvent(1.0, Id.createVehicleId(0), Id.createLinkId(0)),
+				new LinkLeaveEvent(1.0, Id.createVehicleId(0), Id.createLinkId(0)),
+				new PersonStuckEvent(1.0, Id.createPersonId(0), Id.createLinkId(0), "car"));
+	}
+
+	@Test
+	public void testExceptionInHandler() {
+		RingBufferEventsManager events = new RingBufferEventsManager(true, true, 0, 16);
+		events.addHandler((LinkEnterEventHandler) event -> {
+			throw new IllegalStateException("handler failed");
+		});
+
+		events.initProcessing();
+		events.processEvent(new LinkEnterEvent(0.0, Id.createVehicleId(0), Id.createLinkId(0)));
+		assertThrows(RuntimeException.class, () -> events.afterSimStep(0.0));
+	}
+
+	@Test
+	public void testConfig() {
+		Config config = ConfigUtils.createConfig();
+		config.parallelEventHandling().setUseRingBuffer(true);
+		Assertions.assertThat(EventsUtils.createEventsManager(config)).isInstanceOf(RingBufferEventsManager.class);
+	}
+
+	@Test
+	public void testForgetInitAndLateHandler() {
+		RingBufferEventsManager events = new RingBufferEventsManager(true, true, 0, 16);
+		assertThrows(IllegalStateException.class, () -> events.processEvent(new LinkEnterEvent(0.0, Id.createVehicleId(0), Id.createLinkId(0))));
+
+		events.initProcessing();
+		assertThrows(IllegalStateException.class, () -> events.addHandler(new EventsCollector()));
+		events.finishProcessing();
+	}
+}
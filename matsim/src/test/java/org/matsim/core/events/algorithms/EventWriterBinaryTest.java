@@ -0,0 +1,161 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * EventWriterBinaryTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.events.algorithms;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.ActivityEndEvent;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.GenericEvent;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.LinkLeaveEvent;
+import org.matsim.api.core.v01.events.PersonMoneyEvent;
+import org.matsim.api.core.v01.events.VehicleEntersTrafficEvent;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.config.groups.ControlerConfigGroup;
+import org.matsim.core.events.EventsReaderBinary;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.events.MatsimEventsReader;
+import org.matsim.testcases.MatsimTestUtils;
+import org.matsim.testcases.utils.EventsCollector;
+
+public class EventWriterBinaryTest {
+
+	@Rule
+	public MatsimTestUtils utils = new MatsimTestUtils();
+
+	@Test
+	public void testWriteReadFile() {
+		List<Event> expected = createEvents();
+		String filename = utils.getOutputDirectory() + "events.bin";
+		EventWriterBinary writer = new EventWriterBinary(filename);
+		expected.forEach(writer::handleEvent);
+		writer.closeFile();
+
+		EventsManager events = EventsUtils.createEventsManager();
+		EventsCollector collector = new EventsCollector();
+		events.addHandler(collector);
+		events.initProcessing();
+		new MatsimEventsReader(events).readFile(filename);
+		events.finishProcessing();
+
+		Assert.assertEquals(expected, collector.getEvents());
+		Assert.assertEquals(ActivityEndEvent.class, collector.getEvents().get(0).getClass());
+	}
+
+	@Test
+	public void testSeveralChunksAndThreads() {
+		List<Event> expected = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) {
+			expected.addAll(createEvents(i));
+		}
+		byte[] bytes = write(expected, 100);
+
+		for (int threads : new int[] {1, 4}) {
+			EventsCollector collector = new EventsCollector();
+			EventsReaderBinary reader = new EventsReaderBinary(createEventsManager(collector));
+			reader.setNumberOfThreads(threads);
+			reader.readStream(new ByteArrayInputStream(bytes));
+			Assert.assertEquals(expected, collector.getEvents());
+		}
+	}
+
+	@Test
+	public void testFilter() {
+		List<Event> all = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			all.addAll(createEvents(10 * i));
+		}
+		byte[] bytes = write(all, 16);
+
+		EventsCollector collector = new EventsCollector();
+		EventsReaderBinary reader = new EventsReaderBinary(createEventsManager(collector));
+		reader.setEventTypes(Set.of(LinkEnterEvent.EVENT_TYPE, PersonMoneyEvent.EVENT_TYPE));
+		reader.setTimeWindow(500, 1000);
+		reader.readStream(new ByteArrayInputStream(bytes));
+
+		List<Event> expected = all.stream()
+				.filter(e -> e.getTime() >= 500 && e.getTime() <= 1000)
+				.filter(e -> e instanceof LinkEnterEvent || e instanceof PersonMoneyEvent)
+				.collect(Collectors.toList());
+		Assert.assertFalse(expected.isEmpty());
+		Assert.assertEquals(expected, collector.getEvents());
+	}
+
+	@Test
+	public void testSpecialValues() {
+		GenericEvent nullEvent = new GenericEvent("TEST", 3600.5);
+		nullEvent.getAttributes().put("dummy", null);
+		nullEvent.getAttributes().put("number", "12");
+		nullEvent.getAttributes().put("decimal", "1.50");
+		nullEvent.getAttributes().put("double", "-1.5E-7");
+		List<Event> expected = List.of(
+				new LinkLeaveEvent(-1.25, Id.createVehicleId("vehicle\"4"), Id.createLinkId("link<2")),
+				nullEvent,
+				new LinkLeaveEvent(1e18, Id.createVehicleId("äöü"), Id.createLinkId("")));
+
+		EventsCollector collector = new EventsCollector();
+		EventsManager events = createEventsManager(collector);
+		new MatsimEventsReader(events).readStream(new ByteArrayInputStream(write(expected, 2)), ControlerConfigGroup.EventsFileFormat.binary);
+
+		Assert.assertEquals(expected, collector.getEvents());
+		GenericEvent event = (GenericEvent) collector.getEvents().get(1);
+		Assert.assertTrue(event.getAttributes().containsKey("dummy"));
+		Assert.assertNull(event.getAttributes().get("dummy"));
+	}
+
+	private static EventsManager createEventsManager(EventsCollector collector) {
+		EventsManager events = EventsUtils.createEventsManager();
+		events.addHandler(collector);
+		return events;
+	}
+
+	private static byte[] write(List<Event> events, int chunkSize) {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		EventWriterBinary writer = new EventWriterBinary(baos, chunkSize);
+		events.forEach(writer::handleEvent);
+		writer.closeFile();
+		return baos.toByteArray();
+	}
+
+	private static List<Event> createEvents() {
+		return createEvents(3600);
+	}
+
+	private static List<Event> createEvents(double time) {
+		return List.of(
+				new ActivityEndEvent(time, Id.createPersonId("p" + time % 7), Id.createLinkId("l1"), null, "home", new Coord(12.5, -3.75)),
+				new VehicleEntersTrafficEvent(time, Id.createPersonId("p" + time % 7), Id.createLinkId("l1"), Id.createVehicleId("v1"), "car", 1.0),
+				new LinkLeaveEvent(time + 1, Id.createVehicleId("v1"), Id.createLinkId("l1")),
+				new LinkEnterEvent(time + 1, Id.createVehicleId("v1"), Id.createLinkId("l" + time % 13)),
+				new PersonMoneyEvent(time + 2.5, Id.createPersonId("p" + time % 7), -1.5, "toll", "city"));
+	}
+}
@@ -22,7 +22,10 @@ package org.matsim.core.mobsim.hermes;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -36,6 +39,9 @@ import org.matsim.api.core.v01.TransportMode;
 import org.matsim.api.core.v01.events.ActivityEndEvent;
 import org.matsim.api.core.v01.events.ActivityStartEvent;
 import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.HasLinkId;
+import org.matsim.api.core.v01.events.HasPersonId;
+import org.matsim.api.core.v01.events.HasVehicleId;
 import org.matsim.api.core.v01.events.LinkEnterEvent;
 import org.matsim.api.core.v01.events.LinkLeaveEvent;
 import org.matsim.api.core.v01.events.PersonArrivalEvent;
@@ -61,6 +67,7 @@ import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.controler.PrepareForSimUtils;
 import org.matsim.core.events.EventsUtils;
+import org.matsim.core.events.ParallelEventsManager;
 import org.matsim.core.events.handler.BasicEventHandler;
 import org.matsim.core.network.NetworkUtils;
 import org.matsim.core.population.PersonUtils;
@@ -76,6 +83,7 @@ import org.matsim.core.utils.misc.Time;
 import org.matsim.testcases.MatsimTestCase;
 import org.matsim.testcases.utils.EventsCollector;
 import org.matsim.testcases.utils.LogCounter;
+import org.matsim.vehicles.Vehicle;
 
 public class HermesTest {
 
@@ -237,6 +245,198 @@ public class HermesTest {
 		Assert.assertEquals("wrong time in second event.", 7.0*3600 + 11, collector.events.get(3).getTime(), MatsimTestCase.EPSILON);
 	}
 
+	/**
+	 * Splits the network into several realms and checks that vehicles crossing from one realm to another
+	 * experience the same traffic as in the simulation with only one realm.
+	 */
+	@Test
+	public void testSeveralRealms() {
+		List<LinkEnterEvent> oneRealm = runManyAgents(1, 1);
+		Assert.assertEquals("wrong number of link enter events.", 2 * 100, oneRealm.size());
+
+		assertSameLinkEnterEvents(oneRealm, runManyAgents(3, 1));
+	}
+
+	/**
+	 * Tests that simulating the realms in parallel gives the same results as simulating them one after the other.
+	 */
+	@Test
+	public void testSeveralThreads() {
+		List<LinkEnterEvent> oneThread = runManyAgents(1, 1);
+		Assert.assertEquals("wrong number of link enter events.", 2 * 100, oneThread.size());
+
+		assertSameLinkEnterEvents(oneThread, runManyAgents(3, 3));
+		assertSameLinkEnterEvents(oneThread, runManyAgents(3, 2));
+	}
+
+	private static void assertSameLinkEnterEvents(List<LinkEnterEvent> expected, List<LinkEnterEvent> actual) {
+		Assert.assertEquals("wrong number of link enter events.", expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			Assert.assertEquals(expected.get(i).getVehicleId(), actual.get(i).getVehicleId());
+			Assert.assertEquals(expected.get(i).getLinkId(), actual.get(i).getLinkId());
+			Assert.assertEquals(expected.get(i).getTime(), actual.get(i).getTime(), MatsimTestCase.EPSILON);
+		}
+	}
+
+	/**
+	 * Tests that the events are the same, no matter how often they are passed on to the events manager while the
+	 * simulation is running, also if they are processed concurrently.
+	 */
+	@Test
+	public void testEventsFlushInterval() {
+		List<LinkEnterEvent> atTheEnd = runManyAgents(1, 1, 0, EventsUtils.createEventsManager());
+		Assert.assertEquals("wrong number of link enter events.", 2 * 100, atTheEnd.size());
+
+		assertSameLinkEnterEvents(atTheEnd, runManyAgents(1, 1, 3600, EventsUtils.createEventsManager()));
+		assertSameLinkEnterEvents(atTheEnd, runManyAgents(1, 1, 1, new ParallelEventsManager(false)));
+		assertSameLinkEnterEvents(atTheEnd, runManyAgents(3, 3, 1, new ParallelEventsManager(false)));
+	}
+
+	private List<LinkEnterEvent> runManyAgents(int numberOfRealms, int numberOfThreads) {
+		return runManyAgents(numberOfRealms, numberOfThreads, 3600, EventsUtils.createEventsManager());
+	}
+
+	private List<LinkEnterEvent> runManyAgents(int numberOfRealms, int numberOfThreads, int eventsFlushInterval, EventsManager events) {
+		ScenarioImporter.flush();
+		Fixture f = new Fixture();
+		f.config.hermes().setNumberOfRealms(numberOfRealms);
+		f.config.hermes().setNumberOfThreads(numberOfThreads);
+		f.config.hermes().setEventsFlushInterval(eventsFlushInterval);
+
+		// link2 is the bottleneck, so the vehicles queue up in front of it
+		for (int i = 0; i < 100; i++) {
+			Person person = PopulationUtils.getFactory().createPerson(Id.create(i, Person.class));
+			Plan plan = PersonUtils.createAndAddPlan(person, true);
+			Activity a1 = PopulationUtils.createAndAddActivityFromLinkId(plan, "h", f.link1.getId());
+			a1.setEndTime(6 * 3600);
+			Leg leg = PopulationUtils.createAndAddLeg( plan, TransportMode.car );
+			TripStructureUtils.setRoutingMode( leg, TransportMode.car );
+			NetworkRoute route = f.scenario.getPopulation().getFactory().getRouteFactories().createRoute(NetworkRoute.class, f.link1.getId(), f.link3.getId());
+			route.setLinkIds(f.link1.getId(), f.linkIds2, f.link3.getId());
+			leg.setRoute(route);
+			PopulationUtils.createAndAddActivityFromLinkId(plan, "w", f.link3.getId());
+			f.plans.addPerson(person);
+		}
+
+		LinkEnterEventCollector collector = new LinkEnterEventCollector();
+		events.addHandler(collector);
+
+		Hermes sim = createHermes(f, events);
+		sim.run();
+		return collector.events;
+	}
+
+	/**
+	 * Simulates crossing traffic on a congested grid, split into several realms.  For a given number of realms, the
+	 * complete event stream must not depend on the number of threads.  With another number of realms, the vehicles are
+	 * exchanged between other links at the end of the time step, so only the sequence of events of each person is the same.
+	 */
+	@Test
+	public void testCrossingTrafficWithSeveralRealms() {
+		List<Event> oneRealm = runCrossingTraffic(1, 1);
+		Map<Id<Person>, List<String>> expectedPersonEvents = getPersonEvents(oneRealm);
+		for (int numberOfRealms : new int[] {2, 4, 7}) {
+			List<Event> oneThread = runCrossingTraffic(numberOfRealms, 1);
+			Assert.assertEquals(expectedPersonEvents, getPersonEvents(oneThread));
+			Assert.assertEquals(oneThread, runCrossingTraffic(numberOfRealms, 2));
+			Assert.assertEquals(oneThread, runCrossingTraffic(numberOfRealms, 4));
+		}
+	}
+
+	private static Map<Id<Person>, List<String>> getPersonEvents(List<Event> events) {
+		Map<Id<Person>, List<String>> personEvents = new HashMap<>();
+		Map<Id<Vehicle>, Id<Person>> drivers = new HashMap<>();
+		for (Event event : events) {
+			if (event instanceof PersonEntersVehicleEvent) {
+				drivers.put(((PersonEntersVehicleEvent) event).getVehicleId(), ((PersonEntersVehicleEvent) event).getPersonId());
+			}
+			Id<Person> personId = event instanceof HasPersonId ? ((HasPersonId) event).getPersonId()
+					: drivers.get(((HasVehicleId) event).getVehicleId());
+			String link = event instanceof HasLinkId ? " " + ((HasLinkId) event).getLinkId() : "";
+			personEvents.computeIfAbsent(personId, id -> new ArrayList<>()).add(event.getEventType() + link);
+		}
+		return personEvents;
+	}
+
+	private List<Event> runCrossingTraffic(int numberOfRealms, int numberOfThreads) {
+		ScenarioImporter.flush();
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		scenario.getConfig().hermes().setNumberOfRealms(numberOfRealms);
+		scenario.getConfig().hermes().setNumberOfThreads(numberOfThreads);
+
+		// a grid with links in both directions and a low capacity, so the vehicles queue up where their routes cross
+		int size = 6;
+		Network network = scenario.getNetwork();
+		network.setCapacityPeriod(3600);
+		Node[][] nodes = new Node[size][size];
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) {
+				nodes[x][y] = NetworkUtils.createAndAddNode(network, Id.createNodeId(x + "_" + y), new Coord(x * 500, y * 500));
+			}
+		}
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) {
+				if (x + 1 < size) {
+					createGridLinks(network, nodes[x][y], nodes[x + 1][y]);
+				}
+				if (y + 1 < size) {
+					createGridLinks(network, nodes[x][y], nodes[x][y + 1]);
+				}
+			}
+		}
+
+		// every vehicle first goes east, then north or south, then east or west
+		Random random = new Random(4711);
+		PopulationFactory pf = scenario.getPopulation().getFactory();
+		for (int i = 0; i < 600; i++) {
+			int x = random.nextInt(size - 1);
+			int y = random.nextInt(size);
+			int toX = random.nextInt(size);
+			int toY = random.nextInt(size);
+			List<Id<Link>> linkIds = new ArrayList<>();
+			linkIds.add(getGridLinkId(nodes[x][y], nodes[x + 1][y]));
+			x++;
+			for (; y != toY; y += Integer.signum(toY - y)) {
+				linkIds.add(getGridLinkId(nodes[x][y], nodes[x][y + Integer.signum(toY - y)]));
+			}
+			for (; x != toX; x += Integer.signum(toX - x)) {
+				linkIds.add(getGridLinkId(nodes[x][y], nodes[x + Integer.signum(toX - x)][y]));
+			}
+			if (linkIds.size() < 3) {
+				continue;
+			}
+			Id<Link> startLinkId = linkIds.get(0);
+			Id<Link> endLinkId = linkIds.get(linkIds.size() - 1);
+			Person person = pf.createPerson(Id.createPersonId(i));
+			Plan plan = pf.createPlan();
+			Activity home = pf.createActivityFromLinkId("h", startLinkId);
+			home.setEndTime(6 * 3600 + random.nextInt(600));
+			plan.addActivity(home);
+			Leg leg = pf.createLeg(TransportMode.car);
+			TripStructureUtils.setRoutingMode(leg, TransportMode.car);
+			leg.setRoute(RouteUtils.createLinkNetworkRouteImpl(startLinkId, linkIds.subList(1, linkIds.size() - 1), endLinkId));
+			plan.addLeg(leg);
+			plan.addActivity(pf.createActivityFromLinkId("w", endLinkId));
+			person.addPlan(plan);
+			scenario.getPopulation().addPerson(person);
+		}
+
+		EventsManager events = EventsUtils.createEventsManager();
+		EventsCollector collector = new EventsCollector();
+		events.addHandler(collector);
+		createHermes(scenario, events).run();
+		return collector.getEvents();
+	}
+
+	private static void createGridLinks(Network network, Node node1, Node node2) {
+		NetworkUtils.createAndAddLink(network, getGridLinkId(node1, node2), node1, node2, 500, 15, 900, 1);
+		NetworkUtils.createAndAddLink(network, getGridLinkId(node2, node1), node2, node1, 500, 15, 900, 1);
+	}
+
+	private static Id<Link> getGridLinkId(Node fromNode, Node toNode) {
+		return Id.createLinkId(fromNode.getId() + "-" + toNode.getId());
+	}
+
 	/**
 	 * A single agent is simulated that uses teleportation for its one and only leg.
 	 *
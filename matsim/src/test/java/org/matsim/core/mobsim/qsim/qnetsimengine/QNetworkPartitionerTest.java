@@ -0,0 +1,179 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * QNetworkPartitionerTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.mobsim.qsim.qnetsimengine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.config.groups.QSimConfigGroup.NetsimPartitioning;
+import org.matsim.core.network.NetworkUtils;
+
+public class QNetworkPartitionerTest {
+
+	private static final int GRID_SIZE = 20;
+
+	@Test
+	public void testRoundRobin() {
+		List<QNodeI> nodes = createGridNodes();
+		List<List<QNodeI>> partitions = QNetworkPartitioner.partition(nodes, 3, NetsimPartitioning.roundRobin);
+
+		Assert.assertEquals(3, partitions.size());
+		assertAllNodesAssignedOnce(nodes, partitions);
+		for (int i = 0; i < nodes.size(); i++) {
+			Assert.assertTrue(partitions.get(i % 3).contains(nodes.get(i)));
+		}
+	}
+
+	@Test
+	public void testSpatial() {
+		List<QNodeI> nodes = createGridNodes();
+		for (int numberOfPartitions : new int[] {1, 2, 3, 4, 7, 8}) {
+			List<List<QNodeI>> partitions = QNetworkPartitioner.partition(nodes, numberOfPartitions, NetsimPartitioning.spatial);
+
+			Assert.assertEquals(numberOfPartitions, partitions.size());
+			assertAllNodesAssignedOnce(nodes, partitions);
+
+			int expectedSize = nodes.size() / numberOfPartitions;
+			for (List<QNodeI> partition : partitions) {
+				Assert.assertEquals("partitions should be of similar size", expectedSize, partition.size(), GRID_SIZE);
+			}
+
+			// a spatial partitioning must cut far fewer links than the round robin one
+			int spatialBoundaryLinks = countBoundaryLinks(partitions);
+			int roundRobinBoundaryLinks = countBoundaryLinks(QNetworkPartitioner.partition(nodes, numberOfPartitions, NetsimPartitioning.roundRobin));
+			if (numberOfPartitions == 1) {
+				Assert.assertEquals(0, spatialBoundaryLinks);
+			} else {
+				Assert.assertTrue(spatialBoundaryLinks * 4 < roundRobinBoundaryLinks);
+			}
+		}
+	}
+
+	@Test
+	public void testSpatial_moreThreadsThanNodes() {
+		List<QNodeI> nodes = createGridNodes().subList(0, 3);
+		List<List<QNodeI>> partitions = QNetworkPartitioner.partition(nodes, 8, NetsimPartitioning.spatial);
+
+		Assert.assertEquals(8, partitions.size());
+		assertAllNodesAssignedOnce(nodes, partitions);
+	}
+
+	private static void assertAllNodesAssignedOnce(List<QNodeI> nodes, List<List<QNodeI>> partitions) {
+		Set<QNodeI> assigned = new HashSet<>();
+		for (List<QNodeI> partition : partitions) {
+			for (QNodeI node : partition) {
+				Assert.assertTrue("node assigned twice: " + node.getNode().getId(), assigned.add(node));
+			}
+		}
+		Assert.assertEquals(nodes.size(), assigned.size());
+	}
+
+	private static int countBoundaryLinks(List<List<QNodeI>> partitions) {
+		Map<Id<Node>, Integer> partitionOfNode = new HashMap<>();
+		for (int i = 0; i < partitions.size(); i++) {
+			for (QNodeI node : partitions.get(i)) {
+				partitionOfNode.put(node.getNode().getId(), i);
+			}
+		}
+		int boundaryLinks = 0;
+		for (List<QNodeI> partition : partitions) {
+			for (QNodeI node : partition) {
+				for (Link link : node.getNode().getOutLinks().values()) {
+					if (!partitionOfNode.get(link.getFromNode().getId()).equals(partitionOfNode.get(link.getToNode().getId()))) {
+						boundaryLinks++;
+					}
+				}
+			}
+		}
+		return boundaryLinks;
+	}
+
+	/**
+	 * Creates a grid of GRID_SIZE x GRID_SIZE nodes with links in both directions between neighbouring nodes.
+	 */
+	private static List<QNodeI> createGridNodes() {
+		Network network = NetworkUtils.createNetwork();
+		Node[][] grid = new Node[GRID_SIZE][GRID_SIZE];
+		for (int x = 0; x < GRID_SIZE; x++) {
+			for (int y = 0; y < GRID_SIZE; y++) {
+				grid[x][y] = NetworkUtils.createAndAddNode(network, Id.createNodeId(x + "_" + y), new Coord(x * 100.0, y * 100.0));
+			}
+		}
+		for (int x = 0; x < GRID_SIZE; x++) {
+			for (int y = 0; y < GRID_SIZE; y++) {
+				if (x + 1 < GRID_SIZE) {
+					addLinks(network, grid[x][y], grid[x + 1][y]);
+				}
+				if (y + 1 < GRID_SIZE) {
+					addLinks(network, grid[x][y], grid[x][y + 1]);
+				}
+			}
+		}
+		List<QNodeI> nodes = new ArrayList<>();
+		for (Node node : network.getNodes().values()) {
+			nodes.add(new DummyQNode(node));
+		}
+		return nodes;
+	}
+
+	private static void addLinks(Network network, Node a, Node b) {
+		NetworkUtils.createAndAddLink(network, Id.createLinkId(a.getId() + "-" + b.getId()), a, b, 100.0, 10.0, 1000.0, 1.0);
+		NetworkUtils.createAndAddLink(network, Id.createLinkId(b.getId() + "-" + a.getId()), b, a, 100.0, 10.0, 1000.0, 1.0);
+	}
+
+	private static class DummyQNode implements QNodeI {
+		private final Node node;
+
+		DummyQNode(Node node) {
+			this.node = node;
+		}
+
+		@Override
+		public Node getNode() {
+			return this.node;
+		}
+
+		@Override
+		public boolean doSimStep(double now) {
+			return false;
+		}
+
+		@Override
+		public void init() {
+		}
+
+		@Override
+		public Map<String, Object> getCustomAttributes() {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,258 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * BinaryPopulationIOTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.population.io;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.population.PlanElementsCodec;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.routes.GenericRouteImpl;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.scenario.ProjectionUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.facilities.ActivityFacility;
+import org.matsim.testcases.MatsimTestUtils;
+import org.matsim.utils.objectattributes.ObjectAttributesConverter;
+import org.matsim.vehicles.Vehicle;
+
+public class BinaryPopulationIOTest {
+
+	@Rule
+	public MatsimTestUtils utils = new MatsimTestUtils();
+
+	@Test
+	public void testCompactPlans() {
+		Population population = createPopulation();
+		byte[] expected = writeXml(population);
+
+		PlanElementsCodec codec = new PlanElementsCodec(population.getFactory().getRouteFactories(), new ObjectAttributesConverter());
+		for (Person person : population.getPersons().values()) {
+			for (Plan plan : person.getPlans()) {
+				Assert.assertTrue(codec.compact(plan));
+			}
+		}
+		// writing the plans does not re-create the plan elements permanently
+		Assert.assertArrayEquals(expected, writeXml(population));
+
+		Person person = population.getPersons().get(Id.create(1, Person.class));
+		Plan plan = person.getSelectedPlan();
+		byte[] encoded = codec.getEncodedPlanElements(plan);
+		Assert.assertEquals(5, plan.getPlanElements().size());
+		NetworkRoute route = (NetworkRoute) ((Leg) plan.getPlanElements().get(1)).getRoute();
+		Assert.assertEquals(List.of(Id.create("l2", Link.class), Id.create("l3", Link.class)), route.getLinkIds());
+		Assert.assertEquals(Id.create("v1", Vehicle.class), route.getVehicleId());
+		Assert.assertArrayEquals(encoded, codec.encode(plan.getPlanElements()));
+		Assert.assertArrayEquals(expected, writeXml(population));
+	}
+
+	@Test
+	public void testPlansWithUnknownAttributesAreNotCompacted() {
+		Population population = createPopulation();
+		Plan plan = population.getPersons().get(Id.create(1, Person.class)).getSelectedPlan();
+		plan.getPlanElements().get(0).getAttributes().putAttribute("unknown", new Object());
+
+		PlanElementsCodec codec = new PlanElementsCodec(population.getFactory().getRouteFactories(), new ObjectAttributesConverter());
+		Assert.assertFalse(codec.compact(plan));
+		Assert.assertNull(codec.encode(plan.getPlanElements()));
+	}
+
+	@Test
+	public void testBinaryIO() {
+		Population population = createPopulation();
+		byte[] expected = writeXml(population);
+
+		String filename = this.utils.getOutputDirectory() + "population" + BinaryPopulationReader.FILE_EXTENSION + ".gz";
+		new BinaryPopulationWriter(population).write(filename);
+
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		new BinaryPopulationReader(scenario).readFile(filename);
+		Assert.assertArrayEquals(expected, writeXml(scenario.getPopulation()));
+
+		// writing plans read from a binary file, which are still in compact form
+		String filename2 = this.utils.getOutputDirectory() + "population2" + BinaryPopulationReader.FILE_EXTENSION;
+		new BinaryPopulationWriter(scenario.getPopulation()).write(filename2);
+		Scenario scenario2 = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		new BinaryPopulationReader(scenario2).readFile(filename2);
+		Assert.assertArrayEquals(expected, writeXml(scenario2.getPopulation()));
+
+		Person person = scenario2.getPopulation().getPersons().get(Id.create(1, Person.class));
+		Assert.assertEquals(2.0, person.getSelectedPlan().getScore(), 0.0);
+		Assert.assertEquals("home", ((Activity) person.getSelectedPlan().getPlanElements().get(0)).getType());
+	}
+
+	@Test
+	public void testConcurrentAccessToCompactPlans() throws Exception {
+		Population population = createPopulation();
+		PlanElementsCodec codec = new PlanElementsCodec(population.getFactory().getRouteFactories(), new ObjectAttributesConverter());
+		List<Plan> plans = new ArrayList<>();
+		for (Person person : population.getPersons().values()) {
+			for (Plan plan : person.getPlans()) {
+				Assert.assertTrue(codec.compact(plan));
+				plans.add(plan);
+			}
+		}
+
+		// all threads must see the same plan elements, which are only created once
+		int threads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			CountDownLatch start = new CountDownLatch(1);
+			List<Future<List<List<PlanElement>>>> futures = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				futures.add(executor.submit(() -> {
+					start.await();
+					List<List<PlanElement>> planElements = new ArrayList<>();
+					for (Plan plan : plans) {
+						planElements.add(plan.getPlanElements());
+					}
+					return planElements;
+				}));
+			}
+			start.countDown();
+			for (Future<List<List<PlanElement>>> future : futures) {
+				List<List<PlanElement>> planElements = future.get();
+				for (int i = 0; i < plans.size(); i++) {
+					Assert.assertSame(plans.get(i).getPlanElements(), planElements.get(i));
+					Assert.assertEquals(5, planElements.get(i).size());
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testInputCRSNotSupported() {
+		String filename = this.utils.getOutputDirectory() + "population" + BinaryPopulationReader.FILE_EXTENSION;
+		new BinaryPopulationWriter(createPopulation()).write(filename);
+
+		Config config = ConfigUtils.createConfig();
+		config.global().setCoordinateSystem("EPSG:2056");
+		config.plans().setInputFile(filename);
+		config.plans().setInputCRS("EPSG:4326");
+		try {
+			ScenarioUtils.loadScenario(config);
+			Assert.fail("expected exception, got none.");
+		} catch (RuntimeException e) {
+			Assert.assertTrue(e.getMessage(), e.getMessage().contains("not transformed"));
+		}
+	}
+
+	@Test
+	public void testFileInOtherCRSNotSupported() {
+		Population population = createPopulation();
+		ProjectionUtils.putCRS(population, "EPSG:4326");
+		String filename = this.utils.getOutputDirectory() + "population" + BinaryPopulationReader.FILE_EXTENSION;
+		new BinaryPopulationWriter(population).write(filename);
+
+		Config config = ConfigUtils.createConfig();
+		config.global().setCoordinateSystem("EPSG:2056");
+		config.plans().setInputFile(filename);
+		try {
+			ScenarioUtils.loadScenario(config);
+			Assert.fail("expected exception, got none.");
+		} catch (RuntimeException e) {
+			Assert.assertTrue(e.getMessage(), e.getMessage().contains("not transformed"));
+		}
+	}
+
+	private static byte[] writeXml(Population population) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new PopulationWriter(population).write(out);
+		return out.toByteArray();
+	}
+
+	private static Population createPopulation() {
+		Population population = PopulationUtils.createPopulation(ConfigUtils.createConfig());
+		population.getAttributes().putAttribute("description", "test population");
+		PopulationFactory pf = population.getFactory();
+		for (int i = 0; i < 10; i++) {
+			Person person = pf.createPerson(Id.create(i, Person.class));
+			person.getAttributes().putAttribute("age", 20 + i);
+			for (int p = 0; p < 3; p++) {
+				Plan plan = pf.createPlan();
+				plan.setScore((double) i + p);
+				plan.setType(p == 0 ? null : "type" + p);
+				plan.getAttributes().putAttribute("index", p);
+
+				Activity home = pf.createActivityFromCoord("home", new Coord(i, p));
+				home.setLinkId(Id.create("l1", Link.class));
+				home.setEndTime(7 * 3600 + i);
+				home.getAttributes().putAttribute("visited", true);
+				plan.addActivity(home);
+
+				Leg car = pf.createLeg(TransportMode.car);
+				car.setRoutingMode(TransportMode.car);
+				car.setDepartureTime(7 * 3600 + i);
+				car.setTravelTime(600);
+				NetworkRoute route = pf.getRouteFactories().createRoute(NetworkRoute.class, Id.create("l1", Link.class), Id.create("l4", Link.class));
+				route.setLinkIds(Id.create("l1", Link.class), List.of(Id.create("l2", Link.class), Id.create("l3", Link.class)), Id.create("l4", Link.class));
+				route.setVehicleId(Id.create("v" + i, Vehicle.class));
+				route.setTravelTime(600);
+				route.setDistance(1234.5);
+				car.setRoute(route);
+				plan.addLeg(car);
+
+				plan.addActivity(pf.createInteractionActivityFromLinkId("car interaction", Id.create("l4", Link.class)));
+
+				Leg walk = pf.createLeg(TransportMode.walk);
+				walk.setRoutingMode(TransportMode.car);
+				walk.setRoute(new GenericRouteImpl(Id.create("l4", Link.class), Id.create("l5", Link.class)));
+				walk.getAttributes().putAttribute("note", "last mile");
+				plan.addLeg(walk);
+
+				Activity work = pf.createActivityFromActivityFacilityId("work", Id.create("f" + i, ActivityFacility.class));
+				work.setCoord(new Coord(1000, i, 5));
+				work.setMaximumDuration(8 * 3600);
+				plan.addActivity(work);
+
+				person.addPlan(plan);
+			}
+			person.setSelectedPlan(person.getPlans().get(1));
+			population.addPerson(person);
+		}
+		return population;
+	}
+
+}
@@ -48,6 +48,7 @@ import org.matsim.vehicles.VehicleUtils;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -428,4 +429,49 @@ public class PopulationV6IOTest {
 		Assert.assertEquals(((Activity) pp1.getPlanElements().get(4)).getLinkId(), linkId);
 	}
 
+	@Test
+	public void testParallelIO() {
+		Population population = PopulationUtils.createPopulation(ConfigUtils.createConfig());
+		PopulationFactory pf = population.getFactory();
+		for (int i = 0; i < 1000; i++) {
+			Person person = pf.createPerson(Id.create(i, Person.class));
+			person.getAttributes().putAttribute("index", i);
+			for (int p = 0; p < 2; p++) {
+				Plan plan = pf.createPlan();
+				plan.setScore((double) i + p);
+				Activity home = pf.createActivityFromCoord("home", new Coord(i, p));
+				home.setEndTime(7 * 3600 + i);
+				Leg leg = pf.createLeg(TransportMode.walk);
+				leg.setRoute(new GenericRouteImpl(Id.create("a" + i, Link.class), Id.create("b" + i, Link.class)));
+				leg.setRoutingMode(TransportMode.walk);
+				Activity work = pf.createActivityFromCoord("work", new Coord(1000, i));
+				work.getAttributes().putAttribute("plan", p);
+				plan.addActivity(home);
+				plan.addLeg(leg);
+				plan.addActivity(work);
+				person.addPlan(plan);
+			}
+			population.addPerson(person);
+		}
+
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		new PopulationWriter(population).write(expected);
+		PopulationWriter parallelWriter = new PopulationWriter(population);
+		parallelWriter.setNumberOfThreads(4);
+		ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+		parallelWriter.write(parallel);
+		Assert.assertArrayEquals(expected.toByteArray(), parallel.toByteArray());
+
+		for (int threads : new int[] { 1, 4 }) {
+			Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+			scenario.getConfig().global().setNumberOfThreads(threads);
+			new PopulationReader(scenario).parse(new ByteArrayInputStream(expected.toByteArray()));
+			Assert.assertEquals(List.copyOf(PopulationUtils.getSortedPersons(population).keySet()), List.copyOf(scenario.getPopulation().getPersons().keySet()));
+
+			ByteArrayOutputStream written = new ByteArrayOutputStream();
+			new PopulationWriter(scenario.getPopulation()).write(written);
+			Assert.assertArrayEquals(expected.toByteArray(), written.toByteArray());
+		}
+	}
+
 }
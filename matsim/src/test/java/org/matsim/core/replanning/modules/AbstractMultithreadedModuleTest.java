@@ -20,6 +20,13 @@
 
 package org.matsim.core.replanning.modules;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.junit.Assert;
@@ -27,6 +34,8 @@ import org.junit.Test;
 import org.matsim.api.core.v01.population.Plan;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.groups.GlobalConfigGroup;
+import org.matsim.core.config.groups.GlobalConfigGroup.ReplanningThreadScheduling;
+import org.matsim.core.population.PopulationUtils;
 import org.matsim.core.population.algorithms.PlanAlgorithm;
 
 /**
@@ -61,6 +70,79 @@ public class AbstractMultithreadedModuleTest {
 
 	}
 
+	@Test
+	public void testAllPlansHandledOnce() {
+		for (ReplanningThreadScheduling scheduling : ReplanningThreadScheduling.values()) {
+			Map<Plan, AtomicInteger> handled = new ConcurrentHashMap<>();
+			CountingModule testee = new CountingModule(3, scheduling, handled);
+			List<Plan> plans = new ArrayList<>();
+			for (int iteration = 0; iteration < 2; iteration++) {
+				// the module and the threads are used again in the second iteration
+				testee.prepareReplanning(null);
+				for (int i = 0; i < 1000; i++) {
+					Plan plan = PopulationUtils.createPlan();
+					plans.add(plan);
+					testee.handlePlan(plan);
+				}
+				testee.finishReplanning();
+			}
+			Assert.assertEquals(scheduling.toString(), plans.size(), handled.size());
+			for (Plan plan : plans) {
+				Assert.assertEquals(scheduling.toString(), 1, handled.get(plan).get());
+			}
+		}
+	}
+
+	@Test
+	public void testThreadsEndAfterShutdown() throws InterruptedException {
+		Set<Thread> threads = ConcurrentHashMap.newKeySet();
+		AbstractMultithreadedModule testee = new AbstractMultithreadedModule(3) {
+			@Override
+			public PlanAlgorithm getPlanAlgoInstance() {
+				return plan -> threads.add(Thread.currentThread());
+			}
+		};
+		testee.prepareReplanning(null);
+		for (int i = 0; i < 100; i++) {
+			testee.handlePlan(PopulationUtils.createPlan());
+		}
+		testee.finishReplanning();
+
+		// the threads are kept for the next iteration
+		Assert.assertFalse(threads.isEmpty());
+		for (Thread thread : threads) {
+			Assert.assertTrue(thread.getName(), thread.isAlive());
+		}
+
+		AbstractMultithreadedModule.shutdownThreads();
+		for (Thread thread : threads) {
+			thread.join(10000);
+			Assert.assertFalse(thread.getName(), thread.isAlive());
+		}
+	}
+
+	private static class CountingModule extends AbstractMultithreadedModule {
+		private final Map<Plan, AtomicInteger> handled;
+		public CountingModule(final int nOfThreads, ReplanningThreadScheduling scheduling, Map<Plan, AtomicInteger> handled) {
+			super(nOfThreads, scheduling);
+			this.handled = handled;
+		}
+		@Override
+		public PlanAlgorithm getPlanAlgoInstance() {
+			return plan -> {
+				if (this.handled.size() % 100 == 0) {
+					// some slow plans
+					try {
+						Thread.sleep(1);
+					} catch (InterruptedException e) {
+						throw new RuntimeException(e);
+					}
+				}
+				this.handled.computeIfAbsent(plan, p -> new AtomicInteger()).incrementAndGet();
+			};
+		}
+	}
+
 	private static class DummyAbstractMultithreadedModule extends AbstractMultithreadedModule {
 		public DummyAbstractMultithreadedModule(GlobalConfigGroup globalConfigGroup) {
 			super(globalConfigGroup);
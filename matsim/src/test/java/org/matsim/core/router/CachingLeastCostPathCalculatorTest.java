@@ -0,0 +1,151 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * CachingLeastCostPathCalculatorTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.router;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.util.LeastCostPathCalculator.Path;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.vehicles.Vehicle;
+
+public class CachingLeastCostPathCalculatorTest {
+
+	@Test
+	public void testCacheHitsAndInvalidation() {
+		Fixture f = new Fixture();
+		CachingLeastCostPathCalculator.Cache cache = new CachingLeastCostPathCalculator.Cache(100, 900, 0.1);
+		CountingCalculator dijkstra = new CountingCalculator(new Dijkstra(f.network, f.travelTime, f.travelTime));
+		LeastCostPathCalculator router = new CachingLeastCostPathCalculator(dijkstra, cache, f.travelTime, f.travelTime);
+
+		Path path = router.calcLeastCostPath(f.node1, f.node4, 7 * 3600, null, null);
+		Assert.assertEquals(List.of(f.link12, f.link24), path.links);
+		Assert.assertEquals(1, dijkstra.count);
+
+		// same time bin: from the cache
+		Path cached = router.calcLeastCostPath(f.node1, f.node4, 7 * 3600 + 600, null, null);
+		Assert.assertEquals(1, dijkstra.count);
+		Assert.assertEquals(path.links, cached.links);
+		Assert.assertEquals(path.travelTime, cached.travelTime, 1e-8);
+		Assert.assertEquals(1, cache.getHits());
+
+		// other time bin: calculated again
+		router.calcLeastCostPath(f.node1, f.node4, 8 * 3600, null, null);
+		Assert.assertEquals(2, dijkstra.count);
+
+		// small change of the travel time: still from the cache, but with the current travel time
+		f.travelTime.travelTimes.put(f.link24, 105.0);
+		cached = router.calcLeastCostPath(f.node1, f.node4, 7 * 3600, null, null);
+		Assert.assertEquals(2, dijkstra.count);
+		Assert.assertEquals(List.of(f.link12, f.link24), cached.links);
+		Assert.assertEquals(205.0, cached.travelTime, 1e-8);
+
+		// large change of the travel time: calculated again, now using the other route
+		f.travelTime.travelTimes.put(f.link24, 300.0);
+		path = router.calcLeastCostPath(f.node1, f.node4, 7 * 3600, null, null);
+		Assert.assertEquals(3, dijkstra.count);
+		Assert.assertEquals(List.of(f.link13, f.link34), path.links);
+	}
+
+	@Test
+	public void testEviction() {
+		Fixture f = new Fixture();
+		// one entry per segment
+		CachingLeastCostPathCalculator.Cache cache = new CachingLeastCostPathCalculator.Cache(1, 900, 0.1);
+		CountingCalculator dijkstra = new CountingCalculator(new Dijkstra(f.network, f.travelTime, f.travelTime));
+		LeastCostPathCalculator router = new CachingLeastCostPathCalculator(dijkstra, cache, f.travelTime, f.travelTime);
+
+		for (int bin = 0; bin < 100; bin++) {
+			router.calcLeastCostPath(f.node1, f.node4, bin * 900, null, null);
+		}
+		Assert.assertEquals(100, dijkstra.count);
+		router.calcLeastCostPath(f.node1, f.node4, 0, null, null);
+		Assert.assertEquals(101, dijkstra.count);
+	}
+
+	private static class CountingCalculator implements LeastCostPathCalculator {
+		private final LeastCostPathCalculator delegate;
+		int count = 0;
+
+		CountingCalculator(LeastCostPathCalculator delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public Path calcLeastCostPath(Node fromNode, Node toNode, double starttime, Person person, Vehicle vehicle) {
+			this.count++;
+			return this.delegate.calcLeastCostPath(fromNode, toNode, starttime, person, vehicle);
+		}
+	}
+
+	private static class LinkTravelTime implements TravelTime, TravelDisutility {
+		final Map<Link, Double> travelTimes = new HashMap<>();
+
+		@Override
+		public double getLinkTravelTime(Link link, double time, Person person, Vehicle vehicle) {
+			return this.travelTimes.get(link);
+		}
+
+		@Override
+		public double getLinkTravelDisutility(Link link, double time, Person person, Vehicle vehicle) {
+			return this.travelTimes.get(link);
+		}
+
+		@Override
+		public double getLinkMinimumTravelDisutility(Link link) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Two routes from node 1 to node 4, one via node 2 (200s), one via node 3 (250s).
+	 */
+	private static class Fixture {
+		final Network network = NetworkUtils.createNetwork();
+		final LinkTravelTime travelTime = new LinkTravelTime();
+		final Node node1 = NetworkUtils.createAndAddNode(this.network, Id.createNodeId(1), new Coord(0, 0));
+		final Node node2 = NetworkUtils.createAndAddNode(this.network, Id.createNodeId(2), new Coord(1000, 500));
+		final Node node3 = NetworkUtils.createAndAddNode(this.network, Id.createNodeId(3), new Coord(1000, -500));
+		final Node node4 = NetworkUtils.createAndAddNode(this.network, Id.createNodeId(4), new Coord(2000, 0));
+		final Link link12 = createLink("12", this.node1, this.node2, 100);
+		final Link link24 = createLink("24", this.node2, this.node4, 100);
+		final Link link13 = createLink("13", this.node1, this.node3, 125);
+		final Link link34 = createLink("34", this.node3, this.node4, 125);
+
+		private Link createLink(String id, Node from, Node to, double travelTime) {
+			Link link = NetworkUtils.createAndAddLink(this.network, Id.createLinkId(id), from, to, 1000, 10, 1000, 1);
+			this.travelTime.travelTimes.put(link, travelTime);
+			return link;
+		}
+	}
+}
@@ -19,7 +19,9 @@
 
 package org.matsim.core.router;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -36,10 +38,13 @@ import org.matsim.api.core.v01.population.Leg;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.api.core.v01.population.PlanElement;
 import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.NetworkUtils;
 import org.matsim.core.population.PopulationUtils;
 import org.matsim.core.population.routes.NetworkRoute;
 import org.matsim.core.router.costcalculators.FreespeedTravelTimeAndDisutility;
+import org.matsim.core.router.costcalculators.OnlyTimeDependentTravelDisutility;
 import org.matsim.core.router.costcalculators.RandomizingTimeDistanceTravelDisutilityFactory;
+import org.matsim.core.router.speedy.SpeedyGraph;
 import org.matsim.core.router.util.LeastCostPathCalculator;
 import org.matsim.core.router.util.TravelDisutility;
 import org.matsim.core.router.util.TravelTime;
@@ -144,6 +149,90 @@ public class NetworkRoutingModuleTest {
 		}
 	}
 
+	@Test
+	public void testCalcRoutesSameAsCalcRoute() {
+		Network network = NetworkUtils.createNetwork();
+		List<Link> links = createGrid(network);
+		FreespeedTravelTimeAndDisutility freespeed = new FreespeedTravelTimeAndDisutility(-6.0/3600, +6.0/3600, 0.0);
+		NetworkRoutingModule routingModule = new NetworkRoutingModule(TransportMode.car, PopulationUtils.getFactory(), network,
+				new Dijkstra(network, freespeed, freespeed), () -> new SpeedyGraph(network), freespeed, freespeed, 0);
+		assertCalcRoutesSameAsCalcRoute(routingModule, links, 7.0*3600, 7.0*3600);
+	}
+
+	@Test
+	public void testCalcRoutesWithTimeDependentTravelTimes() {
+		// every request is routed from its own departure time, also if several requests depart in the same 15 minutes
+		Network network = NetworkUtils.createNetwork();
+		List<Link> links = createGrid(network);
+		TravelTime travelTime = (link, time, person, vehicle) -> link.getLength() / link.getFreespeed() * (time < 7.0*3600 + 300 ? 1.0 : 4.0);
+		TravelDisutility travelDisutility = new OnlyTimeDependentTravelDisutility(travelTime);
+		NetworkRoutingModule routingModule = new NetworkRoutingModule(TransportMode.car, PopulationUtils.getFactory(), network,
+				new Dijkstra(network, travelDisutility, travelTime), () -> new SpeedyGraph(network), travelTime, travelDisutility, 0);
+		assertCalcRoutesSameAsCalcRoute(routingModule, links, 7.0*3600, 7.0*3600 + 600);
+	}
+
+	private static List<Link> createGrid(Network network) {
+		Random random = new Random(20221017);
+		int size = 6;
+		Node[][] nodes = new Node[size][size];
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) {
+				nodes[x][y] = NetworkUtils.createAndAddNode(network, Id.createNodeId(x + "_" + y), new Coord(x * 1000, y * 1000));
+			}
+		}
+		List<Link> links = new ArrayList<>();
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) {
+				if (x + 1 < size) {
+					links.add(createLink(network, nodes[x][y], nodes[x + 1][y], random));
+					links.add(createLink(network, nodes[x + 1][y], nodes[x][y], random));
+				}
+				if (y + 1 < size) {
+					links.add(createLink(network, nodes[x][y], nodes[x][y + 1], random));
+					links.add(createLink(network, nodes[x][y + 1], nodes[x][y], random));
+				}
+			}
+		}
+		return links;
+	}
+
+	/**
+	 * Routes from the first link to all links, alternating between the two departure times.
+	 */
+	private static void assertCalcRoutesSameAsCalcRoute(NetworkRoutingModule routingModule, List<Link> links, double departureTime1, double departureTime2) {
+		Person person = PopulationUtils.getFactory().createPerson(Id.create(1, Person.class));
+
+		List<RoutingRequest> requests = new ArrayList<>();
+		Facility fromFacility = new LinkWrapperFacility(links.get(0));
+		for (int i = 0; i < links.size(); i++) {
+			double departureTime = i % 2 == 0 ? departureTime1 : departureTime2;
+			requests.add(DefaultRoutingRequest.withoutAttributes(fromFacility, new LinkWrapperFacility(links.get(i)), departureTime, person));
+		}
+		requests.add(DefaultRoutingRequest.withoutAttributes(new LinkWrapperFacility(links.get(5)), new LinkWrapperFacility(links.get(17)), departureTime1, person));
+
+		List<List<? extends PlanElement>> routes = routingModule.calcRoutes(requests);
+		Assert.assertEquals(requests.size(), routes.size());
+		for (int i = 0; i < requests.size(); i++) {
+			Leg expected = (Leg) routingModule.calcRoute(requests.get(i)).get(0);
+			Assert.assertEquals(1, routes.get(i).size());
+			Leg actual = (Leg) routes.get(i).get(0);
+			NetworkRoute expectedRoute = (NetworkRoute) expected.getRoute();
+			NetworkRoute actualRoute = (NetworkRoute) actual.getRoute();
+			Assert.assertEquals(expectedRoute.getStartLinkId(), actualRoute.getStartLinkId());
+			Assert.assertEquals(expectedRoute.getEndLinkId(), actualRoute.getEndLinkId());
+			Assert.assertEquals(expectedRoute.getLinkIds(), actualRoute.getLinkIds());
+			Assert.assertEquals(expectedRoute.getTravelCost(), actualRoute.getTravelCost(), 1e-8);
+			Assert.assertEquals(expectedRoute.getDistance(), actualRoute.getDistance(), 1e-8);
+			Assert.assertEquals(expected.getTravelTime().seconds(), actual.getTravelTime().seconds(), 1e-8);
+			Assert.assertEquals(expected.getDepartureTime().seconds(), actual.getDepartureTime().seconds(), 1e-8);
+		}
+	}
+
+	private static Link createLink(Network network, Node fromNode, Node toNode, Random random) {
+		Id<Link> id = Id.createLinkId(fromNode.getId() + "-" + toNode.getId());
+		return NetworkUtils.createAndAddLink(network, id, fromNode, toNode, 1000, 5 + 30 * random.nextDouble(), 1000, 1);
+	}
+
 	private static class Fixture {
 		public final Scenario s = ScenarioUtils.createScenario(ConfigUtils.createConfig());
 
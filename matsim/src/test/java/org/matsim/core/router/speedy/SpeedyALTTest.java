@@ -20,8 +20,17 @@
 
 package org.matsim.core.router.speedy;
 
+import java.io.File;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
 import org.matsim.core.config.groups.PlanCalcScoreConfigGroup;
+import org.matsim.core.network.NetworkUtils;
 import org.matsim.core.router.AbstractLeastCostPathCalculatorTest;
 import org.matsim.core.router.costcalculators.FreespeedTravelTimeAndDisutility;
 import org.matsim.core.router.util.LeastCostPathCalculator;
@@ -38,5 +47,99 @@ public class SpeedyALTTest extends AbstractLeastCostPathCalculatorTest {
 		SpeedyALTData altData = new SpeedyALTData(g, 16, travelTimeCostCalculator);
 		return new SpeedyALT(altData, travelTimeCostCalculator, travelTimeCostCalculator);
 	}
-	
+
+	@Test
+	public void testLandmarksCache() {
+		Network network = createRandomNetwork(300, new Random(20221017));
+		FreespeedTravelTimeAndDisutility travelTimeCostCalculator = new FreespeedTravelTimeAndDisutility(new PlanCalcScoreConfigGroup());
+		SpeedyGraph graph = new SpeedyGraph(network);
+		double[] linkWeights = SpeedyALTData.getLinkWeights(graph, travelTimeCostCalculator);
+		File cacheDirectory = new File(getOutputDirectory(), "landmarks");
+
+		SpeedyALTData expected = new SpeedyALTData(graph, 8, linkWeights, 1, null);
+		SpeedyALTData written = new SpeedyALTData(graph, 8, linkWeights, 4, cacheDirectory);
+		File[] files = cacheDirectory.listFiles();
+		Assert.assertNotNull(files);
+		Assert.assertEquals(1, files.length);
+		long lastModified = files[0].lastModified();
+
+		SpeedyALTData read = new SpeedyALTData(graph, 8, linkWeights, 4, cacheDirectory);
+		Assert.assertEquals(lastModified, files[0].lastModified());
+		for (SpeedyALTData data : new SpeedyALTData[] { written, read }) {
+			for (int nodeIdx = 0; nodeIdx < graph.nodeCount; nodeIdx++) {
+				for (int l = 0; l < 8; l++) {
+					Assert.assertEquals(expected.getTravelCostFromLandmark(nodeIdx, l), data.getTravelCostFromLandmark(nodeIdx, l), 0.0);
+					Assert.assertEquals(expected.getTravelCostToLandmark(nodeIdx, l), data.getTravelCostToLandmark(nodeIdx, l), 0.0);
+				}
+			}
+		}
+
+		// other link weights: other file. Link indices are global, so not all of them are used by this network.
+		int linkIdx = 0;
+		while (graph.getLink(linkIdx) == null) {
+			linkIdx++;
+		}
+		linkWeights[linkIdx] += 1;
+		new SpeedyALTData(graph, 8, linkWeights, 4, cacheDirectory);
+		Assert.assertEquals(2, cacheDirectory.listFiles().length);
+	}
+
+	@Test
+	public void testFactoryLandmarksCache() {
+		Network network = createRandomNetwork(300, new Random(20221018));
+		SpeedyALTFactory factory = new SpeedyALTFactory(2, null);
+		Assert.assertEquals(0, factory.getCachedLandmarksCount(network));
+
+		FreespeedTravelTimeAndDisutility travelTimeCostCalculator = new FreespeedTravelTimeAndDisutility(new PlanCalcScoreConfigGroup());
+		factory.createPathCalculator(network, travelTimeCostCalculator, travelTimeCostCalculator);
+		Assert.assertEquals(1, factory.getCachedLandmarksCount(network));
+
+		// another instance with the same minimum travel disutilities shares the landmarks
+		FreespeedTravelTimeAndDisutility sameWeights = new FreespeedTravelTimeAndDisutility(new PlanCalcScoreConfigGroup());
+		factory.createPathCalculator(network, sameWeights, sameWeights);
+		Assert.assertEquals(1, factory.getCachedLandmarksCount(network));
+
+		// the same class with other parameters gets its own landmarks
+		FreespeedTravelTimeAndDisutility otherWeights = new FreespeedTravelTimeAndDisutility(-6.0 / 3600, 6.0 / 3600, -0.001);
+		factory.createPathCalculator(network, otherWeights, otherWeights);
+		Assert.assertEquals(2, factory.getCachedLandmarksCount(network));
+	}
+
+	@Test
+	public void testLinkWeightsCache() {
+		LinkWeightsCache<Object> cache = new LinkWeightsCache<>(2);
+		Object a = cache.get(new double[] {1, 2, 3}, w -> new Object());
+		Assert.assertSame(a, cache.get(new double[] {1, 2, 3}, w -> new Object()));
+		Object b = cache.get(new double[] {1, 2, 4}, w -> new Object());
+		Assert.assertNotSame(a, b);
+		Assert.assertSame(a, cache.get(new double[] {1, 2, 3}, w -> new Object()));
+
+		// the least recently used entry is evicted
+		cache.get(new double[] {1, 2, 5}, w -> new Object());
+		Assert.assertEquals(2, cache.size());
+		Assert.assertSame(a, cache.get(new double[] {1, 2, 3}, w -> new Object()));
+		Assert.assertNotSame(b, cache.get(new double[] {1, 2, 4}, w -> new Object()));
+	}
+
+	/**
+	 * Creates a network with randomly placed nodes, each connected to a few of the previously created nodes.
+	 */
+	private static Network createRandomNetwork(int nodeCount, Random random) {
+		Network network = NetworkUtils.createNetwork();
+		Node[] nodes = new Node[nodeCount];
+		for (int i = 0; i < nodeCount; i++) {
+			nodes[i] = NetworkUtils.createAndAddNode(network, Id.createNodeId("alt_" + i), new Coord(random.nextInt(10000), random.nextInt(10000)));
+			for (int j = 0; j < 3 && i > 0; j++) {
+				Node other = nodes[random.nextInt(i)];
+				double length = NetworkUtils.getEuclideanDistance(nodes[i].getCoord(), other.getCoord()) + 1;
+				double freespeed = 5 + random.nextInt(25);
+				NetworkUtils.createAndAddLink(network, Id.createLinkId("alt_" + i + "_" + j), nodes[i], other, length, freespeed, 1000, 1);
+				if (random.nextInt(4) > 0) {
+					NetworkUtils.createAndAddLink(network, Id.createLinkId("alt_" + i + "_" + j + "_r"), other, nodes[i], length, freespeed, 1000, 1);
+				}
+			}
+		}
+		return network;
+	}
+
 }
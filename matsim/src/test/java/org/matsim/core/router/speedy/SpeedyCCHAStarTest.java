@@ -0,0 +1,96 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * SpeedyCCHAStarTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.router.speedy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.config.groups.PlanCalcScoreConfigGroup;
+import org.matsim.core.router.AbstractLeastCostPathCalculatorTest;
+import org.matsim.core.router.costcalculators.FreespeedTravelTimeAndDisutility;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.util.LeastCostPathCalculator.Path;
+
+public class SpeedyCCHAStarTest extends AbstractLeastCostPathCalculatorTest {
+
+	@Override
+	protected LeastCostPathCalculator getLeastCostPathCalculator(final Network network) {
+		FreespeedTravelTimeAndDisutility travelTimeCostCalculator = new FreespeedTravelTimeAndDisutility(new PlanCalcScoreConfigGroup());
+		return new SpeedyCCHAStarFactory().createPathCalculator(network, travelTimeCostCalculator, travelTimeCostCalculator);
+	}
+
+	@Test
+	public void testSameResultsAsDijkstra() {
+		Network network = SpeedyCCHTest.createGridNetwork(25, new Random(4711));
+		SpeedyCCHTest.HourlyTravelTime travelTime = new SpeedyCCHTest.HourlyTravelTime();
+		LeastCostPathCalculator astar = new SpeedyCCHAStarFactory().createPathCalculator(network, travelTime, travelTime);
+		LeastCostPathCalculator dijkstra = new SpeedyDijkstra(new SpeedyGraph(network), travelTime, travelTime);
+
+		List<Node> nodes = new ArrayList<>(network.getNodes().values());
+		Random random = new Random(42);
+		for (int i = 0; i < 500; i++) {
+			Node from = nodes.get(random.nextInt(nodes.size()));
+			Node to = nodes.get(random.nextInt(nodes.size()));
+			// departures shortly before the travel times change, so many routes use several time bins
+			double departureTime = random.nextInt(4) * 3600 + 3000 + random.nextInt(600);
+			Path expected = dijkstra.calcLeastCostPath(from, to, departureTime, null, null);
+			Path actual = astar.calcLeastCostPath(from, to, departureTime, null, null);
+			if (expected == null) {
+				Assert.assertNull(actual);
+				continue;
+			}
+			Assert.assertEquals(expected.travelCost, actual.travelCost, 1e-6);
+			Assert.assertEquals(expected.travelTime, actual.travelTime, 1e-6);
+			Assert.assertEquals(expected.links, actual.links);
+		}
+	}
+
+	@Test
+	public void testSameClassOfTravelDisutilityWithOtherParameters() {
+		Network network = SpeedyCCHTest.createGridNetwork(20, new Random(4711));
+		SpeedyCCHAStarFactory factory = new SpeedyCCHAStarFactory();
+		// the lower bounds of the expensive disutility would overestimate the costs of the cheap one
+		FreespeedTravelTimeAndDisutility expensive = new FreespeedTravelTimeAndDisutility(-60.0 / 3600, 0.0, -0.01);
+		FreespeedTravelTimeAndDisutility cheap = new FreespeedTravelTimeAndDisutility(-6.0 / 3600, 0.0, -0.001);
+		factory.createPathCalculator(network, expensive, expensive);
+		LeastCostPathCalculator astar = factory.createPathCalculator(network, cheap, cheap);
+		LeastCostPathCalculator dijkstra = new SpeedyDijkstra(new SpeedyGraph(network), cheap, cheap);
+
+		List<Node> nodes = new ArrayList<>(network.getNodes().values());
+		Random random = new Random(42);
+		for (int i = 0; i < 200; i++) {
+			Node from = nodes.get(random.nextInt(nodes.size()));
+			Node to = nodes.get(random.nextInt(nodes.size()));
+			Path expected = dijkstra.calcLeastCostPath(from, to, 8 * 3600, null, null);
+			Path actual = astar.calcLeastCostPath(from, to, 8 * 3600, null, null);
+			if (expected == null) {
+				Assert.assertNull(actual);
+				continue;
+			}
+			Assert.assertEquals(expected.travelCost, actual.travelCost, 1e-6);
+		}
+	}
+}
@@ -0,0 +1,229 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * SpeedyCCHTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.router.speedy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.PlanCalcScoreConfigGroup;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.router.AbstractLeastCostPathCalculatorTest;
+import org.matsim.core.router.costcalculators.FreespeedTravelTimeAndDisutility;
+import org.matsim.core.router.costcalculators.RandomizingTimeDistanceTravelDisutilityFactory;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.util.LeastCostPathCalculator.Path;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.vehicles.Vehicle;
+
+public class SpeedyCCHTest extends AbstractLeastCostPathCalculatorTest {
+
+	@Override
+	protected LeastCostPathCalculator getLeastCostPathCalculator(final Network network) {
+		FreespeedTravelTimeAndDisutility travelTimeCostCalculator = new FreespeedTravelTimeAndDisutility(new PlanCalcScoreConfigGroup());
+		return new SpeedyCCHFactory().createPathCalculator(network, travelTimeCostCalculator, travelTimeCostCalculator);
+	}
+
+	@Test
+	public void testSameCostsAsDijkstra() {
+		Network network = createGridNetwork(25, new Random(20221017));
+		HourlyTravelTime travelTime = new HourlyTravelTime();
+		SpeedyCCHFactory factory = new SpeedyCCHFactory(3600, 4);
+		LeastCostPathCalculator cch = factory.createPathCalculator(network, travelTime, travelTime);
+		LeastCostPathCalculator dijkstra = new SpeedyDijkstra(new SpeedyGraph(network), travelTime, travelTime);
+
+		assertSameCosts(network, cch, dijkstra);
+
+		// new travel times lead to new metrics for the next path calculator
+		travelTime.factor = 1.5;
+		assertSameCosts(network, factory.createPathCalculator(network, travelTime, travelTime), dijkstra);
+	}
+
+	@Test
+	public void testSameTypeWithDifferentParameters() {
+		Network network = createGridNetwork(25, new Random(20221017));
+		SpeedyCCHFactory factory = new SpeedyCCHFactory(3600, 4);
+		HourlyTravelTime car = new HourlyTravelTime();
+		HourlyTravelTime ride = new HourlyTravelTime();
+		ride.distanceFactor = 0.5;
+
+		LeastCostPathCalculator carCch = factory.createPathCalculator(network, car, car);
+		Assert.assertEquals(1, factory.getCachedMetricCount(network));
+		LeastCostPathCalculator rideCch = factory.createPathCalculator(network, ride, ride);
+		Assert.assertEquals(2, factory.getCachedMetricCount(network));
+
+		assertSameCosts(network, carCch, new SpeedyDijkstra(new SpeedyGraph(network), car, car));
+		assertSameCosts(network, rideCch, new SpeedyDijkstra(new SpeedyGraph(network), ride, ride));
+
+		// equal weights re-use the metrics
+		factory.createPathCalculator(network, new HourlyTravelTime(), car);
+		Assert.assertEquals(2, factory.getCachedMetricCount(network));
+
+		// the metrics of the last iteration are dropped
+		factory.notifyIterationStarts(null);
+		Assert.assertEquals(0, factory.getCachedMetricCount(network));
+	}
+
+	@Test
+	public void testPersonDependentTravelDisutility() {
+		Network network = createGridNetwork(10, new Random(20221017));
+		Config config = ConfigUtils.createConfig();
+		config.plansCalcRoute().setRoutingRandomness(3.0);
+		// the randomness only affects the distance part of the travel disutility
+		config.planCalcScore().getModes().get(TransportMode.car).setMonetaryDistanceRate(-0.0002);
+		HourlyTravelTime travelTime = new HourlyTravelTime();
+		TravelDisutility randomized = new RandomizingTimeDistanceTravelDisutilityFactory(TransportMode.car, config).createTravelDisutility(travelTime);
+		SpeedyCCHFactory factory = new SpeedyCCHFactory(config);
+
+		Assert.assertTrue(factory.createPathCalculator(network, randomized, travelTime) instanceof SpeedyALT);
+		Assert.assertEquals(0, factory.getCachedMetricCount(network));
+
+		// the travel disutility is only checked once per class, as the routing randomness is the same for all modes
+		config.plansCalcRoute().setRoutingRandomness(0.0);
+		TravelDisutility notRandomized = new RandomizingTimeDistanceTravelDisutilityFactory(TransportMode.car, config).createTravelDisutility(travelTime);
+		Assert.assertTrue(new SpeedyCCHFactory(config).createPathCalculator(network, notRandomized, travelTime) instanceof SpeedyCCH);
+	}
+
+	@Test
+	public void testVehicleDependentTravelDisutility() {
+		Network network = createGridNetwork(10, new Random(20221017));
+		SpeedyCCHFactory factory = new SpeedyCCHFactory(3600, 4);
+		HourlyTravelTime travelTime = new HourlyTravelTime();
+		TravelDisutility vehicleDependent = new TravelDisutility() {
+			@Override
+			public double getLinkTravelDisutility(Link link, double time, Person person, Vehicle vehicle) {
+				return link.getLength() / Math.min(link.getFreespeed(), vehicle.getType().getMaximumVelocity());
+			}
+
+			@Override
+			public double getLinkMinimumTravelDisutility(Link link) {
+				return link.getLength() / link.getFreespeed();
+			}
+		};
+
+		Assert.assertTrue(factory.createPathCalculator(network, vehicleDependent, travelTime) instanceof SpeedyALT);
+		Assert.assertEquals(0, factory.getCachedMetricCount(network));
+	}
+
+	private static void assertSameCosts(Network network, LeastCostPathCalculator cch, LeastCostPathCalculator dijkstra) {
+		List<Node> nodes = new ArrayList<>(network.getNodes().values());
+		Random random = new Random(42);
+		for (int i = 0; i < 500; i++) {
+			Node from = nodes.get(random.nextInt(nodes.size()));
+			Node to = nodes.get(random.nextInt(nodes.size()));
+			double departureTime = random.nextInt(4) * 3600 + 60;
+			Path expected = dijkstra.calcLeastCostPath(from, to, departureTime, null, null);
+			Path actual = cch.calcLeastCostPath(from, to, departureTime, null, null);
+			if (expected == null) {
+				Assert.assertNull(actual);
+				continue;
+			}
+			Assert.assertEquals(expected.travelCost, actual.travelCost, 1e-6);
+			Assert.assertEquals(expected.travelTime, actual.travelTime, 1e-6);
+			Assert.assertEquals(from, actual.getFromNode());
+			Assert.assertEquals(to, actual.getToNode());
+			for (int l = 0; l < actual.links.size(); l++) {
+				Assert.assertEquals(actual.nodes.get(l), actual.links.get(l).getFromNode());
+				Assert.assertEquals(actual.nodes.get(l + 1), actual.links.get(l).getToNode());
+			}
+		}
+	}
+
+	/**
+	 * Creates a grid with some missing links and some one-way streets, so not all nodes are reachable from everywhere.
+	 */
+	static Network createGridNetwork(int size, Random random) {
+		Network network = NetworkUtils.createNetwork();
+		Node[][] nodes = new Node[size][size];
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) {
+				nodes[x][y] = NetworkUtils.createAndAddNode(network, Id.createNodeId("cch_" + x + "_" + y), new Coord(x * 200 + random.nextInt(50), y * 200));
+			}
+		}
+		for (int x = 0; x < size; x++) {
+			for (int y = 0; y < size; y++) {
+				if (x + 1 < size) {
+					addLinks(network, nodes[x][y], nodes[x + 1][y], random);
+				}
+				if (y + 1 < size) {
+					addLinks(network, nodes[x][y], nodes[x][y + 1], random);
+				}
+			}
+		}
+		return network;
+	}
+
+	private static void addLinks(Network network, Node a, Node b, Random random) {
+		int type = random.nextInt(10);
+		if (type == 0) {
+			return;
+		}
+		double length = 100 + random.nextInt(200);
+		double freespeed = 20 + random.nextInt(20);
+		if (type != 1) {
+			NetworkUtils.createAndAddLink(network, Id.createLinkId(a.getId() + "-" + b.getId()), a, b, length, freespeed, 1000, 1);
+		}
+		if (type != 2) {
+			NetworkUtils.createAndAddLink(network, Id.createLinkId(b.getId() + "-" + a.getId()), b, a, length, freespeed, 1000, 1);
+		}
+		if (type == 3) {
+			// a parallel, slower link
+			NetworkUtils.createAndAddLink(network, Id.createLinkId(a.getId() + "-" + b.getId() + "-slow"), a, b, length * 1.5, freespeed, 1000, 1);
+		}
+	}
+
+	/**
+	 * Travel times that are constant within each hour, but differ between the hours.
+	 */
+	static class HourlyTravelTime implements TravelTime, TravelDisutility {
+		double factor = 1.0;
+		double distanceFactor = 0.01;
+
+		@Override
+		public double getLinkTravelTime(Link link, double time, Person person, Vehicle vehicle) {
+			int hour = (int) (time / 3600);
+			double congestion = (link.getId().index() % 3 == hour % 3) ? 2.0 : 1.0;
+			return this.factor * congestion * link.getLength() / link.getFreespeed();
+		}
+
+		@Override
+		public double getLinkTravelDisutility(Link link, double time, Person person, Vehicle vehicle) {
+			return getLinkTravelTime(link, time, person, vehicle) + this.distanceFactor * link.getLength();
+		}
+
+		@Override
+		public double getLinkMinimumTravelDisutility(Link link) {
+			return link.getLength() / link.getFreespeed() + this.distanceFactor * link.getLength();
+		}
+	}
+}
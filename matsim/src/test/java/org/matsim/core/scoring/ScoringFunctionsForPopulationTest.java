@@ -27,22 +27,48 @@ import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.events.ActivityEndEvent;
 import org.matsim.api.core.v01.events.ActivityStartEvent;
 import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.LinkLeaveEvent;
+import org.matsim.api.core.v01.events.PersonArrivalEvent;
+import org.matsim.api.core.v01.events.PersonDepartureEvent;
+import org.matsim.api.core.v01.events.PersonEntersVehicleEvent;
+import org.matsim.api.core.v01.events.PersonLeavesVehicleEvent;
 import org.matsim.api.core.v01.events.PersonMoneyEvent;
 import org.matsim.api.core.v01.events.PersonScoreEvent;
+import org.matsim.api.core.v01.events.VehicleEntersTrafficEvent;
+import org.matsim.api.core.v01.events.VehicleLeavesTrafficEvent;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
 import org.matsim.api.core.v01.population.Activity;
 import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
 import org.matsim.api.core.v01.population.Population;
 import org.matsim.api.core.v01.population.PopulationFactory;
 import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.api.experimental.events.TeleportationArrivalEvent;
+import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.PlanCalcScoreConfigGroup;
 import org.matsim.core.controler.ControlerListenerManagerImpl;
 import org.matsim.core.events.EventsUtils;
+import org.matsim.core.events.ParallelEventsManager;
+import org.matsim.core.network.NetworkUtils;
 import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.routes.NetworkRoute;
 import org.matsim.core.router.TripStructureUtils;
 import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.scoring.functions.CharyparNagelScoringFunctionFactory;
+import org.matsim.vehicles.Vehicle;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * @author mrieser / Simunto GmbH
@@ -135,15 +161,213 @@ public class ScoringFunctionsForPopulationTest {
 		Assert.assertEquals(1.234+2.345, rsf.separateScoreSum, 1e-7);
 	}
 
+	@Test
+	public void testShardedScoring() {
+		double[] expectedScores = scoreWithShards(1, EventsUtils.createEventsManager());
+		double[] actualScores = scoreWithShards(3, EventsUtils.createEventsManager());
+		Assert.assertArrayEquals(expectedScores, actualScores, 1e-10);
+		Assert.assertNotEquals(expectedScores[0], expectedScores[1], 1e-10);
+	}
+
+	@Test
+	public void testShardedScoringWithParallelEventsManager() {
+		double[] expectedScores = scoreWithShards(1, EventsUtils.createEventsManager());
+		double[] actualScores = scoreWithShards(4, new ParallelEventsManager(false, 4, 1024));
+		Assert.assertArrayEquals(expectedScores, actualScores, 1e-10);
+	}
+
+	@Test
+	public void testBatchScoring() {
+		double[] expectedScores = scoreWithShards(1, EventsUtils.createEventsManager());
+		double[] actualScores = scoreWithShards(1, EventsUtils.createEventsManager(), true);
+		Assert.assertArrayEquals(expectedScores, actualScores, 1e-8);
+	}
+
+	@Test
+	public void testBatchScoringWithShards() {
+		double[] expectedScores = scoreWithShards(1, EventsUtils.createEventsManager());
+		double[] actualScores = scoreWithShards(3, EventsUtils.createEventsManager(), true);
+		Assert.assertArrayEquals(expectedScores, actualScores, 1e-8);
+	}
+
+	@Test
+	public void testLastActivityScoredWithShards() {
+		Config config = ConfigUtils.createConfig();
+		config.parallelEventHandling().setNumberOfScoringShards(3);
+		Scenario scenario = ScenarioUtils.createScenario(config);
+		Population population = scenario.getPopulation();
+		for (int i = 0; i < 10; i++) {
+			population.addPerson(population.getFactory().createPerson(Id.create("last" + i, Person.class)));
+		}
+
+		ControlerListenerManagerImpl controlerListenerManager = new ControlerListenerManagerImpl();
+		EventsManager eventsManager = EventsUtils.createEventsManager();
+		ScoringFunctionsForPopulation sf = new ScoringFunctionsForPopulation(controlerListenerManager, eventsManager, new EventsToActivities(controlerListenerManager), new EventsToLegs(scenario),
+				population, agentId -> new RecordingScoringFunction(), config);
+		controlerListenerManager.fireControlerIterationStartsEvent(0, false);
+
+		eventsManager.initProcessing();
+		for (Person person : population.getPersons().values()) {
+			processTrip(eventsManager, person.getId(), 7 * 3600, 8 * 3600, 1000);
+		}
+		eventsManager.finishProcessing();
+		// the last activities must be passed on by finishing the scoring functions, independent of any controler listener
+		sf.finishScoringFunctions();
+
+		for (Person person : population.getPersons().values()) {
+			RecordingScoringFunction rsf = (RecordingScoringFunction) sf.getScoringFunctionForAgent(person.getId());
+			Assert.assertEquals(2, rsf.activityCounter);
+		}
+	}
+
+	@Test
+	public void testVehicleEventsWithShards() {
+		Config config = ConfigUtils.createConfig();
+		config.parallelEventHandling().setNumberOfScoringShards(2);
+		Scenario scenario = ScenarioUtils.createScenario(config);
+		Network network = scenario.getNetwork();
+		Node node0 = NetworkUtils.createAndAddNode(network, Id.createNodeId("shardedVehicle0"), new Coord(0, 0));
+		Node node1 = NetworkUtils.createAndAddNode(network, Id.createNodeId("shardedVehicle1"), new Coord(100, 0));
+		Node node2 = NetworkUtils.createAndAddNode(network, Id.createNodeId("shardedVehicle2"), new Coord(200, 0));
+		Node node3 = NetworkUtils.createAndAddNode(network, Id.createNodeId("shardedVehicle3"), new Coord(300, 0));
+		Link link1 = NetworkUtils.createAndAddLink(network, Id.createLinkId("shardedVehicle1"), node0, node1, 100, 10, 1000, 1);
+		Link link2 = NetworkUtils.createAndAddLink(network, Id.createLinkId("shardedVehicle2"), node1, node2, 100, 10, 1000, 1);
+		Link link3 = NetworkUtils.createAndAddLink(network, Id.createLinkId("shardedVehicle3"), node2, node3, 100, 10, 1000, 1);
+
+		// the driver and the passenger belong to different shards
+		Population population = scenario.getPopulation();
+		Id<Person> driverId = Id.create("shardedDriver", Person.class);
+		Id<Person> passengerId = Id.create("shardedPassenger", Person.class);
+		if (driverId.index() % 2 == passengerId.index() % 2) {
+			passengerId = Id.create("shardedPassenger2", Person.class);
+		}
+		population.addPerson(population.getFactory().createPerson(driverId));
+		population.addPerson(population.getFactory().createPerson(passengerId));
+		Id<Vehicle> vehicleId = Id.create("shardedVehicle", Vehicle.class);
+
+		ControlerListenerManagerImpl controlerListenerManager = new ControlerListenerManagerImpl();
+		EventsManager eventsManager = EventsUtils.createEventsManager();
+		EventsToLegs eventsToLegs = new EventsToLegs(scenario);
+		Map<Id<Person>, Leg> legs = new HashMap<>();
+		eventsToLegs.addLegHandler(leg -> legs.put(leg.getAgentId(), leg.getLeg()));
+		ScoringFunctionsForPopulation sf = new ScoringFunctionsForPopulation(controlerListenerManager, eventsManager, new EventsToActivities(controlerListenerManager), eventsToLegs,
+				population, agentId -> new RecordingScoringFunction(), config);
+		controlerListenerManager.fireControlerIterationStartsEvent(0, false);
+
+		eventsManager.initProcessing();
+		for (Id<Person> personId : List.of(driverId, passengerId)) {
+			eventsManager.processEvent(new ActivityEndEvent(100, personId, link1.getId(), null, "home"));
+			eventsManager.processEvent(new PersonDepartureEvent(100, personId, link1.getId(), personId == driverId ? TransportMode.car : TransportMode.ride, TransportMode.car));
+			eventsManager.processEvent(new PersonEntersVehicleEvent(100, personId, vehicleId));
+		}
+		eventsManager.processEvent(new VehicleEntersTrafficEvent(100, driverId, link1.getId(), vehicleId, TransportMode.car, 1.0));
+		eventsManager.processEvent(new LinkLeaveEvent(110, vehicleId, link1.getId()));
+		eventsManager.processEvent(new LinkEnterEvent(110, vehicleId, link2.getId()));
+		eventsManager.processEvent(new LinkLeaveEvent(120, vehicleId, link2.getId()));
+		eventsManager.processEvent(new LinkEnterEvent(120, vehicleId, link3.getId()));
+		eventsManager.processEvent(new VehicleLeavesTrafficEvent(130, driverId, link3.getId(), vehicleId, TransportMode.car, 1.0));
+		for (Id<Person> personId : List.of(driverId, passengerId)) {
+			eventsManager.processEvent(new PersonLeavesVehicleEvent(130, personId, vehicleId));
+			eventsManager.processEvent(new PersonArrivalEvent(130, personId, link3.getId(), personId == driverId ? TransportMode.car : TransportMode.ride));
+			eventsManager.processEvent(new ActivityStartEvent(130, personId, link3.getId(), null, "work"));
+		}
+		eventsManager.finishProcessing();
+		sf.finishScoringFunctions();
+
+		// only the driver gets the link events, but both experience the whole route
+		Assert.assertEquals(2, ((RecordingScoringFunction) sf.getScoringFunctionForAgent(driverId)).linkEnterCounter);
+		Assert.assertEquals(0, ((RecordingScoringFunction) sf.getScoringFunctionForAgent(passengerId)).linkEnterCounter);
+		for (Id<Person> personId : List.of(driverId, passengerId)) {
+			NetworkRoute route = (NetworkRoute) legs.get(personId).getRoute();
+			Assert.assertEquals(link1.getId(), route.getStartLinkId());
+			Assert.assertEquals(List.of(link2.getId()), route.getLinkIds());
+			Assert.assertEquals(link3.getId(), route.getEndLinkId());
+		}
+	}
+
+	private static double[] scoreWithShards(int numberOfShards, EventsManager eventsManager) {
+		return scoreWithShards(numberOfShards, eventsManager, false);
+	}
+
+	private static double[] scoreWithShards(int numberOfShards, EventsManager eventsManager, boolean batchScoring) {
+		Config config = ConfigUtils.createConfig();
+		config.parallelEventHandling().setNumberOfScoringShards(numberOfShards);
+		config.planCalcScore().setUsingBatchScoring(batchScoring);
+		PlanCalcScoreConfigGroup.ActivityParams home = new PlanCalcScoreConfigGroup.ActivityParams("home");
+		home.setTypicalDuration(12 * 3600.0);
+		config.planCalcScore().addActivityParams(home);
+		PlanCalcScoreConfigGroup.ActivityParams work = new PlanCalcScoreConfigGroup.ActivityParams("work");
+		work.setTypicalDuration(8 * 3600.0);
+		config.planCalcScore().addActivityParams(work);
+		Scenario scenario = ScenarioUtils.createScenario(config);
+		Population population = scenario.getPopulation();
+		int personCount = 200;
+		for (int i = 0; i < personCount; i++) {
+			population.addPerson(population.getFactory().createPerson(Id.create("sharded" + i, Person.class)));
+		}
+
+		ControlerListenerManagerImpl controlerListenerManager = new ControlerListenerManagerImpl();
+		EventsToActivities eventsToActivities = new EventsToActivities(controlerListenerManager);
+		EventsToLegs eventsToLegs = new EventsToLegs(scenario);
+		ExperiencedPlansService experiencedPlansService = new ExperiencedPlansServiceImpl(eventsToActivities, eventsToLegs, scenario);
+		AtomicBoolean experiencedPlansUsed = new AtomicBoolean(false);
+		ScoringFunctionsForPopulation sf = new ScoringFunctionsForPopulation(controlerListenerManager, eventsManager, eventsToActivities, eventsToLegs,
+				population, new CharyparNagelScoringFunctionFactory(scenario), config, () -> {
+					experiencedPlansUsed.set(true);
+					return experiencedPlansService;
+				});
+		controlerListenerManager.fireControlerIterationStartsEvent(0, false);
+
+		eventsManager.initProcessing();
+		for (int i = 0; i < personCount; i++) {
+			Id<Person> personId = Id.create("sharded" + i, Person.class);
+			double departureTime = 7 * 3600 + (i % 10) * 600;
+			double arrivalTime = departureTime + 900 + (i % 20) * 60;
+			processTrip(eventsManager, personId, departureTime, arrivalTime, 1000.0 + i * 10);
+			eventsManager.processEvent(new PersonMoneyEvent(arrivalTime, personId, -(i % 7)));
+		}
+		eventsManager.finishProcessing();
+		controlerListenerManager.fireControlerAfterMobsimEvent(0, false);
+		sf.finishScoringFunctions();
+		// the batch scoring gets the plans from the experienced plans service
+		Assert.assertEquals(batchScoring, experiencedPlansUsed.get());
+
+		double[] scores = new double[personCount];
+		for (int i = 0; i < personCount; i++) {
+			Id<Person> personId = Id.create("sharded" + i, Person.class);
+			scores[i] = sf.getScoringFunctionForAgent(personId).getScore();
+
+			// all experienced activities and legs are passed on to the experienced plans, also from the shards
+			Plan experiencedPlan = experiencedPlansService.getExperiencedPlans().get(personId);
+			Assert.assertEquals(3, experiencedPlan.getPlanElements().size());
+			Assert.assertEquals("home", ((Activity) experiencedPlan.getPlanElements().get(0)).getType());
+			Assert.assertEquals(TransportMode.walk, ((Leg) experiencedPlan.getPlanElements().get(1)).getMode());
+			Assert.assertEquals("work", ((Activity) experiencedPlan.getPlanElements().get(2)).getType());
+		}
+		return scores;
+	}
+
+	private static void processTrip(EventsManager eventsManager, Id<Person> personId, double departureTime, double arrivalTime, double distance) {
+		Id<Link> linkId = Id.create(1, Link.class);
+		eventsManager.processEvent(new ActivityEndEvent(departureTime, personId, linkId, null, "home"));
+		eventsManager.processEvent(new PersonDepartureEvent(departureTime, personId, linkId, TransportMode.walk, TransportMode.walk));
+		eventsManager.processEvent(new TeleportationArrivalEvent(arrivalTime, personId, distance, TransportMode.walk));
+		eventsManager.processEvent(new PersonArrivalEvent(arrivalTime, personId, linkId, TransportMode.walk));
+		eventsManager.processEvent(new ActivityStartEvent(arrivalTime, personId, linkId, null, "work"));
+	}
+
 	private static class RecordingScoringFunction implements ScoringFunction {
 
+		int activityCounter = 0;
 		int tripCounter = 0;
 		TripStructureUtils.Trip lastTrip = null;
 		int separateScoreCounter = 0;
 		double separateScoreSum = 0;
+		int linkEnterCounter = 0;
 
 		@Override
 		public void handleActivity(Activity activity) {
+			this.activityCounter++;
 		}
 
 		@Override
@@ -181,6 +405,9 @@ public class ScoringFunctionsForPopulationTest {
 
 		@Override
 		public void handleEvent(Event event) {
+			if (event instanceof LinkEnterEvent) {
+				this.linkEnterCounter++;
+			}
 		}
 	}
 
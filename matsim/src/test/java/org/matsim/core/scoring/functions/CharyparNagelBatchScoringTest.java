@@ -0,0 +1,231 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ * CharyparNagelBatchScoringTest.java
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2022 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.core.scoring.functions;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.IdMap;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.groups.PlanCalcScoreConfigGroup.ActivityParams;
+import org.matsim.core.config.groups.PlanCalcScoreConfigGroup.ModeParams;
+import org.matsim.core.config.groups.PlanCalcScoreConfigGroup.ScoringParameterSet;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.routes.RouteUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.scoring.ScoringFunction;
+
+public class CharyparNagelBatchScoringTest {
+
+	@Test
+	public void testSameScoresAsScoringFunctions() {
+		assertSameScoresAsScoringFunctions(createTestScenario(50));
+	}
+
+	@Test
+	public void testSeveralChunks() {
+		// the persons of both subpopulations are spread over three chunks
+		assertSameScoresAsScoringFunctions(createTestScenario(CharyparNagelBatchScoring.PERSONS_PER_CHUNK - 10));
+	}
+
+	@Test
+	public void testParameterSetPerPerson() {
+		// like the income dependent providers: a new instance per person, with shared activity parameters
+		Scenario scenario = createTestScenario(CharyparNagelBatchScoring.PERSONS_PER_CHUNK / 4);
+		Config config = scenario.getConfig();
+		SubpopulationScoringParameters subpopulationParameters = new SubpopulationScoringParameters(scenario);
+		ScoringParametersForPerson parametersPerPerson = person -> {
+			ScoringParameters params = subpopulationParameters.getScoringParameters(person);
+			String subpopulation = PopulationUtils.getSubpopulation(person);
+			return new ScoringParameters.Builder(config.planCalcScore(), config.planCalcScore().getScoringParameters(subpopulation),
+					params.utilParams, config.scenario())
+					.setMarginalUtilityOfMoney(1.0 + person.getId().index() % 3)
+					.build();
+		};
+		assertSameScoresAsScoringFunctions(scenario, parametersPerPerson);
+	}
+
+	@Test
+	public void testNaNDistance() {
+		Scenario scenario = createTestScenario(2);
+		Person person = scenario.getPopulation().getPersons().values().iterator().next();
+		Plan plan = PopulationUtils.createPlan();
+		Activity home = PopulationUtils.createActivityFromLinkId("home", null);
+		home.setEndTime(7 * 3600);
+		plan.addActivity(home);
+		Leg leg = PopulationUtils.createLeg(TransportMode.car);
+		leg.setDepartureTime(7 * 3600);
+		leg.setTravelTime(600);
+		leg.setRoute(RouteUtils.createGenericRouteImpl(null, null));
+		plan.addLeg(leg);
+		Activity home2 = PopulationUtils.createActivityFromLinkId("home", null);
+		home2.setStartTime(7 * 3600 + 600);
+		plan.addActivity(home2);
+
+		IdMap<Person, Plan> experiencedPlans = new IdMap<>(Person.class);
+		experiencedPlans.put(person.getId(), plan);
+		Person other = scenario.getPopulation().getPersons().values().stream().skip(1).findFirst().orElseThrow();
+		experiencedPlans.put(other.getId(), createExperiencedPlan(new Random(4711)));
+		IdMap<Person, Double> scores = new CharyparNagelBatchScoring(scenario).scoreExperiencedPlans(scenario.getPopulation(), experiencedPlans);
+
+		Assert.assertTrue(Double.isNaN(scores.get(person.getId())));
+		Assert.assertFalse(Double.isNaN(scores.get(other.getId())));
+	}
+
+	private static void assertSameScoresAsScoringFunctions(Scenario scenario) {
+		assertSameScoresAsScoringFunctions(scenario, new SubpopulationScoringParameters(scenario));
+	}
+
+	private static void assertSameScoresAsScoringFunctions(Scenario scenario, ScoringParametersForPerson scoringParameters) {
+		Random random = new Random(4711);
+		IdMap<Person, Plan> experiencedPlans = new IdMap<>(Person.class);
+		for (Person person : scenario.getPopulation().getPersons().values()) {
+			experiencedPlans.put(person.getId(), createExperiencedPlan(random));
+		}
+
+		IdMap<Person, Double> scores = new CharyparNagelBatchScoring(scoringParameters).scoreExperiencedPlans(scenario.getPopulation(), experiencedPlans);
+
+		CharyparNagelScoringFunctionFactory factory = new CharyparNagelScoringFunctionFactory(scenario.getConfig(), scoringParameters, scenario.getNetwork());
+		Assert.assertEquals(experiencedPlans.size(), scores.size());
+		for (Person person : scenario.getPopulation().getPersons().values()) {
+			ScoringFunction function = factory.createNewScoringFunction(person);
+			for (PlanElement pe : experiencedPlans.get(person.getId()).getPlanElements()) {
+				if (pe instanceof Activity) {
+					function.handleActivity((Activity) pe);
+				} else {
+					function.handleLeg((Leg) pe);
+				}
+			}
+			function.finish();
+			Assert.assertEquals("wrong score for person " + person.getId(), function.getScore(), scores.get(person.getId()), 1e-9);
+		}
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testUnknownMode() {
+		Scenario scenario = createTestScenario(50);
+		Person person = scenario.getPopulation().getPersons().values().iterator().next();
+		Plan plan = PopulationUtils.createPlan();
+		Activity home = PopulationUtils.createActivityFromLinkId("home", null);
+		home.setEndTime(7 * 3600);
+		plan.addActivity(home);
+		Leg leg = PopulationUtils.createLeg("hovercraft");
+		leg.setDepartureTime(7 * 3600);
+		leg.setTravelTime(600);
+		plan.addLeg(leg);
+
+		IdMap<Person, Plan> experiencedPlans = new IdMap<>(Person.class);
+		experiencedPlans.put(person.getId(), plan);
+		new CharyparNagelBatchScoring(scenario).scoreExperiencedPlans(scenario.getPopulation(), experiencedPlans);
+	}
+
+	private static Plan createExperiencedPlan(Random random) {
+		String[] types = {"work", "shop", "leisure"};
+		String[] modes = {TransportMode.car, TransportMode.walk, TransportMode.transit_walk, TransportMode.car};
+		Plan plan = PopulationUtils.createPlan();
+		double time = 5 * 3600 + random.nextInt(4 * 3600);
+		Activity first = PopulationUtils.createActivityFromLinkId("home", null);
+		first.setEndTime(time);
+		plan.addActivity(first);
+
+		int activityCount = random.nextInt(4);
+		for (int i = 0; i <= activityCount; i++) {
+			Leg leg = PopulationUtils.createLeg(modes[random.nextInt(modes.length)]);
+			leg.setDepartureTime(time);
+			double travelTime = 300 + random.nextInt(3600);
+			leg.setTravelTime(travelTime);
+			leg.setRoute(RouteUtils.createGenericRouteImpl(null, null));
+			leg.getRoute().setDistance(travelTime * 10);
+			plan.addLeg(leg);
+			time += travelTime;
+
+			boolean isLast = i == activityCount;
+			String type = isLast ? (random.nextInt(5) == 0 ? "leisure" : "home") : types[random.nextInt(types.length)];
+			Activity act = PopulationUtils.createActivityFromLinkId(type, null);
+			act.setStartTime(time);
+			if (!isLast) {
+				// also include too short activities, which are scored below the zero utility duration
+				time += 60 + random.nextInt(5 * 3600);
+				act.setEndTime(time);
+			}
+			plan.addActivity(act);
+		}
+		return plan;
+	}
+
+	private static Scenario createTestScenario(int personsPerSubpopulation) {
+		Config config = ConfigUtils.createConfig();
+		Scenario scenario = ScenarioUtils.createScenario(config);
+		for (int i = 1; i <= 2; i++) {
+			String subpopulation = "subpop" + i;
+			ScoringParameterSet params = config.planCalcScore().getOrCreateScoringParameters(subpopulation);
+			params.setPerforming_utils_hr(6.0 * i);
+			params.setLateArrival_utils_hr(-18.0);
+			params.setEarlyDeparture_utils_hr(-3.0 * i);
+			params.setMarginalUtlOfWaiting_utils_hr(-1.0);
+			params.setMarginalUtilityOfMoney(i);
+
+			params.getOrCreateActivityParams("home").setTypicalDuration(12 * 3600);
+			ActivityParams work = params.getOrCreateActivityParams("work");
+			work.setTypicalDuration(8 * 3600);
+			work.setOpeningTime(7 * 3600);
+			work.setClosingTime(18 * 3600);
+			work.setLatestStartTime(9 * 3600);
+			work.setEarliestEndTime(16 * 3600);
+			ActivityParams shop = params.getOrCreateActivityParams("shop");
+			shop.setTypicalDuration(3600);
+			shop.setMinimalDuration(1800);
+			shop.setOpeningTime(8 * 3600);
+			shop.setClosingTime(20 * 3600);
+			params.getOrCreateActivityParams("leisure").setTypicalDuration(2 * 3600);
+
+			ModeParams car = params.getOrCreateModeParams(TransportMode.car);
+			car.setMarginalUtilityOfTraveling(-6.0);
+			car.setMarginalUtilityOfDistance(-0.0001 * i);
+			car.setMonetaryDistanceRate(-0.0002);
+			car.setConstant(-1.0);
+			car.setDailyUtilityConstant(-2.0);
+			car.setDailyMonetaryConstant(-5.0);
+			ModeParams walk = params.getOrCreateModeParams(TransportMode.walk);
+			walk.setMarginalUtilityOfTraveling(-12.0 / i);
+			walk.setDailyUtilityConstant(-0.5);
+			params.getOrCreateModeParams(TransportMode.pt);
+
+			for (int p = 0; p < personsPerSubpopulation; p++) {
+				Person person = scenario.getPopulation().getFactory().createPerson(Id.createPersonId(subpopulation + "_" + p));
+				PopulationUtils.putSubpopulation(person, subpopulation);
+				scenario.getPopulation().addPerson(person);
+			}
+		}
+		return scenario;
+	}
+
+}
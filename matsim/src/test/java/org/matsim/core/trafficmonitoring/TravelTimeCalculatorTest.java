@@ -24,6 +24,11 @@ import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.parsers.ParserConfigurationException;
 
@@ -363,6 +368,114 @@ public class TravelTimeCalculatorTest extends MatsimTestCase {
 		assertEquals("wrong link travel time at 06:15.", 359.9712023038157, ttCalc.getLinkTravelTimes().getLinkTravelTime(link10, 6.25 * 3600, null, null), 1e-3); // traveltimecalculator has a resolution of 0.001 seconds
 	}
 
+	public void testPrimitiveAggregation() {
+		String eventsFilename = getClassInputDirectory() + "link10_events.xml";
+		String networkFile = "test/scenarios/equil/network.xml";
+
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		Network network = scenario.getNetwork();
+		new MatsimNetworkReader(scenario.getNetwork()).readFile(networkFile);
+
+		TravelTimeCalculatorConfigGroup config = scenario.getConfig().travelTimeCalculator();
+		config.setCalculateLinkToLinkTravelTimes(true);
+		config.setFilterModes(true);
+		TravelTimeCalculator ttCalc = new TravelTimeCalculator(network, config);
+		config.setUsingPrimitiveAggregation(true);
+		TravelTimeCalculator.Builder builder = new TravelTimeCalculator.Builder(network);
+		builder.setCalculateLinkToLinkTravelTimes(true);
+		builder.setFilterModes(true);
+		builder.setAnalyzedModes(config.getAnalyzedModes());
+		builder.configure(config);
+		TravelTimeCalculator primitiveTtCalc = builder.build();
+
+		EventsManager events = EventsUtils.createEventsManager();
+		events.addHandler(ttCalc);
+		events.addHandler(primitiveTtCalc);
+		events.initProcessing();
+		new MatsimEventsReader(events).readFile(eventsFilename);
+		events.finishProcessing();
+
+		Link link10 = network.getLinks().get(Id.create("10", Link.class));
+		assertEquals("wrong link travel time at 06:15.", 359.9712023038157, primitiveTtCalc.getLinkTravelTimes().getLinkTravelTime(link10, 6.25 * 3600, null, null), 1e-3);
+		for (Link link : network.getLinks().values()) {
+			for (double time = 0; time < 30 * 3600; time += 900) {
+				assertEquals(ttCalc.getLinkTravelTimes().getLinkTravelTime(link, time, null, null),
+						primitiveTtCalc.getLinkTravelTimes().getLinkTravelTime(link, time, null, null), 1e-3);
+				for (Link toLink : link.getToNode().getOutLinks().values()) {
+					assertEquals(ttCalc.getLinkToLinkTravelTimes().getLinkToLinkTravelTime(link, toLink, time, null, null),
+							primitiveTtCalc.getLinkToLinkTravelTimes().getLinkToLinkTravelTime(link, toLink, time, null, null), 1e-3);
+				}
+			}
+		}
+
+		// after a reset, only new events are used
+		events.resetHandlers(1);
+		events.initProcessing();
+		events.processEvent(new LinkEnterEvent(6 * 3600, Id.create("v", Vehicle.class), link10.getId()));
+		events.processEvent(new LinkLeaveEvent(6 * 3600 + 500, Id.create("v", Vehicle.class), link10.getId()));
+		events.finishProcessing();
+		assertEquals(500.0, primitiveTtCalc.getLinkTravelTimes().getLinkTravelTime(link10, 6 * 3600, null, null), 1e-3);
+		assertEquals(ttCalc.getLinkTravelTimes().getLinkTravelTime(link10, 7 * 3600, null, null),
+				primitiveTtCalc.getLinkTravelTimes().getLinkTravelTime(link10, 7 * 3600, null, null), 1e-3);
+	}
+
+	public void testPrimitiveAggregationWithConcurrentReads() throws InterruptedException {
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		Network network = scenario.getNetwork();
+		// many links, so the reader flushes while travel times are still added
+		Node previous = NetworkUtils.createAndAddNode(network, Id.createNodeId("concurrent_0"), new Coord(0, 0));
+		for (int i = 1; i <= 2000; i++) {
+			Node node = NetworkUtils.createAndAddNode(network, Id.createNodeId("concurrent_" + i), new Coord(i * 100, 0));
+			NetworkUtils.createAndAddLink(network, Id.createLinkId("concurrent_" + i), previous, node, 100, 10, 1000, 1);
+			previous = node;
+		}
+		// the links are passed in descending index order, so links are added behind the position of a running flush
+		List<Link> links = new ArrayList<>(network.getLinks().values());
+		Collections.reverse(links);
+		TravelTimeCalculatorConfigGroup config = scenario.getConfig().travelTimeCalculator();
+		config.setUsingPrimitiveAggregation(true);
+		TravelTimeCalculator.Builder builder = new TravelTimeCalculator.Builder(network);
+		builder.configure(config);
+		TravelTimeCalculator ttCalc = builder.build();
+
+		// the travel times are read by another thread while the events are handled, e.g. as with within-day replanning
+		AtomicBoolean stop = new AtomicBoolean(false);
+		AtomicInteger passes = new AtomicInteger();
+		Thread reader = new Thread(() -> {
+			while (!stop.get()) {
+				for (Link link : network.getLinks().values()) {
+					ttCalc.getLinkTravelTimes().getLinkTravelTime(link, 6 * 3600, null, null);
+				}
+				passes.incrementAndGet();
+			}
+		});
+		reader.start();
+		try {
+			double sum = 0;
+			for (int r = 1; r <= 200; r++) {
+				double travelTime = 50 + r % 50;
+				sum += travelTime;
+				for (Link link : links) {
+					Id<Vehicle> vehicleId = Id.create("v" + link.getId(), Vehicle.class);
+					ttCalc.handleEvent(new LinkEnterEvent(6 * 3600 + r, vehicleId, link.getId()));
+					ttCalc.handleEvent(new LinkLeaveEvent(6 * 3600 + r + travelTime, vehicleId, link.getId()));
+				}
+				// let the reader flush the new travel times, none of them must get lost
+				int passesBefore = passes.get();
+				while (passes.get() < passesBefore + 2) {
+					Thread.onSpinWait();
+				}
+				for (Link link : network.getLinks().values()) {
+					assertEquals("wrong travel time on link " + link.getId() + " after round " + r, sum / r,
+							ttCalc.getLinkTravelTimes().getLinkTravelTime(link, 6 * 3600, null, null), 2e-3); // the travel times are stored in ms
+				}
+			}
+		} finally {
+			stop.set(true);
+			reader.join();
+		}
+	}
+
 	/**
 	 * @author mrieser / senozon
 	 */